@@ -7,6 +7,7 @@ import com.jace.learner.GenerativeNeuralNetwork;
 import com.jace.learner.NeuralNetwork;
 import com.jace.math.Matrix;
 import com.jace.math.Vector;
+import com.jace.optimizer.LBFGS;
 import com.jace.util.ChartMaker;
 import com.jace.util.Console;
 import com.jace.util.FileManager;
@@ -375,28 +376,8 @@ public class Main {
   }
 
   private static void generateImage(GenerativeNeuralNetwork gnn, Vector inputState, String fileName) {
-    Vector imageVector = new Vector(64 * 48 * 3);
-
-    Vector state = new Vector(2 + inputState.size());
-    state.set(2, inputState);
-
-    for (int w = 0; w < 64; w++) {
-      for (int h = 0; h < 48; h++) {
-        state.set(0, w / 64.0);
-        state.set(1, h / 48.0);
-
-        Vector color = gnn.predict(state);
-
-        int position = (h * 64 + w) * 3;
-
-        imageVector.set(position, color.get(0));
-        imageVector.set(position + 1, color.get(1));
-        imageVector.set(position + 2, color.get(2));
-      }
-    }
-
     try {
-      FileManager.writeImageFromVector(fileName, imageVector, 64, 48);
+      FileManager.writeImage(fileName, gnn.renderImage(inputState));
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -497,12 +478,10 @@ public class Main {
     statePredictionNetwork.initialize();
 
     LearnerEvaluator<NeuralNetwork> learnerEvaluator = new LearnerEvaluator<>(statePredictionNetwork);
-    learnerEvaluator.setTrainingType(LearnerEvaluator.TrainingType.BASIC);
-
-    for (int i = 0; i < 5000; i++) {
-      learnerEvaluator.train(features, labels);
-      statePredictionNetwork.setLearningRate(statePredictionNetwork.getLearningRate() * 0.99897);
-    }
+    learnerEvaluator.setTrainingType(LearnerEvaluator.TrainingType.BATCH);
+    learnerEvaluator.setBatchOptimizer(new LBFGS());
+    learnerEvaluator.setBatchIterations(200);
+    learnerEvaluator.train(features, labels);
 
     Console.i("Prediction network trained");
 
@@ -0,0 +1,111 @@
+package com.jace.data;
+
+import com.jace.math.Vector;
+
+/**
+ * A mini-batch of rows held in two contiguous buffers, one for the features of every row and one
+ * for the labels. Rows are handed out as {@link Vector} views over those buffers, created once, so
+ * a batch can be refilled over and over without allocating.
+ */
+public class Batch {
+  private int capacity;
+  private int featureCount;
+  private int labelCount;
+
+  private double[] features;
+  private double[] labels;
+  private Vector[] featureRows;
+  private Vector[] labelRows;
+  private int size = 0;
+
+  public Batch(int capacity, int featureCount, int labelCount) {
+    if (capacity < 1 || featureCount < 1 || labelCount < 1) {
+      throw new IllegalArgumentException("A batch needs room for at least one row and column.");
+    }
+
+    this.capacity = capacity;
+    this.featureCount = featureCount;
+    this.labelCount = labelCount;
+
+    features = new double[capacity * featureCount];
+    labels = new double[capacity * labelCount];
+
+    Vector allFeatures = new Vector(features);
+    Vector allLabels = new Vector(labels);
+    featureRows = new Vector[capacity];
+    labelRows = new Vector[capacity];
+    for (int i = 0; i < capacity; i++) {
+      featureRows[i] = new Vector(allFeatures, i * featureCount, featureCount);
+      labelRows[i] = new Vector(allLabels, i * labelCount, labelCount);
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getFeatureCount() {
+    return featureCount;
+  }
+
+  public int getLabelCount() {
+    return labelCount;
+  }
+
+  /**
+   * The number of rows the batch currently holds.
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public void setSize(int size) {
+    if (size < 0 || size > capacity) {
+      throw new IllegalArgumentException("The size must be between 0 and " + capacity);
+    }
+    this.size = size;
+  }
+
+  /**
+   * The features of every row, in row-major order.
+   */
+  public double[] getFeatures() {
+    return features;
+  }
+
+  /**
+   * The labels of every row, in row-major order.
+   */
+  public double[] getLabels() {
+    return labels;
+  }
+
+  public Vector features(int row) {
+    return featureRows[row];
+  }
+
+  public Vector labels(int row) {
+    return labelRows[row];
+  }
+
+  /**
+   * Appends a row, copying it from the given buffers. The batch must not be full.
+   */
+  public void add(double[] features, int featureOffset, double[] labels, int labelOffset) {
+    if (size == capacity) {
+      throw new IllegalStateException("The batch is full.");
+    }
+
+    System.arraycopy(features, featureOffset, this.features, size * featureCount, featureCount);
+    System.arraycopy(labels, labelOffset, this.labels, size * labelCount, labelCount);
+    size++;
+  }
+}
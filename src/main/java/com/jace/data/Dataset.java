@@ -0,0 +1,22 @@
+package com.jace.data;
+
+import java.io.IOException;
+
+/**
+ * A source of training rows that is read one mini-batch at a time, so the whole data set never has
+ * to be in memory at once. Each pass over the data is an epoch.
+ */
+public interface Dataset extends AutoCloseable {
+  int getFeatureCount();
+
+  int getLabelCount();
+
+  /**
+   * Fills batch with up to its capacity of the next rows of the current pass. Returns false, with
+   * an empty batch, once the pass is over; the call after that starts the next pass.
+   */
+  boolean next(Batch batch) throws IOException;
+
+  @Override
+  void close() throws IOException;
+}
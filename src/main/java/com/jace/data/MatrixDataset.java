@@ -0,0 +1,82 @@
+package com.jace.data;
+
+import com.jace.Main;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+
+import java.util.Random;
+
+/**
+ * A {@link Dataset} over matrices that are already in memory. Every pass visits the rows in a new
+ * random order, without moving the rows themselves.
+ */
+public class MatrixDataset implements Dataset {
+  private Matrix features;
+  private Matrix labels;
+  private Random random = Main.RANDOM;
+
+  private int[] order;
+  private int position;
+
+  public MatrixDataset(Matrix features, Matrix labels) {
+    if (features.rows() != labels.rows()) {
+      throw new IllegalArgumentException(
+          "Your input features and labels must have the same number of rows.");
+    }
+
+    this.features = features;
+    this.labels = labels;
+  }
+
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  @Override
+  public int getFeatureCount() {
+    return features.cols();
+  }
+
+  @Override
+  public int getLabelCount() {
+    return labels.cols();
+  }
+
+  public int rows() {
+    return features.rows();
+  }
+
+  @Override
+  public boolean next(Batch batch) {
+    if (batch.getFeatureCount() != getFeatureCount() || batch.getLabelCount() != getLabelCount()) {
+      throw new IllegalArgumentException("The batch does not have the columns of the dataset.");
+    }
+
+    if (order == null) {
+      order = Matrix.shuffledRowOrder(0, features.rows(), random);
+      position = 0;
+    }
+
+    batch.clear();
+    while (!batch.isFull() && position < order.length) {
+      Vector input = features.row(order[position]);
+      Vector output = labels.row(order[position]);
+      position++;
+
+      int row = batch.size();
+      batch.setSize(row + 1);
+      batch.features(row).set(0, input);
+      batch.labels(row).set(0, output);
+    }
+
+    if (batch.size() == 0) {
+      order = null;
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
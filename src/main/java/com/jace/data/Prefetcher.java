@@ -0,0 +1,326 @@
+package com.jace.data;
+
+import com.jace.math.Matrix;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Assembles mini-batches on a background thread, so the next ones are ready while the current one
+ * trains. The source dataset is read on that thread too, which moves its shuffling and file reading
+ * off the training thread, and each batch can be normalized and have its labels expanded to one-hot
+ * vectors there as well.
+ * <br>
+ * A fixed set of batches cycles between the two threads: the loader fills free ones, the trainer
+ * takes ready ones and releases them when done. When the trainer finds no batch ready it stalls;
+ * {@link #getStalls()} and {@link #getStallMillis()} tell how often and for how long, which shows
+ * whether loading keeps up with training.
+ * <br>
+ * The loader runs ahead into the next pass as soon as the current one is read, unless this is set
+ * to stop after a single pass.
+ */
+public class Prefetcher implements Dataset {
+  private static final Batch END_OF_PASS = new Batch(1, 1, 1);
+  private static final Batch FAILED = new Batch(1, 1, 1);
+
+  private Dataset source;
+  private int batchSize;
+  private int prefetchBatches;
+  private boolean singlePass = false;
+
+  private double[] offsets;
+  private double[] scales;
+  private int classCount = 0;
+
+  private BlockingQueue<Batch> free;
+  private BlockingQueue<Batch> ready;
+  private Thread loader;
+  private volatile boolean closed = false;
+  private volatile Throwable failure;
+  private boolean done = false;
+
+  private long batches = 0;
+  private long stalls = 0;
+  private long stallNanos = 0;
+
+  /**
+   * Reads batches of batchSize rows from source, keeping up to prefetchBatches of them ready.
+   */
+  public Prefetcher(Dataset source, int batchSize, int prefetchBatches) {
+    if (batchSize < 1 || prefetchBatches < 1) {
+      throw new IllegalArgumentException("The batch size and prefetch count must be positive.");
+    }
+
+    this.source = source;
+    this.batchSize = batchSize;
+    this.prefetchBatches = prefetchBatches;
+  }
+
+  /**
+   * Stops loading at the end of the first pass instead of running ahead into the next one.
+   */
+  public void setSinglePass(boolean singlePass) {
+    checkNotStarted();
+    this.singlePass = singlePass;
+  }
+
+  /**
+   * Maps each feature j to (x - offsets[j]) * scales[j]. Unknown values are left as they are.
+   */
+  public void setNormalization(double[] offsets, double[] scales) {
+    checkNotStarted();
+    if (offsets.length != source.getFeatureCount() || scales.length != source.getFeatureCount()) {
+      throw new IllegalArgumentException("There must be one offset and scale per feature.");
+    }
+
+    this.offsets = offsets.clone();
+    this.scales = scales.clone();
+  }
+
+  /**
+   * Maps every feature x to (x - offset) * scale.
+   */
+  public void setNormalization(double offset, double scale) {
+    double[] offsets = new double[source.getFeatureCount()];
+    double[] scales = new double[source.getFeatureCount()];
+    Arrays.fill(offsets, offset);
+    Arrays.fill(scales, scale);
+    setNormalization(offsets, scales);
+  }
+
+  /**
+   * Expands a single label column of class numbers into classCount columns, the way
+   * {@link Matrix#toOneHot()} does.
+   */
+  public void setOneHotLabels(int classCount) {
+    checkNotStarted();
+    if (source.getLabelCount() != 1) {
+      throw new IllegalStateException(
+          "Cannot convert a multi-column matrix to one-hot representation");
+    }
+    if (classCount < 1) {
+      throw new IllegalArgumentException("There must be at least one class.");
+    }
+
+    this.classCount = classCount;
+  }
+
+  @Override
+  public int getFeatureCount() {
+    return source.getFeatureCount();
+  }
+
+  @Override
+  public int getLabelCount() {
+    return classCount > 0 ? classCount : source.getLabelCount();
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * The number of batches taken so far.
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * The number of times no batch was ready when the trainer asked for one.
+   */
+  public long getStalls() {
+    return stalls;
+  }
+
+  /**
+   * The total time the trainer spent waiting for batches.
+   */
+  public long getStallMillis() {
+    return stallNanos / 1000000;
+  }
+
+  /**
+   * Returns the next ready batch, or null at the end of a pass; the call after that starts taking
+   * from the next pass. The batch must be handed back with {@link #release} once used.
+   */
+  public Batch take() throws IOException {
+    if (done) {
+      return null;
+    }
+    start();
+
+    Batch batch = ready.poll();
+    if (batch == null) {
+      long startTime = System.nanoTime();
+      try {
+        batch = ready.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for a batch.", e);
+      }
+      stalls++;
+      stallNanos += System.nanoTime() - startTime;
+    }
+
+    if (batch == FAILED) {
+      ready.add(FAILED);
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      throw new IOException("Loading a batch failed.", failure);
+    }
+
+    if (batch == END_OF_PASS) {
+      done = singlePass;
+      return null;
+    }
+
+    batches++;
+    return batch;
+  }
+
+  public void release(Batch batch) {
+    free.add(batch);
+  }
+
+  /**
+   * Copies the next ready batch into batch. {@link #take()} avoids the copy.
+   */
+  @Override
+  public boolean next(Batch batch) throws IOException {
+    if (batch.getFeatureCount() != getFeatureCount() || batch.getLabelCount() != getLabelCount()
+        || batch.getCapacity() < batchSize) {
+      throw new IllegalArgumentException("The batch does not match the prefetched batches.");
+    }
+
+    Batch next = take();
+    if (next == null) {
+      batch.clear();
+      return false;
+    }
+
+    System.arraycopy(next.getFeatures(), 0, batch.getFeatures(), 0,
+        next.size() * next.getFeatureCount());
+    System.arraycopy(next.getLabels(), 0, batch.getLabels(), 0,
+        next.size() * next.getLabelCount());
+    batch.setSize(next.size());
+    release(next);
+    return true;
+  }
+
+  /**
+   * Stops the loader and closes the source.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (loader != null) {
+      loader.interrupt();
+      try {
+        loader.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    source.close();
+  }
+
+  private void checkNotStarted() {
+    if (loader != null) {
+      throw new IllegalStateException("The prefetcher has already started.");
+    }
+  }
+
+  private void start() {
+    if (loader != null) {
+      return;
+    }
+
+    free = new ArrayBlockingQueue<>(prefetchBatches + 1);
+    ready = new ArrayBlockingQueue<>(prefetchBatches + 2);
+    for (int i = 0; i < prefetchBatches + 1; i++) {
+      free.add(new Batch(batchSize, getFeatureCount(), getLabelCount()));
+    }
+
+    loader = new Thread(this::load, "prefetcher");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  private void load() {
+    boolean transforming = offsets != null || classCount > 0;
+    Batch staging = transforming
+        ? new Batch(batchSize, source.getFeatureCount(), source.getLabelCount())
+        : null;
+
+    try {
+      while (!closed) {
+        Batch batch = free.take();
+
+        if (!source.next(transforming ? staging : batch)) {
+          free.add(batch);
+          ready.put(END_OF_PASS);
+          if (singlePass) {
+            return;
+          }
+          continue;
+        }
+
+        if (transforming) {
+          transform(staging, batch);
+        }
+        ready.put(batch);
+      }
+    } catch (InterruptedException e) {
+      // Closed while waiting
+    } catch (Throwable t) {
+      failure = t;
+      try {
+        ready.put(FAILED);
+      } catch (InterruptedException e) {
+        // Closed before the trainer saw the failure
+      }
+    }
+  }
+
+  private void transform(Batch in, Batch out) {
+    int featureCount = in.getFeatureCount();
+    double[] inFeatures = in.getFeatures();
+    double[] outFeatures = out.getFeatures();
+    int values = in.size() * featureCount;
+
+    if (offsets == null) {
+      System.arraycopy(inFeatures, 0, outFeatures, 0, values);
+    } else {
+      for (int i = 0, j = 0; i < values; i++, j = (j + 1 == featureCount) ? 0 : j + 1) {
+        double value = inFeatures[i];
+        outFeatures[i] = (value == Matrix.UNKNOWN_VALUE)
+            ? value
+            : (value - offsets[j]) * scales[j];
+      }
+    }
+
+    double[] inLabels = in.getLabels();
+    double[] outLabels = out.getLabels();
+    if (classCount == 0) {
+      System.arraycopy(inLabels, 0, outLabels, 0, in.size() * in.getLabelCount());
+    } else {
+      Arrays.fill(outLabels, 0, in.size() * classCount, 0);
+      for (int i = 0; i < in.size(); i++) {
+        int value = (int) Math.round(inLabels[i]);
+        if (value < 0 || value >= classCount) {
+          throw new IllegalArgumentException(String.format(
+              "Label %s is not a class between 0 and %d.", inLabels[i], classCount - 1));
+        }
+        outLabels[i * classCount + value] = 1;
+      }
+    }
+
+    out.setSize(in.size());
+  }
+}
@@ -0,0 +1,111 @@
+package com.jace.data;
+
+import com.jace.Main;
+import com.jace.math.Matrix;
+import com.jace.math.Shard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A {@link Dataset} over a memory-mapped {@link Shard}. Rows are copied straight from the mapping
+ * into each batch, so the data is never loaded onto the heap, and processes training from the same
+ * shard share one copy of it in the page cache. Every pass visits the rows in a new random order.
+ * <br>
+ * Workers that train in parallel can each take one part of the shard with
+ * {@link #setPartition(int, int)}.
+ */
+public class ShardDataset implements Dataset {
+  private Shard shard;
+  private Random random = Main.RANDOM;
+
+  private int begin;
+  private int end;
+
+  private int[] order;
+  private int position;
+
+  public ShardDataset(File file) throws IOException {
+    this(Shard.open(file));
+  }
+
+  public ShardDataset(Shard shard) {
+    this.shard = shard;
+    this.begin = 0;
+    this.end = shard.rows();
+  }
+
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Restricts the dataset to the part-th of parts contiguous, nearly equal parts of the shard.
+   */
+  public void setPartition(int part, int parts) {
+    if (parts < 1 || part < 0 || part >= parts) {
+      throw new IllegalArgumentException(
+          String.format("Part %d of %d does not exist.", part, parts));
+    }
+
+    begin = (int) ((long) shard.rows() * part / parts);
+    end = (int) ((long) shard.rows() * (part + 1) / parts);
+    order = null;
+  }
+
+  public Shard getShard() {
+    return shard;
+  }
+
+  @Override
+  public int getFeatureCount() {
+    return shard.getFeatureCount();
+  }
+
+  @Override
+  public int getLabelCount() {
+    return shard.getLabelCount();
+  }
+
+  public int rows() {
+    return end - begin;
+  }
+
+  @Override
+  public boolean next(Batch batch) {
+    if (batch.getFeatureCount() != getFeatureCount() || batch.getLabelCount() != getLabelCount()) {
+      throw new IllegalArgumentException("The batch does not have the columns of the dataset.");
+    }
+
+    if (order == null) {
+      order = Matrix.shuffledRowOrder(begin, rows(), random);
+      position = 0;
+    }
+
+    batch.clear();
+    double[] features = batch.getFeatures();
+    double[] labels = batch.getLabels();
+    int size = 0;
+    while (size < batch.getCapacity() && position < order.length) {
+      int row = order[position++];
+      shard.getFeatures(row, features, size * getFeatureCount());
+      shard.getLabels(row, labels, size * getLabelCount());
+      size++;
+    }
+    batch.setSize(size);
+
+    if (size == 0) {
+      order = null;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * The mappings are released once the shard is no longer referenced.
+   */
+  @Override
+  public void close() {
+  }
+}
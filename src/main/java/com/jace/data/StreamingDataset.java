@@ -0,0 +1,264 @@
+package com.jace.data;
+
+import com.jace.Main;
+import com.jace.math.ColumnFile;
+import com.jace.util.ArffParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A {@link Dataset} that streams its rows from files, so it can be many times larger than the
+ * heap. Features and labels come from two files with the same rows, each either an ARFF file or a
+ * {@link ColumnFile}. Both are read a chunk of rows at a time.
+ * <br>
+ * Rows are shuffled within a bounded window: the window is filled from the files, each row handed
+ * out is drawn at random from it, and its place is taken by the next row read. Memory use depends
+ * only on the window and chunk sizes. The shuffle is local, so a file sorted by label should be
+ * shuffled once on disk, or given a window that spans several classes.
+ */
+public class StreamingDataset implements Dataset {
+  public static final int DEFAULT_WINDOW_ROWS = 1 << 14;
+  public static final int DEFAULT_CHUNK_ROWS = 1 << 10;
+
+  private File featureFile;
+  private File labelFile;
+  private RowSource features;
+  private RowSource labels;
+  private int featureCount;
+  private int labelCount;
+
+  private int windowRows = DEFAULT_WINDOW_ROWS;
+  private int chunkRows = DEFAULT_CHUNK_ROWS;
+  private Random random = Main.RANDOM;
+
+  private double[] windowFeatures;
+  private double[] windowLabels;
+  private int filled;
+  private boolean passStarted = false;
+  private boolean exhausted;
+
+  public StreamingDataset(File featureFile, File labelFile) throws IOException {
+    this.featureFile = featureFile;
+    this.labelFile = labelFile;
+
+    features = open(featureFile);
+    try {
+      labels = open(labelFile);
+    } catch (IOException | RuntimeException e) {
+      features.close();
+      throw e;
+    }
+
+    featureCount = features.columns();
+    labelCount = labels.columns();
+  }
+
+  /**
+   * The number of rows the shuffle draws from. A window of one row keeps the file order.
+   */
+  public void setWindowRows(int windowRows) {
+    if (windowRows < 1) {
+      throw new IllegalArgumentException("The window must hold at least one row.");
+    }
+    this.windowRows = windowRows;
+    windowFeatures = null;
+  }
+
+  /**
+   * The number of rows read from the files at a time.
+   */
+  public void setChunkRows(int chunkRows) {
+    if (chunkRows < 1) {
+      throw new IllegalArgumentException("A chunk must hold at least one row.");
+    }
+    this.chunkRows = chunkRows;
+  }
+
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  @Override
+  public int getFeatureCount() {
+    return featureCount;
+  }
+
+  @Override
+  public int getLabelCount() {
+    return labelCount;
+  }
+
+  @Override
+  public boolean next(Batch batch) throws IOException {
+    if (batch.getFeatureCount() != featureCount || batch.getLabelCount() != labelCount) {
+      throw new IllegalArgumentException("The batch does not have the columns of the dataset.");
+    }
+
+    if (!passStarted) {
+      startPass();
+    }
+
+    batch.clear();
+    while (!batch.isFull()) {
+      if (!exhausted && filled < windowRows) {
+        fillWindow();
+      }
+      if (filled == 0) {
+        break;
+      }
+
+      // Hand out a random row, and move the last row into its place
+      int row = random.nextInt(filled);
+      batch.add(windowFeatures, row * featureCount, windowLabels, row * labelCount);
+
+      filled--;
+      System.arraycopy(windowFeatures, filled * featureCount,
+          windowFeatures, row * featureCount, featureCount);
+      System.arraycopy(windowLabels, filled * labelCount,
+          windowLabels, row * labelCount, labelCount);
+    }
+
+    if (batch.size() == 0) {
+      passStarted = false;
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      features.close();
+    } finally {
+      labels.close();
+    }
+  }
+
+  private void startPass() throws IOException {
+    if (windowFeatures == null) {
+      windowFeatures = new double[windowRows * featureCount];
+      windowLabels = new double[windowRows * labelCount];
+    }
+
+    features.rewind();
+    labels.rewind();
+    filled = 0;
+    exhausted = false;
+    passStarted = true;
+  }
+
+  /**
+   * Reads the next chunk of rows into the free end of the window.
+   */
+  private void fillWindow() throws IOException {
+    int count = Math.min(chunkRows, windowRows - filled);
+    int featureRows = features.read(windowFeatures, filled, count);
+    int labelRows = labels.read(windowLabels, filled, count);
+
+    if (featureRows != labelRows) {
+      throw new IOException(String.format("%s and %s do not have the same number of rows.",
+          featureFile, labelFile));
+    }
+
+    filled += featureRows;
+    if (featureRows < count) {
+      exhausted = true;
+    }
+  }
+
+  private static RowSource open(File file) throws IOException {
+    return ColumnFile.isColumnFile(file) ? new ColumnSource(file) : new ArffSource(file);
+  }
+
+  /**
+   * Reads rows from the start of a file, a chunk at a time.
+   */
+  private interface RowSource {
+    int columns();
+
+    /**
+     * Reads up to count rows into buffer, starting at row slot first. Returns the number of rows
+     * read, which is less than count only at the end of the file.
+     */
+    int read(double[] buffer, int first, int count) throws IOException;
+
+    void rewind() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private static class ArffSource implements RowSource {
+    private File file;
+    private ArffParser parser;
+    private boolean atStart = true;
+
+    ArffSource(File file) throws IOException {
+      this.file = file;
+      parser = new ArffParser(file);
+    }
+
+    @Override
+    public int columns() {
+      return parser.getAttributeCount();
+    }
+
+    @Override
+    public int read(double[] buffer, int first, int count) throws IOException {
+      atStart = false;
+      int columns = columns();
+      for (int i = 0; i < count; i++) {
+        if (!parser.readRow(buffer, (first + i) * columns)) {
+          return i;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+      if (!atStart) {
+        parser.close();
+        parser = new ArffParser(file);
+        atStart = true;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      parser.close();
+    }
+  }
+
+  private static class ColumnSource implements RowSource {
+    private ColumnFile columnFile;
+    private int position = 0;
+
+    ColumnSource(File file) throws IOException {
+      columnFile = ColumnFile.open(file);
+    }
+
+    @Override
+    public int columns() {
+      return columnFile.cols();
+    }
+
+    @Override
+    public int read(double[] buffer, int first, int count) {
+      count = Math.min(count, columnFile.rows() - position);
+      columnFile.getRows(position, count, buffer, first * columns());
+      position += count;
+      return count;
+    }
+
+    @Override
+    public void rewind() {
+      position = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.jace.distributed;
+
+import com.jace.evaluator.GradientSynchronizer;
+import com.jace.learner.NeuralNetwork;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Averages the accumulated gradient of every replica through a {@link RingAllReduce}, so each
+ * worker applies the same update to its copy of the weights. The network's contiguous gradient
+ * buffer is reduced in place.
+ */
+public class AllReduceSynchronizer implements GradientSynchronizer {
+  private RingAllReduce ring;
+
+  public AllReduceSynchronizer(RingAllReduce ring) {
+    this.ring = ring;
+  }
+
+  @Override
+  public void synchronize(NeuralNetwork neuralNetwork) {
+    double[] gradients = buffer(neuralNetwork.getGradients());
+
+    try {
+      ring.allReduce(gradients);
+    } catch (IOException e) {
+      throw new WorkerFailureException("Gradient all-reduce failed on rank " + ring.getRank(), e);
+    }
+
+    double scale = 1.0 / ring.getWorldSize();
+    for (int i = 0; i < gradients.length; i++) {
+      gradients[i] *= scale;
+    }
+  }
+
+  /**
+   * Overwrites every replica's weights with the weights held by rank 0.
+   */
+  public void broadcastParameters(NeuralNetwork neuralNetwork) {
+    double[] parameters = buffer(neuralNetwork.getParameters());
+
+    if (ring.getRank() != 0) {
+      Arrays.fill(parameters, 0);
+    }
+
+    try {
+      ring.allReduce(parameters);
+    } catch (IOException e) {
+      throw new WorkerFailureException("Parameter broadcast failed on rank " + ring.getRank(), e);
+    }
+
+    neuralNetwork.parametersChanged();
+  }
+
+  private static double[] buffer(double[] buffer) {
+    if (buffer == null) {
+      throw new IllegalStateException("The network must be initialized before synchronizing.");
+    }
+
+    return buffer;
+  }
+}
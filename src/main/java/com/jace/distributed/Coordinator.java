@@ -0,0 +1,230 @@
+package com.jace.distributed;
+
+import com.jace.util.Arguments;
+import com.jace.util.Console;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches one {@link TrainerWorker} process per rank on this machine, hands them a peer file,
+ * and waits for them to finish. If any worker exits abnormally the remaining workers are
+ * destroyed and a {@link WorkerFailureException} is thrown, so a dead worker never leaves the
+ * rest of the ring hanging.
+ * <br>
+ * Usage: Coordinator --job CLASS --workers N [--epochs N] [--batch-size N] [--seed N]
+ * [--timeout MILLIS] [--output DIRECTORY]
+ */
+public class Coordinator {
+  private Class<? extends DistributedJob> jobClass;
+  private int workers;
+
+  private int epochs = 1;
+  private int batchSize = 1;
+  private long seed = 0;
+  private long timeoutMillis = 30000;
+  private File outputDirectory;
+
+  public Coordinator(Class<? extends DistributedJob> jobClass, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("A ring needs at least one worker.");
+    }
+
+    this.jobClass = jobClass;
+    this.workers = workers;
+  }
+
+  public void setEpochs(int epochs) {
+    this.epochs = epochs;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * How long a worker may wait on a peer before it treats the peer as dead.
+   */
+  public void setTimeoutMillis(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Where workers write their logs and final weights. If unset, worker output is inherited.
+   */
+  public void setOutputDirectory(File outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  public void run() throws IOException, InterruptedException {
+    PeerList peers = allocatePeers(workers);
+
+    File peerFile = File.createTempFile("peers", ".txt");
+    peerFile.deleteOnExit();
+    peers.writeToFile(peerFile.getAbsolutePath());
+
+    if (outputDirectory != null) {
+      outputDirectory.mkdirs();
+    }
+
+    List<Process> processes = new ArrayList<>();
+    try {
+      for (int rank = 0; rank < workers; rank++) {
+        processes.add(launch(rank, peerFile));
+      }
+
+      waitForAll(processes);
+    } finally {
+      for (Process process : processes) {
+        process.destroyForcibly();
+      }
+
+      Files.deleteIfExists(peerFile.toPath());
+    }
+  }
+
+  private Process launch(int rank, File peerFile) throws IOException {
+    String javaBinary =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    List<String> command = new ArrayList<>();
+    command.add(javaBinary);
+    command.add("-cp");
+    command.add(classPath());
+    command.add(TrainerWorker.class.getName());
+    command.add("--job");
+    command.add(jobClass.getName());
+    command.add("--rank");
+    command.add(Integer.toString(rank));
+    command.add("--peers");
+    command.add(peerFile.getAbsolutePath());
+    command.add("--epochs");
+    command.add(Integer.toString(epochs));
+    command.add("--batch-size");
+    command.add(Integer.toString(batchSize));
+    command.add("--seed");
+    command.add(Long.toString(seed));
+    command.add("--timeout");
+    command.add(Long.toString(timeoutMillis));
+
+    if (outputDirectory != null) {
+      command.add("--output");
+      command.add(outputDirectory.getAbsolutePath());
+    }
+
+    ProcessBuilder builder = new ProcessBuilder(command);
+    if (outputDirectory != null) {
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(new File(outputDirectory, "worker-" + rank + ".log"));
+    } else {
+      builder.inheritIO();
+    }
+
+    return builder.start();
+  }
+
+  /**
+   * The worker classpath: wherever this library and the job class were loaded from, plus the
+   * classpath of this JVM.
+   */
+  private String classPath() {
+    Set<String> entries = new LinkedHashSet<>();
+
+    for (Class<?> type : new Class<?>[]{TrainerWorker.class, jobClass}) {
+      try {
+        entries.add(new File(type.getProtectionDomain().getCodeSource().getLocation().toURI())
+            .getAbsolutePath());
+      } catch (Exception e) {
+        // Fall back on java.class.path below
+      }
+    }
+
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        entries.add(entry);
+      }
+    }
+
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private void waitForAll(List<Process> processes) throws InterruptedException {
+    boolean[] finished = new boolean[processes.size()];
+    int remaining = processes.size();
+
+    while (remaining > 0) {
+      for (int rank = 0; rank < processes.size(); rank++) {
+        Process process = processes.get(rank);
+        if (finished[rank] || !process.waitFor(50, TimeUnit.MILLISECONDS)) {
+          continue;
+        }
+
+        finished[rank] = true;
+        remaining--;
+
+        if (process.exitValue() != 0) {
+          throw new WorkerFailureException(
+              "Worker " + rank + " exited with code " + process.exitValue() + ".");
+        }
+
+        Console.i("Worker %d finished", rank);
+      }
+    }
+  }
+
+  /**
+   * Picks free loopback ports by binding ephemeral sockets and releasing them.
+   */
+  private static PeerList allocatePeers(int workers) throws IOException {
+    PeerList peers = new PeerList();
+    List<ServerSocket> sockets = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < workers; i++) {
+        ServerSocket socket = new ServerSocket(0);
+        sockets.add(socket);
+        peers.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+      }
+    } finally {
+      for (ServerSocket socket : sockets) {
+        socket.close();
+      }
+    }
+
+    return peers;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    Map<String, String> arguments = Arguments.parse(args);
+
+    Class<? extends DistributedJob> jobClass =
+        (Class<? extends DistributedJob>) Class.forName(Arguments.require(arguments, "job"));
+
+    Coordinator coordinator =
+        new Coordinator(jobClass, Integer.parseInt(Arguments.require(arguments, "workers")));
+    coordinator.setEpochs(Integer.parseInt(arguments.getOrDefault("epochs", "1")));
+    coordinator.setBatchSize(Integer.parseInt(arguments.getOrDefault("batch-size", "1")));
+    coordinator.setSeed(Long.parseLong(arguments.getOrDefault("seed", "0")));
+    coordinator.setTimeoutMillis(Long.parseLong(arguments.getOrDefault("timeout", "30000")));
+
+    if (arguments.containsKey("output")) {
+      coordinator.setOutputDirectory(new File(arguments.get("output")));
+    }
+
+    coordinator.run();
+  }
+}
@@ -0,0 +1,20 @@
+package com.jace.distributed;
+
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+
+/**
+ * Describes a data-parallel training run. Every worker process instantiates the job through its
+ * public no-argument constructor, so implementations must be deterministic: each worker has to
+ * build the same topology and load the same data before taking its own shard.
+ */
+public interface DistributedJob {
+  /**
+   * Builds the (uninitialized) network to train.
+   */
+  NeuralNetwork createNetwork();
+
+  Matrix loadFeatures();
+
+  Matrix loadLabels();
+}
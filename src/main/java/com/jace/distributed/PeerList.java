@@ -0,0 +1,89 @@
+package com.jace.distributed;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The addresses of every trainer process, indexed by rank. A rank is the position of the peer in
+ * the list, so every process that reads the same list agrees on who its neighbours are.
+ */
+public class PeerList {
+  private List<InetSocketAddress> peers;
+
+  public PeerList() {
+    this.peers = new ArrayList<>();
+  }
+
+  /**
+   * Reads a peer file with one "host:port" entry per line. Blank lines and lines starting with
+   * '#' are ignored.
+   */
+  public static PeerList fromFile(String fileName) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(Paths.get(fileName));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to read peer file: " + fileName + ".");
+    }
+
+    PeerList peerList = new PeerList();
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      peerList.add(parseAddress(line));
+    }
+
+    return peerList;
+  }
+
+  /**
+   * Parses a comma separated list of ports (e.g. "5000,5001,5002") on the loopback interface.
+   */
+  public static PeerList fromPortList(String portList) {
+    PeerList peerList = new PeerList();
+    for (String port : portList.split(",")) {
+      peerList.add(new InetSocketAddress("127.0.0.1", Integer.parseInt(port.trim())));
+    }
+
+    return peerList;
+  }
+
+  private static InetSocketAddress parseAddress(String entry) {
+    int separator = entry.lastIndexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Expected an entry of the form host:port, got: " + entry);
+    }
+
+    String host = entry.substring(0, separator);
+    int port = Integer.parseInt(entry.substring(separator + 1));
+    return new InetSocketAddress(host, port);
+  }
+
+  public void add(InetSocketAddress address) {
+    peers.add(address);
+  }
+
+  public InetSocketAddress get(int rank) {
+    return peers.get(rank);
+  }
+
+  public int size() {
+    return peers.size();
+  }
+
+  public void writeToFile(String fileName) throws IOException {
+    try (PrintWriter writer = new PrintWriter(fileName)) {
+      for (InetSocketAddress peer : peers) {
+        writer.println(peer.getHostString() + ":" + peer.getPort());
+      }
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package com.jace.distributed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Sums an array of doubles across every process in a {@link PeerList} using the ring algorithm.
+ * <br>
+ * Each rank keeps one connection to the next rank and one from the previous rank. The array is
+ * split into one chunk per rank; a reduce-scatter pass leaves every rank with one fully summed
+ * chunk, and an all-gather pass circulates the summed chunks. Every rank sends and receives
+ * 2 * (n - 1) / n of the array in total, independent of the number of ranks.
+ * <br>
+ * Transfers go through direct buffers on non-blocking channels, so sending to the next rank and
+ * receiving from the previous one happen at the same time without an extra heap copy.
+ */
+public class RingAllReduce implements AutoCloseable {
+  private static final int HANDSHAKE_BYTES = 4;
+
+  private PeerList peers;
+  private int rank;
+  private long timeoutMillis;
+
+  private ServerSocketChannel serverChannel;
+  private SocketChannel nextChannel;
+  private SocketChannel previousChannel;
+  private Selector selector;
+
+  private ByteBuffer sendBuffer;
+  private ByteBuffer receiveBuffer;
+
+  public RingAllReduce(PeerList peers, int rank, long timeoutMillis) {
+    if (rank < 0 || rank >= peers.size()) {
+      throw new IllegalArgumentException("Invalid rank " + rank + " for " + peers.size() + " peers.");
+    }
+
+    this.peers = peers;
+    this.rank = rank;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public int getRank() {
+    return rank;
+  }
+
+  public int getWorldSize() {
+    return peers.size();
+  }
+
+  private int nextRank() {
+    return (rank + 1) % peers.size();
+  }
+
+  private int previousRank() {
+    return (rank + peers.size() - 1) % peers.size();
+  }
+
+  /**
+   * Opens this rank's listening socket, connects to the next rank, and accepts the previous
+   * rank. Blocks until the ring is formed or the timeout expires.
+   */
+  public void connect() throws IOException {
+    if (peers.size() == 1) {
+      return;
+    }
+
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+    serverChannel.bind(new InetSocketAddress(peers.get(rank).getPort()));
+
+    nextChannel = connectWithRetry(peers.get(nextRank()), deadline);
+    writeHandshake(nextChannel, rank);
+
+    previousChannel = acceptPrevious(deadline);
+
+    for (SocketChannel channel : new SocketChannel[]{nextChannel, previousChannel}) {
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      channel.configureBlocking(false);
+    }
+
+    selector = Selector.open();
+  }
+
+  private SocketChannel connectWithRetry(InetSocketAddress address, long deadline)
+      throws IOException {
+    while (true) {
+      SocketChannel channel = SocketChannel.open();
+      try {
+        channel.connect(address);
+        return channel;
+      } catch (IOException e) {
+        channel.close();
+
+        if (System.currentTimeMillis() > deadline) {
+          throw new WorkerFailureException(
+              "Rank " + rank + " could not connect to rank " + nextRank() + " at " + address, e);
+        }
+
+        sleep(50);
+      }
+    }
+  }
+
+  private SocketChannel acceptPrevious(long deadline) throws IOException {
+    serverChannel.configureBlocking(false);
+
+    while (true) {
+      SocketChannel channel = serverChannel.accept();
+      if (channel != null) {
+        channel.configureBlocking(true);
+        int connectingRank = readHandshake(channel);
+
+        if (connectingRank == previousRank()) {
+          return channel;
+        }
+
+        channel.close();
+      }
+
+      if (System.currentTimeMillis() > deadline) {
+        throw new WorkerFailureException(
+            "Rank " + rank + " timed out waiting for rank " + previousRank() + " to connect.");
+      }
+
+      sleep(10);
+    }
+  }
+
+  private static void writeHandshake(SocketChannel channel, int rank) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HANDSHAKE_BYTES);
+    buffer.putInt(rank);
+    buffer.flip();
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static int readHandshake(SocketChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HANDSHAKE_BYTES);
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new WorkerFailureException("A peer closed its connection during the handshake.");
+      }
+    }
+
+    buffer.flip();
+    return buffer.getInt();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WorkerFailureException("Interrupted while forming the ring.", e);
+    }
+  }
+
+  /**
+   * Replaces every element of values with its sum across all ranks.
+   */
+  public void allReduce(double[] values) throws IOException {
+    allReduce(values, 0, values.length);
+  }
+
+  /**
+   * Replaces values[offset, offset + length) with its element-wise sum across all ranks. Every
+   * rank must call this with the same length.
+   */
+  public void allReduce(double[] values, int offset, int length) throws IOException {
+    int worldSize = peers.size();
+    if (worldSize == 1) {
+      return;
+    }
+
+    int[] chunkStarts = new int[worldSize + 1];
+    for (int i = 0; i <= worldSize; i++) {
+      chunkStarts[i] = offset + (int) ((long) length * i / worldSize);
+    }
+
+    ensureBufferCapacity(chunkStarts[1] - chunkStarts[0] + 1);
+
+    // Reduce-scatter: after step s, the chunk received has been summed over s + 2 ranks
+    for (int step = 0; step < worldSize - 1; step++) {
+      int sendChunk = Math.floorMod(rank - step, worldSize);
+      int receiveChunk = Math.floorMod(rank - step - 1, worldSize);
+
+      exchange(values, chunkStarts, sendChunk, receiveChunk);
+
+      int start = chunkStarts[receiveChunk];
+      int end = chunkStarts[receiveChunk + 1];
+      for (int i = start; i < end; i++) {
+        values[i] += receiveBuffer.getDouble((i - start) * Double.BYTES);
+      }
+    }
+
+    // All-gather: circulate the fully reduced chunks
+    for (int step = 0; step < worldSize - 1; step++) {
+      int sendChunk = Math.floorMod(rank + 1 - step, worldSize);
+      int receiveChunk = Math.floorMod(rank - step, worldSize);
+
+      exchange(values, chunkStarts, sendChunk, receiveChunk);
+
+      int start = chunkStarts[receiveChunk];
+      receiveBuffer.asDoubleBuffer().get(values, start, chunkStarts[receiveChunk + 1] - start);
+    }
+  }
+
+  private void ensureBufferCapacity(int doubles) {
+    int bytes = doubles * Double.BYTES;
+    if (sendBuffer == null || sendBuffer.capacity() < bytes) {
+      sendBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      receiveBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /**
+   * Sends one chunk to the next rank while receiving another from the previous rank. The received
+   * chunk is left at the start of receiveBuffer.
+   */
+  private void exchange(double[] values, int[] chunkStarts, int sendChunk, int receiveChunk)
+      throws IOException {
+    int sendLength = chunkStarts[sendChunk + 1] - chunkStarts[sendChunk];
+    int receiveLength = chunkStarts[receiveChunk + 1] - chunkStarts[receiveChunk];
+
+    sendBuffer.clear();
+    sendBuffer.asDoubleBuffer().put(values, chunkStarts[sendChunk], sendLength);
+    sendBuffer.limit(sendLength * Double.BYTES);
+
+    receiveBuffer.clear();
+    receiveBuffer.limit(receiveLength * Double.BYTES);
+
+    SelectionKey sendKey = nextChannel.register(selector, SelectionKey.OP_WRITE);
+    SelectionKey receiveKey = previousChannel.register(selector, SelectionKey.OP_READ);
+
+    try {
+      while (sendBuffer.hasRemaining() || receiveBuffer.hasRemaining()) {
+        if (selector.select(timeoutMillis) == 0) {
+          throw new WorkerFailureException("Rank " + rank + " timed out waiting for its peers.");
+        }
+
+        selector.selectedKeys().clear();
+
+        if (sendBuffer.hasRemaining()) {
+          nextChannel.write(sendBuffer);
+        }
+
+        if (receiveBuffer.hasRemaining() && previousChannel.read(receiveBuffer) < 0) {
+          throw new WorkerFailureException(
+              "Rank " + previousRank() + " closed its connection to rank " + rank + ".");
+        }
+
+        sendKey.interestOps(sendBuffer.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+        receiveKey.interestOps(receiveBuffer.hasRemaining() ? SelectionKey.OP_READ : 0);
+      }
+    } catch (IOException e) {
+      throw new WorkerFailureException("Rank " + rank + " lost its connection to the ring.", e);
+    } finally {
+      sendKey.cancel();
+      receiveKey.cancel();
+      selector.selectNow();
+    }
+
+    receiveBuffer.flip();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (AutoCloseable closeable : new AutoCloseable[]{
+        selector, nextChannel, previousChannel, serverChannel}) {
+      if (closeable == null) {
+        continue;
+      }
+
+      try {
+        closeable.close();
+      } catch (Exception e) {
+        // Closing is best effort; the peer may already be gone
+      }
+    }
+  }
+}
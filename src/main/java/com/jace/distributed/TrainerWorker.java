@@ -0,0 +1,125 @@
+package com.jace.distributed;
+
+import com.jace.Main;
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.util.Arguments;
+import com.jace.util.Console;
+import com.jace.util.Strings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Entry point of one data-parallel trainer process. The worker trains on its own shard of the
+ * job's data with mini-batches, and averages every mini-batch gradient with the other ranks before
+ * applying it.
+ * <br>
+ * Usage: TrainerWorker --job CLASS --rank R (--peers FILE | --ports P0,P1,...) [--epochs N]
+ * [--batch-size N] [--seed N] [--timeout MILLIS] [--output DIRECTORY]
+ */
+public class TrainerWorker {
+  /**
+   * System property holding this worker's rank, set before the job is instantiated.
+   */
+  public static final String RANK_PROPERTY = "com.jace.distributed.rank";
+
+  public static final int EXIT_FAILURE = 2;
+
+  public static void main(String[] args) {
+    Map<String, String> arguments = Arguments.parse(args);
+    int rank = Integer.parseInt(Arguments.require(arguments, "rank"));
+
+    try {
+      run(arguments);
+    } catch (Exception e) {
+      Console.e("Rank %d failed.", rank);
+      Console.exception(e);
+      System.out.flush();
+      System.exit(EXIT_FAILURE);
+    }
+
+    System.out.flush();
+    System.exit(0);
+  }
+
+  private static void run(Map<String, String> arguments) throws Exception {
+    int rank = Integer.parseInt(Arguments.require(arguments, "rank"));
+    int epochs = Integer.parseInt(arguments.getOrDefault("epochs", "1"));
+    int batchSize = Integer.parseInt(arguments.getOrDefault("batch-size", "1"));
+    long seed = Long.parseLong(arguments.getOrDefault("seed", "0"));
+    long timeout = Long.parseLong(arguments.getOrDefault("timeout", "30000"));
+
+    PeerList peers = arguments.containsKey("peers")
+        ? PeerList.fromFile(arguments.get("peers"))
+        : PeerList.fromPortList(Arguments.require(arguments, "ports"));
+
+    System.setProperty(RANK_PROPERTY, Integer.toString(rank));
+    DistributedJob job = (DistributedJob) Class.forName(Arguments.require(arguments, "job"))
+        .getDeclaredConstructor()
+        .newInstance();
+
+    Main.RANDOM.setSeed(seed + rank);
+
+    NeuralNetwork neuralNetwork = job.createNetwork();
+    neuralNetwork.initialize();
+
+    Matrix features = job.loadFeatures();
+    Matrix labels = job.loadLabels();
+
+    Matrix shardFeatures = shard(features, rank, peers.size());
+    Matrix shardLabels = shard(labels, rank, peers.size());
+
+    try (RingAllReduce ring = new RingAllReduce(peers, rank, timeout)) {
+      ring.connect();
+      Console.i("Rank %d joined a ring of %d workers", rank, peers.size());
+
+      AllReduceSynchronizer synchronizer = new AllReduceSynchronizer(ring);
+      synchronizer.broadcastParameters(neuralNetwork);
+
+      LearnerEvaluator<NeuralNetwork> evaluator =
+          new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.MINI_BATCH);
+      evaluator.setBatchSize(batchSize);
+      evaluator.setGradientSynchronizer(synchronizer);
+
+      for (int epoch = 0; epoch < epochs; epoch++) {
+        evaluator.train(shardFeatures, shardLabels);
+
+        double error = evaluator.computeSumSquaredError(shardFeatures, shardLabels);
+        Console.i("Rank %d finished epoch %d. Shard SSE: %f", rank, epoch + 1, error);
+      }
+    }
+
+    if (arguments.containsKey("output")) {
+      writeParameters(neuralNetwork, new File(arguments.get("output"), "rank-" + rank + ".csv"));
+    }
+  }
+
+  /**
+   * Returns the rank-th of size contiguous parts of matrix. The first rows % size ranks take one
+   * extra row, so every row is trained. Every rank must run the same number of batches, so the
+   * shorter shards repeat one of the rows to match the longer ones.
+   */
+  public static Matrix shard(Matrix matrix, int rank, int size) {
+    int baseRows = matrix.rows() / size;
+    int remainder = matrix.rows() % size;
+    int begin = rank * baseRows + Math.min(rank, remainder);
+    int rows = baseRows + (rank < remainder ? 1 : 0);
+
+    Matrix shard = matrix.copyBlock(begin, 0, rows, matrix.cols());
+    if (rows == baseRows && remainder > 0) {
+      shard.takeRow(matrix.row(begin % matrix.rows()).toDoubleArray());
+    }
+    return shard;
+  }
+
+  private static void writeParameters(NeuralNetwork neuralNetwork, File file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(file)) {
+      writer.println(Strings.join(new Vector(neuralNetwork.getParameters()), ','));
+    }
+  }
+}
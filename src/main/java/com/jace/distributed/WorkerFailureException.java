@@ -0,0 +1,16 @@
+package com.jace.distributed;
+
+/**
+ * Thrown when a peer in the training ring stops responding, closes its connection, or exits.
+ */
+public class WorkerFailureException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public WorkerFailureException(String message) {
+    super(message);
+  }
+
+  public WorkerFailureException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,11 @@
+package com.jace.evaluator;
+
+import com.jace.learner.NeuralNetwork;
+
+/**
+ * Called by {@link LearnerEvaluator} after a mini-batch gradient has been accumulated and before
+ * it is applied, so replicas of the same network can agree on a shared gradient.
+ */
+public interface GradientSynchronizer {
+  void synchronize(NeuralNetwork neuralNetwork);
+}
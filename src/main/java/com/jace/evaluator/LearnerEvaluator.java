@@ -1,14 +1,29 @@
 package com.jace.evaluator;
 
 import com.jace.Main;
+import com.jace.data.Batch;
+import com.jace.data.Dataset;
+import com.jace.data.MatrixDataset;
+import com.jace.data.Prefetcher;
 import com.jace.layer.LinearLayer;
+import com.jace.learner.Checkpoint;
+import com.jace.learner.CheckpointWriter;
 import com.jace.learner.NeuralNetwork;
 import com.jace.learner.SupervisedLearner;
 import com.jace.math.Matrix;
 import com.jace.math.Vector;
+import com.jace.optimizer.BatchObjective;
+import com.jace.optimizer.LearningRateSchedule;
+import com.jace.optimizer.LineSearchOptimizer;
 import com.jace.util.Console;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
 
 public class LearnerEvaluator<T extends SupervisedLearner> {
 
@@ -20,12 +35,53 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
   private TrainingType trainingType;
   private int batchSize = 1;
 
+  private GradientSynchronizer gradientSynchronizer;
+
+  private LineSearchOptimizer batchOptimizer;
+  private int batchIterations = 100;
+  private BatchObjective batchObjective;
+
+  private LearningRateSchedule learningRateSchedule;
+  private int patience = 0;
+  private double minimumImprovement = 0;
+  private long maxTrainingMillis = 0;
+
   private PrintWriter trainingPrintWriter;
   private PrintWriter testingPrintWriter;
 
   private MetricTracker trainingMetricTracker;
   private MetricTracker testingMetricTracker;
 
+  private CheckpointWriter checkpointWriter;
+  private int checkpointInterval = 0;
+  private Random random = Main.RANDOM;
+
+  private int prefetchBatches = 0;
+  private long prefetchStalls = 0;
+  private long prefetchStallMillis = 0;
+
+  /**
+   * Where {@link #fit} is in its run, which is everything a checkpoint needs besides the network.
+   */
+  private static class FitProgress {
+    private double baseLearningRate;
+    private int epoch = 0;
+    private int batch = 0;
+    private int[] order;
+
+    private double bestError = Double.POSITIVE_INFINITY;
+    private int bestEpoch = -1;
+    private int epochsWithoutImprovement = 0;
+    private double[] bestParameters;
+
+    private long startTime = System.nanoTime();
+    private long previousMillis = 0;
+
+    private long elapsedMillis() {
+      return previousMillis + LearnerEvaluator.elapsedMillis(startTime);
+    }
+  }
+
   public LearnerEvaluator(T learner) {
     this(learner, TrainingType.BASIC);
 
@@ -58,6 +114,108 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     this.batchSize = batchSize;
   }
 
+  /**
+   * Sets a hook that runs between accumulating and applying each mini-batch gradient. Used by
+   * data-parallel training to average gradients across replicas.
+   */
+  public void setGradientSynchronizer(GradientSynchronizer gradientSynchronizer) {
+    this.gradientSynchronizer = gradientSynchronizer;
+  }
+
+  /**
+   * Makes {@link TrainingType#BATCH} training minimize the full-batch error with the given
+   * optimizer (for example L-BFGS) instead of taking one gradient step per pass.
+   */
+  public void setBatchOptimizer(LineSearchOptimizer batchOptimizer) {
+    this.batchOptimizer = batchOptimizer;
+  }
+
+  /**
+   * The maximum number of batch optimizer iterations per call to {@link #train}.
+   */
+  public void setBatchIterations(int batchIterations) {
+    this.batchIterations = batchIterations;
+  }
+
+  /**
+   * Sets the schedule {@link #fit} uses to pick each epoch's learning rate.
+   */
+  public void setLearningRateSchedule(LearningRateSchedule learningRateSchedule) {
+    this.learningRateSchedule = learningRateSchedule;
+  }
+
+  /**
+   * Makes {@link #fit} stop once the validation error has not improved for this many epochs. Zero
+   * disables early stopping.
+   */
+  public void setPatience(int patience) {
+    this.patience = patience;
+  }
+
+  /**
+   * The amount the validation error must drop by to count as an improvement.
+   */
+  public void setMinimumImprovement(double minimumImprovement) {
+    this.minimumImprovement = minimumImprovement;
+  }
+
+  /**
+   * Makes {@link #fit} stop after the epoch that crosses this wall-clock budget. Zero disables the
+   * budget.
+   */
+  public void setMaxTrainingMillis(long maxTrainingMillis) {
+    this.maxTrainingMillis = maxTrainingMillis;
+  }
+
+  /**
+   * Makes {@link #fit} write a checkpoint at the end of every epoch, and every checkpointInterval
+   * mini-batches if that is positive. A run stopped part way can be continued with
+   * {@link #resume}.
+   * <br>
+   * While checkpointing, each epoch visits the rows in an order drawn from this evaluator's random
+   * number generator rather than shuffling the matrices in place, so a resumed run sees the rows
+   * in the same order. Only {@link TrainingType#STOCHASTIC}, {@link TrainingType#MINI_BATCH} and
+   * {@link TrainingType#BATCH} without a batch optimizer can be checkpointed.
+   */
+  public void setCheckpointWriter(CheckpointWriter checkpointWriter, int checkpointInterval) {
+    this.checkpointWriter = checkpointWriter;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * The random number generator checkpointed training draws its row orders from.
+   */
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Makes stochastic and mini-batch training on matrices assemble up to this many mini-batches
+   * ahead on a background thread, while the current one trains. Zero trains straight from the
+   * matrices. Each epoch then visits the rows in an order drawn from this evaluator's random number
+   * generator, instead of shuffling the matrices in place.
+   */
+  public void setPrefetchBatches(int prefetchBatches) {
+    if (prefetchBatches < 0) {
+      throw new IllegalArgumentException("The prefetch count cannot be negative.");
+    }
+    this.prefetchBatches = prefetchBatches;
+  }
+
+  /**
+   * The number of mini-batches training had to wait for, over every prefetched pass so far.
+   */
+  public long getPrefetchStalls() {
+    return prefetchStalls;
+  }
+
+  /**
+   * The total time training spent waiting for prefetched mini-batches.
+   */
+  public long getPrefetchStallMillis() {
+    return prefetchStallMillis;
+  }
+
   public void resetMetrics() {
     this.trainingMetricTracker.reset();
     this.testingMetricTracker.reset();
@@ -78,7 +236,7 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
 
     for (int row = 0; row < features.rows(); row++) {
       Console.ip("Counting misclassifications", row / (double) features.rows() * 100);
-      Vector output = learner.predict(features.row(row));
+      Vector output = predictForEvaluation(features.row(row));
       int predictedNumber = output.maxIndex();
 
       if (predictedNumber != labels.row(row).maxIndex()) {
@@ -112,12 +270,14 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     for (int i = 0; i < testFeatures.rows(); i++) {
       Vector x_i = testFeatures.row(i);
       Vector expected_y = expectedLabels.row(i);
-      Vector calculated_y = learner.predict(x_i);
+      Vector calculated_y = predictForEvaluation(x_i);
 
       // Calculate squared error
-      calculated_y.scale(-1);
-      calculated_y.add(expected_y);
-      double squaredError = calculated_y.squaredMagnitude();
+      double squaredError = 0;
+      for (int j = 0; j < expected_y.size(); j++) {
+        double difference = expected_y.get(j) - calculated_y.get(j);
+        squaredError += difference * difference;
+      }
 
       sumSquaredError += squaredError;
     }
@@ -125,6 +285,17 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     return sumSquaredError;
   }
 
+  /**
+   * Networks are evaluated without keeping anything for a backward pass.
+   */
+  private Vector predictForEvaluation(Vector in) {
+    if (learner instanceof NeuralNetwork) {
+      return ((NeuralNetwork) learner).infer(in);
+    }
+
+    return learner.predict(in);
+  }
+
   public double crossValidation(Matrix features, Matrix labels, int folds, int repetitions) {
     if (!learner.isValid()) {
       throw new IllegalStateException("Your com.jace.learner.NeuralNetwork is in an invalid state");
@@ -155,6 +326,284 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     return Math.sqrt(totalError / repetitions / features.rows());
   }
 
+  public TrainingReport fit(Matrix features, Matrix labels, int maxEpochs) {
+    return fit(features, labels, null, null, maxEpochs);
+  }
+
+  /**
+   * Trains for up to maxEpochs epochs, following the learning rate schedule. With validation data,
+   * the weights of the epoch with the lowest validation error are restored at the end, and
+   * training stops early once the patience runs out. Training also stops when the wall-clock
+   * budget is spent. The learning rate is restored to its starting value afterwards.
+   */
+  public TrainingReport fit(Matrix features, Matrix labels, Matrix validationFeatures,
+      Matrix validationLabels, int maxEpochs) {
+    return fit(features, labels, null, validationFeatures, validationLabels, maxEpochs, null);
+  }
+
+  /**
+   * Like {@link #fit(Matrix, Matrix, Matrix, Matrix, int)}, but each epoch is one pass over a
+   * dataset read a mini-batch at a time, so the training data does not have to fit in memory. The
+   * validation data, if any, is still held in matrices.
+   */
+  public TrainingReport fit(Dataset dataset, Matrix validationFeatures, Matrix validationLabels,
+      int maxEpochs) throws IOException {
+    if (checkpointWriter != null) {
+      throw new IllegalStateException("Training from a dataset cannot be checkpointed.");
+    }
+
+    try {
+      return fit(null, null, dataset, validationFeatures, validationLabels, maxEpochs, null);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  public TrainingReport resume(File directory, Matrix features, Matrix labels, int maxEpochs)
+      throws IOException {
+    return resume(directory, features, labels, null, null, maxEpochs);
+  }
+
+  /**
+   * Continues a {@link #fit} from the latest checkpoint in the directory, on the same data in the
+   * same row order it was started with. The network must have the layers and optimizer it was
+   * checkpointed with, and this evaluator the same settings. The run then continues exactly as if
+   * it had never stopped.
+   */
+  public TrainingReport resume(File directory, Matrix features, Matrix labels,
+      Matrix validationFeatures, Matrix validationLabels, int maxEpochs) throws IOException {
+    Checkpoint checkpoint = CheckpointWriter.readLatest(directory);
+    if (checkpoint == null) {
+      throw new FileNotFoundException("There is no checkpoint in " + directory);
+    }
+
+    return fit(features, labels, null, validationFeatures, validationLabels, maxEpochs,
+        checkpoint);
+  }
+
+  /**
+   * Trains on either the matrices or, when it is not null, the dataset.
+   */
+  private TrainingReport fit(Matrix features, Matrix labels, Dataset dataset,
+      Matrix validationFeatures, Matrix validationLabels, int maxEpochs, Checkpoint checkpoint) {
+    if (!(learner instanceof NeuralNetwork)) {
+      throw new IllegalStateException("Your learner must be a com.jace.learner.NeuralNetwork.");
+    }
+
+    boolean validating = validationFeatures != null && validationLabels != null;
+    if (patience > 0 && !validating) {
+      throw new IllegalArgumentException("Early stopping requires validation data.");
+    }
+
+    boolean checkpointing = checkpointWriter != null || checkpoint != null;
+    if (checkpointing && !canCheckpoint()) {
+      throw new IllegalStateException(
+          "Only stochastic, mini-batch and plain batch training can be checkpointed.");
+    }
+
+    NeuralNetwork neuralNetwork = (NeuralNetwork) learner;
+    double[] parameters = neuralNetwork.getParameters();
+
+    FitProgress progress = new FitProgress();
+    progress.baseLearningRate = neuralNetwork.getLearningRate();
+
+    if (validating) {
+      if (parameters == null) {
+        throw new IllegalStateException("The network must be initialized before fitting.");
+      }
+
+      progress.bestParameters = parameters.clone();
+    }
+
+    if (learningRateSchedule != null) {
+      learningRateSchedule.reset();
+    }
+
+    if (checkpoint != null) {
+      restore(checkpoint, neuralNetwork, progress);
+    }
+
+    TrainingReport.StopReason stopReason = TrainingReport.StopReason.COMPLETED;
+
+    while (progress.epoch < maxEpochs) {
+      if (learningRateSchedule != null) {
+        neuralNetwork.setLearningRate(
+            learningRateSchedule.learningRate(progress.epoch, progress.baseLearningRate));
+      }
+
+      if (dataset != null) {
+        try {
+          train(dataset);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      } else if (checkpointing) {
+        trainInOrder(features, labels, progress);
+      } else {
+        train(features, labels);
+      }
+      progress.epoch++;
+
+      if (validating) {
+        double error = computeSumSquaredError(validationFeatures, validationLabels);
+
+        if (learningRateSchedule != null) {
+          learningRateSchedule.observe(error);
+        }
+
+        if (error < progress.bestError - minimumImprovement) {
+          progress.bestError = error;
+          progress.bestEpoch = progress.epoch - 1;
+          progress.epochsWithoutImprovement = 0;
+          System.arraycopy(parameters, 0, progress.bestParameters, 0, parameters.length);
+        } else {
+          progress.epochsWithoutImprovement++;
+        }
+      }
+
+      if (checkpointWriter != null) {
+        checkpoint(neuralNetwork, progress);
+      }
+
+      if (patience > 0 && progress.epochsWithoutImprovement >= patience) {
+        stopReason = TrainingReport.StopReason.EARLY_STOPPED;
+        break;
+      }
+
+      if (maxTrainingMillis > 0 && progress.elapsedMillis() >= maxTrainingMillis) {
+        stopReason = TrainingReport.StopReason.TIME_BUDGET;
+        break;
+      }
+    }
+
+    if (progress.bestEpoch >= 0) {
+      System.arraycopy(progress.bestParameters, 0, parameters, 0, parameters.length);
+      neuralNetwork.parametersChanged();
+      Arrays.fill(neuralNetwork.getGradients(), 0);
+    }
+
+    neuralNetwork.setLearningRate(progress.baseLearningRate);
+
+    if (checkpointWriter != null) {
+      try {
+        checkpointWriter.flush();
+      } catch (IOException e) {
+        throw new RuntimeException("The last checkpoint could not be written.", e);
+      }
+    }
+
+    int epoch = progress.epoch;
+    long elapsedMillis = progress.elapsedMillis();
+    long estimatedMillisSaved = (epoch == 0) ? 0 : elapsedMillis * (maxEpochs - epoch) / epoch;
+
+    TrainingReport report = new TrainingReport(stopReason, epoch, progress.bestEpoch,
+        progress.bestError, elapsedMillis, estimatedMillisSaved);
+    Console.i("Training finished: %s", report);
+    return report;
+  }
+
+  private boolean canCheckpoint() {
+    return trainingType == TrainingType.STOCHASTIC || trainingType == TrainingType.MINI_BATCH
+        || (trainingType == TrainingType.BATCH && batchOptimizer == null);
+  }
+
+  /**
+   * Trains the rest of the current epoch in the order drawn for it, drawing one first if the
+   * epoch is just starting.
+   */
+  private void trainInOrder(Matrix features, Matrix labels, FitProgress progress) {
+    int rowsPerBatch;
+    switch (trainingType) {
+      case STOCHASTIC:
+        rowsPerBatch = 1;
+        break;
+      case BATCH:
+        rowsPerBatch = features.rows();
+        break;
+      default:
+        rowsPerBatch = batchSize;
+        break;
+    }
+
+    if (progress.order == null) {
+      progress.order = Matrix.shuffledRowOrder(0, features.rows(), random);
+    }
+
+    int batches = features.rows() / rowsPerBatch;
+    while (progress.batch < batches) {
+      Console.ip("Training progress", progress.batch / (double) batches * 100.0);
+      trainRows(features, labels, progress.order, progress.batch * rowsPerBatch, rowsPerBatch);
+      progress.batch++;
+
+      if (checkpointWriter != null && checkpointInterval > 0 && progress.batch < batches
+          && progress.batch % checkpointInterval == 0) {
+        checkpoint((NeuralNetwork) learner, progress);
+      }
+    }
+
+    Console.ip("Training progress", 100);
+    progress.order = null;
+    progress.batch = 0;
+  }
+
+  private void checkpoint(NeuralNetwork neuralNetwork, FitProgress progress) {
+    checkpointWriter.checkpoint((checkpoint) -> {
+      checkpoint.putNetwork(neuralNetwork);
+      checkpoint.putDouble("baseLearningRate", progress.baseLearningRate);
+      checkpoint.putLong("epoch", progress.epoch);
+      checkpoint.putLong("batch", progress.batch);
+      if (progress.order != null) {
+        checkpoint.putInts("order", progress.order);
+      } else {
+        checkpoint.remove("order");
+      }
+
+      checkpoint.putDouble("bestError", progress.bestError);
+      checkpoint.putLong("bestEpoch", progress.bestEpoch);
+      checkpoint.putLong("epochsWithoutImprovement", progress.epochsWithoutImprovement);
+      if (progress.bestParameters != null) {
+        checkpoint.putArray("bestParameters", progress.bestParameters);
+      }
+
+      if (learningRateSchedule != null) {
+        checkpoint.putArray("schedule", learningRateSchedule.getState());
+      }
+
+      checkpoint.putRandom("random", random);
+      checkpoint.putLong("elapsedMillis", progress.elapsedMillis());
+    });
+  }
+
+  private void restore(Checkpoint checkpoint, NeuralNetwork neuralNetwork, FitProgress progress) {
+    checkpoint.restoreNetwork(neuralNetwork);
+
+    progress.baseLearningRate = checkpoint.getDouble("baseLearningRate");
+    progress.epoch = (int) checkpoint.getLong("epoch");
+    progress.batch = (int) checkpoint.getLong("batch");
+    progress.order = checkpoint.has("order") ? checkpoint.getInts("order").clone() : null;
+
+    progress.bestError = checkpoint.getDouble("bestError");
+    progress.bestEpoch = (int) checkpoint.getLong("bestEpoch");
+    progress.epochsWithoutImprovement = (int) checkpoint.getLong("epochsWithoutImprovement");
+    if (progress.bestParameters != null) {
+      double[] bestParameters = checkpoint.getArray("bestParameters");
+      System.arraycopy(bestParameters, 0, progress.bestParameters, 0, bestParameters.length);
+    }
+
+    if (learningRateSchedule != null) {
+      learningRateSchedule.setState(checkpoint.getArray("schedule"));
+    }
+
+    random = checkpoint.getRandom("random");
+    progress.previousMillis = checkpoint.getLong("elapsedMillis");
+
+    Console.i("Resuming at epoch %d, mini-batch %d", progress.epoch, progress.batch);
+  }
+
+  private static long elapsedMillis(long startTime) {
+    return (System.nanoTime() - startTime) / 1000000;
+  }
+
   public void train(Matrix features, Matrix labels, int repetitions) {
     for (int i = 0; i < repetitions; i++) {
       train(features, labels);
@@ -189,6 +638,36 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     }
   }
 
+  /**
+   * Trains one pass over the dataset, one mini-batch of batchSize rows at a time, or one row at a
+   * time for stochastic training. The last mini-batch of a pass may be smaller. A
+   * {@link Prefetcher} is trained from directly, in the batches it assembles.
+   */
+  public void train(Dataset dataset) throws IOException {
+    if (dataset instanceof Prefetcher) {
+      trainPrefetched((Prefetcher) dataset, false);
+      return;
+    }
+
+    int rowsPerBatch;
+    switch (trainingType) {
+      case STOCHASTIC:
+        rowsPerBatch = 1;
+        break;
+      case MINI_BATCH:
+        rowsPerBatch = batchSize;
+        break;
+      default:
+        throw new IllegalStateException(
+            "Only stochastic and mini-batch training can read from a dataset.");
+    }
+
+    Batch batch = new Batch(rowsPerBatch, dataset.getFeatureCount(), dataset.getLabelCount());
+    while (dataset.next(batch)) {
+      trainRows(batch);
+    }
+  }
+
   private void trainBasic(Matrix features, Matrix labels) {
     if (!(learner instanceof NeuralNetwork)) {
       throw new IllegalStateException("Your learner must be a com.jace.learner.NeuralNetwork.");
@@ -236,10 +715,40 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
   }
 
   private void trainBatch(Matrix features, Matrix labels) {
-    trainMiniBatch(features, labels, features.rows());
+    if (batchOptimizer == null) {
+      trainMiniBatch(features, labels, features.rows());
+      return;
+    }
+
+    if (!(learner instanceof NeuralNetwork)) {
+      throw new IllegalStateException("Your learner must be a com.jace.learner.NeuralNetwork.");
+    }
+
+    NeuralNetwork neuralNetwork = (NeuralNetwork) learner;
+
+    // The objective holds replicas bound to the parameter buffer, so reuse it while that is valid
+    if (batchObjective == null || !batchObjective.isFor(neuralNetwork, features, labels)) {
+      batchObjective = new BatchObjective(neuralNetwork, features, labels);
+    }
+
+    double loss = batchOptimizer.minimize(batchObjective, batchIterations);
+    Console.i("Batch optimizer finished with SSE %f", 2 * loss);
   }
 
   private void trainMiniBatch(Matrix features, Matrix labels, int batchSize) {
+    if (prefetchBatches > 0 && trainingType != TrainingType.BATCH) {
+      MatrixDataset dataset = new MatrixDataset(features, labels);
+      dataset.setRandom(random);
+
+      try (Prefetcher prefetcher = new Prefetcher(dataset, batchSize, prefetchBatches)) {
+        prefetcher.setSinglePass(true);
+        trainPrefetched(prefetcher, true);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return;
+    }
+
     Matrix.shuffleMatrices(features, labels);
     int batches = features.rows() / batchSize;
 
@@ -259,6 +768,74 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
   }
 
   public void trainSingleMiniBatch(Matrix features, Matrix labels, int batchSize, int currentBatch) {
+    trainRows(features, labels, null, currentBatch * batchSize, batchSize);
+  }
+
+  /**
+   * Trains one pass from the prefetcher, without copying its batches. With fullBatchesOnly, a
+   * smaller last batch is skipped, as training from matrices does.
+   */
+  private void trainPrefetched(Prefetcher prefetcher, boolean fullBatchesOnly) throws IOException {
+    long batches = prefetcher.getBatches();
+    long stalls = prefetcher.getStalls();
+    long stallMillis = prefetcher.getStallMillis();
+
+    Batch batch;
+    while ((batch = prefetcher.take()) != null) {
+      try {
+        if (!fullBatchesOnly || batch.isFull()) {
+          trainRows(batch);
+        }
+      } finally {
+        prefetcher.release(batch);
+      }
+    }
+
+    batches = prefetcher.getBatches() - batches;
+    stalls = prefetcher.getStalls() - stalls;
+    stallMillis = prefetcher.getStallMillis() - stallMillis;
+
+    prefetchStalls += stalls;
+    prefetchStallMillis += stallMillis;
+    Console.i("Waited for %d of %d prefetched mini-batches, %d ms in all",
+        stalls, batches, stallMillis);
+  }
+
+  /**
+   * Trains one mini-batch on every row of the batch.
+   */
+  private void trainRows(Batch batch) {
+    if (!(learner instanceof NeuralNetwork)) {
+      throw new IllegalStateException("Your learner must be a com.jace.learner.NeuralNetwork.");
+    }
+
+    NeuralNetwork neuralNetwork = (NeuralNetwork) learner;
+
+    trainingMetricTracker.start();
+    testingMetricTracker.start();
+
+    for (int i = 0; i < batch.size(); i++) {
+      Vector input = batch.features(i);
+
+      neuralNetwork.predict(input);
+      neuralNetwork.backPropagate(batch.labels(i));
+      neuralNetwork.updateGradient(input);
+    }
+
+    if (gradientSynchronizer != null) {
+      gradientSynchronizer.synchronize(neuralNetwork);
+    }
+
+    neuralNetwork.updateWeights();
+
+    trainingMetricTracker.pause();
+    testingMetricTracker.pause();
+  }
+
+  /**
+   * Trains one mini-batch of count rows, starting at row begin, or at that position of order.
+   */
+  private void trainRows(Matrix features, Matrix labels, int[] order, int begin, int count) {
     if (!(learner instanceof NeuralNetwork)) {
       throw new IllegalStateException(
           "To train a linear model, your learner must be a com.jace.learner.NeuralNetwork");
@@ -269,15 +846,20 @@ public class LearnerEvaluator<T extends SupervisedLearner> {
     trainingMetricTracker.start();
     testingMetricTracker.start();
 
-    for (int i = currentBatch * batchSize; i < currentBatch * batchSize + batchSize; i++) {
-      Vector input = features.row(i);
-      Vector output = labels.row(i);
+    for (int i = begin; i < begin + count; i++) {
+      int row = (order == null) ? i : order[i];
+      Vector input = features.row(row);
+      Vector output = labels.row(row);
 
       neuralNetwork.predict(input);
       neuralNetwork.backPropagate(output);
       neuralNetwork.updateGradient(input);
     }
 
+    if (gradientSynchronizer != null) {
+      gradientSynchronizer.synchronize(neuralNetwork);
+    }
+
     neuralNetwork.updateWeights();
 
     trainingMetricTracker.pause();
@@ -0,0 +1,68 @@
+package com.jace.evaluator;
+
+/**
+ * The outcome of {@link LearnerEvaluator#fit}.
+ */
+public class TrainingReport {
+
+  public enum StopReason {
+    COMPLETED, EARLY_STOPPED, TIME_BUDGET
+  }
+
+  private StopReason stopReason;
+  private int epochs;
+  private int bestEpoch;
+  private double bestError;
+  private long elapsedMillis;
+  private long estimatedMillisSaved;
+
+  TrainingReport(StopReason stopReason, int epochs, int bestEpoch, double bestError,
+      long elapsedMillis, long estimatedMillisSaved) {
+    this.stopReason = stopReason;
+    this.epochs = epochs;
+    this.bestEpoch = bestEpoch;
+    this.bestError = bestError;
+    this.elapsedMillis = elapsedMillis;
+    this.estimatedMillisSaved = estimatedMillisSaved;
+  }
+
+  public StopReason getStopReason() {
+    return stopReason;
+  }
+
+  /**
+   * The number of epochs that were trained.
+   */
+  public int getEpochs() {
+    return epochs;
+  }
+
+  /**
+   * The zero-based epoch whose weights were kept, or -1 without validation data.
+   */
+  public int getBestEpoch() {
+    return bestEpoch;
+  }
+
+  public double getBestError() {
+    return bestError;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /**
+   * The time the remaining epochs would have taken at the average epoch time of this run.
+   */
+  public long getEstimatedMillisSaved() {
+    return estimatedMillisSaved;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s after %d epochs in %.3fs (best epoch %d, error %f, ~%.3fs saved)",
+        stopReason, epochs, elapsedMillis / 1000.0, bestEpoch, bestError,
+        estimatedMillisSaved / 1000.0);
+  }
+}
@@ -1,5 +1,6 @@
 package com.jace.layer;
 
+import com.jace.math.Matrix;
 import com.jace.math.Vector;
 
 public abstract class ActivationLayer extends Layer {
@@ -22,6 +23,13 @@ public abstract class ActivationLayer extends Layer {
 
   }
 
+  /**
+   * Activation layers have no parameters, so a batch adds nothing to their gradient.
+   */
+  public void updateGradientBatch(Matrix inputs) {
+
+  }
+
   @Override
   void applyGradient(double learningRate) {
 
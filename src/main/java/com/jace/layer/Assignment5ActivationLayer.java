@@ -28,6 +28,15 @@ public class Assignment5ActivationLayer extends ActivationLayer {
     return map;
   }
 
+  @Override
+  public void infer(Vector x, Vector out) {
+    for (int i = 0; i < 100; i++) {
+      out.set(i, Math.sin(x.get(i)));
+    }
+
+    out.set(100, x.get(100));
+  }
+
   @Override
   public Vector backPropagate() {
     Vector previousBlame = new Vector(getBlame().size());
@@ -1,8 +1,5 @@
 package com.jace.layer;
 
-import com.jace.math.Matrix;
-import com.jace.math.Vector;
-
 public class Assignment5LinearLayer extends LinearLayer {
 
   public Assignment5LinearLayer() {
@@ -13,8 +10,8 @@ public class Assignment5LinearLayer extends LinearLayer {
   public void initialize() {
     super.initialize();
 
-    setWeights(new Matrix(101, 1));
-    setBias(new Vector(101));
+    getWeights().fill(0);
+    getBias().fill(0);
 
     double pi = Math.PI;
     for (int i = 0; i < 50; i++) {
@@ -0,0 +1,25 @@
+package com.jace.layer;
+
+import com.jace.math.Matrix;
+
+/**
+ * A layer that can run a whole batch of examples at once, one example per row. A network supports
+ * batches only when every one of its layers is a BatchLayer.
+ */
+public interface BatchLayer {
+  /**
+   * Runs every row of inputs through this layer at once, and returns the activations with one row
+   * per example. The result is reused by the next batch of the same size.
+   */
+  Matrix activateBatch(Matrix inputs);
+
+  /**
+   * Returns the blame of the previous layer for the current batch, from this layer's batch blame.
+   */
+  Matrix backPropagateBatch();
+
+  /**
+   * Adds the gradient of every example in the batch to this layer's gradient.
+   */
+  void updateGradientBatch(Matrix inputs);
+}
@@ -1,6 +1,7 @@
 package com.jace.layer;
 
 import com.jace.math.Spatial;
+import com.jace.math.Vector;
 
 import java.util.function.Supplier;
 
@@ -16,6 +17,8 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
   private T weightsGradient;
   private U biasGradient;
 
+  private boolean hasParameterBuffer = false;
+
   private RegularizationType regularizationType = RegularizationType.NONE;
   private double regularizationAmount = 0;
 
@@ -23,12 +26,56 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
     super(inputs, outputs);
   }
 
+  /**
+   * Allocates a parameter buffer for this layer if it has not been bound to one by its
+   * {@link com.jace.learner.NeuralNetwork}, then clears the gradient.
+   */
   @Override
   public void initialize() {
+    if (!hasParameterBuffer) {
+      int parameterCount = getParameterCount();
+      bindParameters(new Vector(parameterCount), new Vector(parameterCount), 0);
+    }
+
     resetGradient();
   }
 
-  RegularizationType getRegularizationType() {
+  public abstract int getWeightsCount();
+
+  public abstract int getBiasCount();
+
+  @Override
+  public int getParameterCount() {
+    return getWeightsCount() + getBiasCount();
+  }
+
+  /**
+   * Wraps a slice of a parameter buffer in the shape of this layer's weights, without copying.
+   */
+  abstract T wrapWeights(Vector values);
+
+  /**
+   * Wraps a slice of a parameter buffer in the shape of this layer's bias, without copying.
+   */
+  abstract U wrapBias(Vector values);
+
+  /**
+   * Makes the weights, bias and their gradients views into the given buffers, starting at offset.
+   * The weights come first, followed by the bias, in both buffers.
+   */
+  public void bindParameters(Vector parameters, Vector gradients, int offset) {
+    int weightsCount = getWeightsCount();
+    int biasCount = getBiasCount();
+
+    weights = wrapWeights(new Vector(parameters, offset, weightsCount));
+    bias = wrapBias(new Vector(parameters, offset + weightsCount, biasCount));
+    weightsGradient = wrapWeights(new Vector(gradients, offset, weightsCount));
+    biasGradient = wrapBias(new Vector(gradients, offset + weightsCount, biasCount));
+
+    hasParameterBuffer = true;
+  }
+
+  public RegularizationType getRegularizationType() {
     return regularizationType;
   }
 
@@ -36,7 +83,7 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
     this.regularizationType = regularizationType;
   }
 
-  double getRegularizationAmount() {
+  public double getRegularizationAmount() {
     return regularizationAmount;
   }
 
@@ -44,6 +91,14 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
     this.regularizationAmount = regularizationAmount;
   }
 
+  /**
+   * The penalty the regularization adds to the loss for each example. Its gradient is the term
+   * added to the weights gradient for each example. Layers that do not regularize add nothing.
+   */
+  public double getRegularizationLoss() {
+    return 0;
+  }
+
   @Override
   void resetGradient() {
     weightsGradient.fill(0);
@@ -73,8 +128,16 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
     return weights;
   }
 
+  /**
+   * Once this layer has a parameter buffer, the values are copied into it so the buffer stays the
+   * only copy of the weights. Before that, the given object is used directly.
+   */
   public void setWeights(T weights) {
-    this.weights = weights;
+    if (hasParameterBuffer) {
+      copyValues(weights, this.weights);
+    } else {
+      this.weights = weights;
+    }
   }
 
   public U getBias() {
@@ -82,7 +145,21 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
   }
 
   public void setBias(U bias) {
-    this.bias = bias;
+    if (hasParameterBuffer) {
+      copyValues(bias, this.bias);
+    } else {
+      this.bias = bias;
+    }
+  }
+
+  private static void copyValues(Spatial<?> source, Spatial<?> destination) {
+    if (source.size() != destination.size()) {
+      throw new IllegalArgumentException("mismatching sizes");
+    }
+
+    for (int i = 0; i < source.size(); i++) {
+      destination.set(i, source.get(i));
+    }
   }
 
   public T getWeightsGradient() {
@@ -90,7 +167,11 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
   }
 
   public void setWeightsGradient(T weightsGradient) {
-    this.weightsGradient = weightsGradient;
+    if (hasParameterBuffer) {
+      copyValues(weightsGradient, this.weightsGradient);
+    } else {
+      this.weightsGradient = weightsGradient;
+    }
   }
 
   public U getBiasGradient() {
@@ -98,6 +179,10 @@ public abstract class ConnectedLayer<T extends Spatial, U extends Spatial> exten
   }
 
   public void setBiasGradient(U biasGradient) {
-    this.biasGradient = biasGradient;
+    if (hasParameterBuffer) {
+      copyValues(biasGradient, this.biasGradient);
+    } else {
+      this.biasGradient = biasGradient;
+    }
   }
 }
@@ -44,18 +44,48 @@ public class ConvolutionLayer extends ConnectedLayer<Tensor, Vector> {
     this.outputDimensions = outputDimensions;
   }
 
+  public int[] getInputDimensions() {
+    return inputDimensions.clone();
+  }
+
+  public int[] getFilterDimensions() {
+    return filterDimensions.clone();
+  }
+
+  public int[] getOutputDimensions() {
+    return outputDimensions.clone();
+  }
+
   @Override
   public void initialize() {
     super.initialize();
 
     setActivation(new Tensor(outputDimensions));
-    setWeights(new Tensor(filterDimensions));
-    setBias(new Vector(getWeights().getLastDimension()));
 
     final int filterElements = Tensor.countElements(filterDimensions);
     fillAll(() -> Math.max(0.01, 1.0 / filterElements) * Main.RANDOM.nextGaussian());
   }
 
+  @Override
+  public int getWeightsCount() {
+    return Tensor.countElements(filterDimensions);
+  }
+
+  @Override
+  public int getBiasCount() {
+    return filterDimensions[filterDimensions.length - 1];
+  }
+
+  @Override
+  Tensor wrapWeights(Vector values) {
+    return new Tensor(values, filterDimensions);
+  }
+
+  @Override
+  Vector wrapBias(Vector values) {
+    return values;
+  }
+
   @Override
   public void setWeights(Tensor filter) {
     Tensor filterTensor = Tensor.asTensor(filter, filterDimensions);
@@ -99,23 +129,28 @@ public class ConvolutionLayer extends ConnectedLayer<Tensor, Vector> {
 
   @Override
   public Vector activate(Vector x) {
+    infer(x, getActivation());
+    return getActivation();
+  }
+
+  @Override
+  public void infer(Vector x, Vector out) {
     Tensor input = Tensor.asTensor(x, inputDimensions);
+    Tensor output = Tensor.asTensor(out, outputDimensions);
 
-    getActivation().fill(0);
+    output.fill(0);
 
     if (input.getLastDimension() == 1) {
-      Tensor.convolvePerFilter(input, getWeights(), getActivation());
+      Tensor.convolvePerFilter(input, getWeights(), output);
     } else {
-      Tensor.convolve(input, getWeights(), getActivation());
+      Tensor.convolve(input, getWeights(), output);
     }
 
-    addBiasesByLastDimension();
-
-    return getActivation();
+    addBiasesByLastDimension(output);
   }
 
-  private void addBiasesByLastDimension() {
-    Tensor[] activationLayers = getActivation().splitByLastDimension();
+  private void addBiasesByLastDimension(Tensor output) {
+    Tensor[] activationLayers = output.splitByLastDimension();
 
     for (int i = 0; i < activationLayers.length; i++) {
       activationLayers[i].addAll(getBias().get(i));
@@ -129,19 +164,6 @@ public class ConvolutionLayer extends ConnectedLayer<Tensor, Vector> {
     return result;
   }
 
-  @Override
-  void resetGradient() {
-    if (getWeightsGradient() == null) {
-      setWeightsGradient(new Tensor(filterDimensions));
-    }
-
-    if (getBiasGradient() == null) {
-      setBiasGradient(new Vector(filterDimensions[filterDimensions.length - 1]));
-    }
-
-    super.resetGradient();
-  }
-
   @Override
   public void updateGradient(Vector x) {
     Tensor input = Tensor.asTensor(x, inputDimensions);
@@ -1,5 +1,6 @@
 package com.jace.layer;
 
+import com.jace.math.Matrix;
 import com.jace.math.Vector;
 
 public abstract class Layer {
@@ -13,6 +14,9 @@ public abstract class Layer {
   private Vector activation;
   private Vector blame;
 
+  private Matrix batchActivation;
+  private Matrix batchBlame;
+
   Layer(int inputs, int outputs) {
     this.inputs = inputs;
     this.outputs = outputs;
@@ -27,6 +31,13 @@ public abstract class Layer {
 
   public abstract void initialize();
 
+  /**
+   * The number of trainable values (weights and biases) in this layer.
+   */
+  public int getParameterCount() {
+    return 0;
+  }
+
   public int getInputs() {
     return inputs;
   }
@@ -37,6 +48,13 @@ public abstract class Layer {
 
   public abstract Vector activate(Vector x);
 
+  /**
+   * Computes this layer's activation for x into out, reading only the weights. Unlike
+   * {@link #activate}, this keeps no state in the layer, so several threads may call it at once
+   * with their own output buffers.
+   */
+  public abstract void infer(Vector x, Vector out);
+
   protected void setActivation(Vector vector) {
     this.activation = vector;
   }
@@ -63,10 +81,41 @@ public abstract class Layer {
 
   public abstract void applyGradient(double learningRate, double momentum);
 
+  /**
+   * The activations of the last batch, for layers that are {@link BatchLayer}s.
+   */
+  public Matrix getBatchActivation() {
+    return batchActivation;
+  }
+
+  public void setBatchBlame(Matrix batchBlame) {
+    this.batchBlame = batchBlame;
+  }
+
+  public Matrix getBatchBlame() {
+    return batchBlame;
+  }
+
+  /**
+   * Returns the batch activation matrix, reallocating it only when the batch size changes.
+   */
+  Matrix prepareBatchActivation(int rows) {
+    batchActivation = reuse(batchActivation, rows, outputs);
+    return batchActivation;
+  }
+
+  static Matrix reuse(Matrix matrix, int rows, int cols) {
+    if (matrix == null || matrix.rows() != rows || matrix.cols() != cols) {
+      return new Matrix(rows, cols);
+    }
+
+    return matrix;
+  }
+
   public String topologyString() {
     String name = getLayerType().toString();
-    int weights = (this instanceof LinearLayer) ? this.getInputs() * getOutputs() + getOutputs() : 0;
 
-    return String.format("[%s: %d->%d, Weights=%d]", name, getInputs(), getOutputs(), weights);
+    return String.format(
+        "[%s: %d->%d, Weights=%d]", name, getInputs(), getOutputs(), getParameterCount());
   }
 }
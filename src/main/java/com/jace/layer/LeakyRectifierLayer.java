@@ -1,8 +1,10 @@
 package com.jace.layer;
 
+import com.jace.math.Matrix;
 import com.jace.math.Vector;
 
-public class LeakyRectifierLayer extends ActivationLayer {
+public class LeakyRectifierLayer extends ActivationLayer implements BatchLayer {
+  private Matrix previousBatchBlame;
 
   public LeakyRectifierLayer(int inputs) {
     super(inputs, inputs);
@@ -23,6 +25,14 @@ public class LeakyRectifierLayer extends ActivationLayer {
     return getActivation();
   }
 
+  @Override
+  public void infer(Vector x, Vector out) {
+    for (int i = 0; i < getOutputs(); i++) {
+      double value = x.get(i);
+      out.set(i, (value >= 0) ? value : 0.01 * value);
+    }
+  }
+
   @Override
   public Vector backPropagate() {
     Vector result = new Vector(getInputs());
@@ -41,4 +51,39 @@ public class LeakyRectifierLayer extends ActivationLayer {
 
     return result;
   }
+
+  @Override
+  public Matrix activateBatch(Matrix inputs) {
+    Matrix activation = prepareBatchActivation(inputs.rows());
+
+    for (int i = 0; i < inputs.rows(); i++) {
+      Vector inputRow = inputs.row(i);
+      Vector activationRow = activation.row(i);
+      for (int j = 0; j < inputRow.size(); j++) {
+        activationRow.set(j, (inputRow.get(j) >= 0) ? inputRow.get(j) : 0.01 * inputRow.get(j));
+      }
+    }
+
+    return activation;
+  }
+
+  @Override
+  public Matrix backPropagateBatch() {
+    Matrix activation = getBatchActivation();
+    Matrix blame = getBatchBlame();
+    previousBatchBlame = reuse(previousBatchBlame, blame.rows(), getInputs());
+
+    for (int i = 0; i < blame.rows(); i++) {
+      Vector activationRow = activation.row(i);
+      Vector blameRow = blame.row(i);
+      Vector previousRow = previousBatchBlame.row(i);
+      for (int j = 0; j < blameRow.size(); j++) {
+        double value = activationRow.get(j);
+        double slope = (value == 0) ? 0 : (value < 0) ? 0.01 : 1;
+        previousRow.set(j, blameRow.get(j) * slope);
+      }
+    }
+
+    return previousBatchBlame;
+  }
 }
@@ -4,7 +4,8 @@ import com.jace.Main;
 import com.jace.math.Matrix;
 import com.jace.math.Vector;
 
-public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
+public class LinearLayer extends ConnectedLayer<Matrix, Vector> implements BatchLayer {
+  private Matrix previousBatchBlame;
 
   public LinearLayer(int inputs, int outputs) {
     super(inputs, outputs);
@@ -19,9 +20,6 @@ public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
   public void initialize() {
     super.initialize();
 
-    setWeights(new Matrix(getOutputs(), getInputs()));
-    setBias(new Vector(getOutputs()));
-
     fillAll(() -> Math.max(0, 1.0 / getInputs()) * Main.RANDOM.nextGaussian());
   }
 
@@ -31,16 +29,23 @@ public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
   }
 
   @Override
-  protected void resetGradient() {
-    if (getWeightsGradient() == null) {
-      setWeightsGradient(new Matrix(getOutputs(), getInputs()));
-    }
+  public int getWeightsCount() {
+    return getOutputs() * getInputs();
+  }
 
-    if (getBiasGradient() == null) {
-      setBiasGradient(new Vector(getOutputs()));
-    }
+  @Override
+  public int getBiasCount() {
+    return getOutputs();
+  }
 
-    super.resetGradient();
+  @Override
+  Matrix wrapWeights(Vector values) {
+    return Matrix.wrap(values, getOutputs(), getInputs());
+  }
+
+  @Override
+  Vector wrapBias(Vector values) {
+    return values;
   }
 
   @Override
@@ -55,6 +60,50 @@ public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
     return getActivation();
   }
 
+  @Override
+  public Matrix activateBatch(Matrix inputs) {
+    Matrix activation = prepareBatchActivation(inputs.rows());
+    Matrix.multiply(inputs, getWeights(), false, true, activation);
+
+    for (int i = 0; i < activation.rows(); i++) {
+      activation.row(i).add(getBias());
+    }
+
+    return activation;
+  }
+
+  @Override
+  public Matrix backPropagateBatch() {
+    previousBatchBlame = reuse(previousBatchBlame, getBatchBlame().rows(), getInputs());
+    return Matrix.multiply(getBatchBlame(), getWeights(), false, false, previousBatchBlame);
+  }
+
+  @Override
+  public void updateGradientBatch(Matrix inputs) {
+    Matrix blame = getBatchBlame();
+    for (int i = 0; i < blame.rows(); i++) {
+      addOuterProductToMatrix(blame.row(i), inputs.row(i), getWeightsGradient());
+      getBiasGradient().add(blame.row(i));
+    }
+
+    applyRegularization(blame.rows());
+  }
+
+  @Override
+  public void infer(Vector x, Vector out) {
+    Matrix weights = getWeights();
+    Vector bias = getBias();
+
+    for (int o = 0; o < getOutputs(); o++) {
+      Vector weightsRow = weights.row(o);
+      double sum = 0;
+      for (int i = 0; i < getInputs(); i++) {
+        sum += weightsRow.get(i) * x.get(i);
+      }
+      out.set(o, sum + bias.get(o));
+    }
+  }
+
   private void addOuterProductToMatrix(Vector first, Vector second, Matrix target) {
     for (int i = 0; i < first.size(); i++) {
       for (int j = 0; j < second.size(); j++) {
@@ -121,17 +170,49 @@ public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
   @Override
   public void updateGradient(Vector x) {
     addOuterProductToMatrix(getBlame(), x, getWeightsGradient());
+    applyRegularization(1);
+    getBiasGradient().add(getBlame());
+  }
+
+  @Override
+  public double getRegularizationLoss() {
+    double loss = 0;
+
+    switch (getRegularizationType()) {
+      case L1:
+        for (int i = 0; i < getWeights().size() - 1; i++) {
+          loss += Math.abs(getWeights().get(i));
+        }
+        break;
+      case L2:
+        for (int i = 0; i < getWeights().size() - 1; i++) {
+          loss += 0.5 * getWeights().get(i) * getWeights().get(i);
+        }
+        break;
+      case NONE:
+      default:
+        break;
+    }
+
+    return getRegularizationAmount() * loss;
+  }
+
+  /**
+   * Adds the regularization term to the weights gradient once per example.
+   */
+  private void applyRegularization(int examples) {
+    double amount = getRegularizationAmount() * examples;
 
     switch (getRegularizationType()) {
       case L1:
         for (int i = 0; i < getWeights().size() - 1; i++) {
           double sign = -1 * Math.signum(getWeights().get(i));
-          getWeightsGradient().set(i, getWeightsGradient().get(i) + sign * getRegularizationAmount());
+          getWeightsGradient().set(i, getWeightsGradient().get(i) + sign * amount);
         }
         break;
       case L2:
         for (int i = 0; i < getWeights().size() - 1; i++) {
-          double shift = getWeights().get(i) * getRegularizationAmount();
+          double shift = getWeights().get(i) * amount;
           getWeightsGradient().set(i, getWeightsGradient().get(i) - shift);
         }
         break;
@@ -139,7 +220,5 @@ public class LinearLayer extends ConnectedLayer<Matrix, Vector> {
       default:
         break;
     }
-
-    getBiasGradient().add(getBlame());
   }
 }
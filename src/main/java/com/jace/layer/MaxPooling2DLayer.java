@@ -3,49 +3,15 @@ package com.jace.layer;
 import com.jace.math.Tensor;
 import com.jace.math.Vector;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class MaxPooling2DLayer extends ActivationLayer {
 
-  private class Tuple3 {
-    private int x, y, z;
-
-    private Tuple3(int x, int y, int z) {
-      this.x = x;
-      this.y = y;
-      this.z = z;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (this == other) {
-        return true;
-      }
-
-      if (!(other instanceof Tuple3)) {
-        return false;
-      }
-
-      Tuple3 otherTuple = (Tuple3) other;
-      return otherTuple.x == x && otherTuple.y == y && otherTuple.z == z;
-    }
-
-    @Override
-    public int hashCode() {
-      int hash = 17;
-      hash = hash * 37 + Integer.hashCode(x);
-      hash = hash * 37 + Integer.hashCode(y);
-      hash = hash * 37 + Integer.hashCode(z);
-
-      return hash;
-    }
-  }
-
   private int[] inputDimensions;
   private int[] outputDimensions;
 
-  private Map<Tuple3, Integer> tupleToMaxValueMap = new HashMap<>();
+  /**
+   * For each output element, which of the four inputs in its window was the largest.
+   */
+  private int[] maxIndices;
 
   public MaxPooling2DLayer(int[] inputDimensions) {
     super(
@@ -68,6 +34,12 @@ public class MaxPooling2DLayer extends ActivationLayer {
 
     outputDimensions[0] /= 2;
     outputDimensions[1] /= 2;
+
+    maxIndices = new int[getOutputs()];
+  }
+
+  public int[] getInputDimensions() {
+    return inputDimensions.clone();
   }
 
   @Override
@@ -82,9 +54,27 @@ public class MaxPooling2DLayer extends ActivationLayer {
 
   @Override
   public Vector activate(Vector x) {
-    Tensor input = new Tensor(x, inputDimensions);
     Tensor activation = new Tensor(getActivation(), outputDimensions);
+    pool(x, activation, maxIndices);
 
+    setActivation(activation);
+    return getActivation();
+  }
+
+  @Override
+  public void infer(Vector x, Vector out) {
+    pool(x, out, null);
+  }
+
+  /**
+   * Writes the maximum of every 2x2 window of x into out, and records which input won in
+   * maxIndices unless it is null.
+   */
+  private void pool(Vector x, Vector out, int[] maxIndices) {
+    Tensor input = Tensor.asTensor(x, inputDimensions);
+    Tensor activation = Tensor.asTensor(out, outputDimensions);
+
+    int position = 0;
     for (int k = 0; k < outputDimensions[2]; k++) {
       for (int j = 0; j < outputDimensions[1]; j++) {
         for (int i = 0; i < outputDimensions[0]; i++) {
@@ -93,23 +83,30 @@ public class MaxPooling2DLayer extends ActivationLayer {
           double value3 = input.get(i * 2, j * 2 + 1, k);
           double value4 = input.get(i * 2 + 1, j * 2 + 1, k);
 
-          double[] values = new double[]{value1, value2, value3, value4};
-
           int maxIndex = 0;
-          for (int index = 1; index < 4; index++) {
-            if (values[index] > values[maxIndex]) {
-              maxIndex = index;
-            }
+          double maxValue = value1;
+          if (value2 > maxValue) {
+            maxIndex = 1;
+            maxValue = value2;
+          }
+          if (value3 > maxValue) {
+            maxIndex = 2;
+            maxValue = value3;
+          }
+          if (value4 > maxValue) {
+            maxIndex = 3;
+            maxValue = value4;
+          }
+
+          if (maxIndices != null) {
+            maxIndices[position] = maxIndex;
           }
+          position++;
 
-          tupleToMaxValueMap.put(new Tuple3(i, j, k), maxIndex);
-          activation.set(values[maxIndex], i, j, k);
+          activation.set(maxValue, i, j, k);
         }
       }
     }
-
-    setActivation(activation);
-    return getActivation();
   }
 
   @Override
@@ -122,10 +119,11 @@ public class MaxPooling2DLayer extends ActivationLayer {
     Tensor result = new Tensor(inputDimensions);
     Tensor blame = getBlame();
 
+    int position = 0;
     for (int k = 0; k < outputDimensions[2]; k++) {
       for (int j = 0; j < outputDimensions[1]; j++) {
         for (int i = 0; i < outputDimensions[0]; i++) {
-          int maxIndex = tupleToMaxValueMap.get(new Tuple3(i, j, k));
+          int maxIndex = maxIndices[position++];
 
           double value = blame.get(i, j, k);
 
@@ -1,8 +1,10 @@
 package com.jace.layer;
 
+import com.jace.math.Matrix;
 import com.jace.math.Vector;
 
-public class TanhLayer extends ActivationLayer {
+public class TanhLayer extends ActivationLayer implements BatchLayer {
+  private Matrix previousBatchBlame;
 
   public TanhLayer(int inputs) {
     super(inputs, inputs);
@@ -24,6 +26,13 @@ public class TanhLayer extends ActivationLayer {
     return getActivation();
   }
 
+  @Override
+  public void infer(Vector x, Vector out) {
+    for (int i = 0; i < getOutputs(); i++) {
+      out.set(i, Math.tanh(x.get(i)));
+    }
+  }
+
   @Override
   public Vector backPropagate() {
     Vector previousBlame = new Vector(getBlame().size());
@@ -34,4 +43,38 @@ public class TanhLayer extends ActivationLayer {
 
     return previousBlame;
   }
+
+  @Override
+  public Matrix activateBatch(Matrix inputs) {
+    Matrix activation = prepareBatchActivation(inputs.rows());
+
+    for (int i = 0; i < inputs.rows(); i++) {
+      Vector inputRow = inputs.row(i);
+      Vector activationRow = activation.row(i);
+      for (int j = 0; j < inputRow.size(); j++) {
+        activationRow.set(j, Math.tanh(inputRow.get(j)));
+      }
+    }
+
+    return activation;
+  }
+
+  @Override
+  public Matrix backPropagateBatch() {
+    Matrix activation = getBatchActivation();
+    Matrix blame = getBatchBlame();
+    previousBatchBlame = reuse(previousBatchBlame, blame.rows(), getInputs());
+
+    for (int i = 0; i < blame.rows(); i++) {
+      Vector activationRow = activation.row(i);
+      Vector blameRow = blame.row(i);
+      Vector previousRow = previousBatchBlame.row(i);
+      for (int j = 0; j < blameRow.size(); j++) {
+        double value = activationRow.get(j);
+        previousRow.set(j, blameRow.get(j) * (1.0 - value * value));
+      }
+    }
+
+    return previousBatchBlame;
+  }
 }
@@ -0,0 +1,235 @@
+package com.jace.learner;
+
+import com.jace.math.Vector;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the predictions of another learner for inputs it has already seen. The cache holds
+ * up to a fixed number of predictions and evicts the least recently used ones first. It is split
+ * into stripes with a lock each, so threads predicting different inputs rarely wait on each other.
+ * <br>
+ * Every cached prediction belongs to one version of the model, and is only returned for that
+ * version. When the version changes, such as when a {@link NeuralNetwork}'s weights are updated,
+ * the whole cache is cleared.
+ */
+public class CachingLearner implements SupervisedLearner {
+  private static final int STRIPES = 16;
+
+  private static class Key {
+    private double[] values;
+    private int hash;
+
+    private Key(Vector vector) {
+      values = vector.toDoubleArray();
+      hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && Arrays.equals(values, ((Key) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /**
+   * A prediction and the model version it was made with.
+   */
+  private static class Entry {
+    private Vector prediction;
+    private long version;
+
+    private Entry(Vector prediction, long version) {
+      this.prediction = prediction;
+      this.version = version;
+    }
+  }
+
+  private class Stripe extends LinkedHashMap<Key, Entry> {
+    private static final long serialVersionUID = 1L;
+
+    private int capacity;
+
+    private Stripe(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+      if (size() > capacity) {
+        evictions.increment();
+        return true;
+      }
+
+      return false;
+    }
+  }
+
+  private SupervisedLearner learner;
+  private SupervisedLearner predictor;
+  private LongSupplier versionSource;
+  private volatile long cachedVersion;
+
+  private Stripe[] stripes = new Stripe[STRIPES];
+
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+  private LongAdder evictions = new LongAdder();
+  private LongAdder invalidations = new LongAdder();
+
+  /**
+   * A network's predictions are tied to its parameter version, and computed through an
+   * {@link InferenceContextPool} so the cache may be shared between threads.
+   */
+  public CachingLearner(SupervisedLearner learner, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The cache must hold at least one prediction.");
+    }
+
+    this.learner = learner;
+    if (learner instanceof NeuralNetwork) {
+      NeuralNetwork neuralNetwork = (NeuralNetwork) learner;
+      predictor = new InferenceContextPool(neuralNetwork);
+      versionSource = neuralNetwork::getParameterVersion;
+    } else {
+      predictor = learner;
+      versionSource = () -> 0;
+    }
+
+    int stripeCapacity = (capacity + STRIPES - 1) / STRIPES;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(stripeCapacity);
+    }
+
+    cachedVersion = versionSource.getAsLong();
+  }
+
+  /**
+   * Where the model version comes from, for learners other than networks.
+   */
+  public void setVersionSource(LongSupplier versionSource) {
+    this.versionSource = versionSource;
+    clear();
+    cachedVersion = versionSource.getAsLong();
+  }
+
+  public SupervisedLearner getLearner() {
+    return learner;
+  }
+
+  @Override
+  public String name() {
+    return learner.name();
+  }
+
+  @Override
+  public boolean isValid() {
+    return learner.isValid();
+  }
+
+  /**
+   * Returns a new vector, which the caller owns. Thread-safe if the wrapped learner is a network
+   * or is itself thread-safe.
+   */
+  @Override
+  public Vector predict(Vector in) {
+    long version = checkVersion();
+
+    Key key = new Key(in);
+    Stripe stripe = stripeFor(key);
+
+    synchronized (stripe) {
+      Entry cached = stripe.get(key);
+      if (cached != null && cached.version == version) {
+        hits.increment();
+        return cached.prediction.copy();
+      }
+    }
+
+    misses.increment();
+    Vector prediction = predictor.predict(in).copy();
+
+    // A prediction made while the weights changed is returned, but not kept. One kept just before
+    // a change is tagged with the old version, so it is never returned for the new one.
+    if (versionSource.getAsLong() == version) {
+      synchronized (stripe) {
+        stripe.put(key, new Entry(prediction.copy(), version));
+      }
+    }
+
+    return prediction;
+  }
+
+  private long checkVersion() {
+    long version = versionSource.getAsLong();
+    if (version != cachedVersion) {
+      synchronized (this) {
+        if (version != cachedVersion) {
+          clear();
+          invalidations.increment();
+          cachedVersion = version;
+        }
+      }
+    }
+
+    return version;
+  }
+
+  private Stripe stripeFor(Key key) {
+    int hash = key.hash ^ (key.hash >>> 16);
+    return stripes[hash & (STRIPES - 1)];
+  }
+
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.clear();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+
+    return size;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * How many times the cache was cleared because the model version changed.
+   */
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHits();
+    long total = hits + getMisses();
+    return (total == 0) ? 0 : (double) hits / total;
+  }
+}
@@ -0,0 +1,277 @@
+package com.jace.learner;
+
+import com.jace.layer.Layer;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.optimizer.Optimizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The state of a training run, as named sections: longs, doubles, double arrays, int arrays and
+ * bytes. Putting an array copies it, reusing the array already held under that name when the
+ * lengths match, so filling the same checkpoint again allocates nothing.
+ * <br>
+ * A network's weights and gradients are kept in one section per layer, so a
+ * {@link CheckpointWriter} can leave out the layers that did not change.
+ */
+public class Checkpoint {
+  private Map<String, Object> sections = new LinkedHashMap<>();
+
+  public boolean has(String name) {
+    return sections.containsKey(name);
+  }
+
+  public void remove(String name) {
+    sections.remove(name);
+  }
+
+  Map<String, Object> getSections() {
+    return sections;
+  }
+
+  void putSection(String name, Object value) {
+    sections.put(name, value);
+  }
+
+  public void putLong(String name, long value) {
+    sections.put(name, value);
+  }
+
+  public long getLong(String name) {
+    return (Long) get(name);
+  }
+
+  public void putDouble(String name, double value) {
+    sections.put(name, value);
+  }
+
+  public double getDouble(String name) {
+    return (Double) get(name);
+  }
+
+  public void putArray(String name, double[] values) {
+    putArray(name, values, 0, values.length);
+  }
+
+  public void putArray(String name, double[] values, int offset, int length) {
+    Object held = sections.get(name);
+    double[] copy = (held instanceof double[] && ((double[]) held).length == length)
+        ? (double[]) held
+        : new double[length];
+
+    System.arraycopy(values, offset, copy, 0, length);
+    sections.put(name, copy);
+  }
+
+  /**
+   * Returns the checkpoint's own array, which changes if the checkpoint is filled again.
+   */
+  public double[] getArray(String name) {
+    return (double[]) get(name);
+  }
+
+  public void putInts(String name, int[] values) {
+    Object held = sections.get(name);
+    int[] copy = (held instanceof int[] && ((int[]) held).length == values.length)
+        ? (int[]) held
+        : new int[values.length];
+
+    System.arraycopy(values, 0, copy, 0, values.length);
+    sections.put(name, copy);
+  }
+
+  public int[] getInts(String name) {
+    return (int[]) get(name);
+  }
+
+  public void putBytes(String name, byte[] values) {
+    sections.put(name, values.clone());
+  }
+
+  public byte[] getBytes(String name) {
+    return (byte[]) get(name);
+  }
+
+  /**
+   * Keeps the exact state of a random number generator, so a resumed run draws the same numbers.
+   */
+  public void putRandom(String name, Random random) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(random);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    sections.put(name, bytes.toByteArray());
+  }
+
+  public Random getRandom(String name) {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(getBytes(name)))) {
+      return (Random) in.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("The checkpoint's " + name + " is corrupt.", e);
+    }
+  }
+
+  public void putMatrix(String name, Matrix matrix) {
+    int length = matrix.rows() * matrix.cols();
+    Object held = sections.get(name);
+    double[] copy = (held instanceof double[] && ((double[]) held).length == length)
+        ? (double[]) held
+        : new double[length];
+
+    int i = 0;
+    for (int r = 0; r < matrix.rows(); r++) {
+      Vector row = matrix.row(r);
+      for (int c = 0; c < row.size(); c++) {
+        copy[i++] = row.get(c);
+      }
+    }
+
+    sections.put(name, copy);
+  }
+
+  /**
+   * Copies a matrix kept with {@link #putMatrix} into one of the same size.
+   */
+  public void restoreMatrix(String name, Matrix matrix) {
+    double[] values = getArray(name);
+    if (values.length != matrix.rows() * matrix.cols()) {
+      throw new IllegalStateException(String.format(
+          "The checkpoint's %s holds %d values, but the matrix is %dx%d.",
+          name, values.length, matrix.rows(), matrix.cols()));
+    }
+
+    int i = 0;
+    for (int r = 0; r < matrix.rows(); r++) {
+      Vector row = matrix.row(r);
+      for (int c = 0; c < row.size(); c++) {
+        row.set(c, values[i++]);
+      }
+    }
+  }
+
+  /**
+   * Keeps the network's weights, gradients (which carry the momentum), learning rate and
+   * optimizer state.
+   */
+  public void putNetwork(NeuralNetwork neuralNetwork) {
+    double[] parameters = neuralNetwork.getParameters();
+    double[] gradients = neuralNetwork.getGradients();
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized to be checkpointed.");
+    }
+
+    List<Layer> layers = neuralNetwork.getLayers();
+    int offset = 0;
+    for (int i = 0; i < layers.size(); i++) {
+      int count = layers.get(i).getParameterCount();
+      if (count > 0) {
+        putArray("parameters/" + i, parameters, offset, count);
+        putArray("gradients/" + i, gradients, offset, count);
+      }
+      offset += count;
+    }
+
+    putLong("layers", layers.size());
+    putDouble("learningRate", neuralNetwork.getLearningRate());
+
+    Optimizer optimizer = neuralNetwork.getOptimizer();
+    double[][] state = (optimizer == null) ? new double[0][] : optimizer.getState();
+    putLong("optimizer", state.length);
+    for (int i = 0; i < state.length; i++) {
+      putArray("optimizer/" + i, state[i]);
+    }
+  }
+
+  /**
+   * Restores what {@link #putNetwork} kept into a network with the same layers.
+   */
+  public void restoreNetwork(NeuralNetwork neuralNetwork) {
+    double[] parameters = neuralNetwork.getParameters();
+    double[] gradients = neuralNetwork.getGradients();
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized to be restored.");
+    }
+
+    List<Layer> layers = neuralNetwork.getLayers();
+    if (getLong("layers") != layers.size()) {
+      throw new IllegalStateException(String.format(
+          "The checkpoint has %d layers, but the network has %d.",
+          getLong("layers"), layers.size()));
+    }
+
+    int offset = 0;
+    for (int i = 0; i < layers.size(); i++) {
+      int count = layers.get(i).getParameterCount();
+      if (count > 0) {
+        double[] layerParameters = getArray("parameters/" + i);
+        if (layerParameters.length != count) {
+          throw new IllegalStateException(String.format(
+              "The checkpoint has %d parameters for layer %d, but the network has %d.",
+              layerParameters.length, i, count));
+        }
+
+        System.arraycopy(layerParameters, 0, parameters, offset, count);
+        System.arraycopy(getArray("gradients/" + i), 0, gradients, offset, count);
+      }
+      offset += count;
+    }
+
+    neuralNetwork.setLearningRate(getDouble("learningRate"));
+
+    Optimizer optimizer = neuralNetwork.getOptimizer();
+    if (optimizer != null) {
+      double[][] state = new double[(int) getLong("optimizer")][];
+      for (int i = 0; i < state.length; i++) {
+        state[i] = getArray("optimizer/" + i);
+      }
+
+      if (state.length == 0) {
+        optimizer.reset();
+      } else {
+        optimizer.setState(state);
+      }
+    }
+
+    neuralNetwork.parametersChanged();
+  }
+
+  /**
+   * Whether a section holds the same value as the given one.
+   */
+  static boolean sameValue(Object a, Object b) {
+    if (a instanceof double[] && b instanceof double[]) {
+      return Arrays.equals((double[]) a, (double[]) b);
+    }
+    if (a instanceof int[] && b instanceof int[]) {
+      return Arrays.equals((int[]) a, (int[]) b);
+    }
+    if (a instanceof byte[] && b instanceof byte[]) {
+      return Arrays.equals((byte[]) a, (byte[]) b);
+    }
+
+    return a != null && a.equals(b);
+  }
+
+  private Object get(String name) {
+    Object value = sections.get(name);
+    if (value == null) {
+      throw new IllegalStateException("The checkpoint has no " + name + ".");
+    }
+
+    return value;
+  }
+}
@@ -0,0 +1,499 @@
+package com.jace.learner;
+
+import com.jace.util.Console;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Writes {@link Checkpoint}s to a directory on a background thread while training continues.
+ * <br>
+ * The training thread only copies its state into a checkpoint the writer owns, which costs about
+ * as much as one pass over the weights and allocates nothing once the writer has two checkpoints
+ * to alternate between. If the previous checkpoint is still being written, the new one is skipped
+ * rather than making training wait.
+ * <br>
+ * Every checkpoint goes to its own numbered file, written under a temporary name and then renamed,
+ * so a crash never leaves a partial checkpoint behind. When most of the state is unchanged since
+ * the last checkpoint, such as when only a few layers are being trained, only the changed
+ * sections are written, as a delta on top of the checkpoint before it. A full checkpoint is
+ * written at least every maxDeltas checkpoints, and the files before it are then deleted.
+ */
+public class CheckpointWriter implements AutoCloseable {
+  private static final int MAGIC = 0x504B434A;
+  private static final int FORMAT_VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final byte REMOVED = 0;
+  private static final byte LONG = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte DOUBLES = 3;
+  private static final byte INTS = 4;
+  private static final byte BYTES = 5;
+
+  private File directory;
+  private int maxDeltas = 8;
+
+  private ExecutorService executor;
+  private Future<?> pending;
+
+  // The checkpoint the training thread fills next, and the last one written, which deltas are
+  // relative to. Only one checkpoint is being written at a time, so two are enough.
+  private Checkpoint free = new Checkpoint();
+  private Checkpoint lastWritten;
+
+  private long sequence;
+  private int deltasSinceFull;
+  private volatile IOException failure;
+
+  private LongAdder written = new LongAdder();
+  private LongAdder deltas = new LongAdder();
+  private LongAdder skipped = new LongAdder();
+
+  private ByteBuffer buffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * Numbering continues after any checkpoints already in the directory, so a resumed run keeps
+   * writing to the same place.
+   */
+  public CheckpointWriter(File directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory.toPath());
+
+    List<File> files = listCheckpoints(directory);
+    sequence = files.isEmpty() ? 0 : sequenceOf(files.get(files.size() - 1));
+
+    executor = Executors.newSingleThreadExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "checkpoint-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * The number of delta checkpoints written before the next full one.
+   */
+  public void setMaxDeltas(int maxDeltas) {
+    this.maxDeltas = maxDeltas;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Lets capture fill a checkpoint and writes it in the background. Returns false, without calling
+   * capture, if the previous checkpoint is still being written.
+   */
+  public synchronized boolean checkpoint(Consumer<Checkpoint> capture) {
+    if (failure != null) {
+      throw new RuntimeException("Writing a checkpoint failed.", failure);
+    }
+
+    if (pending != null && !pending.isDone()) {
+      skipped.increment();
+      return false;
+    }
+
+    Checkpoint checkpoint = free;
+    free = null;
+    capture.accept(checkpoint);
+
+    pending = executor.submit(() -> write(checkpoint));
+    return true;
+  }
+
+  /**
+   * Waits for the checkpoint being written, if any.
+   */
+  public void flush() throws IOException {
+    Future<?> current;
+    synchronized (this) {
+      current = pending;
+    }
+
+    if (current != null) {
+      try {
+        current.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while writing a checkpoint.", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Writing a checkpoint failed.", e.getCause());
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public long getWritten() {
+    return written.sum();
+  }
+
+  public long getDeltas() {
+    return deltas.sum();
+  }
+
+  /**
+   * How many checkpoints were dropped because the previous one was still being written.
+   */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  private void write(Checkpoint checkpoint) {
+    try {
+      boolean full = lastWritten == null || deltasSinceFull >= maxDeltas
+          || changedFraction(checkpoint) > 0.5;
+
+      long number = sequence + 1;
+      File file = new File(directory,
+          String.format("checkpoint-%010d.%s", number, full ? "full" : "delta"));
+      writeFile(checkpoint, full ? null : lastWritten, file);
+
+      sequence = number;
+      written.increment();
+      if (full) {
+        deltasSinceFull = 0;
+        deleteBefore(number);
+      } else {
+        deltasSinceFull++;
+        deltas.increment();
+      }
+
+      synchronized (this) {
+        free = (lastWritten == null) ? new Checkpoint() : lastWritten;
+        lastWritten = checkpoint;
+      }
+    } catch (IOException e) {
+      Console.e("Could not write a checkpoint to %s: %s", directory, e.getMessage());
+      failure = e;
+
+      // Keep the last checkpoint that made it to disk as the reference for deltas
+      synchronized (this) {
+        free = checkpoint;
+      }
+    }
+  }
+
+  /**
+   * The fraction of the checkpoint's values that differ from the last checkpoint written.
+   */
+  private double changedFraction(Checkpoint checkpoint) {
+    Map<String, Object> previous = lastWritten.getSections();
+
+    long total = 0;
+    long changed = 0;
+    for (Map.Entry<String, Object> section : checkpoint.getSections().entrySet()) {
+      long size = sizeOf(section.getValue());
+      total += size;
+      if (!Checkpoint.sameValue(section.getValue(), previous.get(section.getKey()))) {
+        changed += size;
+      }
+    }
+
+    return (total == 0) ? 0 : (double) changed / total;
+  }
+
+  private static long sizeOf(Object value) {
+    if (value instanceof double[]) {
+      return 8L * ((double[]) value).length;
+    }
+    if (value instanceof int[]) {
+      return 4L * ((int[]) value).length;
+    }
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    }
+
+    return 8;
+  }
+
+  /**
+   * Writes every section, or with a base, only the sections that differ from it and the names of
+   * the sections it has that the checkpoint no longer does. Longs and doubles are always written.
+   */
+  private void writeFile(Checkpoint checkpoint, Checkpoint base, File file) throws IOException {
+    Map<String, Object> sections = checkpoint.getSections();
+
+    List<String> names = new ArrayList<>();
+    for (Map.Entry<String, Object> section : sections.entrySet()) {
+      Object value = section.getValue();
+      boolean scalar = value instanceof Long || value instanceof Double;
+      if (base == null || scalar
+          || !Checkpoint.sameValue(value, base.getSections().get(section.getKey()))) {
+        names.add(section.getKey());
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    if (base != null) {
+      for (String name : base.getSections().keySet()) {
+        if (!sections.containsKey(name)) {
+          removed.add(name);
+        }
+      }
+    }
+
+    File temporary = new File(directory, file.getName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      buffer.clear();
+      buffer.putInt(MAGIC);
+      buffer.putInt(FORMAT_VERSION);
+      buffer.putInt(names.size() + removed.size());
+
+      for (String name : removed) {
+        putName(channel, name);
+        reserve(channel, 1);
+        buffer.put(REMOVED);
+      }
+
+      for (String name : names) {
+        putName(channel, name);
+        putValue(channel, sections.get(name));
+      }
+
+      drain(channel);
+      channel.force(true);
+    }
+
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void putName(FileChannel channel, String name) throws IOException {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    reserve(channel, 4 + bytes.length);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  private void putValue(FileChannel channel, Object value) throws IOException {
+    if (value instanceof Long) {
+      reserve(channel, 9);
+      buffer.put(LONG);
+      buffer.putLong((Long) value);
+    } else if (value instanceof Double) {
+      reserve(channel, 9);
+      buffer.put(DOUBLE);
+      buffer.putDouble((Double) value);
+    } else if (value instanceof double[]) {
+      double[] values = (double[]) value;
+      reserve(channel, 5);
+      buffer.put(DOUBLES);
+      buffer.putInt(values.length);
+
+      for (int i = 0; i < values.length; ) {
+        reserve(channel, Double.BYTES);
+        int count = Math.min(values.length - i, buffer.remaining() / Double.BYTES);
+        buffer.asDoubleBuffer().put(values, i, count);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        i += count;
+      }
+    } else if (value instanceof int[]) {
+      int[] values = (int[]) value;
+      reserve(channel, 5);
+      buffer.put(INTS);
+      buffer.putInt(values.length);
+
+      for (int i = 0; i < values.length; ) {
+        reserve(channel, Integer.BYTES);
+        int count = Math.min(values.length - i, buffer.remaining() / Integer.BYTES);
+        buffer.asIntBuffer().put(values, i, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        i += count;
+      }
+    } else {
+      byte[] values = (byte[]) value;
+      reserve(channel, 5);
+      buffer.put(BYTES);
+      buffer.putInt(values.length);
+
+      for (int i = 0; i < values.length; ) {
+        reserve(channel, 1);
+        int count = Math.min(values.length - i, buffer.remaining());
+        buffer.put(values, i, count);
+        i += count;
+      }
+    }
+  }
+
+  /**
+   * Makes room for at least the given number of bytes, which must fit in the buffer.
+   */
+  private void reserve(FileChannel channel, int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain(channel);
+    }
+  }
+
+  private void drain(FileChannel channel) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void deleteBefore(long number) {
+    for (File file : listCheckpoints(directory)) {
+      if (sequenceOf(file) < number && !file.delete()) {
+        Console.w("Could not delete the old checkpoint %s", file);
+      }
+    }
+  }
+
+  /**
+   * Reads the most recent checkpoint in the directory: its last full checkpoint with every later
+   * delta applied. Returns null if the directory holds no checkpoint.
+   */
+  public static Checkpoint readLatest(File directory) throws IOException {
+    List<File> files = listCheckpoints(directory);
+
+    int first = -1;
+    for (int i = files.size() - 1; i >= 0; i--) {
+      if (files.get(i).getName().endsWith(".full")) {
+        first = i;
+        break;
+      }
+    }
+
+    if (first < 0) {
+      return null;
+    }
+
+    Checkpoint checkpoint = new Checkpoint();
+    for (File file : files.subList(first, files.size())) {
+      readFile(file, checkpoint);
+    }
+
+    return checkpoint;
+  }
+
+  private static void readFile(File file, Checkpoint checkpoint) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is larger than 2 GB.");
+      }
+
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (mapped.remaining() < 12 || mapped.getInt() != MAGIC) {
+        throw new IOException(file + " is not a checkpoint.");
+      }
+
+      int formatVersion = mapped.getInt();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IOException(String.format(
+            "%s has format version %d, but only version %d can be read.",
+            file, formatVersion, FORMAT_VERSION));
+      }
+
+      int sectionCount = mapped.getInt();
+      for (int i = 0; i < sectionCount; i++) {
+        byte[] name = new byte[mapped.getInt()];
+        mapped.get(name);
+        readSection(mapped, new String(name, StandardCharsets.UTF_8), checkpoint);
+      }
+    } catch (RuntimeException e) {
+      throw new IOException(file + " is truncated or corrupt.", e);
+    }
+  }
+
+  private static void readSection(ByteBuffer mapped, String name, Checkpoint checkpoint) {
+    byte type = mapped.get();
+    switch (type) {
+      case REMOVED:
+        checkpoint.remove(name);
+        break;
+
+      case LONG:
+        checkpoint.putLong(name, mapped.getLong());
+        break;
+
+      case DOUBLE:
+        checkpoint.putDouble(name, mapped.getDouble());
+        break;
+
+      case DOUBLES: {
+        double[] values = new double[mapped.getInt()];
+        DoubleBuffer doubles = mapped.asDoubleBuffer();
+        doubles.get(values);
+        mapped.position(mapped.position() + values.length * Double.BYTES);
+        checkpoint.putSection(name, values);
+        break;
+      }
+
+      case INTS: {
+        int[] values = new int[mapped.getInt()];
+        IntBuffer ints = mapped.asIntBuffer();
+        ints.get(values);
+        mapped.position(mapped.position() + values.length * Integer.BYTES);
+        checkpoint.putSection(name, values);
+        break;
+      }
+
+      case BYTES: {
+        byte[] values = new byte[mapped.getInt()];
+        mapped.get(values);
+        checkpoint.putSection(name, values);
+        break;
+      }
+
+      default:
+        throw new IllegalStateException("Unknown section type " + type);
+    }
+  }
+
+  /**
+   * The finished checkpoint files in the directory, oldest first.
+   */
+  private static List<File> listCheckpoints(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith("checkpoint-")
+        && (name.endsWith(".full") || name.endsWith(".delta")));
+    if (files == null) {
+      return new ArrayList<>();
+    }
+
+    Arrays.sort(files, (a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  private static long sequenceOf(File file) {
+    String name = file.getName();
+    return Long.parseLong(name.substring("checkpoint-".length(), name.indexOf('.')));
+  }
+}
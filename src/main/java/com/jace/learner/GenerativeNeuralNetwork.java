@@ -1,14 +1,52 @@
 package com.jace.learner;
 
 import com.jace.Main;
+import com.jace.layer.BatchLayer;
 import com.jace.layer.Layer;
 import com.jace.layer.LinearLayer;
 import com.jace.math.Matrix;
 import com.jace.math.Vector;
+import com.jace.optimizer.LearningRateSchedule;
+import com.jace.optimizer.Optimizer;
+import com.jace.optimizer.StepSchedule;
 import com.jace.util.Console;
+import com.jace.util.FileManager;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 public class GenerativeNeuralNetwork extends NeuralNetwork {
   private static int MAX_REPS = 10000000;
+  private static final int STATE_LOCK_STRIPES = 64;
+
+  public enum TrainingMode {
+    /**
+     * One random pixel of one random image per step, on the calling thread.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Mini-batches of random (image, pixel) pairs, trained on several threads at once.
+     */
+    PARALLEL,
+
+    /**
+     * Blocks of random pixels from one image per step, trained on several threads at once. The
+     * latent-state gradient is summed over the block and applied to the image's state once.
+     */
+    PIXEL_BLOCK
+  }
 
   private int trainingRows;
 
@@ -23,6 +61,21 @@ public class GenerativeNeuralNetwork extends NeuralNetwork {
 
   private int trainingRow = 0;
 
+  private LearningRateSchedule learningRateSchedule = new StepSchedule(1, 0.75);
+
+  private TrainingMode trainingMode = TrainingMode.SEQUENTIAL;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int batchSize = 16;
+  private int epochs = 10;
+  private int samplesPerEpoch = MAX_REPS;
+
+  private Random random = Main.RANDOM;
+  private CheckpointWriter checkpointWriter;
+
+  private Object[] stateLocks;
+
+  private List<NeuralNetwork> renderReplicas;
+
   public GenerativeNeuralNetwork(int width, int height, int degreesOfFreedom, int trainingRows) {
     super();
 
@@ -40,6 +93,66 @@ public class GenerativeNeuralNetwork extends NeuralNetwork {
     return estimatedState;
   }
 
+  /**
+   * Sets the learning rate schedule of {@link #trainUnsupervised}, stepped once per epoch.
+   */
+  public void setLearningRateSchedule(LearningRateSchedule learningRateSchedule) {
+    this.learningRateSchedule = learningRateSchedule;
+  }
+
+  public void setTrainingMode(TrainingMode trainingMode) {
+    this.trainingMode = trainingMode;
+  }
+
+  /**
+   * The number of worker threads used by {@link TrainingMode#PARALLEL} and by rendering.
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("At least one thread is required.");
+    }
+
+    this.threads = threads;
+  }
+
+  /**
+   * The number of (image, pixel) pairs in each mini-batch of {@link TrainingMode#PARALLEL}, or of
+   * pixels in each block of {@link TrainingMode#PIXEL_BLOCK}.
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be positive.");
+    }
+
+    this.batchSize = batchSize;
+  }
+
+  public void setEpochs(int epochs) {
+    this.epochs = epochs;
+  }
+
+  /**
+   * The number of pixels trained on per epoch, across all threads.
+   */
+  public void setSamplesPerEpoch(int samplesPerEpoch) {
+    this.samplesPerEpoch = samplesPerEpoch;
+  }
+
+  /**
+   * The random number generator {@link #trainUnsupervised} draws its samples from.
+   */
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Makes {@link #trainUnsupervised} write a checkpoint at the end of every epoch, which
+   * {@link #resumeUnsupervised} can continue from.
+   */
+  public void setCheckpointWriter(CheckpointWriter checkpointWriter) {
+    this.checkpointWriter = checkpointWriter;
+  }
+
   @Override
   public void addLayer(Layer layer) {
     if (getLayers().isEmpty()) {
@@ -52,47 +165,417 @@ public class GenerativeNeuralNetwork extends NeuralNetwork {
 
   public void trainUnsupervised(Matrix observationMatrix) {
     estimatedState.fill(0);
+    learningRateSchedule.reset();
+    trainUnsupervised(observationMatrix, 0, getLearningRate());
+  }
+
+  /**
+   * Continues {@link #trainUnsupervised} from the latest checkpoint in the directory, with the
+   * weights, latent states and random number generator it had then. In
+   * {@link TrainingMode#SEQUENTIAL} mode the run continues exactly as if it had never stopped. The
+   * parallel modes are not deterministic to begin with, so they only continue from the same state.
+   */
+  public void resumeUnsupervised(Matrix observationMatrix, File directory) throws IOException {
+    Checkpoint checkpoint = CheckpointWriter.readLatest(directory);
+    if (checkpoint == null) {
+      throw new FileNotFoundException("There is no checkpoint in " + directory);
+    }
+
+    checkpoint.restoreNetwork(this);
+    checkpoint.restoreMatrix("estimatedState", estimatedState);
+    learningRateSchedule.setState(checkpoint.getArray("schedule"));
+    random = checkpoint.getRandom("random");
+
+    int epoch = (int) checkpoint.getLong("epoch");
+    Console.i("Resuming at epoch %d", epoch);
+    trainUnsupervised(observationMatrix, epoch, checkpoint.getDouble("baseLearningRate"));
+  }
+
+  private void trainUnsupervised(
+      Matrix observationMatrix, int firstEpoch, double baseLearningRate) {
+    if (trainingMode == TrainingMode.SEQUENTIAL) {
+      for (int j = firstEpoch; j < epochs; j++) {
+        setLearningRate(learningRateSchedule.learningRate(j, baseLearningRate));
+        trainEpochSequentially(observationMatrix, j);
+        checkpoint(j + 1, baseLearningRate);
+      }
+      flushCheckpoints();
+      return;
+    }
+
+    if (getParameters() == null) {
+      throw new IllegalStateException("The network must be initialized before training.");
+    }
 
+    if (!supportsBatches()) {
+      throw new IllegalStateException(
+          "Training in mode " + trainingMode + " needs every layer to support batches.");
+    }
+
+    stateLocks = new Object[STATE_LOCK_STRIPES];
+    for (int i = 0; i < stateLocks.length; i++) {
+      stateLocks[i] = new Object();
+    }
+
+    List<BatchWorker> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(new BatchWorker(observationMatrix));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int j = firstEpoch; j < epochs; j++) {
+        setLearningRate(learningRateSchedule.learningRate(j, baseLearningRate));
+        trainEpochInParallel(workers, executor, j);
+        checkpoint(j + 1, baseLearningRate);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    flushCheckpoints();
+  }
+
+  private void checkpoint(int epoch, double baseLearningRate) {
+    if (checkpointWriter == null) {
+      return;
+    }
+
+    checkpointWriter.checkpoint((checkpoint) -> {
+      checkpoint.putNetwork(this);
+      checkpoint.putMatrix("estimatedState", estimatedState);
+      checkpoint.putArray("schedule", learningRateSchedule.getState());
+      checkpoint.putRandom("random", random);
+      checkpoint.putLong("epoch", epoch);
+      checkpoint.putDouble("baseLearningRate", baseLearningRate);
+    });
+  }
+
+  private void flushCheckpoints() {
+    if (checkpointWriter == null) {
+      return;
+    }
+
+    try {
+      checkpointWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeException("The last checkpoint could not be written.", e);
+    }
+  }
+
+  private void trainEpochSequentially(Matrix observationMatrix, int epoch) {
     int channels =  observationMatrix.cols() / (width * height);
     Vector feature = new Vector(2 + degreesOfFreedom);
     Vector label = new Vector(channels);
 
-    for (int j = 0; j < 10; j++) {
-      int outerReps = MAX_REPS / 1000;
-      int innerReps = MAX_REPS / outerReps;
+    int outerReps = Math.max(1, samplesPerEpoch / 1000);
+    int innerReps = samplesPerEpoch / outerReps;
 
-      for (int outer = 0; outer < outerReps; outer++) {
-        Console.dp("Training epoch " + j, (double) outer / outerReps * 100);
+    for (int outer = 0; outer < outerReps; outer++) {
+      Console.dp("Training epoch " + epoch, (double) outer / outerReps * 100);
 
-        for (int inner = 0; inner < innerReps; inner++) {
-          trainingRow = Main.RANDOM.nextInt(observationMatrix.rows());
+      for (int inner = 0; inner < innerReps; inner++) {
+        trainingRow = random.nextInt(observationMatrix.rows());
 
-          int p = Main.RANDOM.nextInt(width);
-          int q = Main.RANDOM.nextInt(height);
+        int p = random.nextInt(width);
+        int q = random.nextInt(height);
 
-          Vector v_feature = estimatedState.row(trainingRow);
-          feature.set(0, p / (double) width);
-          feature.set(1, q / (double) height);
+        Vector v_feature = estimatedState.row(trainingRow);
+        feature.set(0, p / (double) width);
+        feature.set(1, q / (double) height);
 
-          for (int l = 0; l < degreesOfFreedom; l++) {
-            feature.set(2 + l, v_feature.get(l));
+        for (int l = 0; l < degreesOfFreedom; l++) {
+          feature.set(2 + l, v_feature.get(l));
+        }
+
+        Vector observationRow = observationMatrix.row(trainingRow);
+        int s = channels * (width * q + p);
+        for (int l = 0; l < channels; l++) {
+          label.set(l, observationRow.get(s + l));
+        }
+
+        predict(feature);
+        backPropagate(label);
+        updateGradient(feature);
+        updateWeights();
+      }
+    }
+  }
+
+  private void trainEpochInParallel(
+      List<BatchWorker> workers, ExecutorService executor, int epoch) {
+    int batchesPerWorker = Math.max(1, samplesPerEpoch / batchSize / workers.size());
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (BatchWorker worker : workers) {
+      worker.prepareEpoch(new Random(random.nextLong()), getLearningRate());
+      futures.add(executor.submit(() -> worker.train(batchesPerWorker)));
+    }
+
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Training was interrupted.", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("A training thread failed.", e.getCause());
+    }
+
+    Console.i("Finished training epoch %d", epoch);
+  }
+
+  private Object stateLock(int row) {
+    return stateLocks[row % stateLocks.length];
+  }
+
+  /**
+   * Trains one thread's mini-batches on a replica of this network. The replica shares the weights,
+   * which are updated under a lock; reads of the weights do not lock. Latent-state rows are read
+   * and updated under a lock striped by row, so two threads never update the same row at once.
+   */
+  private class BatchWorker {
+    private Matrix observationMatrix;
+    private int channels;
+
+    private NeuralNetwork replica;
+    private Random random;
+
+    private Matrix features;
+    private Matrix labels;
+    private int[] rows;
+
+    BatchWorker(Matrix observationMatrix) {
+      this.observationMatrix = observationMatrix;
+      this.channels = observationMatrix.cols() / (width * height);
+
+      this.replica = replica();
+      this.features = new Matrix(batchSize, 2 + degreesOfFreedom);
+      this.labels = new Matrix(batchSize, channels);
+      this.rows = new int[batchSize];
+    }
+
+    void prepareEpoch(Random random, double learningRate) {
+      this.random = random;
+      replica.setLearningRate(learningRate);
+    }
+
+    void train(int batches) {
+      if (trainingMode == TrainingMode.PIXEL_BLOCK) {
+        trainBlocks(batches);
+        return;
+      }
+
+      for (int batch = 0; batch < batches; batch++) {
+        for (int i = 0; i < batchSize; i++) {
+          int row = random.nextInt(observationMatrix.rows());
+          sample(i, row, random.nextInt(width), random.nextInt(height));
+        }
+
+        Matrix inputBlame = trainBatch();
+
+        double learningRate = replica.getLearningRate();
+        for (int i = 0; i < batchSize; i++) {
+          synchronized (stateLock(rows[i])) {
+            Vector state = estimatedState.row(rows[i]);
+            for (int l = 0; l < degreesOfFreedom; l++) {
+              state.set(l, state.get(l) + learningRate * inputBlame.get(i, 2 + l));
+            }
           }
+        }
+      }
+    }
 
-          Vector observationRow = observationMatrix.row(trainingRow);
-          int s = channels * (width * q + p);
-          for (int l = 0; l < channels; l++) {
-            label.set(l, observationRow.get(s + l));
+    void trainBlocks(int blocks) {
+      Vector stateGradient = new Vector(degreesOfFreedom);
+
+      for (int block = 0; block < blocks; block++) {
+        int row = random.nextInt(observationMatrix.rows());
+        for (int i = 0; i < batchSize; i++) {
+          sample(i, row, random.nextInt(width), random.nextInt(height));
+        }
+
+        Matrix inputBlame = trainBatch();
+
+        stateGradient.fill(0);
+        for (int i = 0; i < batchSize; i++) {
+          Vector blameRow = inputBlame.row(i);
+          for (int l = 0; l < degreesOfFreedom; l++) {
+            stateGradient.set(l, stateGradient.get(l) + blameRow.get(2 + l));
           }
+        }
 
-          predict(feature);
-          backPropagate(label);
-          updateGradient(feature);
-          updateWeights();
+        synchronized (stateLock(row)) {
+          estimatedState.row(row).addScaled(stateGradient, replica.getLearningRate());
         }
       }
+    }
+
+    /**
+     * Fills row i of the batch with pixel (p, q) of image row.
+     */
+    void sample(int i, int row, int p, int q) {
+      rows[i] = row;
+
+      Vector feature = features.row(i);
+      feature.set(0, p / (double) width);
+      feature.set(1, q / (double) height);
+
+      synchronized (stateLock(row)) {
+        Vector state = estimatedState.row(row);
+        for (int l = 0; l < degreesOfFreedom; l++) {
+          feature.set(2 + l, state.get(l));
+        }
+      }
+
+      Vector observationRow = observationMatrix.row(row);
+      Vector label = labels.row(i);
+      int s = channels * (width * q + p);
+      for (int l = 0; l < channels; l++) {
+        label.set(l, observationRow.get(s + l));
+      }
+    }
+
+    /**
+     * Runs the batch forward and backward, applies the weight update, and returns the blame of
+     * the inputs, whose state columns point the latent states downhill.
+     */
+    Matrix trainBatch() {
+      replica.predictBatch(features);
+      Matrix inputBlame = replica.backPropagateBatch(labels);
+      replica.updateGradientBatch(features);
+
+      synchronized (replica.getParameters()) {
+        // Every replica steps this network's optimizer, so its state covers all their updates
+        Optimizer optimizer = getOptimizer();
+        if (optimizer != null) {
+          optimizer.step(
+              replica.getParameters(), replica.getGradients(), replica.getLearningRate());
+          replica.parametersChanged();
+        } else {
+          replica.updateWeights();
+        }
+      }
+
+      return inputBlame;
+    }
+  }
+
+  /**
+   * Renders the image this network generates for the given latent state, writing every pixel
+   * straight into the raster of a new RGB image.
+   */
+  public BufferedImage renderImage(Vector state) {
+    Matrix pixels = renderPixels(state);
+    if (pixels.cols() != 3) {
+      throw new IllegalStateException("Only networks with three output channels render to RGB.");
+    }
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
-      setLearningRate(getLearningRate() * 0.75);
+    for (int i = 0; i < raster.length; i++) {
+      Vector color = pixels.row(i);
+      raster[i] = FileManager.getUnitPixel(color.get(0), color.get(1), color.get(2));
     }
+
+    return image;
+  }
+
+  /**
+   * Predicts every pixel of the image for the given latent state, and returns one row per pixel,
+   * in row-major order (row q * width + p holds pixel (p, q)).
+   * <br>
+   * Only the two coordinate inputs change from pixel to pixel, so the state's contribution to the
+   * first layer is computed once. The pixels then go through the remaining layers as batches, one
+   * band of image rows per thread.
+   */
+  public Matrix renderPixels(Vector state) {
+    if (state.size() != degreesOfFreedom) {
+      throw new IllegalArgumentException("The state must have one value per degree of freedom.");
+    }
+
+    if (!(getLayers().get(0) instanceof LinearLayer)) {
+      throw new IllegalStateException(
+          "Generative neural networks must have a LinearLayer for the first layer.");
+    }
+
+    if (!supportsBatches()) {
+      throw new IllegalStateException("Rendering needs every layer to support batches.");
+    }
+
+    LinearLayer firstLayer = (LinearLayer) getLayers().get(0);
+    Matrix weights = firstLayer.getWeights();
+
+    Vector constant = firstLayer.getBias().copy();
+    for (int o = 0; o < constant.size(); o++) {
+      Vector weightsRow = weights.row(o);
+      double sum = constant.get(o);
+      for (int l = 0; l < degreesOfFreedom; l++) {
+        sum += weightsRow.get(2 + l) * state.get(l);
+      }
+      constant.set(o, sum);
+    }
+
+    List<NeuralNetwork> replicas = getRenderReplicas();
+    int channels = getLayers().get(getLayers().size() - 1).getOutputs();
+    Matrix pixels = new Matrix(width * height, channels);
+    int bands = replicas.size();
+
+    IntStream.range(0, bands).parallel().forEach((band) -> {
+      int firstRow = height * band / bands;
+      int lastRow = height * (band + 1) / bands;
+      if (firstRow == lastRow) {
+        return;
+      }
+
+      NeuralNetwork replica = replicas.get(band);
+      Matrix activation = new Matrix((lastRow - firstRow) * width, constant.size());
+
+      for (int q = firstRow; q < lastRow; q++) {
+        for (int p = 0; p < width; p++) {
+          Vector row = activation.row((q - firstRow) * width + p);
+          double x = p / (double) width;
+          double y = q / (double) height;
+
+          for (int o = 0; o < constant.size(); o++) {
+            row.set(o, constant.get(o) + weights.get(o, 0) * x + weights.get(o, 1) * y);
+          }
+        }
+      }
+
+      List<Layer> layers = replica.getLayers();
+      for (int i = 1; i < layers.size(); i++) {
+        activation = ((BatchLayer) layers.get(i)).activateBatch(activation);
+      }
+
+      for (int i = 0; i < activation.rows(); i++) {
+        pixels.setRow(firstRow * width + i, activation.row(i));
+      }
+    });
+
+    return pixels;
+  }
+
+  /**
+   * One replica per rendering thread, rebuilt when the thread count or parameter buffer changes.
+   */
+  private List<NeuralNetwork> getRenderReplicas() {
+    if (getParameters() == null) {
+      throw new IllegalStateException("The network must be initialized before rendering.");
+    }
+
+    int bands = Math.min(threads, height);
+    if (renderReplicas == null
+        || renderReplicas.size() != bands
+        || renderReplicas.get(0).getParameters() != getParameters()) {
+      renderReplicas = new ArrayList<>();
+      for (int i = 0; i < bands; i++) {
+        renderReplicas.add(replica());
+      }
+    }
+
+    return renderReplicas;
   }
 
   @Override
@@ -0,0 +1,61 @@
+package com.jace.learner;
+
+import com.jace.layer.Layer;
+import com.jace.math.Vector;
+
+import java.util.List;
+
+/**
+ * Scratch buffers for one prediction at a time through a {@link NeuralNetwork}, kept apart from
+ * the weights so that many threads can share one network, each with its own context. A context
+ * must not be used by two threads at once.
+ * <br>
+ * Inference never needs an activation again once the next layer has consumed it, so the layers
+ * alternate between two buffers sized for the largest layer instead of keeping one each.
+ */
+public class InferenceContext {
+  private Vector[] buffers;
+  private Vector[] activations;
+
+  InferenceContext(List<Layer> layers) {
+    int largestLayer = 0;
+    for (Layer layer : layers) {
+      largestLayer = Math.max(largestLayer, layer.getOutputs());
+    }
+
+    buffers = new Vector[]{new Vector(largestLayer), new Vector(largestLayer)};
+
+    activations = new Vector[layers.size()];
+    for (int i = 0; i < activations.length; i++) {
+      activations[i] = new Vector(buffers[i % 2], 0, layers.get(i).getOutputs());
+    }
+  }
+
+  /**
+   * The output buffer of layer i, which is a view into one of the two shared buffers.
+   */
+  Vector getActivation(int i) {
+    return activations[i];
+  }
+
+  /**
+   * The number of values this context holds.
+   */
+  public int getCapacity() {
+    return buffers[0].size() + buffers[1].size();
+  }
+
+  boolean fits(List<Layer> layers) {
+    if (layers.size() != activations.length) {
+      return false;
+    }
+
+    for (int i = 0; i < activations.length; i++) {
+      if (layers.get(i).getOutputs() != activations[i].size()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,54 @@
+package com.jace.learner;
+
+import com.jace.math.Vector;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lets any number of threads predict with one {@link NeuralNetwork} at once. Each call borrows an
+ * {@link InferenceContext}, creating one only when every existing context is in use.
+ */
+public class InferenceContextPool implements SupervisedLearner {
+  private NeuralNetwork neuralNetwork;
+  private ConcurrentLinkedQueue<InferenceContext> contexts = new ConcurrentLinkedQueue<>();
+
+  public InferenceContextPool(NeuralNetwork neuralNetwork) {
+    this.neuralNetwork = neuralNetwork;
+  }
+
+  public NeuralNetwork getNeuralNetwork() {
+    return neuralNetwork;
+  }
+
+  public InferenceContext acquire() {
+    InferenceContext context = contexts.poll();
+    return (context != null) ? context : neuralNetwork.createInferenceContext();
+  }
+
+  public void release(InferenceContext context) {
+    contexts.offer(context);
+  }
+
+  @Override
+  public String name() {
+    return neuralNetwork.name();
+  }
+
+  /**
+   * Thread-safe. Returns a new vector, which the caller owns.
+   */
+  @Override
+  public Vector predict(Vector in) {
+    InferenceContext context = acquire();
+    try {
+      return neuralNetwork.predict(context, in).copy();
+    } finally {
+      release(context);
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return neuralNetwork.isValid();
+  }
+}
@@ -0,0 +1,286 @@
+package com.jace.learner;
+
+import com.jace.layer.Assignment5ActivationLayer;
+import com.jace.layer.Assignment5LinearLayer;
+import com.jace.layer.ConnectedLayer;
+import com.jace.layer.ConvolutionLayer;
+import com.jace.layer.Layer;
+import com.jace.layer.LeakyRectifierLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.MaxPooling2DLayer;
+import com.jace.layer.TanhLayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves and loads a {@link NeuralNetwork} as one binary file: a header describing the topology,
+ * followed by every parameter in the order of {@link NeuralNetwork#getParameters()}.
+ * <br>
+ * Everything is little-endian. The header holds the magic number, the format version, the offset
+ * and count of the parameters, the learning rate and momentum, and for each layer its type name,
+ * its dimensions, and its regularization type and amount. The parameters start at the next
+ * multiple of 64 bytes after the header, so they can be read straight out of a memory-mapped file.
+ */
+public class ModelFile {
+  /**
+   * "JNNM" in little-endian byte order.
+   */
+  public static final int MAGIC = 0x4D4E4E4A;
+  public static final int FORMAT_VERSION = 2;
+
+  private static final int ALIGNMENT = 64;
+  private static final int WRITE_CHUNK = 1 << 16;
+
+  // A mapping holds at most 2 GB, so larger parameter blocks are read through several
+  private static final int MAP_CHUNK_DOUBLES = 1 << 27;
+
+  public static void save(NeuralNetwork neuralNetwork, File file) throws IOException {
+    double[] parameters = neuralNetwork.getParameters();
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized before it is saved.");
+    }
+
+    ByteBuffer layers = encodeLayers(neuralNetwork.getLayers());
+
+    int headerSize = 48 + layers.remaining();
+    long parameterOffset = (headerSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+    ByteBuffer header = ByteBuffer.allocate((int) parameterOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putLong(parameterOffset);
+    header.putLong(parameters.length);
+    header.putDouble(neuralNetwork.getLearningRate());
+    header.putDouble(neuralNetwork.getMomentum());
+    header.putInt(neuralNetwork.getLayers().size());
+    header.putInt(0);
+    header.put(layers);
+    header.position(0);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header);
+
+      ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+      DoubleBuffer doubles = chunk.asDoubleBuffer();
+      for (int i = 0; i < parameters.length; i += doubles.capacity()) {
+        int count = Math.min(doubles.capacity(), parameters.length - i);
+        doubles.clear();
+        doubles.put(parameters, i, count);
+
+        chunk.clear();
+        chunk.limit(count * Double.BYTES);
+        writeFully(channel, chunk);
+      }
+    }
+  }
+
+  /**
+   * Builds the network described by the file, with its saved weights. The file is memory-mapped
+   * and its parameter block copied into the network's buffer in bulk transfers.
+   */
+  public static NeuralNetwork load(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() < 48) {
+        throw new IOException(file + " is not a model file.");
+      }
+
+      // The header, which is never more than the offset of the parameters
+      MappedByteBuffer mapped = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+      mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (mapped.getInt() != MAGIC) {
+        throw new IOException(file + " is not a model file.");
+      }
+
+      int formatVersion = mapped.getInt();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IOException(String.format(
+            "%s has format version %d, but only version %d can be read.",
+            file, formatVersion, FORMAT_VERSION));
+      }
+
+      long parameterOffset = mapped.getLong();
+      long parameterCount = mapped.getLong();
+      if (parameterOffset % ALIGNMENT != 0 || parameterOffset > Integer.MAX_VALUE
+          || parameterOffset + parameterCount * Double.BYTES > channel.size()) {
+        throw new IOException(file + " is truncated or corrupt.");
+      }
+
+      NeuralNetwork neuralNetwork = new NeuralNetwork();
+      neuralNetwork.setLearningRate(mapped.getDouble());
+      neuralNetwork.setMomentum(mapped.getDouble());
+
+      int layerCount = mapped.getInt();
+      mapped.getInt();
+      for (int i = 0; i < layerCount; i++) {
+        neuralNetwork.addLayer(decodeLayer(mapped));
+      }
+
+      if (neuralNetwork.getParameterCount() != parameterCount) {
+        throw new IOException(String.format("%s holds %d parameters, but its layers need %d.",
+            file, parameterCount, neuralNetwork.getParameterCount()));
+      }
+
+      neuralNetwork.initialize();
+
+      double[] parameters = neuralNetwork.getParameters();
+      for (int i = 0; i < parameters.length; i += MAP_CHUNK_DOUBLES) {
+        int count = Math.min(MAP_CHUNK_DOUBLES, parameters.length - i);
+        MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY,
+            parameterOffset + (long) i * Double.BYTES, (long) count * Double.BYTES);
+        block.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(parameters, i, count);
+      }
+      neuralNetwork.parametersChanged();
+
+      return neuralNetwork;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static ByteBuffer encodeLayers(List<Layer> layers) {
+    List<byte[]> names = new ArrayList<>();
+    List<int[][]> dimensions = new ArrayList<>();
+
+    int size = 0;
+    for (Layer layer : layers) {
+      byte[] name = layer.getLayerType().name().getBytes(StandardCharsets.US_ASCII);
+      int[][] layerDimensions = dimensionsOf(layer);
+
+      names.add(name);
+      dimensions.add(layerDimensions);
+
+      size += 4 + name.length + 4 + 4 + 8;
+      for (int[] group : layerDimensions) {
+        size += 4 + 4 * group.length;
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < layers.size(); i++) {
+      buffer.putInt(names.get(i).length);
+      buffer.put(names.get(i));
+
+      buffer.putInt(dimensions.get(i).length);
+      for (int[] group : dimensions.get(i)) {
+        buffer.putInt(group.length);
+        for (int value : group) {
+          buffer.putInt(value);
+        }
+      }
+
+      ConnectedLayer.RegularizationType regularizationType = ConnectedLayer.RegularizationType.NONE;
+      double regularizationAmount = 0;
+      if (layers.get(i) instanceof ConnectedLayer) {
+        ConnectedLayer<?, ?> connectedLayer = (ConnectedLayer<?, ?>) layers.get(i);
+        regularizationType = connectedLayer.getRegularizationType();
+        regularizationAmount = connectedLayer.getRegularizationAmount();
+      }
+      buffer.putInt(regularizationType.ordinal());
+      buffer.putDouble(regularizationAmount);
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * The constructor arguments of each layer type.
+   */
+  private static int[][] dimensionsOf(Layer layer) {
+    switch (layer.getLayerType()) {
+      case LINEAR:
+        return new int[][]{{layer.getInputs(), layer.getOutputs()}};
+      case TANH:
+      case LEAKY_RECTIFIER:
+        return new int[][]{{layer.getInputs()}};
+      case CONVOLUTION:
+        ConvolutionLayer convolution = (ConvolutionLayer) layer;
+        return new int[][]{
+            convolution.getInputDimensions(),
+            convolution.getFilterDimensions(),
+            convolution.getOutputDimensions()};
+      case MAX_POOLING_2D:
+        return new int[][]{((MaxPooling2DLayer) layer).getInputDimensions()};
+      case ASSIGNMENT_5:
+      case ASSIGNMENT_5_ACTIVATION:
+        return new int[0][];
+      default:
+        throw new IllegalArgumentException("Cannot save " + layer.getLayerType() + " layers.");
+    }
+  }
+
+  private static Layer decodeLayer(ByteBuffer buffer) throws IOException {
+    byte[] name = new byte[buffer.getInt()];
+    buffer.get(name);
+
+    Layer.LayerType layerType;
+    try {
+      layerType = Layer.LayerType.valueOf(new String(name, StandardCharsets.US_ASCII));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unknown layer type " + new String(name, StandardCharsets.US_ASCII));
+    }
+
+    int[][] dimensions = new int[buffer.getInt()][];
+    for (int i = 0; i < dimensions.length; i++) {
+      dimensions[i] = new int[buffer.getInt()];
+      for (int j = 0; j < dimensions[i].length; j++) {
+        dimensions[i][j] = buffer.getInt();
+      }
+    }
+
+    ConnectedLayer.RegularizationType[] regularizationTypes =
+        ConnectedLayer.RegularizationType.values();
+    int regularizationType = buffer.getInt();
+    double regularizationAmount = buffer.getDouble();
+    if (regularizationType < 0 || regularizationType >= regularizationTypes.length) {
+      throw new IOException("Unknown regularization type " + regularizationType);
+    }
+
+    Layer layer = newLayer(layerType, dimensions);
+    if (layer instanceof ConnectedLayer) {
+      ConnectedLayer<?, ?> connectedLayer = (ConnectedLayer<?, ?>) layer;
+      connectedLayer.setRegularizationType(regularizationTypes[regularizationType]);
+      connectedLayer.setRegularizationAmount(regularizationAmount);
+    }
+    return layer;
+  }
+
+  private static Layer newLayer(Layer.LayerType layerType, int[][] dimensions)
+      throws IOException {
+    switch (layerType) {
+      case LINEAR:
+        return new LinearLayer(dimensions[0][0], dimensions[0][1]);
+      case TANH:
+        return new TanhLayer(dimensions[0][0]);
+      case LEAKY_RECTIFIER:
+        return new LeakyRectifierLayer(dimensions[0][0]);
+      case CONVOLUTION:
+        return new ConvolutionLayer(dimensions[0], dimensions[1], dimensions[2]);
+      case MAX_POOLING_2D:
+        return new MaxPooling2DLayer(dimensions[0]);
+      case ASSIGNMENT_5:
+        return new Assignment5LinearLayer();
+      case ASSIGNMENT_5_ACTIVATION:
+        return new Assignment5ActivationLayer();
+      default:
+        throw new IOException("Cannot load " + layerType + " layers.");
+    }
+  }
+}
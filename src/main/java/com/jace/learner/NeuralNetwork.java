@@ -1,10 +1,17 @@
 package com.jace.learner;
 
+import com.jace.layer.BatchLayer;
+import com.jace.layer.ConnectedLayer;
 import com.jace.layer.Layer;
+import com.jace.math.Matrix;
 import com.jace.math.Vector;
+import com.jace.optimizer.Optimizer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class NeuralNetwork implements SupervisedLearner {
   private List<Layer> layers;
@@ -12,6 +19,19 @@ public class NeuralNetwork implements SupervisedLearner {
   private double momentum;
   private double learningRate;
 
+  private Optimizer optimizer;
+
+  private InferenceContext inferenceContext;
+
+  private double[] parameters;
+  private double[] gradients;
+
+  // Shared with replicas, which write the same parameters
+  private AtomicLong parameterVersion = new AtomicLong();
+
+  private AtomicReference<WeightSnapshot> publishedWeights = new AtomicReference<>();
+  private ConcurrentLinkedQueue<WeightSnapshot> retiredSnapshots = new ConcurrentLinkedQueue<>();
+
   public NeuralNetwork() {
     this.layers = new ArrayList<>();
   }
@@ -23,9 +43,125 @@ public class NeuralNetwork implements SupervisedLearner {
     newNeuralNetwork.setMomentum(momentum);
     newNeuralNetwork.setLearningRate(learningRate);
 
+    if (optimizer != null) {
+      newNeuralNetwork.setOptimizer(optimizer.copy());
+    }
+
     return newNeuralNetwork;
   }
 
+  /**
+   * Returns a network with its own copy of every layer, and so its own activations and gradient
+   * buffer, whose weights are views into this network's parameter buffer. Replicas let several
+   * threads run examples through the same weights at once.
+   */
+  public NeuralNetwork replica() {
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized before it is replicated.");
+    }
+
+    return replicaOver(parameters);
+  }
+
+  /**
+   * Returns a replica whose weights are views into the given buffer instead of this network's.
+   */
+  private NeuralNetwork replicaOver(double[] parameterBuffer) {
+    NeuralNetwork replica = new NeuralNetwork();
+    replica.setMomentum(momentum);
+    replica.setLearningRate(learningRate);
+
+    replica.parameters = parameterBuffer;
+    replica.gradients = new double[parameterBuffer.length];
+    replica.parameterVersion = parameterVersion;
+
+    Vector parameterVector = new Vector(replica.parameters);
+    Vector gradientVector = new Vector(replica.gradients);
+
+    int offset = 0;
+    for (Layer layer : layers) {
+      Layer copy = layer.copy();
+      if (copy instanceof ConnectedLayer) {
+        ConnectedLayer<?, ?> connectedCopy = (ConnectedLayer<?, ?>) copy;
+        ConnectedLayer<?, ?> connectedLayer = (ConnectedLayer<?, ?>) layer;
+        connectedCopy.bindParameters(parameterVector, gradientVector, offset);
+        connectedCopy.setRegularizationType(connectedLayer.getRegularizationType());
+        connectedCopy.setRegularizationAmount(connectedLayer.getRegularizationAmount());
+      }
+
+      offset += copy.getParameterCount();
+      replica.layers.add(copy);
+    }
+
+    return replica;
+  }
+
+  /**
+   * Copies the current weights into a new snapshot and makes it the one that
+   * {@link #predictPublished} reads, without waiting for predictions already running on the
+   * previous snapshot. Call this from the thread that changes the weights, between updates.
+   */
+  public synchronized WeightSnapshot publishWeights() {
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized before it is published.");
+    }
+
+    WeightSnapshot snapshot = retiredSnapshots.poll();
+    if (snapshot == null || snapshot.getNetwork().parameters.length != parameters.length) {
+      snapshot = new WeightSnapshot(replicaOver(new double[parameters.length]));
+    }
+
+    snapshot.publish(parameters, getParameterVersion());
+
+    WeightSnapshot previous = publishedWeights.getAndSet(snapshot);
+    if (previous != null) {
+      release(previous);
+    }
+
+    return snapshot;
+  }
+
+  /**
+   * The snapshot new predictions would use, or null if none has been published.
+   */
+  public WeightSnapshot getPublishedWeights() {
+    return publishedWeights.get();
+  }
+
+  /**
+   * Predicts with the most recently published weights, taking no locks, while another thread
+   * may be training and publishing. The returned vector belongs to the context, as with
+   * {@link #predict(InferenceContext, Vector)}.
+   */
+  public Vector predictPublished(InferenceContext context, Vector in) {
+    WeightSnapshot snapshot = acquirePublished();
+    try {
+      return snapshot.getNetwork().predict(context, in);
+    } finally {
+      release(snapshot);
+    }
+  }
+
+  private WeightSnapshot acquirePublished() {
+    while (true) {
+      WeightSnapshot snapshot = publishedWeights.get();
+      if (snapshot == null) {
+        throw new IllegalStateException("No weights have been published.");
+      }
+
+      // Fails only if the snapshot was replaced and released in between, so look again
+      if (snapshot.tryAcquire()) {
+        return snapshot;
+      }
+    }
+  }
+
+  private void release(WeightSnapshot snapshot) {
+    if (snapshot.release()) {
+      retiredSnapshots.offer(snapshot);
+    }
+  }
+
   public double getMomentum() {
     return momentum;
   }
@@ -42,10 +178,47 @@ public class NeuralNetwork implements SupervisedLearner {
     this.learningRate = learningRate;
   }
 
+  public Optimizer getOptimizer() {
+    return optimizer;
+  }
+
+  /**
+   * Replaces the default update (gradient descent with momentum) with the given optimizer. The
+   * momentum setting is ignored while an optimizer is set.
+   */
+  public void setOptimizer(Optimizer optimizer) {
+    this.optimizer = optimizer;
+  }
+
   public List<Layer> getLayers() {
     return layers;
   }
 
+  /**
+   * The weights and biases of every layer, in layer order, as one contiguous buffer. Each layer's
+   * weights and bias are views into this array, so writes here change the network directly. This
+   * is null until {@link #initialize()} is called.
+   */
+  public double[] getParameters() {
+    return parameters;
+  }
+
+  /**
+   * The accumulated gradient, laid out the same way as {@link #getParameters()}.
+   */
+  public double[] getGradients() {
+    return gradients;
+  }
+
+  public int getParameterCount() {
+    int parameterCount = 0;
+    for (Layer layer : layers) {
+      parameterCount += layer.getParameterCount();
+    }
+
+    return parameterCount;
+  }
+
   @Override
   public String name() {
     return getClass().getSimpleName();
@@ -59,10 +232,54 @@ public class NeuralNetwork implements SupervisedLearner {
 
   public void addLayer(Layer layer) {
     this.layers.add(layer);
+
+    // The new layer is not part of the buffers until the network is initialized again
+    parameters = null;
+    gradients = null;
   }
 
+  /**
+   * Lays out every layer's parameters in one buffer, then initializes the layers in place.
+   */
   public void initialize() {
-    layers.forEach(Layer::initialize);
+    int parameterCount = getParameterCount();
+    parameters = new double[parameterCount];
+    gradients = new double[parameterCount];
+
+    Vector parameterVector = new Vector(parameters);
+    Vector gradientVector = new Vector(gradients);
+
+    int offset = 0;
+    for (Layer layer : layers) {
+      if (layer instanceof ConnectedLayer) {
+        ((ConnectedLayer) layer).bindParameters(parameterVector, gradientVector, offset);
+      }
+
+      offset += layer.getParameterCount();
+      layer.initialize();
+    }
+
+    if (optimizer != null) {
+      optimizer.reset();
+    }
+
+    parametersChanged();
+  }
+
+  /**
+   * A number that changes whenever the weights do, for anything that keeps results computed from
+   * them. It is shared with this network's replicas.
+   */
+  public long getParameterVersion() {
+    return parameterVersion.get();
+  }
+
+  /**
+   * Records that the weights changed. {@link #initialize} and {@link #updateWeights} call this;
+   * code that writes into {@link #getParameters()} or a layer's weights directly must call it too.
+   */
+  public void parametersChanged() {
+    parameterVersion.incrementAndGet();
   }
 
   public boolean isValid() {
@@ -87,10 +304,74 @@ public class NeuralNetwork implements SupervisedLearner {
     return layers.get(layers.size() - 1).getActivation();
   }
 
+  public InferenceContext createInferenceContext() {
+    checkLayers();
+    return new InferenceContext(layers);
+  }
+
+  /**
+   * Predicts without touching any state in the layers: every intermediate result goes into the
+   * context. Several threads may call this at once as long as each uses its own context and no
+   * thread is changing the weights. The returned vector belongs to the context, and is
+   * overwritten by the next prediction that uses it.
+   */
+  public Vector predict(InferenceContext context, Vector in) {
+    checkLayers();
+
+    if (!context.fits(layers)) {
+      throw new IllegalArgumentException("The context was created for a different topology.");
+    }
+
+    Vector input = in;
+    for (int i = 0; i < layers.size(); i++) {
+      Vector output = context.getActivation(i);
+      layers.get(i).infer(input, output);
+      input = output;
+    }
+
+    return input;
+  }
+
+  /**
+   * Predicts through an inference context owned by this network, so no layer keeps an activation
+   * or pooling mask for a backward pass. Use this when evaluating. It is not thread-safe; see
+   * {@link InferenceContextPool} for that. The returned vector is overwritten by the next call.
+   */
+  public Vector infer(Vector in) {
+    checkLayers();
+
+    if (inferenceContext == null || !inferenceContext.fits(layers)) {
+      inferenceContext = createInferenceContext();
+    }
+
+    return predict(inferenceContext, in);
+  }
+
   public void updateWeights() {
-    for (Layer layer : layers) {
-      layer.applyGradient(learningRate, momentum);
+    if (optimizer != null) {
+      if (parameters == null) {
+        throw new IllegalStateException("The network must be initialized to use an optimizer.");
+      }
+
+      optimizer.step(parameters, gradients, learningRate);
+      parametersChanged();
+      return;
+    }
+
+    if (parameters == null) {
+      for (Layer layer : layers) {
+        layer.applyGradient(learningRate, momentum);
+      }
+      parametersChanged();
+      return;
+    }
+
+    // One pass over the whole buffer instead of one per weights matrix and bias vector
+    for (int i = 0; i < parameters.length; i++) {
+      parameters[i] += learningRate * gradients[i];
+      gradients[i] *= momentum;
     }
+    parametersChanged();
   }
 
   public void backPropagate(Vector target) {
@@ -116,6 +397,63 @@ public class NeuralNetwork implements SupervisedLearner {
     }
   }
 
+  /**
+   * Whether every layer supports {@link #predictBatch} and the other batch passes.
+   */
+  public boolean supportsBatches() {
+    for (Layer layer : layers) {
+      if (!(layer instanceof BatchLayer)) {
+        return false;
+      }
+    }
+
+    return !layers.isEmpty();
+  }
+
+  /**
+   * Runs every row of inputs through the network at once and returns one row of outputs per row.
+   * Every layer must support batches.
+   */
+  public Matrix predictBatch(Matrix inputs) {
+    checkLayers();
+
+    Matrix activation = inputs;
+    for (Layer layer : layers) {
+      activation = ((BatchLayer) layer).activateBatch(activation);
+    }
+
+    return activation;
+  }
+
+  /**
+   * Computes the blame of every layer for the last batch passed to {@link #predictBatch}, and
+   * returns the blame of the network's inputs.
+   */
+  public Matrix backPropagateBatch(Matrix targets) {
+    checkLayers();
+
+    Layer lastLayer = layers.get(layers.size() - 1);
+    Matrix blame = targets.copy();
+    blame.addScaled(lastLayer.getBatchActivation(), -1);
+    lastLayer.setBatchBlame(blame);
+
+    for (int i = layers.size() - 1; i >= 1; i--) {
+      layers.get(i - 1).setBatchBlame(((BatchLayer) layers.get(i)).backPropagateBatch());
+    }
+
+    return ((BatchLayer) layers.get(0)).backPropagateBatch();
+  }
+
+  public void updateGradientBatch(Matrix inputs) {
+    checkLayers();
+
+    Matrix previousActivation = inputs;
+    for (Layer layer : layers) {
+      ((BatchLayer) layer).updateGradientBatch(previousActivation);
+      previousActivation = layer.getBatchActivation();
+    }
+  }
+
   public void printTopology() {
     for (int i = 0; i < layers.size(); i++) {
       System.out.printf("%d) %s\n", i, layers.get(i).topologyString());
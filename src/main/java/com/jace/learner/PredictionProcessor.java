@@ -0,0 +1,245 @@
+package com.jace.learner;
+
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a stream of inputs into a stream of predictions. Inputs are requested from upstream one
+ * batch at a time, and only once the previous batch's predictions have been taken downstream, so
+ * at most one batch of inputs and one of outputs is held no matter how slow the subscriber is.
+ * <br>
+ * A {@link NeuralNetwork} whose layers all support batches predicts each batch with
+ * {@link NeuralNetwork#predictBatch} on a replica; any other learner predicts row by row.
+ */
+public class PredictionProcessor implements Flow.Processor<Vector, Vector> {
+  private SupervisedLearner learner;
+  private int batchSize;
+
+  private NeuralNetwork batchNetwork;
+  private InferenceContext inferenceContext;
+
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super Vector> downstream;
+
+  private ConcurrentLinkedQueue<Vector> arrived = new ConcurrentLinkedQueue<>();
+  private AtomicLong demand = new AtomicLong();
+  private AtomicInteger pendingSignals = new AtomicInteger();
+  private volatile boolean upstreamDone = false;
+  private volatile Throwable error;
+  private volatile boolean cancelled = false;
+
+  // Only touched by the thread in drain()
+  private List<Vector> batch = new ArrayList<>();
+  private ArrayDeque<Vector> outputs = new ArrayDeque<>();
+  private long outstanding = 0;
+  private boolean terminated = false;
+
+  public PredictionProcessor(SupervisedLearner learner, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1.");
+    }
+
+    this.learner = learner;
+    this.batchSize = batchSize;
+
+    if (learner instanceof NeuralNetwork) {
+      NeuralNetwork neuralNetwork = (NeuralNetwork) learner;
+      if (neuralNetwork.supportsBatches() && neuralNetwork.getParameters() != null) {
+        batchNetwork = neuralNetwork.replica();
+      } else {
+        inferenceContext = neuralNetwork.createInferenceContext();
+      }
+    }
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+
+    upstream = subscription;
+    signal();
+  }
+
+  @Override
+  public void onNext(Vector item) {
+    arrived.offer(item);
+    signal();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    error = throwable;
+    upstreamDone = true;
+    signal();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    signal();
+  }
+
+  @Override
+  public synchronized void subscribe(Flow.Subscriber<? super Vector> subscriber) {
+    if (downstream != null) {
+      subscriber.onSubscribe(new OutputSubscription());
+      subscriber.onError(
+          new IllegalStateException("A PredictionProcessor has only one subscriber."));
+      return;
+    }
+
+    subscriber.onSubscribe(new OutputSubscription());
+    downstream = subscriber;
+    signal();
+  }
+
+  private class OutputSubscription implements Flow.Subscription {
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Requests must be positive.");
+        cancelUpstream();
+      } else {
+        demand.getAndAccumulate(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+      }
+
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancelUpstream();
+      signal();
+    }
+  }
+
+  private void cancelUpstream() {
+    Flow.Subscription subscription = upstream;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  private void signal() {
+    if (pendingSignals.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    do {
+      drain();
+      missed = pendingSignals.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void drain() {
+    Flow.Subscriber<? super Vector> subscriber = downstream;
+    if (terminated || subscriber == null) {
+      return;
+    }
+
+    if (cancelled) {
+      terminated = true;
+      arrived.clear();
+      outputs.clear();
+      return;
+    }
+
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+
+      if (error != null) {
+        terminate(subscriber, error);
+        return;
+      }
+
+      Vector item;
+      while (batch.size() < batchSize && (item = arrived.poll()) != null) {
+        batch.add(item);
+        outstanding--;
+        progress = true;
+      }
+
+      boolean inputEnded = upstreamDone && arrived.isEmpty();
+      if (outputs.isEmpty() && (batch.size() == batchSize || (inputEnded && !batch.isEmpty()))) {
+        try {
+          predict(batch);
+        } catch (RuntimeException e) {
+          cancelUpstream();
+          terminate(subscriber, e);
+          return;
+        }
+        batch.clear();
+        progress = true;
+      }
+
+      while (!outputs.isEmpty() && demand.get() > 0 && !cancelled) {
+        if (demand.get() != Long.MAX_VALUE) {
+          demand.decrementAndGet();
+        }
+        subscriber.onNext(outputs.poll());
+        progress = true;
+      }
+
+      if (inputEnded && batch.isEmpty() && outputs.isEmpty()) {
+        terminate(subscriber, null);
+        return;
+      }
+
+      Flow.Subscription subscription = upstream;
+      if (!upstreamDone && subscription != null && outstanding == 0 && outputs.isEmpty()
+          && demand.get() > 0) {
+        outstanding = batchSize - batch.size();
+        subscription.request(outstanding);
+        progress = true;
+      }
+    }
+  }
+
+  private void predict(List<Vector> inputs) {
+    if (batchNetwork != null) {
+      Matrix matrix = new Matrix(inputs.size(), inputs.get(0).size());
+      for (int i = 0; i < inputs.size(); i++) {
+        matrix.row(i).set(0, inputs.get(i));
+      }
+
+      Matrix predictions = batchNetwork.predictBatch(matrix);
+      for (int i = 0; i < predictions.rows(); i++) {
+        outputs.add(predictions.row(i).copy());
+      }
+    } else if (inferenceContext != null) {
+      for (Vector input : inputs) {
+        outputs.add(((NeuralNetwork) learner).predict(inferenceContext, input).copy());
+      }
+    } else {
+      for (Vector input : inputs) {
+        outputs.add(learner.predict(input).copy());
+      }
+    }
+  }
+
+  private void terminate(Flow.Subscriber<? super Vector> subscriber, Throwable throwable) {
+    terminated = true;
+    arrived.clear();
+    outputs.clear();
+
+    if (throwable != null) {
+      subscriber.onError(throwable);
+    } else {
+      subscriber.onComplete();
+    }
+  }
+}
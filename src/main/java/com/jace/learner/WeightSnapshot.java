@@ -0,0 +1,65 @@
+package com.jace.learner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A copy of a network's weights that never changes while anyone is reading it, published by
+ * {@link NeuralNetwork#publishWeights}. Predictions in flight keep using the snapshot they
+ * started with, and its buffer is only reused for a later snapshot once the last of them has
+ * released it.
+ */
+public class WeightSnapshot {
+  private NeuralNetwork network;
+  private long parameterVersion;
+
+  // One reference belongs to the network while the snapshot is published
+  private AtomicInteger references = new AtomicInteger();
+
+  WeightSnapshot(NeuralNetwork network) {
+    this.network = network;
+  }
+
+  /**
+   * The network's parameter version when the snapshot was taken.
+   */
+  public long getParameterVersion() {
+    return parameterVersion;
+  }
+
+  NeuralNetwork getNetwork() {
+    return network;
+  }
+
+  /**
+   * Fills the snapshot from the given parameters and marks it published.
+   */
+  void publish(double[] parameters, long parameterVersion) {
+    System.arraycopy(parameters, 0, network.getParameters(), 0, parameters.length);
+    this.parameterVersion = parameterVersion;
+    references.set(1);
+  }
+
+  /**
+   * Takes a reference unless the snapshot has already been released by everyone, in which case
+   * its buffer may be in the middle of being refilled and the caller must look again.
+   */
+  boolean tryAcquire() {
+    while (true) {
+      int count = references.get();
+      if (count == 0) {
+        return false;
+      }
+
+      if (references.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Drops a reference, and returns true if it was the last one.
+   */
+  boolean release() {
+    return references.decrementAndGet() == 0;
+  }
+}
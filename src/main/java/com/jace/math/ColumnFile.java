@@ -0,0 +1,433 @@
+package com.jace.math;
+
+import com.jace.util.Console;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary, column-major copy of a matrix, kept next to the ARFF file it was parsed from so later
+ * runs can skip the text parsing. {@link Matrix#fromARFF} writes one the first time it loads a
+ * file, and reads it instead of the ARFF file for as long as the source's size and modification
+ * time match the ones recorded in the header.
+ * <br>
+ * Everything is little-endian. The header holds the magic number, the format version, the size and
+ * modification time of the source, the row and column counts, the offset of the data, and the
+ * metadata: the relation name, then each attribute's name and nominal values in value order.
+ * Strings are a length followed by UTF-8 bytes. The data starts at the next multiple of 64 bytes
+ * after the header and holds each column's values in turn.
+ * <br>
+ * An open ColumnFile keeps every column memory-mapped, outside the Java heap, and reads values
+ * straight from the mapping. {@link #toMatrix()} copies them into ordinary rows.
+ */
+public class ColumnFile {
+  /**
+   * "JCOL" in little-endian byte order.
+   */
+  public static final int MAGIC = 0x4C4F434A;
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int ALIGNMENT = 64;
+  private static final int WRITE_CHUNK = 1 << 16;
+
+  // Rows are filled a block at a time, so the rows being written stay in cache while the
+  // columns are read
+  private static final int ROW_BLOCK = 256;
+
+  private File file;
+  private long sourceSize;
+  private long sourceModified;
+  private int rows;
+  private Metadata metadata;
+  private DoubleBuffer[] columns;
+
+  private ColumnFile(File file) {
+    this.file = file;
+  }
+
+  /**
+   * The sidecar of an ARFF file: the same path with the extension replaced by ".bin".
+   */
+  public static File sidecarFor(File source) {
+    String name = source.getName();
+    int extension = name.lastIndexOf('.');
+    if (extension > 0) {
+      name = name.substring(0, extension);
+    }
+    return new File(source.getAbsoluteFile().getParentFile(), name + ".bin");
+  }
+
+  /**
+   * Returns the mapped sidecar of an ARFF file, parsing the ARFF file and writing the sidecar
+   * first if it is missing or out of date. The data is never copied onto the heap.
+   */
+  public static ColumnFile forArff(File source) throws IOException {
+    ColumnFile columnFile = openCurrent(source);
+    if (columnFile != null) {
+      return columnFile;
+    }
+
+    Matrix matrix = new Matrix();
+    matrix.loadARFF(source.getPath());
+
+    File sidecar = sidecarFor(source);
+    if (sidecar.exists() && !isColumnFile(sidecar)) {
+      throw new IOException(sidecar + " exists and is not a column file.");
+    }
+    write(matrix, sidecar, source);
+    return open(sidecar);
+  }
+
+  /**
+   * Returns the sidecar of source if it exists and matches it, or null. A sidecar that cannot be
+   * read is treated as missing.
+   */
+  static ColumnFile openCurrent(File source) {
+    File sidecar = sidecarFor(source);
+    if (!sidecar.isFile() || !isColumnFile(sidecar)) {
+      return null;
+    }
+
+    try {
+      ColumnFile columnFile = open(sidecar);
+      return columnFile.isCurrentFor(source) ? columnFile : null;
+    } catch (IOException e) {
+      Console.w("Ignoring the unreadable cache %s: %s", sidecar, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes the sidecar of source from the matrix parsed out of it. Failing to write only costs
+   * the next run a parse, so errors are logged rather than thrown. A file that is in the way and
+   * is not a column file is left alone.
+   */
+  static void cache(Matrix matrix, File source) {
+    File sidecar = sidecarFor(source);
+    if (sidecar.exists() && !isColumnFile(sidecar)) {
+      Console.w("Not caching %s, because %s is not a column file", source, sidecar);
+      return;
+    }
+
+    try {
+      write(matrix, sidecar, source);
+    } catch (IOException e) {
+      Console.w("Could not cache %s: %s", source, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes matrix to file, recording the size and modification time of the source it came from.
+   * The file is written under a temporary name and renamed into place, so a reader never sees it
+   * half written.
+   */
+  public static void write(Matrix matrix, File file, File source) throws IOException {
+    int rows = matrix.rows();
+    int cols = matrix.cols();
+    if ((long) rows * Double.BYTES > Integer.MAX_VALUE) {
+      throw new IOException("A column of " + rows + " rows does not fit in one mapping.");
+    }
+
+    ByteBuffer metadataBytes = encodeMetadata(matrix.getMetadata(), cols);
+    int headerSize = 48 + metadataBytes.remaining();
+    long dataOffset = (headerSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+    ByteBuffer header = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putLong(source.length());
+    header.putLong(source.lastModified());
+    header.putLong(dataOffset);
+    header.putInt(rows);
+    header.putInt(cols);
+    header.putLong(0);
+    header.put(metadataBytes);
+    header.position(0);
+
+    writeAtomically(file, (channel) -> {
+      writeFully(channel, header);
+
+      ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+      DoubleBuffer doubles = chunk.asDoubleBuffer();
+      for (int j = 0; j < cols; j++) {
+        for (int i = 0; i < rows; i += doubles.capacity()) {
+          int count = Math.min(doubles.capacity(), rows - i);
+          doubles.clear();
+          for (int k = 0; k < count; k++) {
+            doubles.put(matrix.get(i + k, j));
+          }
+
+          chunk.clear();
+          chunk.limit(count * Double.BYTES);
+          writeFully(channel, chunk);
+        }
+      }
+    });
+  }
+
+  /**
+   * Maps a column file. Only the header is read; the columns are read from the mapping as they
+   * are used.
+   */
+  public static ColumnFile open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() < 48) {
+        throw new IOException(file + " is not a column file.");
+      }
+
+      MappedByteBuffer mapped = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+      mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (mapped.getInt() != MAGIC) {
+        throw new IOException(file + " is not a column file.");
+      }
+
+      int formatVersion = mapped.getInt();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IOException(String.format(
+            "%s has format version %d, but only version %d can be read.",
+            file, formatVersion, FORMAT_VERSION));
+      }
+
+      ColumnFile columnFile = new ColumnFile(file);
+      columnFile.sourceSize = mapped.getLong();
+      columnFile.sourceModified = mapped.getLong();
+      long dataOffset = mapped.getLong();
+      columnFile.rows = mapped.getInt();
+      int cols = mapped.getInt();
+      mapped.getLong();
+
+      long columnBytes = (long) columnFile.rows * Double.BYTES;
+      if (dataOffset % ALIGNMENT != 0 || dataOffset > Integer.MAX_VALUE || columnFile.rows < 0
+          || cols < 0 || dataOffset + columnBytes * cols > channel.size()) {
+        throw new IOException(file + " is truncated or corrupt.");
+      }
+
+      try {
+        columnFile.metadata = decodeMetadata(mapped, cols);
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        throw new IOException(file + " is truncated or corrupt.", e);
+      }
+
+      columnFile.columns = new DoubleBuffer[cols];
+      for (int j = 0; j < cols; j++) {
+        columnFile.columns[j] = channel
+            .map(FileChannel.MapMode.READ_ONLY, dataOffset + j * columnBytes, columnBytes)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+      }
+
+      return columnFile;
+    }
+  }
+
+  /**
+   * Whether file starts with the magic number of a column file.
+   */
+  public static boolean isColumnFile(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        // Keep reading until the magic number is complete or the file ends
+      }
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Whether this file was written from source as it is now, judging by its size and modification
+   * time.
+   */
+  public boolean isCurrentFor(File source) {
+    return source.isFile()
+        && source.length() == sourceSize
+        && source.lastModified() == sourceModified;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public Metadata getMetadata() {
+    return metadata;
+  }
+
+  public int rows() {
+    return rows;
+  }
+
+  public int cols() {
+    return columns.length;
+  }
+
+  public double get(int row, int column) {
+    return columns[column].get(row);
+  }
+
+  /**
+   * A read-only view of one column, backed by the mapping.
+   */
+  public DoubleBuffer getColumn(int column) {
+    return columns[column].asReadOnlyBuffer();
+  }
+
+  /**
+   * Copies count rows, starting at row begin, into rows in row-major order from offset on.
+   */
+  public void getRows(int begin, int count, double[] rows, int offset) {
+    int cols = cols();
+    if (begin < 0 || count < 0 || begin + count > this.rows) {
+      throw new IndexOutOfBoundsException(String.format(
+          "Rows %d to %d of %d", begin, begin + count - 1, this.rows));
+    }
+
+    double[] block = new double[Math.min(ROW_BLOCK, Math.max(count, 1))];
+    for (int blockBegin = 0; blockBegin < count; blockBegin += block.length) {
+      int blockCount = Math.min(block.length, count - blockBegin);
+      for (int j = 0; j < cols; j++) {
+        columns[j].get(begin + blockBegin, block, 0, blockCount);
+        int index = offset + blockBegin * cols + j;
+        for (int k = 0; k < blockCount; k++, index += cols) {
+          rows[index] = block[k];
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the data into a new matrix with ordinary rows on the heap.
+   */
+  public Matrix toMatrix() {
+    int cols = cols();
+    List<double[]> matrixRows = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      matrixRows.add(new double[cols]);
+    }
+
+    double[] block = new double[ROW_BLOCK];
+    for (int begin = 0; begin < rows; begin += ROW_BLOCK) {
+      int count = Math.min(ROW_BLOCK, rows - begin);
+      for (int j = 0; j < cols; j++) {
+        columns[j].get(begin, block, 0, count);
+        for (int k = 0; k < count; k++) {
+          matrixRows.get(begin + k)[j] = block[k];
+        }
+      }
+    }
+
+    // Each matrix gets its own metadata, since matrices modify theirs
+    Matrix matrix = new Matrix();
+    matrix.setRows(decodeMetadata(encodeMetadata(metadata, cols), cols), matrixRows);
+    return matrix;
+  }
+
+  static ByteBuffer encodeMetadata(Metadata metadata, int cols) {
+    List<byte[]> strings = new ArrayList<>();
+    List<Integer> valueCounts = new ArrayList<>();
+
+    strings.add(metadata.getFileName().getBytes(StandardCharsets.UTF_8));
+    for (int j = 0; j < cols; j++) {
+      strings.add(metadata.getAttributeNames().get(j).getBytes(StandardCharsets.UTF_8));
+
+      int valueCount = metadata.getEnumSizeForAttributeInColumn(j);
+      valueCounts.add(valueCount);
+      for (int value = 0; value < valueCount; value++) {
+        strings.add(metadata.getAttributeForValueInColumn(value, j)
+            .getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    int size = cols * Integer.BYTES;
+    for (byte[] string : strings) {
+      size += Integer.BYTES + string.length;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    int next = 0;
+    putString(buffer, strings.get(next++));
+    for (int j = 0; j < cols; j++) {
+      putString(buffer, strings.get(next++));
+      buffer.putInt(valueCounts.get(j));
+      for (int value = 0; value < valueCounts.get(j); value++) {
+        putString(buffer, strings.get(next++));
+      }
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  static Metadata decodeMetadata(ByteBuffer buffer, int cols) {
+    Metadata metadata = new Metadata(getString(buffer));
+    for (int j = 0; j < cols; j++) {
+      metadata.addColumn(getString(buffer));
+
+      int valueCount = buffer.getInt();
+      for (int value = 0; value < valueCount; value++) {
+        metadata.findOrCreateValueForAttributeInColumn(getString(buffer), j);
+      }
+    }
+    return metadata;
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] string) {
+    buffer.putInt(string.length);
+    buffer.put(string);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the contents of a file through a channel.
+   */
+  interface ContentWriter {
+    void write(FileChannel channel) throws IOException;
+  }
+
+  /**
+   * Writes file under a temporary name of its own and renames it into place, so neither a reader
+   * nor another process writing the same file at once ever sees it half written.
+   */
+  static void writeAtomically(File file, ContentWriter contents) throws IOException {
+    Path temporary = Files.createTempFile(
+        file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        contents.write(channel);
+        channel.force(true);
+      }
+
+      Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
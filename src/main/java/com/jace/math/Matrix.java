@@ -1,9 +1,13 @@
 package com.jace.math;
 
+import com.jace.util.ArffParser;
 import com.jace.util.Json;
+import com.jace.util.JsonReader;
+import com.jace.util.JsonWriter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.function.Function;
@@ -26,7 +30,7 @@ public class Matrix implements Spatial<Matrix> {
    */
   public static final double UNKNOWN_VALUE = -1e308;
 
-  private ArrayList<double[]> data = new ArrayList<>(); //matrix elements
+  private ArrayList<Vector> data = new ArrayList<>(); //matrix elements
   private Metadata metadata;
 
   /**
@@ -68,9 +72,9 @@ public class Matrix implements Spatial<Matrix> {
     setSize(rowCount, colCount);
     for (int i = 0; i < rowCount; i++) {
       Json jsonRow = json.get(i);
-      double[] row = data.get(i);
+      Vector row = data.get(i);
       for (int j = 0; j < colCount; j++) {
-        row[j] = jsonRow.getDouble(j);
+        row.set(j, jsonRow.getDouble(j));
       }
     }
   }
@@ -81,86 +85,99 @@ public class Matrix implements Spatial<Matrix> {
   public Json marshal() {
     Json jsonList = Json.newList();
     for (int i = 0; i < rows(); i++) {
-      double[] row = data.get(i);
-      Json jsonRow = Json.newList();
+      jsonList.add(data.get(i).marshal());
+    }
+
+    return jsonList;
+  }
+
+  /**
+   * Streaming unmarshalling constructor
+   */
+  public Matrix(JsonReader reader) throws IOException {
+    this();
 
-      for (double value : row) {
-        jsonRow.add(value);
+    reader.beginArray();
+    while (reader.hasNext()) {
+      double[] row = reader.nextDoubleArray();
+      if (data.isEmpty()) {
+        setSize(0, row.length);
+      } else if (row.length != cols()) {
+        throw new IOException("Every row of a matrix must have the same length.");
       }
 
-      jsonList.add(jsonRow);
+      takeRow(row);
     }
+    reader.endArray();
+  }
 
-    return jsonList;
+  /**
+   * Writes this matrix as a list of rows, without building a Json DOM
+   */
+  public void write(JsonWriter writer) throws IOException {
+    writer.beginArray();
+    for (Vector row : data) {
+      row.write(writer);
+    }
+    writer.endArray();
   }
 
   public Matrix copy() {
     return new Matrix(this);
   }
 
+  /**
+   * Loads the matrix from an ARFF file, through its {@link ColumnFile} sidecar when that is up to
+   * date. Otherwise the ARFF file is parsed and the sidecar written for next time.
+   */
   public static Matrix fromARFF(String fileName) {
+    return fromARFF(fileName, true);
+  }
+
+  public static Matrix fromARFF(String fileName, boolean useCache) {
+    File source = new File(fileName);
+    if (useCache && source.isFile()) {
+      ColumnFile cached = ColumnFile.openCurrent(source);
+      if (cached != null) {
+        return cached.toMatrix();
+      }
+    }
+
     Matrix matrix = new Matrix();
     matrix.loadARFF(fileName);
+
+    if (useCache) {
+      ColumnFile.cache(matrix, source);
+    }
     return matrix;
   }
 
   /**
-   * Loads the matrix from an ARFF file
+   * Loads the matrix from an ARFF file. The file is memory-mapped and parsed by
+   * {@link ArffParser}, in parallel chunks when the data section is large.
    */
   public void loadARFF(String fileName) {
-    int attributeCount = 0;
-    Scanner scanner = null;
-    metadata.clear();
-
-    try {
-      scanner = new Scanner(new File(fileName));
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine().trim();
-        String upper = line.toUpperCase();
-
-        if (upper.startsWith("@RELATION")) {
-          String parsedFileName = line.split(" ")[1];
-          metadata.setFileName(parsedFileName);
-        } else if (upper.startsWith("@ATTRIBUTE")) {
-          metadata.parseAttribute(line);
-          attributeCount++;
-        } else if (upper.startsWith("@DATA")) {
-          data.clear();
-
-          while (scanner.hasNextLine()) {
-            line = scanner.nextLine().trim();
-            if (line.startsWith("%") || line.isEmpty()) {
-              continue;
-            }
-
-            double[] row = new double[attributeCount];
-            data.add(row);
-
-            Json.StringParser stringParser = new Json.StringParser(line);
-            for (int i = 0; i < attributeCount; i++) {
-              stringParser.skipWhitespace();
-              String parsedValue = stringParser.untilQuoteSensitive(',', '\n');
+    File file = new File(fileName);
+    if (!file.isFile()) {
+      throw new IllegalArgumentException("Failed to open file: " + fileName + ".");
+    }
 
-              boolean attributeIsContinuous = metadata.attributeIsContinuous(i);
-              if (parsedValue.equals("?")) { // Unknown values are always set to UNKNOWN_VALUE
-                row[i] = UNKNOWN_VALUE;
-              } else if (!attributeIsContinuous) { // if it's nominal
-                row[i] = metadata.getValueForAttributeInColumn(parsedValue, i);
-              } else { // else it's continuous
-                row[i] = Double.parseDouble(parsedValue); // The attribute is continuous
-              }
+    try (ArffParser parser = new ArffParser(file)) {
+      setRows(parser.getMetadata(), parser.readRows());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to load " + fileName + ": " + e.getMessage(), e);
+    }
+  }
 
-              stringParser.advance(1);
-            }
-          }
-        }
-      }
-    } catch (FileNotFoundException e) {
-      throw new IllegalArgumentException("Failed to open file: " + fileName + ".");
-    } finally {
-      if (scanner != null) {
-        scanner.close();
-      }
+  /**
+   * Replaces the contents of this matrix with the given rows, which it takes ownership of.
+   */
+  void setRows(Metadata metadata, List<double[]> rows) {
+    this.metadata = metadata;
+    data.clear();
+    data.ensureCapacity(rows.size());
+    for (double[] row : rows) {
+      data.add(new Vector(row));
     }
   }
 
@@ -168,6 +185,10 @@ public class Matrix implements Spatial<Matrix> {
     return metadata;
   }
 
+  public void printRow(Vector row, PrintWriter outputStream) {
+    printRow(row.toDoubleArray(), outputStream);
+  }
+
   public void printRow(double[] row, PrintWriter outputStream) {
     if (row.length != cols()) {
       throw new RuntimeException("Unexpected row size");
@@ -238,8 +259,7 @@ public class Matrix implements Spatial<Matrix> {
       // Print the data
       outputStream.println("@DATA");
       for (int i = 0; i < rows(); i++) {
-        double[] row = data.get(i);
-        printRow(row, outputStream);
+        printRow(data.get(i), outputStream);
         outputStream.println();
       }
     } catch (FileNotFoundException e) {
@@ -330,7 +350,7 @@ public class Matrix implements Spatial<Matrix> {
     }
 
     double[] newRow = new double[columns];
-    data.add(newRow);
+    data.add(new Vector(newRow));
     return newRow;
   }
 
@@ -344,14 +364,14 @@ public class Matrix implements Spatial<Matrix> {
     }
 
     double[] newRow = new double[columns];
-    data.add(i, newRow);
+    data.add(i, new Vector(newRow));
     return newRow;
   }
 
   /**
    * Removes the specified row from this matrix. Returns a reference to the removed row.
    */
-  public double[] removeRow(int i) {
+  public Vector removeRow(int i) {
     return data.remove(i);
   }
 
@@ -363,11 +383,11 @@ public class Matrix implements Spatial<Matrix> {
       throw new IllegalArgumentException("Row size differs from the number of columns in this matrix.");
     }
 
-    data.add(row);
+    data.add(new Vector(row));
   }
 
   public void setColumn(int index, Vector value) {
-    setColumn(index, value.values);
+    setColumn(index, value.toDoubleArray());
   }
 
   public void setColumn(int index, double[] values) {
@@ -393,7 +413,8 @@ public class Matrix implements Spatial<Matrix> {
       throw new IllegalArgumentException("Invalid row length (" + row.length + ") for matrix.");
     }
 
-    System.arraycopy(row, 0, data.get(index), 0, row.length);
+    Vector destination = data.get(index);
+    System.arraycopy(row, 0, destination.values, destination.startIndex, row.length);
   }
 
   /**
@@ -424,7 +445,7 @@ public class Matrix implements Spatial<Matrix> {
   }
 
   public String getString(int row, int column) {
-    double value = data.get(row)[column];
+    double value = data.get(row).get(column);
     return metadata.getAttributeForValueInColumn((int) value, column);
   }
 
@@ -462,7 +483,7 @@ public class Matrix implements Spatial<Matrix> {
    * Returns a reference to the specified row
    */
   public Vector row(int index) {
-    return new Vector(data.get(index));
+    return data.get(index);
   }
 
   public Vector column(int index) {
@@ -485,7 +506,7 @@ public class Matrix implements Spatial<Matrix> {
    * Swaps the positions of the two specified rows
    */
   public void swapRows(int a, int b) {
-    double[] temp = data.get(a);
+    Vector temp = data.get(a);
     data.set(a, data.get(b));
     data.set(b, temp);
   }
@@ -505,8 +526,8 @@ public class Matrix implements Spatial<Matrix> {
   public double columnMean(int column) {
     double sum = 0.0;
     int count = 0;
-    for (double[] list : data) {
-      double val = list[column];
+    for (Vector list : data) {
+      double val = list.get(column);
       if (val != UNKNOWN_VALUE) {
         sum += val;
         count++;
@@ -523,8 +544,8 @@ public class Matrix implements Spatial<Matrix> {
    */
   public double columnMin(int col) {
     double min = Double.MAX_VALUE;
-    for (double[] list : data) {
-      double val = list[col];
+    for (Vector list : data) {
+      double val = list.get(col);
       if (val != UNKNOWN_VALUE) {
         min = Math.min(min, val);
       }
@@ -540,8 +561,8 @@ public class Matrix implements Spatial<Matrix> {
    */
   public double columnMax(int col) {
     double max = -Double.MAX_VALUE;
-    for (double[] list : data) {
-      double val = list[col];
+    for (Vector list : data) {
+      double val = list.get(col);
       if (val != UNKNOWN_VALUE) {
         max = Math.max(max, val);
       }
@@ -555,8 +576,8 @@ public class Matrix implements Spatial<Matrix> {
    */
   public double mostCommonValue(int col) {
     HashMap<Double, Integer> counts = new HashMap<>();
-    for (double[] list : data) {
-      double val = list[col];
+    for (Vector list : data) {
+      double val = list.get(col);
       if (val != UNKNOWN_VALUE) {
         int result = counts.getOrDefault(val, 0);
         counts.put(val, result + 1);
@@ -613,9 +634,10 @@ public class Matrix implements Spatial<Matrix> {
 
     // Copy the specified region of data
     for (int i = 0; i < rowCount; i++) {
-      double[] source = that.data.get(rowBegin + i);
-      double[] dest = this.data.get(destRow + i);
-      System.arraycopy(source, colBegin, dest, destCol, colCount);
+      Vector source = that.data.get(rowBegin + i);
+      Vector dest = this.data.get(destRow + i);
+      System.arraycopy(
+          source.values, source.startIndex + colBegin, dest.values, dest.startIndex + destCol, colCount);
     }
   }
 
@@ -664,9 +686,8 @@ public class Matrix implements Spatial<Matrix> {
    * Sets every element in the matrix to the specified value.
    */
   public void fill(double val) {
-    for (double[] vec : data) {
-      for (int i = 0; i < vec.length; i++)
-        vec[i] = val;
+    for (Vector vec : data) {
+      vec.fill(val);
     }
   }
 
@@ -697,9 +718,8 @@ public class Matrix implements Spatial<Matrix> {
    * Scales every element in the matrix by the specified value
    */
   public void scale(double scalar) {
-    for (double[] vec : data) {
-      for (int i = 0; i < vec.length; i++)
-        vec[i] *= scalar;
+    for (Vector vec : data) {
+      vec.scale(scalar);
     }
   }
 
@@ -735,7 +755,7 @@ public class Matrix implements Spatial<Matrix> {
     fill(0.0);
     int m = Math.min(cols(), rows());
     for (int i = 0; i < m; i++)
-      data.get(i)[i] = 1.0;
+      data.get(i).set(i, 1.0);
   }
 
   /**
@@ -780,6 +800,26 @@ public class Matrix implements Spatial<Matrix> {
     return output;
   }
 
+  /**
+   * Wraps a vector as a matrix of the given dimensions. Rows are contiguous chunks of the vector,
+   * as in {@link #deserialize(Vector, int, int)}, but nothing is copied: every row is a view into
+   * the vector's buffer, so writes through either one are visible in the other.
+   */
+  public static Matrix wrap(Vector vector, int rows, int columns) {
+    if (vector.size() < rows * columns) {
+      throw new IllegalArgumentException("The supplied vector is too small to wrap a matrix of size (" + rows + ", " + columns + ")");
+    }
+
+    Matrix output = new Matrix();
+    output.newColumns(columns);
+
+    for (int r = 0; r < rows; r++) {
+      output.data.add(new Vector(vector, r * columns, columns));
+    }
+
+    return output;
+  }
+
   public static Matrix joined(Matrix first, Matrix second) {
     Matrix result = new Matrix(first.rows(), first.cols() + second.cols());
 
@@ -818,7 +858,7 @@ public class Matrix implements Spatial<Matrix> {
     return error;
   }
 
-  private static class SortComparator implements Comparator<double[]> {
+  private static class SortComparator implements Comparator<Vector> {
     int column;
     boolean ascending;
 
@@ -827,18 +867,18 @@ public class Matrix implements Spatial<Matrix> {
       ascending = ascend;
     }
 
-    public int compare(double[] a, double[] b) {
+    public int compare(Vector a, Vector b) {
       if (ascending) {
-        if (a[column] < b[column])
+        if (a.get(column) < b.get(column))
           return -1;
-        else if (a[column] > b[column])
+        else if (a.get(column) > b.get(column))
           return 1;
         else
           return 0;
       } else {
-        if (a[column] < b[column])
+        if (a.get(column) < b.get(column))
           return 1;
-        else if (a[column] > b[column])
+        else if (a.get(column) > b.get(column))
           return -1;
         else
           return 0;
@@ -880,10 +920,10 @@ public class Matrix implements Spatial<Matrix> {
   void fixNans() {
     int colCount = cols();
     for (int i = 0; i < rows(); i++) {
-      double[] pRow = data.get(i);
+      Vector pRow = data.get(i);
       for (int j = 0; j < colCount; j++) {
-        if (Double.isNaN(pRow[j]))
-          pRow[j] = (i == j ? 1.0 : 0.0);
+        if (Double.isNaN(pRow.get(j)))
+          pRow.set(j, i == j ? 1.0 : 0.0);
       }
     }
   }
@@ -892,7 +932,7 @@ public class Matrix implements Spatial<Matrix> {
     Matrix res = new Matrix(cols(), rows());
     for (int i = 0; i < rows(); i++) {
       for (int j = 0; j < cols(); j++)
-        res.data.get(j)[i] = data.get(i)[j];
+        res.data.get(j).set(i, data.get(i).get(j));
     }
     return res;
   }
@@ -914,10 +954,10 @@ public class Matrix implements Spatial<Matrix> {
    */
   public void swapColumns(int a, int b) {
     for (int i = 0; i < rows(); i++) {
-      double[] row = data.get(i);
-      double valueTemp = row[a];
-      row[a] = row[b];
-      row[b] = valueTemp;
+      Vector row = data.get(i);
+      double valueTemp = row.get(a);
+      row.set(a, row.get(b));
+      row.set(b, valueTemp);
     }
 
     metadata.swapColumns(a, b);
@@ -932,6 +972,19 @@ public class Matrix implements Spatial<Matrix> {
    */
   public static Matrix multiply(Matrix a, Matrix b, boolean transposeA, boolean transposeB) {
     Matrix res = new Matrix(transposeA ? a.cols() : a.rows(), transposeB ? b.rows() : b.cols());
+    return multiply(a, b, transposeA, transposeB, res);
+  }
+
+  /**
+   * Multiplies two Matrices into res, which must already have the right size, and returns it.
+   */
+  public static Matrix multiply(
+      Matrix a, Matrix b, boolean transposeA, boolean transposeB, Matrix res) {
+    if (res.rows() != (transposeA ? a.cols() : a.rows())
+        || res.cols() != (transposeB ? b.rows() : b.cols())) {
+      throw new IllegalArgumentException("The result matrix has the wrong size.");
+    }
+
     if (transposeA) {
       if (transposeB) {
         if (a.rows() != b.cols())
@@ -940,8 +993,8 @@ public class Matrix implements Spatial<Matrix> {
           for (int j = 0; j < res.cols(); j++) {
             double d = 0.0;
             for (int k = 0; k < a.rows(); k++)
-              d += a.data.get(k)[i] * b.data.get(j)[k];
-            res.data.get(i)[j] = d;
+              d += a.data.get(k).get(i) * b.data.get(j).get(k);
+            res.data.get(i).set(j, d);
           }
         }
       } else {
@@ -951,8 +1004,8 @@ public class Matrix implements Spatial<Matrix> {
           for (int j = 0; j < res.cols(); j++) {
             double d = 0.0;
             for (int k = 0; k < a.rows(); k++)
-              d += a.data.get(k)[i] * b.data.get(k)[j];
-            res.data.get(i)[j] = d;
+              d += a.data.get(k).get(i) * b.data.get(k).get(j);
+            res.data.get(i).set(j, d);
           }
         }
       }
@@ -961,22 +1014,28 @@ public class Matrix implements Spatial<Matrix> {
         if (a.cols() != b.cols())
           throw new IllegalArgumentException(String.format("No can do. Incompatible sizes: (%d, %d) x (%d, %d)", a.rows(), a.cols(), b.rows(), b.cols()));
         for (int i = 0; i < res.rows(); i++) {
+          Vector aRow = a.data.get(i);
+          Vector resRow = res.data.get(i);
           for (int j = 0; j < res.cols(); j++) {
+            Vector bRow = b.data.get(j);
             double d = 0.0;
             for (int k = 0; k < a.cols(); k++)
-              d += a.data.get(i)[k] * b.data.get(j)[k];
-            res.data.get(i)[j] = d;
+              d += aRow.get(k) * bRow.get(k);
+            resRow.set(j, d);
           }
         }
       } else {
         if (a.cols() != b.rows())
           throw new IllegalArgumentException(String.format("No can do. Incompatible sizes: (%d, %d) x (%d, %d)", a.rows(), a.cols(), b.rows(), b.cols()));
         for (int i = 0; i < res.rows(); i++) {
-          for (int j = 0; j < res.cols(); j++) {
-            double d = 0.0;
-            for (int k = 0; k < a.cols(); k++)
-              d += a.data.get(i)[k] * b.data.get(k)[j];
-            res.data.get(i)[j] = d;
+          Vector aRow = a.data.get(i);
+          Vector resRow = res.data.get(i);
+          resRow.fill(0);
+          for (int k = 0; k < a.cols(); k++) {
+            Vector bRow = b.data.get(k);
+            double aValue = aRow.get(k);
+            for (int j = 0; j < res.cols(); j++)
+              resRow.set(j, resRow.get(j) + aValue * bRow.get(j));
           }
         }
       }
@@ -1007,14 +1066,16 @@ public class Matrix implements Spatial<Matrix> {
     double g = 0.0;
     double scale = 0.0;
     SVDResult res = new SVDResult();
+
+    // pU and pV are allocated here, so each of their rows owns its array and can be indexed directly
     Matrix pU = new Matrix(m, m);
     res.u = pU;
     pU.fill(0.0);
     for (int i = 0; i < m; i++) {
-      double[] rOut = pU.data.get(i);
-      double[] rIn = data.get(i);
+      Vector rOut = pU.data.get(i);
+      Vector rIn = data.get(i);
       for (j = 0; j < n; j++)
-        rOut[j] = rIn[j];
+        rOut.set(j, rIn.get(j));
     }
     double[] pSigma = new double[n];
     res.diagonal = pSigma;
@@ -1033,29 +1094,29 @@ public class Matrix implements Spatial<Matrix> {
       scale = 0.0;
       if (i < m) {
         for (k = i; k < m; k++)
-          scale += Math.abs(pU.data.get(k)[i]);
+          scale += Math.abs(pU.data.get(k).values[i]);
         if (scale != 0.0) {
           for (k = i; k < m; k++) {
-            pU.data.get(k)[i] = safeDivide(pU.data.get(k)[i], scale);
-            double t = pU.data.get(k)[i];
+            pU.data.get(k).values[i] = safeDivide(pU.data.get(k).values[i], scale);
+            double t = pU.data.get(k).values[i];
             s += t * t;
           }
-          f = pU.data.get(i)[i];
+          f = pU.data.get(i).values[i];
           g = -takeSign(Math.sqrt(s), f);
           h = f * g - s;
-          pU.data.get(i)[i] = f - g;
+          pU.data.get(i).values[i] = f - g;
           if (i != n - 1) {
             for (j = l; j < n; j++) {
               s = 0.0;
               for (k = i; k < m; k++)
-                s += pU.data.get(k)[i] * pU.data.get(k)[j];
+                s += pU.data.get(k).values[i] * pU.data.get(k).values[j];
               f = safeDivide(s, h);
               for (k = i; k < m; k++)
-                pU.data.get(k)[j] += f * pU.data.get(k)[i];
+                pU.data.get(k).values[j] += f * pU.data.get(k).values[i];
             }
           }
           for (k = i; k < m; k++)
-            pU.data.get(k)[i] *= scale;
+            pU.data.get(k).values[i] *= scale;
         }
       }
       pSigma[i] = scale * g;
@@ -1066,30 +1127,30 @@ public class Matrix implements Spatial<Matrix> {
       scale = 0.0;
       if (i < m && i != n - 1) {
         for (k = l; k < n; k++)
-          scale += Math.abs(pU.data.get(i)[k]);
+          scale += Math.abs(pU.data.get(i).values[k]);
         if (scale != 0.0) {
           for (k = l; k < n; k++) {
-            pU.data.get(i)[k] = safeDivide(pU.data.get(i)[k], scale);
-            double t = pU.data.get(i)[k];
+            pU.data.get(i).values[k] = safeDivide(pU.data.get(i).values[k], scale);
+            double t = pU.data.get(i).values[k];
             s += t * t;
           }
-          f = pU.data.get(i)[l];
+          f = pU.data.get(i).values[l];
           g = -takeSign(Math.sqrt(s), f);
           h = f * g - s;
-          pU.data.get(i)[l] = f - g;
+          pU.data.get(i).values[l] = f - g;
           for (k = l; k < n; k++)
-            temp[k] = safeDivide(pU.data.get(i)[k], h);
+            temp[k] = safeDivide(pU.data.get(i).values[k], h);
           if (i != m - 1) {
             for (j = l; j < m; j++) {
               s = 0.0;
               for (k = l; k < n; k++)
-                s += pU.data.get(j)[k] * pU.data.get(i)[k];
+                s += pU.data.get(j).values[k] * pU.data.get(i).values[k];
               for (k = l; k < n; k++)
-                pU.data.get(j)[k] += s * temp[k];
+                pU.data.get(j).values[k] += s * temp[k];
             }
           }
           for (k = l; k < n; k++)
-            pU.data.get(i)[k] *= scale;
+            pU.data.get(i).values[k] *= scale;
         }
       }
       norm = Math.max(norm, Math.abs(pSigma[i]) + Math.abs(temp[i]));
@@ -1100,21 +1161,21 @@ public class Matrix implements Spatial<Matrix> {
       if (i < n - 1) {
         if (g != 0.0) {
           for (j = l; j < n; j++)
-            pV.data.get(i)[j] = safeDivide(safeDivide(pU.data.get(i)[j], pU.data.get(i)[l]), g); // (double-division to avoid underflow)
+            pV.data.get(i).values[j] = safeDivide(safeDivide(pU.data.get(i).values[j], pU.data.get(i).values[l]), g); // (double-division to avoid underflow)
           for (j = l; j < n; j++) {
             s = 0.0;
             for (k = l; k < n; k++)
-              s += pU.data.get(i)[k] * pV.data.get(j)[k];
+              s += pU.data.get(i).values[k] * pV.data.get(j).values[k];
             for (k = l; k < n; k++)
-              pV.data.get(j)[k] += s * pV.data.get(i)[k];
+              pV.data.get(j).values[k] += s * pV.data.get(i).values[k];
           }
         }
         for (j = l; j < n; j++) {
-          pV.data.get(i)[j] = 0.0;
-          pV.data.get(j)[i] = 0.0;
+          pV.data.get(i).values[j] = 0.0;
+          pV.data.get(j).values[i] = 0.0;
         }
       }
-      pV.data.get(i)[i] = 1.0;
+      pV.data.get(i).values[i] = 1.0;
       g = temp[i];
       l = i;
     }
@@ -1125,7 +1186,7 @@ public class Matrix implements Spatial<Matrix> {
       g = pSigma[i];
       if (i < n - 1) {
         for (j = l; j < n; j++)
-          pU.data.get(i)[j] = 0.0;
+          pU.data.get(i).values[j] = 0.0;
       }
       if (g != 0.0) {
         g = safeDivide(1.0, g);
@@ -1133,19 +1194,19 @@ public class Matrix implements Spatial<Matrix> {
           for (j = l; j < n; j++) {
             s = 0.0;
             for (k = l; k < m; k++)
-              s += pU.data.get(k)[i] * pU.data.get(k)[j];
-            f = safeDivide(s, pU.data.get(i)[i]) * g;
+              s += pU.data.get(k).values[i] * pU.data.get(k).values[j];
+            f = safeDivide(s, pU.data.get(i).values[i]) * g;
             for (k = i; k < m; k++)
-              pU.data.get(k)[j] += f * pU.data.get(k)[i];
+              pU.data.get(k).values[j] += f * pU.data.get(k).values[i];
           }
         }
         for (j = i; j < m; j++)
-          pU.data.get(j)[i] *= g;
+          pU.data.get(j).values[i] *= g;
       } else {
         for (j = i; j < m; j++)
-          pU.data.get(j)[i] = 0.0;
+          pU.data.get(j).values[i] = 0.0;
       }
-      pU.data.get(i)[i] += 1.0;
+      pU.data.get(i).values[i] += 1.0;
     }
 
     // Diagonalize the bidiagonal matrix
@@ -1180,10 +1241,10 @@ public class Matrix implements Spatial<Matrix> {
             c = g * h;
             s = -f * h;
             for (j = 0; j < m; j++) {
-              y = pU.data.get(j)[q];
-              z = pU.data.get(j)[i];
-              pU.data.get(j)[q] = y * c + z * s;
-              pU.data.get(j)[i] = z * c - y * s;
+              y = pU.data.get(j).values[q];
+              z = pU.data.get(j).values[i];
+              pU.data.get(j).values[q] = y * c + z * s;
+              pU.data.get(j).values[i] = z * c - y * s;
             }
           }
         }
@@ -1195,7 +1256,7 @@ public class Matrix implements Spatial<Matrix> {
             // Singular value should be positive
             pSigma[k] = -z;
             for (j = 0; j < n; j++)
-              pV.data.get(k)[j] *= -1.0;
+              pV.data.get(k).values[j] *= -1.0;
           }
           break;
         }
@@ -1230,10 +1291,10 @@ public class Matrix implements Spatial<Matrix> {
           h = y * s;
           y = y * c;
           for (p = 0; p < n; p++) {
-            x = pV.data.get(j)[p];
-            z = pV.data.get(i)[p];
-            pV.data.get(j)[p] = x * c + z * s;
-            pV.data.get(i)[p] = z * c - x * s;
+            x = pV.data.get(j).values[p];
+            z = pV.data.get(i).values[p];
+            pV.data.get(j).values[p] = x * c + z * s;
+            pV.data.get(i).values[p] = z * c - x * s;
           }
           z = pythag(f, h);
           pSigma[j] = z;
@@ -1245,10 +1306,10 @@ public class Matrix implements Spatial<Matrix> {
           f = c * g + s * y;
           x = c * y - s * g;
           for (p = 0; p < m; p++) {
-            y = pU.data.get(p)[j];
-            z = pU.data.get(p)[i];
-            pU.data.get(p)[j] = y * c + z * s;
-            pU.data.get(p)[i] = z * c - y * s;
+            y = pU.data.get(p).values[j];
+            z = pU.data.get(p).values[i];
+            pU.data.get(p).values[j] = y * c + z * s;
+            pU.data.get(p).values[i] = z * c - y * s;
           }
         }
         temp[l] = 0.0;
@@ -1295,9 +1356,9 @@ public class Matrix implements Spatial<Matrix> {
     int m = Math.min(rows, columns);
     for (int i = 0; i < m; i++) {
       if (Math.abs(result.diagonal[i]) > 1e-9) {
-        sigma.data.get(i)[i] = safeDivide(1.0, result.diagonal[i]);
+        sigma.data.get(i).values[i] = safeDivide(1.0, result.diagonal[i]);
       } else {
-        sigma.data.get(i)[i] = 0.0;
+        sigma.data.get(i).values[i] = 0.0;
       }
     }
 
@@ -1400,6 +1461,27 @@ public class Matrix implements Spatial<Matrix> {
     }
   }
 
+  /**
+   * Returns the row numbers from first to first + count - 1 in a random order, drawn with the
+   * same shuffle as {@link #shuffleMatrices}, so rows can be visited in that order without being
+   * moved.
+   */
+  public static int[] shuffledRowOrder(int first, int count, Random random) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = first + i;
+    }
+
+    for (int i = count; i >= 2; i--) {
+      int r = random.nextInt(i);
+      int swap = order[i - 1];
+      order[i - 1] = order[r];
+      order[r] = swap;
+    }
+    return order;
+  }
+
+
   @Override
   public String toString() {
     if (rows() > 100 || cols() > 100) {
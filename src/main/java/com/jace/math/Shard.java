@@ -0,0 +1,326 @@
+package com.jace.math;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Features and labels in one binary file that any number of processes can map at once. One process
+ * writes the shard; every trainer then opens it read-only, which costs a read of the header no
+ * matter how large the data is, and the operating system keeps a single copy of the data in its
+ * page cache for all of them.
+ * <br>
+ * Everything is little-endian. The header holds the magic number, the format version, the row,
+ * feature and label counts, the offsets of the features and labels, and the metadata of the
+ * features and then of the labels, in the layout {@link ColumnFile} uses. The features and the
+ * labels each start on a page boundary and are stored a row at a time, so a mini-batch of rows is
+ * read from a few contiguous pages.
+ * <br>
+ * Values are read straight from the mappings; {@link #toFeatures()} and {@link #toLabels()} copy
+ * them into ordinary matrices when that is needed.
+ */
+public class Shard {
+  /**
+   * "JSHD" in little-endian byte order.
+   */
+  public static final int MAGIC = 0x4448534A;
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_SIZE = 48;
+  private static final int PAGE_SIZE = 4096;
+  private static final int WRITE_CHUNK = 1 << 16;
+
+  // A single mapping is limited to 2 GB, so each section is mapped in segments of whole rows
+  private static final int MAX_SEGMENT = 1 << 30;
+
+  private File file;
+  private int rows;
+  private Section features;
+  private Section labels;
+
+  private Shard(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Writes the features and labels to file. The file is written under a temporary name of its own
+   * and renamed into place, so a process that opens it never sees it half written, even while
+   * another process writes the same shard.
+   */
+  public static void write(Matrix features, Matrix labels, File file) throws IOException {
+    if (features.rows() != labels.rows()) {
+      throw new IllegalArgumentException(
+          "Your input features and labels must have the same number of rows.");
+    }
+
+    int rows = features.rows();
+    ByteBuffer featureMetadata = ColumnFile.encodeMetadata(features.getMetadata(), features.cols());
+    ByteBuffer labelMetadata = ColumnFile.encodeMetadata(labels.getMetadata(), labels.cols());
+
+    long featureOffset = align(
+        HEADER_SIZE + featureMetadata.remaining() + labelMetadata.remaining());
+    long labelOffset = align(featureOffset + (long) rows * features.cols() * Double.BYTES);
+
+    ByteBuffer header = ByteBuffer.allocate((int) featureOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putInt(rows);
+    header.putInt(features.cols());
+    header.putInt(labels.cols());
+    header.putInt(0);
+    header.putLong(featureOffset);
+    header.putLong(labelOffset);
+    header.putLong(0);
+    header.put(featureMetadata);
+    header.put(labelMetadata);
+    header.position(0);
+
+    ColumnFile.writeAtomically(file, (channel) -> {
+      ColumnFile.writeFully(channel, header);
+      writeRows(channel, features);
+
+      ByteBuffer padding = ByteBuffer.allocate((int) (labelOffset - channel.position()));
+      ColumnFile.writeFully(channel, padding);
+      writeRows(channel, labels);
+    });
+  }
+
+  /**
+   * Maps a shard read-only. Only the header is read; the rows are paged in as they are used.
+   */
+  public static Shard open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException(file + " is not a shard.");
+      }
+
+      MappedByteBuffer mapped = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+      mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (mapped.getInt() != MAGIC) {
+        throw new IOException(file + " is not a shard.");
+      }
+
+      int formatVersion = mapped.getInt();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IOException(String.format(
+            "%s has format version %d, but only version %d can be read.",
+            file, formatVersion, FORMAT_VERSION));
+      }
+
+      Shard shard = new Shard(file);
+      shard.rows = mapped.getInt();
+      int featureCols = mapped.getInt();
+      int labelCols = mapped.getInt();
+      mapped.getInt();
+      long featureOffset = mapped.getLong();
+      long labelOffset = mapped.getLong();
+      mapped.getLong();
+
+      if (shard.rows < 0 || featureCols < 0 || labelCols < 0
+          || featureOffset % PAGE_SIZE != 0 || labelOffset % PAGE_SIZE != 0
+          || featureOffset + (long) shard.rows * featureCols * Double.BYTES > labelOffset
+          || labelOffset + (long) shard.rows * labelCols * Double.BYTES > channel.size()) {
+        throw new IOException(file + " is truncated or corrupt.");
+      }
+
+      Metadata featureMetadata;
+      Metadata labelMetadata;
+      try {
+        featureMetadata = ColumnFile.decodeMetadata(mapped, featureCols);
+        labelMetadata = ColumnFile.decodeMetadata(mapped, labelCols);
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        throw new IOException(file + " is truncated or corrupt.", e);
+      }
+
+      shard.features = new Section(
+          channel, featureOffset, shard.rows, featureCols, featureMetadata);
+      shard.labels = new Section(channel, labelOffset, shard.rows, labelCols, labelMetadata);
+      return shard;
+    }
+  }
+
+  /**
+   * Whether file starts with the magic number of a shard.
+   */
+  public static boolean isShard(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        // Keep reading until the magic number is complete or the file ends
+      }
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int rows() {
+    return rows;
+  }
+
+  public int getFeatureCount() {
+    return features.cols;
+  }
+
+  public int getLabelCount() {
+    return labels.cols;
+  }
+
+  public Metadata getFeatureMetadata() {
+    return features.metadata;
+  }
+
+  public Metadata getLabelMetadata() {
+    return labels.metadata;
+  }
+
+  public double getFeature(int row, int column) {
+    return features.get(row, column);
+  }
+
+  public double getLabel(int row, int column) {
+    return labels.get(row, column);
+  }
+
+  /**
+   * Copies the features of one row into features from offset on.
+   */
+  public void getFeatures(int row, double[] features, int offset) {
+    this.features.getRow(row, features, offset);
+  }
+
+  /**
+   * Copies the labels of one row into labels from offset on.
+   */
+  public void getLabels(int row, double[] labels, int offset) {
+    this.labels.getRow(row, labels, offset);
+  }
+
+  /**
+   * Copies the features into a new matrix with ordinary rows on the heap.
+   */
+  public Matrix toFeatures() {
+    return features.toMatrix();
+  }
+
+  /**
+   * Copies the labels into a new matrix with ordinary rows on the heap.
+   */
+  public Matrix toLabels() {
+    return labels.toMatrix();
+  }
+
+  private static long align(long offset) {
+    return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+  }
+
+  private static void writeRows(FileChannel channel, Matrix matrix) throws IOException {
+    int cols = matrix.cols();
+    ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+    DoubleBuffer doubles = chunk.asDoubleBuffer();
+
+    doubles.clear();
+    for (int i = 0; i < matrix.rows(); i++) {
+      Vector row = matrix.row(i);
+      for (int j = 0; j < cols; j++) {
+        if (!doubles.hasRemaining()) {
+          writeChunk(channel, chunk, doubles);
+        }
+        doubles.put(row.get(j));
+      }
+    }
+    writeChunk(channel, chunk, doubles);
+  }
+
+  private static void writeChunk(FileChannel channel, ByteBuffer chunk, DoubleBuffer doubles)
+      throws IOException {
+    chunk.clear();
+    chunk.limit(doubles.position() * Double.BYTES);
+    ColumnFile.writeFully(channel, chunk);
+    doubles.clear();
+  }
+
+  /**
+   * The rows of the features or the labels, mapped a segment at a time.
+   */
+  private static class Section {
+    private int rows;
+    private int cols;
+    private int rowsPerSegment;
+    private Metadata metadata;
+    private DoubleBuffer[] segments;
+
+    Section(FileChannel channel, long offset, int rows, int cols, Metadata metadata)
+        throws IOException {
+      this.rows = rows;
+      this.cols = cols;
+      this.metadata = metadata;
+
+      long rowBytes = (long) cols * Double.BYTES;
+      rowsPerSegment = (int) Math.min(rows, MAX_SEGMENT / Math.max(rowBytes, 1));
+      if (rowsPerSegment == 0) {
+        if (rows > 0) {
+          throw new IOException("A row of " + cols + " columns does not fit in one mapping.");
+        }
+        rowsPerSegment = 1;
+      }
+
+      segments = new DoubleBuffer[(rows + rowsPerSegment - 1) / rowsPerSegment];
+      for (int s = 0; s < segments.length; s++) {
+        int segmentRows = Math.min(rowsPerSegment, rows - s * rowsPerSegment);
+        segments[s] = channel
+            .map(FileChannel.MapMode.READ_ONLY,
+                offset + s * rowsPerSegment * rowBytes, segmentRows * rowBytes)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+      }
+    }
+
+    double get(int row, int column) {
+      if (column < 0 || column >= cols) {
+        throw new IndexOutOfBoundsException("Column " + column + " of " + cols);
+      }
+      return segment(row).get((row % rowsPerSegment) * cols + column);
+    }
+
+    void getRow(int row, double[] values, int offset) {
+      segment(row).get((row % rowsPerSegment) * cols, values, offset, cols);
+    }
+
+    Matrix toMatrix() {
+      List<double[]> matrixRows = new ArrayList<>(rows);
+      for (int i = 0; i < rows; i++) {
+        double[] row = new double[cols];
+        getRow(i, row, 0);
+        matrixRows.add(row);
+      }
+
+      // Each matrix gets its own metadata, since matrices modify theirs
+      Matrix matrix = new Matrix();
+      matrix.setRows(ColumnFile.decodeMetadata(
+          ColumnFile.encodeMetadata(metadata, cols), cols), matrixRows);
+      return matrix;
+    }
+
+    private DoubleBuffer segment(int row) {
+      if (row < 0 || row >= rows) {
+        throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+      }
+      return segments[row / rowsPerSegment];
+    }
+  }
+}
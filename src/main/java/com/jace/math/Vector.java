@@ -5,6 +5,10 @@ package com.jace.math;
 // ----------------------------------------------------------------
 
 import com.jace.util.Json;
+import com.jace.util.JsonReader;
+import com.jace.util.JsonWriter;
+
+import java.io.IOException;
 
 import java.util.Arrays;
 import java.util.function.Function;
@@ -55,20 +59,27 @@ public class Vector implements Spatial<Vector> {
    * Unmarshalling constructor
    */
   public Vector(Json json) {
-    values = new double[json.size()];
-    for (int i = 0; i < json.size(); i++) {
-      values[i] = json.getDouble(i);
-    }
+    values = json.toDoubleArray();
     startIndex = 0;
-    length = json.size();
+    length = values.length;
+  }
+
+  /**
+   * Streaming unmarshalling constructor
+   */
+  public Vector(JsonReader reader) throws IOException {
+    this(reader.nextDoubleArray());
   }
 
   public Json marshal() {
-    Json list = Json.newList();
-    for (int i = 0; i < size(); i++) {
-      list.add(get(i));
-    }
-    return list;
+    return Json.newDoubleArray(toDoubleArray());
+  }
+
+  /**
+   * Writes this vector as a list of numbers, without building a Json DOM
+   */
+  public void write(JsonWriter writer) throws IOException {
+    writer.value(values, startIndex, length);
   }
 
   public Vector map(Function<Double, Double> mapper) {
@@ -281,6 +292,14 @@ public class Vector implements Spatial<Vector> {
 
   @Override
   public boolean equals(Object other) {
-    return other instanceof Vector && Arrays.equals(this.values, ((Vector) other).values);
+    if (!(other instanceof Vector) || ((Vector) other).size() != size()) {
+      return false;
+    }
+
+    // Compare element ranges, since views share a larger buffer
+    Vector that = (Vector) other;
+    return Arrays.equals(
+        values, startIndex, startIndex + length,
+        that.values, that.startIndex, that.startIndex + that.length);
   }
 }
\ No newline at end of file
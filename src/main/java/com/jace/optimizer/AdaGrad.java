@@ -0,0 +1,54 @@
+package com.jace.optimizer;
+
+public class AdaGrad extends ChunkedOptimizer {
+  private double epsilon;
+
+  private double[] sumSquares;
+
+  public AdaGrad() {
+    this(1e-8);
+  }
+
+  public AdaGrad(double epsilon) {
+    this.epsilon = epsilon;
+  }
+
+  @Override
+  void prepare(int length) {
+    if (sumSquares == null || sumSquares.length != length) {
+      sumSquares = new double[length];
+    }
+  }
+
+  @Override
+  void resetState() {
+    sumSquares = null;
+  }
+
+  @Override
+  double[][] getStateArrays() {
+    return (sumSquares == null) ? new double[0][] : new double[][]{sumSquares};
+  }
+
+  @Override
+  void setStateArrays(double[][] arrays) {
+    sumSquares = arrays[0].clone();
+  }
+
+  @Override
+  void update(double[] parameters, double[] gradients, double learningRate, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      double gradient = gradients[i];
+      double v = sumSquares[i] + gradient * gradient;
+
+      sumSquares[i] = v;
+      parameters[i] += learningRate * gradient / (Math.sqrt(v) + epsilon);
+      gradients[i] = 0;
+    }
+  }
+
+  @Override
+  public AdaGrad copy() {
+    return copySettingsTo(new AdaGrad(epsilon));
+  }
+}
@@ -0,0 +1,94 @@
+package com.jace.optimizer;
+
+public class Adam extends ChunkedOptimizer {
+  private double beta1;
+  private double beta2;
+  private double epsilon;
+
+  private double[] firstMoment;
+  private double[] secondMoment;
+
+  private double firstCorrection;
+  private double secondCorrection;
+
+  public Adam() {
+    this(0.9, 0.999, 1e-8);
+  }
+
+  public Adam(double beta1, double beta2, double epsilon) {
+    this.beta1 = beta1;
+    this.beta2 = beta2;
+    this.epsilon = epsilon;
+  }
+
+  public double getBeta1() {
+    return beta1;
+  }
+
+  public double getBeta2() {
+    return beta2;
+  }
+
+  public double getEpsilon() {
+    return epsilon;
+  }
+
+  @Override
+  void prepare(int length) {
+    if (firstMoment == null || firstMoment.length != length) {
+      firstMoment = new double[length];
+      secondMoment = new double[length];
+    }
+  }
+
+  @Override
+  void resetState() {
+    firstMoment = null;
+    secondMoment = null;
+  }
+
+  @Override
+  void beforeStep(double learningRate) {
+    firstCorrection = 1.0 / (1 - Math.pow(beta1, getSteps()));
+    secondCorrection = 1.0 / (1 - Math.pow(beta2, getSteps()));
+  }
+
+  @Override
+  double[][] getStateArrays() {
+    return (firstMoment == null) ? new double[0][] : new double[][]{firstMoment, secondMoment};
+  }
+
+  @Override
+  void setStateArrays(double[][] arrays) {
+    firstMoment = arrays[0].clone();
+    secondMoment = arrays[1].clone();
+  }
+
+  /**
+   * What every parameter is multiplied by before its step. Plain Adam does not decay weights.
+   */
+  double decayFactor(double learningRate) {
+    return 1;
+  }
+
+  @Override
+  void update(double[] parameters, double[] gradients, double learningRate, int begin, int end) {
+    double decay = decayFactor(learningRate);
+    for (int i = begin; i < end; i++) {
+      double gradient = gradients[i];
+      double m = beta1 * firstMoment[i] + (1 - beta1) * gradient;
+      double v = beta2 * secondMoment[i] + (1 - beta2) * gradient * gradient;
+
+      firstMoment[i] = m;
+      secondMoment[i] = v;
+      parameters[i] = parameters[i] * decay
+          + learningRate * (m * firstCorrection) / (Math.sqrt(v * secondCorrection) + epsilon);
+      gradients[i] = 0;
+    }
+  }
+
+  @Override
+  public Adam copy() {
+    return copySettingsTo(new Adam(beta1, beta2, epsilon));
+  }
+}
@@ -0,0 +1,40 @@
+package com.jace.optimizer;
+
+/**
+ * Adam with decoupled weight decay: the parameters shrink by learningRate * weightDecay every
+ * step, independently of the adaptive gradient step.
+ */
+public class AdamW extends Adam {
+  private double weightDecay;
+
+  public AdamW() {
+    this(0.01);
+  }
+
+  public AdamW(double weightDecay) {
+    super();
+    this.weightDecay = weightDecay;
+  }
+
+  public AdamW(double beta1, double beta2, double epsilon, double weightDecay) {
+    super(beta1, beta2, epsilon);
+    this.weightDecay = weightDecay;
+  }
+
+  public double getWeightDecay() {
+    return weightDecay;
+  }
+
+  /**
+   * The decay is applied in Adam's loop, so each parameter is read and written once per step.
+   */
+  @Override
+  double decayFactor(double learningRate) {
+    return 1 - learningRate * weightDecay;
+  }
+
+  @Override
+  public AdamW copy() {
+    return copySettingsTo(new AdamW(getBeta1(), getBeta2(), getEpsilon(), weightDecay));
+  }
+}
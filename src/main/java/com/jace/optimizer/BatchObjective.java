@@ -0,0 +1,124 @@
+package com.jace.optimizer;
+
+import com.jace.layer.ConnectedLayer;
+import com.jace.layer.Layer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Half the sum squared error of a network over a whole data set, plus each layer's regularization
+ * penalty for every row, as a function of the network's flat parameter buffer. The rows are split
+ * into contiguous ranges, each run through its own {@link NeuralNetwork#replica()} in parallel, and
+ * the partial gradients are summed in range order so the result does not depend on thread
+ * scheduling.
+ */
+public class BatchObjective {
+  private NeuralNetwork neuralNetwork;
+  private Matrix features;
+  private Matrix labels;
+
+  private List<NeuralNetwork> replicas;
+  private double[] partialLosses;
+
+  public BatchObjective(NeuralNetwork neuralNetwork, Matrix features, Matrix labels) {
+    this(neuralNetwork, features, labels, Runtime.getRuntime().availableProcessors());
+  }
+
+  public BatchObjective(NeuralNetwork neuralNetwork, Matrix features, Matrix labels,
+      int parallelism) {
+    if (features.rows() != labels.rows()) {
+      throw new IllegalArgumentException(
+          "Your input features and labels must have the same number of rows.");
+    }
+
+    this.neuralNetwork = neuralNetwork;
+    this.features = features;
+    this.labels = labels;
+
+    int replicaCount = Math.max(1, Math.min(parallelism, features.rows()));
+    this.replicas = new ArrayList<>();
+    for (int i = 0; i < replicaCount; i++) {
+      replicas.add(neuralNetwork.replica());
+    }
+
+    this.partialLosses = new double[replicaCount];
+  }
+
+  /**
+   * Whether this objective evaluates the given network on the given data, with replicas bound to
+   * the network's current parameter buffer.
+   */
+  public boolean isFor(NeuralNetwork neuralNetwork, Matrix features, Matrix labels) {
+    return this.neuralNetwork == neuralNetwork
+        && this.features == features
+        && this.labels == labels
+        && replicas.get(0).getParameters() == neuralNetwork.getParameters();
+  }
+
+  /**
+   * The parameter buffer the objective is evaluated at. Writing to it moves the network.
+   */
+  public double[] getParameters() {
+    return neuralNetwork.getParameters();
+  }
+
+  /**
+   * Returns the loss at the current parameters and writes its gradient into gradient.
+   */
+  public double evaluate(double[] gradient) {
+    // The optimizer moved the parameters since the last evaluation
+    neuralNetwork.parametersChanged();
+
+    int replicaCount = replicas.size();
+    int rows = features.rows();
+
+    IntStream.range(0, replicaCount).parallel().forEach((r) -> {
+      NeuralNetwork replica = replicas.get(r);
+      Arrays.fill(replica.getGradients(), 0);
+
+      double loss = 0;
+      for (int row = rows * r / replicaCount; row < rows * (r + 1) / replicaCount; row++) {
+        Vector input = features.row(row);
+        Vector target = labels.row(row);
+        Vector prediction = replica.predict(input);
+
+        for (int i = 0; i < target.size(); i++) {
+          double error = target.get(i) - prediction.get(i);
+          loss += 0.5 * error * error;
+        }
+
+        replica.backPropagate(target);
+        replica.updateGradient(input);
+      }
+
+      partialLosses[r] = loss;
+    });
+
+    // Accumulated gradients point downhill, so the gradient of the loss is their negation
+    Arrays.fill(gradient, 0);
+    double loss = 0;
+    for (int r = 0; r < replicaCount; r++) {
+      double[] partialGradient = replicas.get(r).getGradients();
+      for (int i = 0; i < gradient.length; i++) {
+        gradient[i] -= partialGradient[i];
+      }
+
+      loss += partialLosses[r];
+    }
+
+    // The replicas add the penalty's gradient once per row, so the penalty counts once per row
+    for (Layer layer : neuralNetwork.getLayers()) {
+      if (layer instanceof ConnectedLayer) {
+        loss += rows * ((ConnectedLayer<?, ?>) layer).getRegularizationLoss();
+      }
+    }
+
+    return loss;
+  }
+}
@@ -0,0 +1,136 @@
+package com.jace.optimizer;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Base class for optimizers whose update is independent per parameter. Subclasses implement one
+ * fused loop over a range of the buffers, which runs either once over the whole buffer or, when
+ * parallel, once per chunk on the common fork-join pool.
+ */
+public abstract class ChunkedOptimizer implements Optimizer {
+  static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+  private boolean parallel = false;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private int steps = 0;
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("The chunk size must be positive.");
+    }
+
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * The number of steps taken since the last reset, counting the current one.
+   */
+  int getSteps() {
+    return steps;
+  }
+
+  @Override
+  public void step(double[] parameters, double[] gradients, double learningRate) {
+    if (parameters.length != gradients.length) {
+      throw new IllegalArgumentException("mismatching sizes");
+    }
+
+    prepare(parameters.length);
+    steps++;
+    beforeStep(learningRate);
+
+    int length = parameters.length;
+    if (!parallel || length <= chunkSize) {
+      update(parameters, gradients, learningRate, 0, length);
+      return;
+    }
+
+    int chunks = (length + chunkSize - 1) / chunkSize;
+    IntStream.range(0, chunks).parallel().forEach((chunk) -> {
+      int begin = chunk * chunkSize;
+      update(parameters, gradients, learningRate, begin, Math.min(length, begin + chunkSize));
+    });
+  }
+
+  @Override
+  public void reset() {
+    steps = 0;
+    resetState();
+  }
+
+  /**
+   * The step count, followed by the per-parameter state arrays once they have been allocated.
+   */
+  @Override
+  public double[][] getState() {
+    double[][] arrays = getStateArrays();
+    double[][] state = new double[arrays.length + 1][];
+    state[0] = new double[]{steps};
+    System.arraycopy(arrays, 0, state, 1, arrays.length);
+    return state;
+  }
+
+  @Override
+  public void setState(double[][] state) {
+    steps = (int) state[0][0];
+
+    double[][] arrays = Arrays.copyOfRange(state, 1, state.length);
+    if (arrays.length == 0) {
+      resetState();
+    } else {
+      setStateArrays(arrays);
+    }
+  }
+
+  /**
+   * Copies the chunking settings into a new optimizer.
+   */
+  <T extends ChunkedOptimizer> T copySettingsTo(T optimizer) {
+    optimizer.setParallel(parallel);
+    optimizer.setChunkSize(chunkSize);
+    return optimizer;
+  }
+
+  /**
+   * Allocates per-parameter state if there is none for a buffer of this length.
+   */
+  abstract void prepare(int length);
+
+  abstract void resetState();
+
+  /**
+   * The per-parameter state arrays, or none if they have not been allocated yet.
+   */
+  abstract double[][] getStateArrays();
+
+  /**
+   * Replaces the per-parameter state with copies of the given arrays.
+   */
+  abstract void setStateArrays(double[][] arrays);
+
+  /**
+   * Computes anything shared by every chunk of the current step.
+   */
+  void beforeStep(double learningRate) {
+  }
+
+  /**
+   * Updates parameters[begin..end) and clears the same range of gradients.
+   */
+  abstract void update(
+      double[] parameters, double[] gradients, double learningRate, int begin, int end);
+}
@@ -0,0 +1,58 @@
+package com.jace.optimizer;
+
+/**
+ * Nonlinear conjugate gradient with the Polak-Ribiere+ update, which falls back to steepest
+ * descent whenever the conjugacy factor would be negative.
+ */
+public class ConjugateGradient extends LineSearchOptimizer {
+  private double[] previousDirection;
+  private double beta;
+  private boolean hasPrevious;
+
+  private double previousStep;
+  private double previousSlope;
+
+  @Override
+  void reset(int length) {
+    if (previousDirection == null || previousDirection.length != length) {
+      previousDirection = new double[length];
+    }
+
+    hasPrevious = false;
+  }
+
+  @Override
+  void computeDirection(double[] gradient, double[] direction) {
+    for (int i = 0; i < direction.length; i++) {
+      direction[i] = -gradient[i] + (hasPrevious ? beta * previousDirection[i] : 0);
+    }
+  }
+
+  @Override
+  double initialStep(double[] gradient, double[] direction, double slope) {
+    if (!hasPrevious) {
+      return Math.min(1, 1 / Math.sqrt(-slope));
+    }
+
+    // Assume the first-order change will be the same as in the previous step
+    return previousStep * previousSlope / slope;
+  }
+
+  @Override
+  void update(double step, double[] direction, double[] gradient, double[] newGradient,
+      double slope) {
+    double numerator = 0;
+    double denominator = 0;
+    for (int i = 0; i < gradient.length; i++) {
+      numerator += newGradient[i] * (newGradient[i] - gradient[i]);
+      denominator += gradient[i] * gradient[i];
+    }
+
+    beta = Math.max(0, numerator / denominator);
+    System.arraycopy(direction, 0, previousDirection, 0, direction.length);
+    hasPrevious = true;
+
+    previousStep = step;
+    previousSlope = slope;
+  }
+}
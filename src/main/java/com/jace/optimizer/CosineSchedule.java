@@ -0,0 +1,30 @@
+package com.jace.optimizer;
+
+/**
+ * Anneals the learning rate from its base value to minimumLearningRate along half a cosine over
+ * totalEpochs epochs, then holds it there.
+ */
+public class CosineSchedule implements LearningRateSchedule {
+  private int totalEpochs;
+  private double minimumLearningRate;
+
+  public CosineSchedule(int totalEpochs) {
+    this(totalEpochs, 0);
+  }
+
+  public CosineSchedule(int totalEpochs, double minimumLearningRate) {
+    if (totalEpochs < 1) {
+      throw new IllegalArgumentException("The schedule must last at least one epoch.");
+    }
+
+    this.totalEpochs = totalEpochs;
+    this.minimumLearningRate = minimumLearningRate;
+  }
+
+  @Override
+  public double learningRate(int epoch, double baseLearningRate) {
+    double progress = Math.min(epoch, totalEpochs) / (double) totalEpochs;
+    return minimumLearningRate
+        + 0.5 * (baseLearningRate - minimumLearningRate) * (1 + Math.cos(Math.PI * progress));
+  }
+}
@@ -0,0 +1,103 @@
+package com.jace.optimizer;
+
+/**
+ * Limited-memory BFGS. The last few steps and gradient changes stand in for the inverse Hessian,
+ * applied with the two-loop recursion.
+ */
+public class LBFGS extends LineSearchOptimizer {
+  private int memory;
+
+  private double[][] steps;
+  private double[][] gradientChanges;
+  private double[] rho;
+  private double[] alpha;
+  private int count;
+  private int newest;
+
+  public LBFGS() {
+    this(10);
+  }
+
+  public LBFGS(int memory) {
+    if (memory < 1) {
+      throw new IllegalArgumentException("L-BFGS needs to remember at least one step.");
+    }
+
+    this.memory = memory;
+  }
+
+  @Override
+  void reset(int length) {
+    if (steps == null || steps[0].length != length) {
+      steps = new double[memory][length];
+      gradientChanges = new double[memory][length];
+      rho = new double[memory];
+      alpha = new double[memory];
+    }
+
+    count = 0;
+    newest = -1;
+  }
+
+  @Override
+  void computeDirection(double[] gradient, double[] direction) {
+    for (int i = 0; i < direction.length; i++) {
+      direction[i] = -gradient[i];
+    }
+
+    for (int k = 0; k < count; k++) {
+      int index = Math.floorMod(newest - k, memory);
+      alpha[index] = rho[index] * dot(steps[index], direction);
+      addScaled(direction, gradientChanges[index], -alpha[index]);
+    }
+
+    if (count > 0) {
+      double[] y = gradientChanges[newest];
+      double scale = dot(steps[newest], y) / dot(y, y);
+      for (int i = 0; i < direction.length; i++) {
+        direction[i] *= scale;
+      }
+    }
+
+    for (int k = count - 1; k >= 0; k--) {
+      int index = Math.floorMod(newest - k, memory);
+      double beta = rho[index] * dot(gradientChanges[index], direction);
+      addScaled(direction, steps[index], alpha[index] - beta);
+    }
+  }
+
+  @Override
+  double initialStep(double[] gradient, double[] direction, double slope) {
+    // Without curvature information the direction is the raw gradient, which may be huge
+    return (count == 0) ? Math.min(1, 1 / Math.sqrt(-slope)) : 1;
+  }
+
+  @Override
+  void update(double step, double[] direction, double[] gradient, double[] newGradient,
+      double slope) {
+    int index = (newest + 1) % memory;
+    double[] s = steps[index];
+    double[] y = gradientChanges[index];
+
+    for (int i = 0; i < s.length; i++) {
+      s[i] = step * direction[i];
+      y[i] = newGradient[i] - gradient[i];
+    }
+
+    double curvature = dot(s, y);
+    if (curvature <= 1e-12) {
+      // Skip updates that would break positive definiteness
+      return;
+    }
+
+    rho[index] = 1 / curvature;
+    newest = index;
+    count = Math.min(count + 1, memory);
+  }
+
+  private static void addScaled(double[] target, double[] values, double scale) {
+    for (int i = 0; i < target.length; i++) {
+      target[i] += scale * values[i];
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.jace.optimizer;
+
+/**
+ * Decides the learning rate of each epoch from the rate the network started with.
+ */
+public interface LearningRateSchedule {
+  /**
+   * The learning rate to use for the given (zero-based) epoch.
+   */
+  double learningRate(int epoch, double baseLearningRate);
+
+  /**
+   * Called after each epoch with the validation error, for schedules that react to progress.
+   */
+  default void observe(double validationError) {
+  }
+
+  default void reset() {
+  }
+
+  /**
+   * The schedule's progress, for checkpoints. Schedules that only depend on the epoch have none.
+   */
+  default double[] getState() {
+    return new double[0];
+  }
+
+  /**
+   * Restores the progress returned by {@link #getState}.
+   */
+  default void setState(double[] state) {
+  }
+}
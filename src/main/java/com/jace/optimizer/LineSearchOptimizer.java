@@ -0,0 +1,126 @@
+package com.jace.optimizer;
+
+/**
+ * Base class for full-batch optimizers that pick a descent direction and then backtrack along it
+ * until the loss decreases enough (the Armijo condition).
+ */
+public abstract class LineSearchOptimizer {
+  private static final double SUFFICIENT_DECREASE = 1e-4;
+  private static final int MAX_LINE_SEARCH_STEPS = 40;
+
+  private double tolerance = 1e-6;
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * Minimization stops once the largest gradient component is at most this.
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Runs up to maxIterations iterations, leaving the objective's parameters at the best point
+   * found, and returns the loss there.
+   */
+  public double minimize(BatchObjective objective, int maxIterations) {
+    double[] x = objective.getParameters();
+    int n = x.length;
+
+    double[] gradient = new double[n];
+    double[] newGradient = new double[n];
+    double[] direction = new double[n];
+    double[] start = new double[n];
+
+    double loss = objective.evaluate(gradient);
+    reset(n);
+
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      if (maxAbs(gradient) <= tolerance) {
+        break;
+      }
+
+      computeDirection(gradient, direction);
+      double slope = dot(gradient, direction);
+
+      if (slope >= 0) {
+        // Not a descent direction, so start over from steepest descent
+        reset(n);
+        for (int i = 0; i < n; i++) {
+          direction[i] = -gradient[i];
+        }
+        slope = dot(gradient, direction);
+      }
+
+      double step = initialStep(gradient, direction, slope);
+      System.arraycopy(x, 0, start, 0, n);
+
+      double newLoss = Double.NaN;
+      boolean accepted = false;
+      for (int i = 0; i < MAX_LINE_SEARCH_STEPS; i++) {
+        for (int j = 0; j < n; j++) {
+          x[j] = start[j] + step * direction[j];
+        }
+
+        newLoss = objective.evaluate(newGradient);
+        if (newLoss <= loss + SUFFICIENT_DECREASE * step * slope) {
+          accepted = true;
+          break;
+        }
+
+        step *= 0.5;
+      }
+
+      if (!accepted) {
+        System.arraycopy(start, 0, x, 0, n);
+        break;
+      }
+
+      update(step, direction, gradient, newGradient, slope);
+
+      loss = newLoss;
+      double[] swap = gradient;
+      gradient = newGradient;
+      newGradient = swap;
+    }
+
+    return loss;
+  }
+
+  abstract void reset(int length);
+
+  /**
+   * Writes the next search direction into direction.
+   */
+  abstract void computeDirection(double[] gradient, double[] direction);
+
+  /**
+   * The first step length the line search tries.
+   */
+  abstract double initialStep(double[] gradient, double[] direction, double slope);
+
+  /**
+   * Records an accepted step of length step along direction, which moved the gradient from
+   * gradient to newGradient.
+   */
+  abstract void update(double step, double[] direction, double[] gradient, double[] newGradient,
+      double slope);
+
+  static double dot(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  static double maxAbs(double[] a) {
+    double max = 0;
+    for (double value : a) {
+      max = Math.max(max, Math.abs(value));
+    }
+    return max;
+  }
+}
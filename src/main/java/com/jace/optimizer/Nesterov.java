@@ -0,0 +1,58 @@
+package com.jace.optimizer;
+
+/**
+ * Nesterov momentum, in the form that only needs the gradient at the current parameters:
+ * velocity = momentum * velocity + gradient, then step along gradient + momentum * velocity.
+ */
+public class Nesterov extends ChunkedOptimizer {
+  private double momentum;
+
+  private double[] velocity;
+
+  public Nesterov() {
+    this(0.9);
+  }
+
+  public Nesterov(double momentum) {
+    this.momentum = momentum;
+  }
+
+  @Override
+  void prepare(int length) {
+    if (velocity == null || velocity.length != length) {
+      velocity = new double[length];
+    }
+  }
+
+  @Override
+  void resetState() {
+    velocity = null;
+  }
+
+  @Override
+  double[][] getStateArrays() {
+    return (velocity == null) ? new double[0][] : new double[][]{velocity};
+  }
+
+  @Override
+  void setStateArrays(double[][] arrays) {
+    velocity = arrays[0].clone();
+  }
+
+  @Override
+  void update(double[] parameters, double[] gradients, double learningRate, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      double gradient = gradients[i];
+      double v = momentum * velocity[i] + gradient;
+
+      velocity[i] = v;
+      parameters[i] += learningRate * (gradient + momentum * v);
+      gradients[i] = 0;
+    }
+  }
+
+  @Override
+  public Nesterov copy() {
+    return copySettingsTo(new Nesterov(momentum));
+  }
+}
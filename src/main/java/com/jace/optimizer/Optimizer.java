@@ -0,0 +1,34 @@
+package com.jace.optimizer;
+
+/**
+ * Updates a network's flat parameter buffer from its accumulated gradient. Gradients in this
+ * library point downhill (they are accumulated from target - prediction), so every optimizer moves
+ * the parameters along the gradient. After a step the gradient buffer is cleared.
+ */
+public interface Optimizer {
+  void step(double[] parameters, double[] gradients, double learningRate);
+
+  /**
+   * Forgets any per-parameter state, for example when the network is initialized again.
+   */
+  void reset();
+
+  /**
+   * Returns an optimizer with the same settings and no state.
+   */
+  Optimizer copy();
+
+  /**
+   * The optimizer's state, for checkpoints. The arrays may be the optimizer's own, so copy them
+   * to keep them. Optimizers without state return no arrays.
+   */
+  default double[][] getState() {
+    return new double[0][];
+  }
+
+  /**
+   * Restores the state returned by {@link #getState}.
+   */
+  default void setState(double[][] state) {
+  }
+}
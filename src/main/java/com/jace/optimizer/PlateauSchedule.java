@@ -0,0 +1,64 @@
+package com.jace.optimizer;
+
+/**
+ * Multiplies the learning rate by factor whenever the validation error has not improved for
+ * patience epochs, down to minimumLearningRate.
+ */
+public class PlateauSchedule implements LearningRateSchedule {
+  private double factor;
+  private int patience;
+  private double minimumLearningRate;
+
+  private double bestError = Double.POSITIVE_INFINITY;
+  private int epochsWithoutImprovement = 0;
+  private double scale = 1;
+
+  public PlateauSchedule(double factor, int patience) {
+    this(factor, patience, 0);
+  }
+
+  public PlateauSchedule(double factor, int patience, double minimumLearningRate) {
+    this.factor = factor;
+    this.patience = patience;
+    this.minimumLearningRate = minimumLearningRate;
+  }
+
+  @Override
+  public double learningRate(int epoch, double baseLearningRate) {
+    return Math.max(minimumLearningRate, baseLearningRate * scale);
+  }
+
+  @Override
+  public void observe(double validationError) {
+    if (validationError < bestError) {
+      bestError = validationError;
+      epochsWithoutImprovement = 0;
+      return;
+    }
+
+    epochsWithoutImprovement++;
+    if (epochsWithoutImprovement > patience) {
+      scale *= factor;
+      epochsWithoutImprovement = 0;
+    }
+  }
+
+  @Override
+  public void reset() {
+    bestError = Double.POSITIVE_INFINITY;
+    epochsWithoutImprovement = 0;
+    scale = 1;
+  }
+
+  @Override
+  public double[] getState() {
+    return new double[]{bestError, epochsWithoutImprovement, scale};
+  }
+
+  @Override
+  public void setState(double[] state) {
+    bestError = state[0];
+    epochsWithoutImprovement = (int) state[1];
+    scale = state[2];
+  }
+}
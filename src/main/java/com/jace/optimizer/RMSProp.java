@@ -0,0 +1,56 @@
+package com.jace.optimizer;
+
+public class RMSProp extends ChunkedOptimizer {
+  private double decay;
+  private double epsilon;
+
+  private double[] meanSquare;
+
+  public RMSProp() {
+    this(0.9, 1e-8);
+  }
+
+  public RMSProp(double decay, double epsilon) {
+    this.decay = decay;
+    this.epsilon = epsilon;
+  }
+
+  @Override
+  void prepare(int length) {
+    if (meanSquare == null || meanSquare.length != length) {
+      meanSquare = new double[length];
+    }
+  }
+
+  @Override
+  void resetState() {
+    meanSquare = null;
+  }
+
+  @Override
+  double[][] getStateArrays() {
+    return (meanSquare == null) ? new double[0][] : new double[][]{meanSquare};
+  }
+
+  @Override
+  void setStateArrays(double[][] arrays) {
+    meanSquare = arrays[0].clone();
+  }
+
+  @Override
+  void update(double[] parameters, double[] gradients, double learningRate, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      double gradient = gradients[i];
+      double v = decay * meanSquare[i] + (1 - decay) * gradient * gradient;
+
+      meanSquare[i] = v;
+      parameters[i] += learningRate * gradient / (Math.sqrt(v) + epsilon);
+      gradients[i] = 0;
+    }
+  }
+
+  @Override
+  public RMSProp copy() {
+    return copySettingsTo(new RMSProp(decay, epsilon));
+  }
+}
@@ -0,0 +1,23 @@
+package com.jace.optimizer;
+
+/**
+ * Multiplies the learning rate by factor every stepEpochs epochs.
+ */
+public class StepSchedule implements LearningRateSchedule {
+  private int stepEpochs;
+  private double factor;
+
+  public StepSchedule(int stepEpochs, double factor) {
+    if (stepEpochs < 1) {
+      throw new IllegalArgumentException("A step must last at least one epoch.");
+    }
+
+    this.stepEpochs = stepEpochs;
+    this.factor = factor;
+  }
+
+  @Override
+  public double learningRate(int epoch, double baseLearningRate) {
+    return baseLearningRate * Math.pow(factor, epoch / stepEpochs);
+  }
+}
@@ -0,0 +1,48 @@
+package com.jace.optimizer;
+
+/**
+ * Ramps the learning rate up linearly over the first warmupEpochs epochs, then hands over to
+ * another schedule, which sees its epochs counted from the end of the warmup.
+ */
+public class WarmupSchedule implements LearningRateSchedule {
+  private int warmupEpochs;
+  private LearningRateSchedule schedule;
+
+  public WarmupSchedule(int warmupEpochs) {
+    this(warmupEpochs, (epoch, baseLearningRate) -> baseLearningRate);
+  }
+
+  public WarmupSchedule(int warmupEpochs, LearningRateSchedule schedule) {
+    this.warmupEpochs = warmupEpochs;
+    this.schedule = schedule;
+  }
+
+  @Override
+  public double learningRate(int epoch, double baseLearningRate) {
+    if (epoch < warmupEpochs) {
+      return baseLearningRate * (epoch + 1) / warmupEpochs;
+    }
+
+    return schedule.learningRate(epoch - warmupEpochs, baseLearningRate);
+  }
+
+  @Override
+  public void observe(double validationError) {
+    schedule.observe(validationError);
+  }
+
+  @Override
+  public void reset() {
+    schedule.reset();
+  }
+
+  @Override
+  public double[] getState() {
+    return schedule.getState();
+  }
+
+  @Override
+  public void setState(double[] state) {
+    schedule.setState(state);
+  }
+}
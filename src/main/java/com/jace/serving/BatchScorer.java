@@ -0,0 +1,157 @@
+package com.jace.serving;
+
+import com.jace.math.Vector;
+import com.jace.util.RowReader;
+import com.jace.util.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Scores files of input vectors through a {@link MicroBatcher}, writing one CSV file of outputs
+ * per input file.
+ * <br>
+ * Every file streams through a {@link ScoringPipeline}, whose compute stage hands each chunk of
+ * rows to the batcher. The files and their stages only wait, so they all run on threads from
+ * {@link Threads}, and the model runs on the batcher's bounded worker pool. Only a few files, and
+ * a few chunks of each, are in flight at once, so neither memory use nor the number of threads
+ * grows with the number or the size of the files. Files are read as the pipeline
+ * reads them: ARFF if they end in .arff, CSV otherwise.
+ */
+public class BatchScorer {
+  private MicroBatcher batcher;
+  private int chunkRows = 1024;
+  private int chunksInFlight = 4;
+  private int filesInFlight = 4;
+
+  public BatchScorer(MicroBatcher batcher) {
+    this.batcher = batcher;
+  }
+
+  public void setChunkRows(int chunkRows) {
+    if (chunkRows < 1) {
+      throw new IllegalArgumentException("A chunk must have at least one row.");
+    }
+
+    this.chunkRows = chunkRows;
+  }
+
+  /**
+   * How many chunks of each file may be submitted to the batcher at once. The same number may
+   * wait between each pair of pipeline stages.
+   */
+  public void setChunksInFlight(int chunksInFlight) {
+    if (chunksInFlight < 1) {
+      throw new IllegalArgumentException("At least one chunk must be in flight.");
+    }
+
+    this.chunksInFlight = chunksInFlight;
+  }
+
+  /**
+   * How many files may be scored at once. The others wait until one of them is finished.
+   */
+  public void setFilesInFlight(int filesInFlight) {
+    if (filesInFlight < 1) {
+      throw new IllegalArgumentException("At least one file must be in flight.");
+    }
+
+    this.filesInFlight = filesInFlight;
+  }
+
+  /**
+   * Scores every row of every input file into a file of the same name in outputDirectory, and
+   * returns the number of rows scored. The batcher must be started.
+   */
+  public long scoreFiles(List<File> inputs, File outputDirectory) throws IOException {
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IOException("Could not create " + outputDirectory);
+    }
+
+    // The files and their pipeline stages share one executor, since they spend their time blocked
+    ExecutorService executor = Threads.newPerTaskExecutor("batch-scorer");
+    Semaphore openFiles = new Semaphore(filesInFlight);
+    try {
+      List<Future<Long>> files = new ArrayList<>();
+      for (File input : inputs) {
+        File output = new File(outputDirectory, input.getName());
+        acquire(openFiles);
+        files.add(executor.submit(() -> {
+          try {
+            return scoreFile(input, output, executor);
+          } finally {
+            openFiles.release();
+          }
+        }));
+      }
+
+      long rows = 0;
+      for (Future<Long> file : files) {
+        rows += await(file);
+      }
+      return rows;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private long scoreFile(File input, File output, ExecutorService stages) throws IOException {
+    ScoringPipeline pipeline = new ScoringPipeline(() -> this::scoreChunk);
+    pipeline.setStageExecutor(stages);
+    pipeline.setChunkRows(chunkRows);
+    pipeline.setComputeThreads(chunksInFlight);
+    pipeline.setQueueCapacity(chunksInFlight);
+
+    try (RowReader reader = ScoringPipeline.openReader(input);
+        Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+      return pipeline.score(reader, writer);
+    }
+  }
+
+  private List<Vector> scoreChunk(List<Vector> rows) throws IOException {
+    List<CompletableFuture<Vector>> results = new ArrayList<>(rows.size());
+    for (Vector row : rows) {
+      results.add(batcher.submit(row));
+    }
+
+    List<Vector> outputs = new ArrayList<>(rows.size());
+    for (CompletableFuture<Vector> result : results) {
+      outputs.add(await(result));
+    }
+
+    return outputs;
+  }
+
+  private static void acquire(Semaphore semaphore) throws IOException {
+    try {
+      semaphore.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scoring.", e);
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scoring.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+}
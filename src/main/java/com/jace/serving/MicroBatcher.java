@@ -0,0 +1,243 @@
+package com.jace.serving;
+
+import com.jace.learner.InferenceContextPool;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single predictions from many threads into batches. A dispatcher thread starts a batch
+ * with the oldest queued request, then waits for more until the batch is full or the oldest
+ * request has waited the maximum delay, and hands the batch to a worker pool.
+ * <br>
+ * Workers run batches through {@link NeuralNetwork#predictBatch} on replicas of the network when
+ * every layer supports batches, and one row at a time otherwise.
+ */
+public class MicroBatcher implements AutoCloseable {
+  private static class PendingPrediction {
+    private Vector input;
+    private long queuedNanos = System.nanoTime();
+    private CompletableFuture<Vector> result = new CompletableFuture<>();
+
+    private PendingPrediction(Vector input) {
+      this.input = input;
+    }
+  }
+
+  private NeuralNetwork neuralNetwork;
+  private int maxBatchSize = 32;
+  private long maxDelayMicros = 2000;
+  private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+  private BlockingQueue<PendingPrediction> queue = new LinkedBlockingQueue<>();
+  private ConcurrentLinkedQueue<NeuralNetwork> replicas = new ConcurrentLinkedQueue<>();
+  private InferenceContextPool contextPool;
+  private ServerMetrics metrics = new ServerMetrics();
+
+  private ExecutorService workers;
+  private Thread dispatcher;
+  private volatile boolean running = false;
+
+  public MicroBatcher(NeuralNetwork neuralNetwork) {
+    if (neuralNetwork.getParameters() == null) {
+      throw new IllegalArgumentException("The network must be initialized before it is served.");
+    }
+
+    this.neuralNetwork = neuralNetwork;
+    this.contextPool = new InferenceContextPool(neuralNetwork);
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1.");
+    }
+
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * The longest a request waits for others to join its batch.
+   */
+  public void setMaxDelayMicros(long maxDelayMicros) {
+    this.maxDelayMicros = maxDelayMicros;
+  }
+
+  public void setWorkerThreads(int workerThreads) {
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("There must be at least one worker thread.");
+    }
+
+    this.workerThreads = workerThreads;
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    workers = Executors.newFixedThreadPool(workerThreads);
+    dispatcher = new Thread(this::dispatch, "micro-batch-dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Queues one prediction. The future completes with a new vector, which the caller owns.
+   */
+  public CompletableFuture<Vector> submit(Vector input) {
+    int inputs = neuralNetwork.getLayers().get(0).getInputs();
+    if (input.size() != inputs) {
+      throw new IllegalArgumentException(
+          String.format("Expected %d inputs, got %d.", inputs, input.size()));
+    }
+
+    PendingPrediction pending = new PendingPrediction(input);
+    if (!running) {
+      pending.result.completeExceptionally(new IllegalStateException("The batcher is stopped."));
+      return pending.result;
+    }
+
+    queue.offer(pending);
+
+    // close() may have drained the queue between the check above and the offer, and then nothing
+    // would ever take this prediction
+    if (!running && queue.remove(pending)) {
+      pending.result.completeExceptionally(new IllegalStateException("The batcher is stopped."));
+    }
+
+    return pending.result;
+  }
+
+  private void dispatch() {
+    while (running) {
+      PendingPrediction first;
+      try {
+        first = queue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        break;
+      }
+
+      if (first == null) {
+        continue;
+      }
+
+      List<PendingPrediction> batch = new ArrayList<>(maxBatchSize);
+      batch.add(first);
+
+      long deadline = first.queuedNanos + maxDelayMicros * 1000;
+      try {
+        while (batch.size() < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            break;
+          }
+
+          PendingPrediction next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        running = false;
+      }
+
+      workers.execute(() -> run(batch));
+    }
+  }
+
+  private void run(List<PendingPrediction> batch) {
+    try {
+      List<Vector> outputs = neuralNetwork.supportsBatches()
+          ? predictBatch(batch)
+          : predictEach(batch);
+
+      metrics.recordBatch(batch.size());
+
+      long now = System.nanoTime();
+      for (int i = 0; i < batch.size(); i++) {
+        metrics.recordLatency(now - batch.get(i).queuedNanos);
+        batch.get(i).result.complete(outputs.get(i));
+      }
+    } catch (RuntimeException e) {
+      for (PendingPrediction pending : batch) {
+        pending.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  private List<Vector> predictBatch(List<PendingPrediction> batch) {
+    NeuralNetwork replica = replicas.poll();
+    if (replica == null) {
+      replica = neuralNetwork.replica();
+    }
+
+    try {
+      Matrix inputs = new Matrix(batch.size(), batch.get(0).input.size());
+      for (int i = 0; i < batch.size(); i++) {
+        inputs.row(i).set(0, batch.get(i).input);
+      }
+
+      Matrix outputs = replica.predictBatch(inputs);
+
+      List<Vector> results = new ArrayList<>(batch.size());
+      for (int i = 0; i < outputs.rows(); i++) {
+        results.add(outputs.row(i).copy());
+      }
+      return results;
+    } finally {
+      replicas.offer(replica);
+    }
+  }
+
+  private List<Vector> predictEach(List<PendingPrediction> batch) {
+    List<Vector> results = new ArrayList<>(batch.size());
+    for (PendingPrediction pending : batch) {
+      results.add(contextPool.predict(pending.input));
+    }
+
+    return results;
+  }
+
+  /**
+   * Stops taking requests, lets the worker pool finish the batches it has, and fails anything
+   * still queued.
+   */
+  @Override
+  public synchronized void close() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    dispatcher.interrupt();
+    try {
+      dispatcher.join();
+      workers.shutdown();
+      workers.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    PendingPrediction pending;
+    while ((pending = queue.poll()) != null) {
+      pending.result.completeExceptionally(new IllegalStateException("The batcher is stopped."));
+    }
+  }
+}
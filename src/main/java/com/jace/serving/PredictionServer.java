@@ -0,0 +1,266 @@
+package com.jace.serving;
+
+import com.jace.distributed.DistributedJob;
+import com.jace.learner.ModelFile;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import com.jace.util.Arguments;
+import com.jace.util.Console;
+import com.jace.util.Strings;
+import com.jace.util.Threads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves predictions from a {@link NeuralNetwork} over HTTP, batching concurrent requests through
+ * a {@link MicroBatcher}.
+ * <br>
+ * POST /predict takes one comma-separated input vector per line and answers with one
+ * comma-separated output vector per line. GET /metrics answers with the batcher's
+ * {@link ServerMetrics} as JSON.
+ * <br>
+ * Where the JVM has virtual threads, every connection is handled on its own virtual thread, so a
+ * slow client only costs a blocked virtual thread. Otherwise connections share a fixed pool of
+ * platform threads. The model itself always runs on the batcher's bounded worker pool.
+ * <br>
+ * Usage: PredictionServer (--model FILE | --job CLASS --parameters FILE) [--port N]
+ * [--batch-size N] [--delay-micros N] [--workers N]
+ */
+public class PredictionServer implements AutoCloseable {
+  private NeuralNetwork neuralNetwork;
+  private InetSocketAddress address;
+  private MicroBatcher batcher;
+  private boolean threadPerConnection = Threads.hasVirtualThreads();
+  private int handlerThreads = 16;
+  private int backlog = 1024;
+
+  private HttpServer server;
+  private ExecutorService handlers;
+
+  public PredictionServer(NeuralNetwork neuralNetwork, int port) {
+    this(neuralNetwork, new InetSocketAddress(port));
+  }
+
+  public PredictionServer(NeuralNetwork neuralNetwork, InetSocketAddress address) {
+    this.neuralNetwork = neuralNetwork;
+    this.address = address;
+    this.batcher = new MicroBatcher(neuralNetwork);
+  }
+
+  /**
+   * Builds the network named on a command line, either read from a {@link ModelFile} given as
+   * --model, or created by the {@link DistributedJob} given as --job with its parameters loaded
+   * from --parameters.
+   */
+  public static NeuralNetwork loadNetwork(Map<String, String> arguments) throws Exception {
+    if (arguments.containsKey("model")) {
+      return ModelFile.load(new File(arguments.get("model")));
+    }
+
+    DistributedJob job = (DistributedJob) Class.forName(Arguments.require(arguments, "job"))
+        .getDeclaredConstructor()
+        .newInstance();
+    NeuralNetwork neuralNetwork = job.createNetwork();
+    neuralNetwork.initialize();
+    loadParameters(neuralNetwork, new File(Arguments.require(arguments, "parameters")));
+    return neuralNetwork;
+  }
+
+  /**
+   * Fills the network's parameters from a file holding them as one comma-separated line, the
+   * format {@link com.jace.distributed.TrainerWorker} writes. The network must already have the
+   * layers the parameters were trained with, and be initialized.
+   */
+  public static void loadParameters(NeuralNetwork neuralNetwork, File file) throws IOException {
+    double[] parameters = neuralNetwork.getParameters();
+    if (parameters == null) {
+      throw new IllegalStateException("The network must be initialized before it is loaded.");
+    }
+
+    String line = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    Vector values = parseVector(line);
+    if (values.size() != parameters.length) {
+      throw new IllegalArgumentException(String.format(
+          "%s holds %d parameters, but the network has %d.",
+          file, values.size(), parameters.length));
+    }
+
+    System.arraycopy(values.toDoubleArray(), 0, parameters, 0, parameters.length);
+    neuralNetwork.parametersChanged();
+  }
+
+  /**
+   * The batcher that requests go through, for configuring batch sizes and reading metrics.
+   */
+  public MicroBatcher getBatcher() {
+    return batcher;
+  }
+
+  /**
+   * Whether each connection gets its own thread from {@link Threads#newPerTaskExecutor}, rather
+   * than one from a fixed pool. Defaults to true only where the JVM has virtual threads.
+   */
+  public void setThreadPerConnection(boolean threadPerConnection) {
+    this.threadPerConnection = threadPerConnection;
+  }
+
+  /**
+   * The size of the fixed pool connections share when they do not get a thread each.
+   */
+  public void setHandlerThreads(int handlerThreads) {
+    if (handlerThreads < 1) {
+      throw new IllegalArgumentException("There must be at least one handler thread.");
+    }
+
+    this.handlerThreads = handlerThreads;
+  }
+
+  /**
+   * How many connections may wait to be accepted before new ones are refused.
+   */
+  public void setBacklog(int backlog) {
+    this.backlog = backlog;
+  }
+
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      return;
+    }
+
+    batcher.start();
+
+    server = HttpServer.create(address, backlog);
+    handlers = threadPerConnection
+        ? Threads.newPerTaskExecutor("prediction-handler")
+        : Executors.newFixedThreadPool(handlerThreads);
+    server.setExecutor(handlers);
+    server.createContext("/predict", this::handlePredict);
+    server.createContext("/metrics", this::handleMetrics);
+    server.start();
+
+    Console.i("Serving %s on port %d", neuralNetwork.name(), getPort());
+  }
+
+  /**
+   * The port the server listens on, which is useful when it was started on port 0.
+   */
+  public int getPort() {
+    if (server == null) {
+      throw new IllegalStateException("The server has not been started.");
+    }
+
+    return server.getAddress().getPort();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (server == null) {
+      return;
+    }
+
+    server.stop(0);
+    batcher.close();
+    handlers.shutdown();
+    try {
+      handlers.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    server = null;
+  }
+
+  private void handlePredict(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        respond(exchange, 405, "Use POST.");
+        return;
+      }
+
+      String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+      List<CompletableFuture<Vector>> results = new ArrayList<>();
+      try {
+        for (String line : body.split("\n")) {
+          if (!line.trim().isEmpty()) {
+            results.add(batcher.submit(parseVector(line.trim())));
+          }
+        }
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, e.getMessage());
+        return;
+      }
+
+      StringBuilder response = new StringBuilder();
+      for (CompletableFuture<Vector> result : results) {
+        response.append(Strings.join(result.get(), ',')).append('\n');
+      }
+
+      respond(exchange, 200, response.toString());
+    } catch (ExecutionException e) {
+      respond(exchange, 500, e.getCause().toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, "Interrupted.");
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try {
+      respond(exchange, 200, batcher.getMetrics().toJson().toString());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> arguments = Arguments.parse(args);
+
+    PredictionServer server = new PredictionServer(
+        loadNetwork(arguments), Integer.parseInt(arguments.getOrDefault("port", "8080")));
+    if (arguments.containsKey("batch-size")) {
+      server.getBatcher().setMaxBatchSize(Integer.parseInt(arguments.get("batch-size")));
+    }
+    if (arguments.containsKey("delay-micros")) {
+      server.getBatcher().setMaxDelayMicros(Long.parseLong(arguments.get("delay-micros")));
+    }
+    if (arguments.containsKey("workers")) {
+      server.getBatcher().setWorkerThreads(Integer.parseInt(arguments.get("workers")));
+    }
+
+    server.start();
+  }
+
+  private static Vector parseVector(String line) {
+    try {
+      return Strings.parseVector(line, ',');
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed vector: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package com.jace.serving;
+
+import com.jace.learner.InferenceContext;
+import com.jace.learner.ModelFile;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.util.Arguments;
+import com.jace.util.ArffReader;
+import com.jace.util.Console;
+import com.jace.util.CsvReader;
+import com.jace.util.RowReader;
+import com.jace.util.Strings;
+import com.jace.util.Threads;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Scores a file of any size in constant memory. A reader thread parses chunks of rows, a pool of
+ * compute threads predicts each chunk as a batch, and a writer thread writes the predictions in
+ * input order through a buffered writer. Bounded queues between the stages keep a fast stage
+ * from running ahead of a slow one.
+ * <br>
+ * Usage: ScoringPipeline (--model FILE | --job CLASS --parameters FILE) --input FILE
+ * [--output FILE] [--first-column N --columns N] [--chunk-rows N] [--threads N] [--queue N]
+ * <br>
+ * The network is read from a {@link ModelFile}, or comes from the job's createNetwork with
+ * parameters loaded as in {@link PredictionServer#loadParameters}. Input files ending in .arff are
+ * read as ARFF, anything else as CSV. Predictions go to standard output unless an output file is
+ * given.
+ */
+public class ScoringPipeline {
+  private static final Chunk END = new Chunk(-1, null);
+
+  private static class Chunk {
+    private long index;
+    private List<Vector> rows;
+
+    private Chunk(long index, List<Vector> rows) {
+      this.index = index;
+      this.rows = rows;
+    }
+  }
+
+  /**
+   * Predicts the rows of a chunk. Each compute thread gets its own, so it may keep state.
+   */
+  interface ChunkPredictor {
+    List<Vector> predict(List<Vector> rows) throws IOException;
+  }
+
+  private Supplier<ChunkPredictor> predictors;
+  private ExecutorService stageExecutor;
+  private int chunkRows = 1024;
+  private int computeThreads = Runtime.getRuntime().availableProcessors();
+  private int queueCapacity = 4;
+
+  public ScoringPipeline(NeuralNetwork neuralNetwork) {
+    if (neuralNetwork.getParameters() == null) {
+      throw new IllegalArgumentException("The network must be initialized before it scores.");
+    }
+
+    this.predictors = () -> networkPredictor(neuralNetwork);
+  }
+
+  /**
+   * Runs chunks through the predictors instead of a network, such as to hand them to a
+   * {@link MicroBatcher}.
+   */
+  ScoringPipeline(Supplier<ChunkPredictor> predictors) {
+    this.predictors = predictors;
+  }
+
+  /**
+   * Runs the stages on executor instead of a pool of their own. The executor must start every
+   * task right away, like those of {@link Threads#newPerTaskExecutor}, and is not shut down.
+   */
+  void setStageExecutor(ExecutorService stageExecutor) {
+    this.stageExecutor = stageExecutor;
+  }
+
+  public void setChunkRows(int chunkRows) {
+    if (chunkRows < 1) {
+      throw new IllegalArgumentException("A chunk must have at least one row.");
+    }
+
+    this.chunkRows = chunkRows;
+  }
+
+  public void setComputeThreads(int computeThreads) {
+    if (computeThreads < 1) {
+      throw new IllegalArgumentException("There must be at least one compute thread.");
+    }
+
+    this.computeThreads = computeThreads;
+  }
+
+  /**
+   * How many chunks may wait between two stages.
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("The queues must hold at least one chunk.");
+    }
+
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Writes one comma-separated line of predictions per row of the reader, and returns the number
+   * of rows scored. Neither the reader nor the output is closed.
+   */
+  public long score(RowReader reader, Writer output) throws IOException {
+    BlockingQueue<Chunk> inputs = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Chunk> predictions = new ArrayBlockingQueue<>(queueCapacity);
+
+    ExecutorService stages = (stageExecutor != null)
+        ? stageExecutor
+        : Executors.newFixedThreadPool(computeThreads + 2);
+    CompletionService<Long> completion = new ExecutorCompletionService<>(stages);
+
+    List<Future<Long>> running = new ArrayList<>(computeThreads + 2);
+    running.add(completion.submit(() -> read(reader, inputs)));
+    for (int i = 0; i < computeThreads; i++) {
+      running.add(completion.submit(() -> compute(inputs, predictions)));
+    }
+    running.add(completion.submit(() -> write(predictions, output)));
+
+    long rows = 0;
+    try {
+      for (int i = 0; i < running.size(); i++) {
+        rows = Math.max(rows, completion.take().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scoring.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      // Stops the other stages if one of them failed
+      for (Future<Long> stage : running) {
+        stage.cancel(true);
+      }
+      if (stages != stageExecutor) {
+        stages.shutdownNow();
+      }
+    }
+
+    return rows;
+  }
+
+  private long read(RowReader reader, BlockingQueue<Chunk> inputs)
+      throws IOException, InterruptedException {
+    long index = 0;
+    List<Vector> rows = new ArrayList<>(chunkRows);
+
+    Vector row;
+    while ((row = reader.next()) != null) {
+      rows.add(row);
+      if (rows.size() == chunkRows) {
+        inputs.put(new Chunk(index++, rows));
+        rows = new ArrayList<>(chunkRows);
+      }
+    }
+
+    if (!rows.isEmpty()) {
+      inputs.put(new Chunk(index, rows));
+    }
+
+    for (int i = 0; i < computeThreads; i++) {
+      inputs.put(END);
+    }
+
+    return 0;
+  }
+
+  private long compute(BlockingQueue<Chunk> inputs, BlockingQueue<Chunk> predictions)
+      throws IOException, InterruptedException {
+    ChunkPredictor predictor = predictors.get();
+
+    Chunk chunk;
+    while ((chunk = inputs.take()) != END) {
+      predictions.put(new Chunk(chunk.index, predictor.predict(chunk.rows)));
+    }
+
+    predictions.put(END);
+    return 0;
+  }
+
+  /**
+   * Predicts each chunk as one batch on a replica, or row by row when the network does not
+   * support batches.
+   */
+  private static ChunkPredictor networkPredictor(NeuralNetwork neuralNetwork) {
+    if (!neuralNetwork.supportsBatches()) {
+      InferenceContext context = neuralNetwork.createInferenceContext();
+      return rows -> {
+        List<Vector> outputs = new ArrayList<>(rows.size());
+        for (Vector row : rows) {
+          outputs.add(neuralNetwork.predict(context, row).copy());
+        }
+        return outputs;
+      };
+    }
+
+    NeuralNetwork replica = neuralNetwork.replica();
+    return rows -> {
+      Matrix matrix = new Matrix(rows.size(), rows.get(0).size());
+      for (int i = 0; i < rows.size(); i++) {
+        matrix.row(i).set(0, rows.get(i));
+      }
+
+      Matrix result = replica.predictBatch(matrix);
+      List<Vector> outputs = new ArrayList<>(result.rows());
+      for (int i = 0; i < result.rows(); i++) {
+        outputs.add(result.row(i).copy());
+      }
+      return outputs;
+    };
+  }
+
+  private long write(BlockingQueue<Chunk> predictions, Writer output)
+      throws IOException, InterruptedException {
+    BufferedWriter writer = (output instanceof BufferedWriter)
+        ? (BufferedWriter) output
+        : new BufferedWriter(output, 1 << 16);
+
+    // Chunks finish out of order, so each waits here until the ones before it are written
+    Map<Long, Chunk> finished = new TreeMap<>();
+    long nextIndex = 0;
+    long rows = 0;
+
+    int ended = 0;
+    while (ended < computeThreads) {
+      Chunk chunk = predictions.take();
+      if (chunk == END) {
+        ended++;
+        continue;
+      }
+
+      finished.put(chunk.index, chunk);
+      while ((chunk = finished.remove(nextIndex)) != null) {
+        for (Vector prediction : chunk.rows) {
+          writer.write(Strings.join(prediction, ','));
+          writer.newLine();
+        }
+
+        rows += chunk.rows.size();
+        nextIndex++;
+      }
+    }
+
+    writer.flush();
+    return rows;
+  }
+
+  /**
+   * Opens a file ending in .arff as ARFF, and anything else as CSV.
+   */
+  static RowReader openReader(File input) throws IOException {
+    return input.getName().toLowerCase().endsWith(".arff")
+        ? new ArffReader(input)
+        : new CsvReader(input);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> arguments = Arguments.parse(args);
+
+    NeuralNetwork neuralNetwork = PredictionServer.loadNetwork(arguments);
+
+    ScoringPipeline pipeline = new ScoringPipeline(neuralNetwork);
+    if (arguments.containsKey("chunk-rows")) {
+      pipeline.setChunkRows(Integer.parseInt(arguments.get("chunk-rows")));
+    }
+    if (arguments.containsKey("threads")) {
+      pipeline.setComputeThreads(Integer.parseInt(arguments.get("threads")));
+    }
+    if (arguments.containsKey("queue")) {
+      pipeline.setQueueCapacity(Integer.parseInt(arguments.get("queue")));
+    }
+
+    File input = new File(Arguments.require(arguments, "input"));
+    try (RowReader reader = openReader(input)) {
+      if (arguments.containsKey("columns")) {
+        reader.setColumns(
+            Integer.parseInt(arguments.getOrDefault("first-column", "0")),
+            Integer.parseInt(arguments.get("columns")));
+      }
+
+      long start = System.nanoTime();
+      long rows;
+      if (arguments.containsKey("output")) {
+        try (Writer output = Files.newBufferedWriter(
+            new File(arguments.get("output")).toPath(), StandardCharsets.UTF_8)) {
+          rows = pipeline.score(reader, output);
+        }
+      } else {
+        rows = pipeline.score(reader, new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+      }
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      String summary = String.format(
+          "Scored %d rows in %.2f s (%.0f rows/s)", rows, seconds, rows / seconds);
+
+      // Keep the summary out of the predictions when they go to standard output
+      if (arguments.containsKey("output")) {
+        Console.i(summary);
+      } else {
+        System.err.println(summary);
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.jace.serving;
+
+import com.jace.Main;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.util.Arguments;
+import com.jace.util.Console;
+import com.jace.util.Threads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compares one thread per connection against a fixed handler pool when many slow clients connect
+ * to a {@link PredictionServer}. Clients arrive at a steady rate; each one sends its headers and
+ * waits before sending its body, holding whichever handler thread picked it up for the wait.
+ * <br>
+ * Usage: ServerBenchmark [--clients N] [--rate PER_SECOND] [--delay MILLIS] [--pool-threads N]
+ * [--inputs N]
+ */
+public class ServerBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> arguments = Arguments.parse(args);
+    int clients = Integer.parseInt(arguments.getOrDefault("clients", "2000"));
+    int rate = Integer.parseInt(arguments.getOrDefault("rate", "1000"));
+    long delayMillis = Long.parseLong(arguments.getOrDefault("delay", "100"));
+    int poolThreads = Integer.parseInt(arguments.getOrDefault("pool-threads", "16"));
+    int inputs = Integer.parseInt(arguments.getOrDefault("inputs", "64"));
+
+    Main.RANDOM.setSeed(0);
+    NeuralNetwork neuralNetwork = new NeuralNetwork();
+    neuralNetwork.addLayer(new LinearLayer(inputs, 64));
+    neuralNetwork.addLayer(new TanhLayer(64));
+    neuralNetwork.addLayer(new LinearLayer(64, 8));
+    neuralNetwork.initialize();
+
+    Console.i("%d clients at %d/s, %d ms each, virtual threads %s", clients, rate, delayMillis,
+        Threads.hasVirtualThreads() ? "available" : "unavailable");
+
+    report("One thread per connection",
+        run(neuralNetwork, true, poolThreads, clients, rate, delayMillis, inputs));
+    report("Fixed pool of " + poolThreads + " threads",
+        run(neuralNetwork, false, poolThreads, clients, rate, delayMillis, inputs));
+  }
+
+  private static void report(String name, long[] latencies) {
+    Arrays.sort(latencies);
+    Console.i("%s: p50 %.1f ms, p99 %.1f ms, max %.1f ms", name,
+        latencies[latencies.length / 2] / 1e6,
+        latencies[(int) (latencies.length * 0.99)] / 1e6,
+        latencies[latencies.length - 1] / 1e6);
+  }
+
+  /**
+   * Serves every client once and returns each request's latency in nanoseconds, from connecting
+   * to reading the whole response.
+   */
+  static long[] run(NeuralNetwork neuralNetwork, boolean threadPerConnection, int poolThreads,
+      int clients, int rate, long delayMillis, int inputs) throws Exception {
+    PredictionServer server =
+        new PredictionServer(neuralNetwork, new InetSocketAddress("127.0.0.1", 0));
+    server.setThreadPerConnection(threadPerConnection);
+    server.setHandlerThreads(poolThreads);
+    server.setBacklog(clients);
+
+    StringBuilder row = new StringBuilder();
+    for (int i = 0; i < inputs; i++) {
+      row.append(i == 0 ? "" : ",").append(Main.RANDOM.nextGaussian());
+    }
+    byte[] body = row.toString().getBytes(StandardCharsets.UTF_8);
+
+    ExecutorService clientThreads = Threads.newPerTaskExecutor("benchmark-client");
+    try {
+      server.start();
+
+      long start = System.nanoTime();
+      List<Future<Long>> results = new ArrayList<>();
+      for (int i = 0; i < clients; i++) {
+        long arrival = start + i * 1_000_000_000L / rate;
+        results.add(clientThreads.submit(() -> {
+          long wait = arrival - System.nanoTime();
+          if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+          }
+          return slowRequest(server.getPort(), body, delayMillis);
+        }));
+      }
+
+      long[] latencies = new long[clients];
+      int failures = 0;
+      for (int i = 0; i < clients; i++) {
+        latencies[i] = results.get(i).get();
+        if (latencies[i] < 0) {
+          failures++;
+          latencies[i] = Long.MAX_VALUE;
+        }
+      }
+
+      if (failures > 0) {
+        Console.w("%d of %d requests failed", failures, clients);
+      }
+
+      return latencies;
+    } finally {
+      clientThreads.shutdownNow();
+      server.close();
+    }
+  }
+
+  /**
+   * Returns the request's latency in nanoseconds, or -1 if it failed.
+   */
+  private static long slowRequest(int port, byte[] body, long delayMillis)
+      throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      OutputStream out = socket.getOutputStream();
+      String headers = "POST /predict HTTP/1.1\r\n"
+          + "Host: 127.0.0.1\r\n"
+          + "Content-Length: " + body.length + "\r\n"
+          + "Connection: close\r\n\r\n";
+      out.write(headers.getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+
+      Thread.sleep(delayMillis);
+      out.write(body);
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      String response = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+      return response.startsWith("HTTP/1.1 200") ? System.nanoTime() - start : -1;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.jace.serving;
+
+import com.jace.util.Json;
+
+import java.util.Arrays;
+
+/**
+ * Counts the requests and batches a {@link MicroBatcher} has served, and keeps the latencies of
+ * the most recent requests for percentiles.
+ */
+public class ServerMetrics {
+  private static final int LATENCY_WINDOW = 10000;
+
+  private long[] latencies = new long[LATENCY_WINDOW];
+  private int latencyCount = 0;
+  private int nextLatency = 0;
+
+  private long requests = 0;
+  private long batches = 0;
+  private int largestBatch = 0;
+
+  synchronized void recordBatch(int size) {
+    batches++;
+    requests += size;
+    largestBatch = Math.max(largestBatch, size);
+  }
+
+  synchronized void recordLatency(long nanos) {
+    latencies[nextLatency] = nanos;
+    nextLatency = (nextLatency + 1) % latencies.length;
+    latencyCount = Math.min(latencyCount + 1, latencies.length);
+  }
+
+  public synchronized long getRequests() {
+    return requests;
+  }
+
+  public synchronized long getBatches() {
+    return batches;
+  }
+
+  public synchronized int getLargestBatch() {
+    return largestBatch;
+  }
+
+  public synchronized double getMeanBatchSize() {
+    return (batches == 0) ? 0 : (double) requests / batches;
+  }
+
+  /**
+   * Returns the given percentile (0 to 100) of the recent request latencies, from the moment a
+   * request was queued to the moment its prediction was ready.
+   */
+  public synchronized double getLatencyMillis(double percentile) {
+    if (latencyCount == 0) {
+      return 0;
+    }
+
+    long[] sorted = Arrays.copyOf(latencies, latencyCount);
+    Arrays.sort(sorted);
+
+    int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+    index = Math.max(0, Math.min(latencyCount - 1, index));
+    return sorted[index] / 1e6;
+  }
+
+  public synchronized Json toJson() {
+    Json json = Json.newObject();
+    json.add("requests", requests);
+    json.add("batches", batches);
+    json.add("meanBatchSize", getMeanBatchSize());
+    json.add("largestBatch", (long) largestBatch);
+    json.add("p50Millis", getLatencyMillis(50));
+    json.add("p99Millis", getLatencyMillis(99));
+    return json;
+  }
+}
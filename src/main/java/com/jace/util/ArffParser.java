@@ -0,0 +1,603 @@
+package com.jace.util;
+
+import com.jace.math.Matrix;
+import com.jace.math.Metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Parses an ARFF file from the raw bytes of its memory-mapped data section. The header is read with
+ * {@link Metadata#parseAttribute} like before, but the data section is tokenized in place: numbers
+ * go through a parser that works on the bytes, and nominal values are looked up by their bytes, so
+ * no String is created for a row unless it holds a malformed value.
+ * <br>
+ * The file is mapped one window at a time, and each window is copied in bulk into a reused array,
+ * which the tokenizer scans much faster than it could call into the mapped buffer. A row that
+ * crosses the end of a window is parsed again from the start of the next one.
+ */
+public class ArffParser implements AutoCloseable {
+  private static final int WINDOW_SIZE = 1 << 23;
+  private static final int MAX_WINDOW_SIZE = 1 << 30;
+  private static final int MIN_CHUNK_SIZE = 1 << 22;
+
+  /**
+   * Powers of ten that are exact as doubles. A mantissa below 2^53 multiplied or divided by one of
+   * these is correctly rounded.
+   */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private File file;
+  private FileChannel channel;
+
+  /**
+   * Where parsing stops: the end of the file, or of the chunk a worker was given.
+   */
+  private long rangeEnd;
+
+  private byte[] buffer;
+  private long windowStart;
+  private int limit;
+  private int position;
+
+  private Metadata metadata = new Metadata();
+  private int attributeCount = 0;
+  private boolean[] continuous;
+  private Dictionary[] dictionaries;
+  private long rowsRead = 0;
+
+  private boolean parallel = true;
+
+  public ArffParser(File file) throws IOException {
+    this.file = file;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      rangeEnd = channel.size();
+      buffer = new byte[(int) Math.max(1, Math.min(WINDOW_SIZE, rangeEnd))];
+      map(0);
+      readHeader();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Parses the rows from begin to end, a range of the data section that starts and ends on a line
+   * boundary, with the header that parent already read.
+   */
+  private ArffParser(ArffParser parent, long begin, long end) throws IOException {
+    file = parent.file;
+    channel = parent.channel;
+    rangeEnd = end;
+    buffer = new byte[(int) Math.min(WINDOW_SIZE, end - begin)];
+
+    metadata = parent.metadata;
+    attributeCount = parent.attributeCount;
+    continuous = parent.continuous;
+    dictionaries = parent.dictionaries;
+
+    map(begin);
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Whether {@link #readRows} may split a large data section across the common fork-join pool.
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  public Metadata getMetadata() {
+    return metadata;
+  }
+
+  public int getAttributeCount() {
+    return attributeCount;
+  }
+
+  /**
+   * Fills row with the values of the next data row. Returns false at the end of the file.
+   */
+  public boolean readRow(double[] row) throws IOException {
+    return readRow(row, 0);
+  }
+
+  /**
+   * Writes the values of the next data row into row, starting at offset, such as into one slot of
+   * a buffer holding several rows. Returns false at the end of the file.
+   */
+  public boolean readRow(double[] row, int offset) throws IOException {
+    if (offset < 0 || row.length - offset < attributeCount) {
+      throw new IllegalArgumentException(String.format(
+          "The row has room for %d values, but there are %d attributes.",
+          row.length - offset, attributeCount));
+    }
+
+    if (!skipBlankLines()) {
+      return false;
+    }
+
+    long rowStart = windowStart + position;
+    while (!parseRow(row, offset)) {
+      if (position == 0) {
+        growWindow();
+      }
+      map(rowStart);
+    }
+
+    rowsRead++;
+    return true;
+  }
+
+  /**
+   * Reads every remaining row. A data section of several megabytes is split into chunks that start
+   * on line boundaries, which are parsed in parallel and joined in file order, so the rows are the
+   * same as those read one at a time.
+   * <br>
+   * The nominal dictionaries come from the header and are only read while parsing, so every chunk
+   * shares them. If any chunk fails, the rows are parsed again in order so the error reported is
+   * the first one in the file, with its row number.
+   */
+  public List<double[]> readRows() throws IOException {
+    long begin = windowStart + position;
+    int chunkCount = (int) Math.min(
+        (rangeEnd - begin) / MIN_CHUNK_SIZE, Runtime.getRuntime().availableProcessors() * 4L);
+
+    if (parallel && chunkCount > 1) {
+      long[] boundaries = new long[chunkCount + 1];
+      boundaries[0] = begin;
+      for (int i = 1; i < chunkCount; i++) {
+        long target = begin + (rangeEnd - begin) * i / chunkCount;
+        boundaries[i] = nextLineStart(Math.max(target, boundaries[i - 1]));
+      }
+      boundaries[chunkCount] = rangeEnd;
+
+      List<List<double[]>> chunks = new ArrayList<>();
+      for (int i = 0; i < chunkCount; i++) {
+        chunks.add(null);
+      }
+
+      IntStream.range(0, chunkCount).parallel().forEach((chunk) -> {
+        if (boundaries[chunk] == boundaries[chunk + 1]) {
+          chunks.set(chunk, new ArrayList<>());
+          return;
+        }
+
+        try {
+          ArffParser parser = new ArffParser(this, boundaries[chunk], boundaries[chunk + 1]);
+          chunks.set(chunk, parser.readSequentially());
+        } catch (IOException | RuntimeException e) {
+          // Left empty, to be reported by the sequential pass below
+        }
+      });
+
+      if (!chunks.contains(null)) {
+        int rowCount = 0;
+        for (List<double[]> chunk : chunks) {
+          rowCount += chunk.size();
+        }
+
+        List<double[]> rows = new ArrayList<>(rowCount);
+        for (List<double[]> chunk : chunks) {
+          rows.addAll(chunk);
+        }
+
+        rowsRead += rowCount;
+        windowStart = rangeEnd;
+        limit = 0;
+        position = 0;
+        return rows;
+      }
+    }
+
+    return readSequentially();
+  }
+
+  private List<double[]> readSequentially() throws IOException {
+    List<double[]> rows = new ArrayList<>();
+    double[] row = new double[attributeCount];
+    while (readRow(row)) {
+      rows.add(row);
+      row = new double[attributeCount];
+    }
+    return rows;
+  }
+
+  /**
+   * Returns the offset just after the first line break at or after offset, or the end of the range.
+   */
+  private long nextLineStart(long offset) throws IOException {
+    while (offset < rangeEnd) {
+      int size = (int) Math.min(1 << 16, rangeEnd - offset);
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+      for (int i = 0; i < size; i++) {
+        if (mapped.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += size;
+    }
+    return rangeEnd;
+  }
+
+  @Override
+  public void close() throws IOException {
+    limit = 0;
+    position = 0;
+    channel.close();
+  }
+
+  private void readHeader() throws IOException {
+    while (windowStart + position < rangeEnd) {
+      String line = readLine().trim();
+      String upper = line.toUpperCase();
+
+      if (upper.startsWith("@RELATION")) {
+        metadata.setFileName(line.split(" ")[1]);
+      } else if (upper.startsWith("@ATTRIBUTE")) {
+        metadata.parseAttribute(line);
+        attributeCount++;
+      } else if (upper.startsWith("@DATA")) {
+        resolveColumns();
+        return;
+      }
+    }
+
+    throw new IOException(file + " has no @DATA section.");
+  }
+
+  /**
+   * Decodes one header line. Header lines are few and short, so they become Strings and reuse the
+   * parsing in {@link Metadata}.
+   */
+  private String readLine() throws IOException {
+    int end = position;
+    while (end < limit && buffer[end] != '\n') {
+      end++;
+    }
+
+    if (end == limit && windowStart + limit < rangeEnd) {
+      if (position == 0) {
+        growWindow();
+      }
+      map(windowStart + position);
+      return readLine();
+    }
+
+    String line = new String(buffer, position, end - position, StandardCharsets.UTF_8);
+    position = Math.min(end + 1, limit);
+    return line;
+  }
+
+  /**
+   * Looks up the type of every column once, instead of once per value.
+   */
+  private void resolveColumns() {
+    continuous = new boolean[attributeCount];
+    dictionaries = new Dictionary[attributeCount];
+    for (int i = 0; i < attributeCount; i++) {
+      continuous[i] = metadata.attributeIsContinuous(i);
+      if (!continuous[i]) {
+        dictionaries[i] = new Dictionary(metadata.getAttributeToValueMapForColumn(i));
+      }
+    }
+  }
+
+  /**
+   * Moves past whitespace, empty lines and '%' comments. Returns false at the end of the file.
+   */
+  private boolean skipBlankLines() throws IOException {
+    while (true) {
+      if (position >= limit && !map(windowStart + position)) {
+        return false;
+      }
+
+      byte c = buffer[position];
+      if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+        position++;
+      } else if (c == '%') {
+        while (true) {
+          while (position < limit && buffer[position] != '\n') {
+            position++;
+          }
+          if (position < limit || !map(windowStart + position)) {
+            break;
+          }
+        }
+      } else {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Parses the row at the current position. Returns false, without moving, if the row runs past
+   * the end of the window.
+   */
+  private boolean parseRow(double[] row, int offset) throws IOException {
+    boolean lastWindow = windowStart + limit >= rangeEnd;
+    int p = position;
+
+    for (int i = 0; i < attributeCount; i++) {
+      while (p < limit && (buffer[p] == ' ' || buffer[p] == '\t')) {
+        p++;
+      }
+
+      int begin = p;
+      int end;
+      if (p < limit && buffer[p] == '"') {
+        p++;
+        while (p < limit && buffer[p] != '"') {
+          p++;
+        }
+        p = Math.min(p + 1, limit);
+        end = p;
+        while (p < limit && !isSeparator(buffer[p])) {
+          p++;
+        }
+      } else {
+        while (p < limit && !isSeparator(buffer[p])) {
+          p++;
+        }
+        end = p;
+        while (end > begin && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t')) {
+          end--;
+        }
+      }
+
+      if (p == limit && !lastWindow) {
+        return false;
+      }
+
+      if (begin == end) {
+        throw new IOException(String.format(
+            "Row %d of %s has %d values, but there are %d attributes.",
+            rowsRead + 1, file, i, attributeCount));
+      }
+
+      if (end - begin == 1 && buffer[begin] == '?') {
+        row[offset + i] = Matrix.UNKNOWN_VALUE;
+      } else if (continuous[i]) {
+        row[offset + i] = parseNumber(begin, end, i);
+      } else {
+        int value = dictionaries[i].find(buffer, begin, end);
+        if (value < 0) {
+          throw new IOException(String.format("Row %d of %s has unknown value %s in column %d.",
+              rowsRead + 1, file, decode(begin, end), i));
+        }
+        row[offset + i] = value;
+      }
+
+      if (p < limit && buffer[p] == ',') {
+        p++;
+      }
+    }
+
+    // Anything after the last attribute is ignored
+    while (p < limit && buffer[p] != '\n') {
+      p++;
+    }
+
+    if (p == limit && !lastWindow) {
+      return false;
+    }
+
+    position = p;
+    return true;
+  }
+
+  /**
+   * Parses a decimal number without creating a String. Numbers of up to 18 significant digits with
+   * a small enough exponent are computed exactly from their mantissa; anything else, including
+   * NaN and Infinity, is handed to {@link Double#parseDouble}.
+   */
+  private double parseNumber(int begin, int end, int column) throws IOException {
+    int p = begin;
+    boolean negative = false;
+    byte c = buffer[p];
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      p++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean anyDigits = false;
+
+    while (p < end && (c = buffer[p]) >= '0' && c <= '9') {
+      if (mantissa != 0 || c != '0') {
+        if (++digits > 18) {
+          return parseSlowly(begin, end, column);
+        }
+        mantissa = mantissa * 10 + (c - '0');
+      }
+      anyDigits = true;
+      p++;
+    }
+
+    if (p < end && buffer[p] == '.') {
+      p++;
+      while (p < end && (c = buffer[p]) >= '0' && c <= '9') {
+        if (mantissa != 0 || c != '0') {
+          if (++digits > 18) {
+            return parseSlowly(begin, end, column);
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        exponent--;
+        anyDigits = true;
+        p++;
+      }
+    }
+
+    if (!anyDigits) {
+      return parseSlowly(begin, end, column);
+    }
+
+    if (p < end && ((c = buffer[p]) == 'e' || c == 'E')) {
+      p++;
+      boolean negativeExponent = false;
+      if (p < end && ((c = buffer[p]) == '-' || c == '+')) {
+        negativeExponent = c == '-';
+        p++;
+      }
+
+      int value = 0;
+      boolean anyExponentDigits = false;
+      while (p < end && (c = buffer[p]) >= '0' && c <= '9') {
+        if (value < 100000) {
+          value = value * 10 + (c - '0');
+        }
+        anyExponentDigits = true;
+        p++;
+      }
+
+      if (!anyExponentDigits) {
+        return parseSlowly(begin, end, column);
+      }
+      exponent += negativeExponent ? -value : value;
+    }
+
+    if (p != end) {
+      return parseSlowly(begin, end, column);
+    }
+
+    if (mantissa == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+
+    if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+      double value = exponent < 0
+          ? mantissa / POWERS_OF_TEN[-exponent]
+          : mantissa * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+
+    return parseSlowly(begin, end, column);
+  }
+
+  private double parseSlowly(int begin, int end, int column) throws IOException {
+    String text = decode(begin, end);
+    try {
+      return Double.parseDouble(text);
+    } catch (NumberFormatException e) {
+      throw new IOException(String.format("Row %d of %s has malformed value %s in column %d.",
+          rowsRead + 1, file, text, column), e);
+    }
+  }
+
+  private String decode(int begin, int end) {
+    return new String(buffer, begin, end - begin, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Maps the window that starts at the given file offset. Returns false if the offset is at the end
+   * of the file.
+   */
+  private boolean map(long start) throws IOException {
+    if (start >= rangeEnd) {
+      return false;
+    }
+
+    int size = (int) Math.min(buffer.length, rangeEnd - start);
+    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    mapped.get(buffer, 0, size);
+    windowStart = start;
+    limit = size;
+    position = 0;
+    return limit > 0;
+  }
+
+  /**
+   * Doubles the window, for a line that does not fit in it.
+   */
+  private void growWindow() throws IOException {
+    if (buffer.length >= MAX_WINDOW_SIZE) {
+      throw new IOException(String.format(
+          "%s has a line longer than %d bytes.", file, MAX_WINDOW_SIZE));
+    }
+    buffer = new byte[buffer.length * 2];
+  }
+
+  private static boolean isSeparator(byte c) {
+    return c == ',' || c == '\n' || c == '\r';
+  }
+
+  /**
+   * The values of a nominal attribute, in an open-addressing table keyed by their UTF-8 bytes.
+   */
+  private static class Dictionary {
+    private byte[][] keys;
+    private int[] values;
+    private int mask;
+
+    Dictionary(Map<String, Integer> attributeToValue) {
+      int capacity = Integer.highestOneBit(Math.max(attributeToValue.size(), 1) * 4 - 1) << 1;
+      keys = new byte[capacity][];
+      values = new int[capacity];
+      mask = capacity - 1;
+
+      for (Map.Entry<String, Integer> entry : attributeToValue.entrySet()) {
+        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        int slot = hash(key, 0, key.length) & mask;
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = entry.getValue();
+      }
+    }
+
+    /**
+     * Returns the value for the bytes from begin to end, or -1 if they are not in the dictionary.
+     */
+    int find(byte[] buffer, int begin, int end) {
+      int hash = 0;
+      for (int i = begin; i < end; i++) {
+        hash = 31 * hash + buffer[i];
+      }
+
+      for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+        byte[] key = keys[slot];
+        if (key.length == end - begin && matches(key, buffer, begin)) {
+          return values[slot];
+        }
+      }
+      return -1;
+    }
+
+    private static boolean matches(byte[] key, byte[] buffer, int begin) {
+      for (int i = 0; i < key.length; i++) {
+        if (key[i] != buffer[begin + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int hash(byte[] bytes, int begin, int end) {
+      int hash = 0;
+      for (int i = begin; i < end; i++) {
+        hash = 31 * hash + bytes[i];
+      }
+      return hash;
+    }
+  }
+}
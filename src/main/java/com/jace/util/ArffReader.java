@@ -0,0 +1,102 @@
+package com.jace.util;
+
+import com.jace.math.Matrix;
+import com.jace.math.Metadata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the rows of an ARFF file one at a time, the streaming counterpart of
+ * {@link Matrix#loadARFF}. The header is read when the reader is created, so the attributes are
+ * known before the first row.
+ */
+public class ArffReader extends RowReader {
+  private BufferedReader reader;
+  private Metadata metadata = new Metadata();
+  private int attributeCount = 0;
+
+  public ArffReader(File file) throws IOException {
+    this(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+  }
+
+  public ArffReader(Reader reader) throws IOException {
+    this.reader = (reader instanceof BufferedReader)
+        ? (BufferedReader) reader
+        : new BufferedReader(reader);
+
+    readHeader();
+  }
+
+  private void readHeader() throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      String upper = line.toUpperCase();
+
+      if (upper.startsWith("@RELATION")) {
+        metadata.setFileName(line.split(" ")[1]);
+      } else if (upper.startsWith("@ATTRIBUTE")) {
+        metadata.parseAttribute(line);
+        attributeCount++;
+      } else if (upper.startsWith("@DATA")) {
+        return;
+      }
+    }
+
+    throw new IOException("The ARFF input has no @DATA section.");
+  }
+
+  public Metadata getMetadata() {
+    return metadata;
+  }
+
+  public int getAttributeCount() {
+    return attributeCount;
+  }
+
+  @Override
+  protected double[] readRow() throws IOException {
+    String line;
+    do {
+      line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+      line = line.trim();
+    } while (line.isEmpty() || line.startsWith("%"));
+
+    double[] row = new double[attributeCount];
+
+    Json.StringParser stringParser = new Json.StringParser(line);
+    for (int i = 0; i < attributeCount; i++) {
+      stringParser.skipWhitespace();
+      String parsedValue = stringParser.untilQuoteSensitive(',', '\n');
+
+      if (parsedValue.equals("?")) {
+        row[i] = Matrix.UNKNOWN_VALUE;
+      } else if (!metadata.attributeIsContinuous(i)) {
+        row[i] = metadata.getValueForAttributeInColumn(parsedValue, i);
+      } else {
+        try {
+          row[i] = Double.parseDouble(parsedValue);
+        } catch (NumberFormatException e) {
+          throw new IOException("Malformed value " + parsedValue + " in column " + i, e);
+        }
+      }
+
+      stringParser.advance(1);
+    }
+
+    return row;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,40 @@
+package com.jace.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line parsing shared by the library's entry points.
+ */
+public class Arguments {
+
+  /**
+   * Parses "--key value" pairs. A flag without a value maps to "true".
+   */
+  public static Map<String, String> parse(String[] args) {
+    Map<String, String> arguments = new HashMap<>();
+
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+      }
+
+      String key = args[i].substring(2);
+      if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+        arguments.put(key, args[++i]);
+      } else {
+        arguments.put(key, "true");
+      }
+    }
+
+    return arguments;
+  }
+
+  public static String require(Map<String, String> arguments, String key) {
+    if (!arguments.containsKey(key)) {
+      throw new IllegalArgumentException("Missing required argument --" + key);
+    }
+
+    return arguments.get(key);
+  }
+}
@@ -0,0 +1,60 @@
+package com.jace.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads rows of comma-separated numbers. Blank lines are skipped.
+ */
+public class CsvReader extends RowReader {
+  private BufferedReader reader;
+  private boolean skipHeader;
+
+  public CsvReader(File file) throws IOException {
+    this(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+  }
+
+  public CsvReader(Reader reader) {
+    this.reader = (reader instanceof BufferedReader)
+        ? (BufferedReader) reader
+        : new BufferedReader(reader);
+  }
+
+  /**
+   * Skips the first line of the input, for files that start with column names.
+   */
+  public void setSkipHeader(boolean skipHeader) {
+    this.skipHeader = skipHeader;
+  }
+
+  @Override
+  protected double[] readRow() throws IOException {
+    if (skipHeader) {
+      skipHeader = false;
+      reader.readLine();
+    }
+
+    String line;
+    do {
+      line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+    } while (line.trim().isEmpty());
+
+    try {
+      return Strings.parseVector(line, ',').toDoubleArray();
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed row: " + line, e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -68,6 +68,19 @@ public class FileManager {
     outputFile.close();
   }
 
+  /**
+   * Converts a color with channels in [0, 1] to a packed RGB pixel, the same way
+   * {@link #writeImageFromVector} does.
+   */
+  public static int getUnitPixel(double r, double g, double b) {
+    return getPixel((double) Math.round(r * 256), Math.round(g * 256), Math.round(b * 256));
+  }
+
+  public static void writeImage(String fileName, BufferedImage image) throws IOException {
+    File outputFile = getOutputFileWithName(fileName);
+    ImageIO.write(image, "PNG", outputFile);
+  }
+
   private static int getPixel(double r, double g, double b) {
     int red = (int) Math.max(0, Math.min(255, Math.round(r)));
     int green = (int) Math.max(0, Math.min(255, Math.round(g)));
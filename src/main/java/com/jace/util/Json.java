@@ -5,15 +5,21 @@ package com.jace.util;
 // See http://creativecommons.org/publicdomain/zero/1.0/
 // ----------------------------------------------------------------
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public abstract class Json {
   abstract void write(StringBuilder sb);
 
+  abstract void write(JsonWriter writer) throws IOException;
+
   public static Json newObject() {
     return new JObject();
   }
@@ -22,6 +28,13 @@ public abstract class Json {
     return new JList();
   }
 
+  /**
+   * A list of numbers kept as one array instead of a node per number. The array is not copied.
+   */
+  public static Json newDoubleArray(double[] values) {
+    return new JDoubleArray(values, values.length);
+  }
+
   public static Json parseNode(StringParser p) {
     p.skipWhitespace();
     if (p.remaining() == 0)
@@ -148,6 +161,17 @@ public abstract class Json {
     return ((JString) this).value;
   }
 
+  /**
+   * Copies a list of numbers into a new array.
+   */
+  public double[] toDoubleArray() {
+    double[] values = new double[size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getDouble(i);
+    }
+    return values;
+  }
+
   public String toString() {
     StringBuilder sb = new StringBuilder();
     write(sb);
@@ -163,12 +187,12 @@ public abstract class Json {
   }
 
   public void save(String filename) {
-    try {
-      BufferedWriter out = new BufferedWriter(new FileWriter(filename));
-      out.write(toString());
-      out.close();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    try (Writer out = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+      JsonWriter writer = new JsonWriter(out);
+      write(writer);
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
   }
 
@@ -177,14 +201,15 @@ public abstract class Json {
     return Json.parseNode(p);
   }
 
+  /**
+   * Reads the file through a {@link JsonReader}, so its whole text is never held in memory.
+   */
   public static Json load(String filename) {
-    String contents;
-    try {
-      contents = new String(Files.readAllBytes(Paths.get(filename)));
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    try (Reader in = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+      return new JsonReader(in).nextValue();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    return parse(contents);
   }
 
   public static class StringParser {
@@ -331,6 +356,15 @@ public abstract class Json {
       sb.append("}");
     }
 
+    void write(JsonWriter writer) throws IOException {
+      writer.beginObject();
+      for (NameVal nv : fields) {
+        writer.name(nv.name);
+        nv.value.write(writer);
+      }
+      writer.endObject();
+    }
+
     static JObject parseObject(StringParser p) {
       p.expect("{");
       JObject newOb = new JObject();
@@ -368,7 +402,11 @@ public abstract class Json {
     ArrayList<Json> list;
 
     JList() {
-      list = new ArrayList<Json>();
+      this(new ArrayList<Json>());
+    }
+
+    JList(ArrayList<Json> list) {
+      this.list = list;
     }
 
     public void add(Json item) {
@@ -395,16 +433,30 @@ public abstract class Json {
       sb.append("]");
     }
 
-    static JList parseList(StringParser p) {
+    void write(JsonWriter writer) throws IOException {
+      writer.beginArray();
+      for (Json item : list) {
+        item.write(writer);
+      }
+      writer.endArray();
+    }
+
+    /**
+     * Lists that hold only non-integer numbers are packed into a {@link JDoubleArray}.
+     */
+    static Json parseList(StringParser p) {
       p.expect("[");
-      JList newList = new JList();
+      JList newList = null;
+      JDoubleArray packed = new JDoubleArray(new double[16], 0);
       boolean readyForValue = true;
       while (p.remaining() > 0) {
         p.skipWhitespace();
         char c = p.peek();
         if (c == ']') {
           p.advance(1);
-          return newList;
+          if (newList != null)
+            return newList;
+          return (packed.size == 0) ? new JList() : packed.trim();
         } else if (c == ',') {
           if (readyForValue)
             throw new RuntimeException("Unexpected ',' in JSON file");
@@ -413,7 +465,16 @@ public abstract class Json {
         } else {
           if (!readyForValue)
             throw new RuntimeException("Expected a ',' or ']' in JSON file");
-          newList.list.add(Json.parseNode(p));
+          Json value = Json.parseNode(p);
+          if (newList == null && value instanceof JDouble) {
+            packed.add(((JDouble) value).value);
+          } else {
+            if (newList == null) {
+              packed.unpack();
+              newList = packed;
+            }
+            newList.list.add(value);
+          }
           readyForValue = false;
         }
       }
@@ -421,7 +482,102 @@ public abstract class Json {
     }
   }
 
-  private static class JBool extends Json {
+  /**
+   * A list of doubles kept in one array. Adding anything other than a double turns it into an
+   * ordinary list in place, so it can be used like any other list.
+   */
+  static class JDoubleArray extends JList {
+    double[] values;
+    int size;
+
+    JDoubleArray(double[] values, int size) {
+      super(null);
+      this.values = values;
+      this.size = size;
+    }
+
+    public int size() {
+      return (list == null) ? size : list.size();
+    }
+
+    public Json get(int index) {
+      return (list == null) ? new JDouble(getDouble(index)) : list.get(index);
+    }
+
+    public double getDouble(int index) {
+      if (list != null)
+        return list.get(index).asDouble();
+      if (index >= size)
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+      return values[index];
+    }
+
+    public void add(Json item) {
+      if (list == null && item instanceof JDouble) {
+        add(((JDouble) item).value);
+      } else {
+        unpack();
+        super.add(item);
+      }
+    }
+
+    public void add(double val) {
+      if (list != null) {
+        list.add(new JDouble(val));
+        return;
+      }
+      if (size == values.length)
+        values = Arrays.copyOf(values, Math.max(16, size * 2));
+      values[size++] = val;
+    }
+
+    public double[] toDoubleArray() {
+      return (list == null) ? Arrays.copyOf(values, size) : super.toDoubleArray();
+    }
+
+    JDoubleArray trim() {
+      if (values.length != size)
+        values = Arrays.copyOf(values, size);
+      return this;
+    }
+
+    /**
+     * Moves the values into nodes of the list, after which this behaves as a {@link JList}.
+     */
+    void unpack() {
+      if (list != null)
+        return;
+      list = new ArrayList<Json>(Math.max(size * 2, 16));
+      for (int i = 0; i < size; i++)
+        list.add(new JDouble(values[i]));
+      values = null;
+      size = 0;
+    }
+
+    void write(StringBuilder sb) {
+      if (list != null) {
+        super.write(sb);
+        return;
+      }
+      sb.append("[");
+      for (int i = 0; i < size; i++) {
+        if (i > 0)
+          sb.append(",");
+        sb.append(values[i]);
+      }
+      sb.append("]");
+    }
+
+    void write(JsonWriter writer) throws IOException {
+      if (list != null) {
+        super.write(writer);
+        return;
+      }
+      writer.value(values, 0, size);
+    }
+  }
+
+  static class JBool extends Json {
     boolean value;
 
     JBool(boolean val) {
@@ -431,9 +587,13 @@ public abstract class Json {
     void write(StringBuilder sb) {
       sb.append(value ? "true" : "false");
     }
+
+    void write(JsonWriter writer) throws IOException {
+      writer.value(value);
+    }
   }
 
-  private static class JLong extends Json {
+  static class JLong extends Json {
     long value;
 
     JLong(long val) {
@@ -443,9 +603,13 @@ public abstract class Json {
     void write(StringBuilder sb) {
       sb.append(value);
     }
+
+    void write(JsonWriter writer) throws IOException {
+      writer.value(value);
+    }
   }
 
-  private static class JDouble extends Json {
+  static class JDouble extends Json {
     double value;
 
     JDouble(double val) {
@@ -456,6 +620,10 @@ public abstract class Json {
       sb.append(value);
     }
 
+    void write(JsonWriter writer) throws IOException {
+      writer.value(value);
+    }
+
     static Json parseNumber(StringParser p) {
       String s = p.whileReal();
       if (s.indexOf('.') >= 0)
@@ -465,7 +633,7 @@ public abstract class Json {
     }
   }
 
-  private static class JString extends Json {
+  static class JString extends Json {
     String value;
 
     JString(String val) {
@@ -510,6 +678,10 @@ public abstract class Json {
       write(sb, value);
     }
 
+    void write(JsonWriter writer) throws IOException {
+      writer.value(value);
+    }
+
     static String parseString(StringParser p) {
       StringBuilder sb = new StringBuilder();
       p.expect("\"");
@@ -561,12 +733,16 @@ public abstract class Json {
     }
   }
 
-  private static class JNull extends Json {
+  static class JNull extends Json {
     JNull() {
     }
 
     void write(StringBuilder sb) {
       sb.append("null");
     }
+
+    void write(JsonWriter writer) throws IOException {
+      writer.nullValue();
+    }
   }
 }
@@ -0,0 +1,593 @@
+package com.jace.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads JSON one token at a time from a {@link Reader} or a UTF-8 {@link ByteBuffer}, holding only
+ * a small buffer of the input in memory.
+ * <br>
+ * Call {@link #peek} to see what comes next, then the matching next or begin/end method to consume
+ * it. {@link #nextDoubleArray} reads a list of numbers straight into a double[], and
+ * {@link #nextValue} builds a {@link Json} tree for one value when that is more convenient.
+ * Malformed input throws an IOException naming the character offset.
+ */
+public class JsonReader implements Closeable {
+  public enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+    END_DOCUMENT
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int DANGLING_NAME = 5;
+  private static final int NONEMPTY_OBJECT = 6;
+  private static final int CLOSED = 7;
+
+  private Reader reader;
+  private ByteBuffer bytes;
+  private CharsetDecoder decoder;
+
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+  private long consumed = 0;
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  private Token peeked;
+
+  // The text of the number being read
+  private char[] number = new char[32];
+  private int numberLength;
+  private boolean numberIsInteger;
+
+  public JsonReader(Reader reader) {
+    this.reader = reader;
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Reads the remaining bytes of the buffer, as UTF-8.
+   */
+  public JsonReader(ByteBuffer bytes) {
+    this.bytes = bytes;
+    this.decoder = StandardCharsets.UTF_8.newDecoder();
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * The kind of the next token, without consuming it.
+   */
+  public Token peek() throws IOException {
+    if (peeked == null) {
+      peeked = readToken();
+    }
+
+    return peeked;
+  }
+
+  /**
+   * Whether the current array or object has another element.
+   */
+  public boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginArray() throws IOException {
+    expect(Token.BEGIN_ARRAY);
+    position++;
+    push(EMPTY_ARRAY);
+  }
+
+  public void endArray() throws IOException {
+    expect(Token.END_ARRAY);
+    depth--;
+  }
+
+  public void beginObject() throws IOException {
+    expect(Token.BEGIN_OBJECT);
+    position++;
+    push(EMPTY_OBJECT);
+  }
+
+  public void endObject() throws IOException {
+    expect(Token.END_OBJECT);
+    depth--;
+  }
+
+  public String nextName() throws IOException {
+    expect(Token.NAME);
+    return readString();
+  }
+
+  public String nextString() throws IOException {
+    expect(Token.STRING);
+    return readString();
+  }
+
+  public double nextDouble() throws IOException {
+    expect(Token.NUMBER);
+    readNumber();
+    return parseNumber();
+  }
+
+  public long nextLong() throws IOException {
+    expect(Token.NUMBER);
+    readNumber();
+    if (numberIsInteger) {
+      return Long.parseLong(new String(number, 0, numberLength));
+    }
+
+    double value = parseNumber();
+    if (value != (long) value) {
+      throw syntaxError("Expected an integer but got " + new String(number, 0, numberLength));
+    }
+    return (long) value;
+  }
+
+  public boolean nextBoolean() throws IOException {
+    expect(Token.BOOLEAN);
+    if (buffer[position] == 't') {
+      readLiteral("true");
+      return true;
+    }
+
+    readLiteral("false");
+    return false;
+  }
+
+  public void nextNull() throws IOException {
+    expect(Token.NULL);
+    readLiteral("null");
+  }
+
+  /**
+   * Reads a list of numbers into an array, without a node per number.
+   */
+  public double[] nextDoubleArray() throws IOException {
+    beginArray();
+
+    double[] values = new double[16];
+    int size = 0;
+    while (hasNext()) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = nextDouble();
+    }
+
+    endArray();
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Skips the next value, along with everything inside it.
+   */
+  public void skipValue() throws IOException {
+    int level = 0;
+    do {
+      switch (peek()) {
+        case BEGIN_ARRAY:
+          beginArray();
+          level++;
+          break;
+        case BEGIN_OBJECT:
+          beginObject();
+          level++;
+          break;
+        case END_ARRAY:
+          endArray();
+          level--;
+          break;
+        case END_OBJECT:
+          endObject();
+          level--;
+          break;
+        case NAME:
+          nextName();
+          break;
+        case STRING:
+          nextString();
+          break;
+        case NUMBER:
+          expect(Token.NUMBER);
+          readNumber();
+          break;
+        case BOOLEAN:
+          nextBoolean();
+          break;
+        case NULL:
+          nextNull();
+          break;
+        default:
+          throw syntaxError("Unexpected end of input");
+      }
+    } while (level > 0);
+  }
+
+  /**
+   * Reads the next value as a tree. Lists that hold only non-integer numbers become packed
+   * double arrays.
+   */
+  public Json nextValue() throws IOException {
+    switch (peek()) {
+      case BEGIN_OBJECT: {
+        Json object = Json.newObject();
+        beginObject();
+        while (hasNext()) {
+          String name = nextName();
+          object.add(name, nextValue());
+        }
+        endObject();
+        return object;
+      }
+
+      case BEGIN_ARRAY:
+        return readList();
+
+      case STRING:
+        return new Json.JString(nextString());
+
+      case NUMBER:
+        expect(Token.NUMBER);
+        readNumber();
+        return numberIsInteger
+            ? new Json.JLong(Long.parseLong(new String(number, 0, numberLength)))
+            : new Json.JDouble(parseNumber());
+
+      case BOOLEAN:
+        return new Json.JBool(nextBoolean());
+
+      case NULL:
+        nextNull();
+        return new Json.JNull();
+
+      default:
+        throw syntaxError("Expected a value but got " + peek());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    peeked = null;
+    depth = 1;
+    scopes[0] = CLOSED;
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+  private Json readList() throws IOException {
+    beginArray();
+
+    // Numbers are packed until something other than a non-integer number turns up
+    Json list = null;
+    double[] packed = new double[16];
+    int size = 0;
+
+    while (hasNext()) {
+      if (list == null && peek() == Token.NUMBER) {
+        expect(Token.NUMBER);
+        readNumber();
+
+        if (!numberIsInteger) {
+          if (size == packed.length) {
+            packed = Arrays.copyOf(packed, size * 2);
+          }
+          packed[size++] = parseNumber();
+          continue;
+        }
+
+        list = unpack(packed, size);
+        list.add(new Json.JLong(Long.parseLong(new String(number, 0, numberLength))));
+        continue;
+      }
+
+      if (list == null) {
+        list = unpack(packed, size);
+      }
+      list.add(nextValue());
+    }
+
+    endArray();
+
+    if (list != null) {
+      return list;
+    }
+    return (size == 0) ? Json.newList() : Json.newDoubleArray(Arrays.copyOf(packed, size));
+  }
+
+  private static Json unpack(double[] values, int size) {
+    Json list = Json.newList();
+    for (int i = 0; i < size; i++) {
+      list.add(values[i]);
+    }
+    return list;
+  }
+
+  private void expect(Token token) throws IOException {
+    if (peek() != token) {
+      throw syntaxError("Expected " + token + " but got " + peek());
+    }
+    peeked = null;
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+  /**
+   * Consumes the separators before the next token, and closing brackets, but leaves the first
+   * character of anything else in place for the method that reads it.
+   */
+  private Token readToken() throws IOException {
+    int scope = scopes[depth - 1];
+    int c;
+
+    switch (scope) {
+      case EMPTY_ARRAY:
+        scopes[depth - 1] = NONEMPTY_ARRAY;
+        if (nextNonWhitespace() == ']') {
+          position++;
+          return Token.END_ARRAY;
+        }
+        break;
+
+      case NONEMPTY_ARRAY:
+        c = nextNonWhitespace();
+        if (c == ']') {
+          position++;
+          return Token.END_ARRAY;
+        }
+        if (c != ',') {
+          throw syntaxError(c, "Expected ',' or ']'");
+        }
+        position++;
+        break;
+
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonWhitespace();
+        if (c == '}') {
+          position++;
+          return Token.END_OBJECT;
+        }
+        if (scope == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError(c, "Expected ',' or '}'");
+          }
+          position++;
+          c = nextNonWhitespace();
+        }
+        if (c != '"') {
+          throw syntaxError(c, "Expected a name");
+        }
+        scopes[depth - 1] = DANGLING_NAME;
+        return Token.NAME;
+
+      case DANGLING_NAME:
+        c = nextNonWhitespace();
+        if (c != ':') {
+          throw syntaxError(c, "Expected ':'");
+        }
+        position++;
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+        break;
+
+      case EMPTY_DOCUMENT:
+        scopes[depth - 1] = NONEMPTY_DOCUMENT;
+        break;
+
+      case NONEMPTY_DOCUMENT:
+        if (nextNonWhitespace() == -1) {
+          return Token.END_DOCUMENT;
+        }
+        throw syntaxError("Expected the end of the document");
+
+      default:
+        throw new IllegalStateException("The reader is closed.");
+    }
+
+    c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return Token.BEGIN_OBJECT;
+      case '[':
+        return Token.BEGIN_ARRAY;
+      case '"':
+        return Token.STRING;
+      case 't':
+      case 'f':
+        return Token.BOOLEAN;
+      case 'n':
+        return Token.NULL;
+      case -1:
+        throw syntaxError("Unexpected end of input");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return Token.NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+  /**
+   * The next character that is not whitespace, without consuming it, or -1 at the end of input.
+   */
+  private int nextNonWhitespace() throws IOException {
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+      position++;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Refills the buffer once everything in it has been consumed. Returns false at the end of input.
+   */
+  private boolean fill() throws IOException {
+    consumed += limit;
+    position = 0;
+    limit = 0;
+
+    if (reader != null) {
+      int read;
+      do {
+        read = reader.read(buffer, 0, buffer.length);
+      } while (read == 0);
+
+      limit = Math.max(0, read);
+      return read > 0;
+    }
+
+    CharBuffer out = CharBuffer.wrap(buffer);
+    CoderResult result = decoder.decode(bytes, out, true);
+    if (result.isError()) {
+      result.throwException();
+    }
+
+    limit = out.position();
+    return limit > 0;
+  }
+
+  private char nextChar() throws IOException {
+    if (position == limit && !fill()) {
+      throw syntaxError("Unexpected end of input");
+    }
+
+    return buffer[position++];
+  }
+
+  private String readString() throws IOException {
+    position++;
+    StringBuilder builder = new StringBuilder();
+
+    while (true) {
+      if (position == limit && !fill()) {
+        throw syntaxError("Unterminated string");
+      }
+
+      // Copy the run up to the next quote or escape in one go
+      int start = position;
+      while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+        position++;
+      }
+      builder.append(buffer, start, position - start);
+
+      if (position == limit) {
+        continue;
+      }
+
+      if (buffer[position++] == '"') {
+        return builder.toString();
+      }
+
+      char escaped = nextChar();
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          builder.append(escaped);
+          break;
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u': {
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(nextChar(), 16);
+            if (digit < 0) {
+              throw syntaxError("Malformed \\u escape");
+            }
+            code = code * 16 + digit;
+          }
+          builder.append((char) code);
+          break;
+        }
+        default:
+          throw syntaxError("Unrecognized escape sequence \\" + escaped);
+      }
+    }
+  }
+
+  private void readNumber() throws IOException {
+    numberLength = 0;
+    numberIsInteger = true;
+
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if (c == '.' || c == 'e' || c == 'E') {
+        numberIsInteger = false;
+      } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+        break;
+      }
+
+      if (numberLength == number.length) {
+        number = Arrays.copyOf(number, numberLength * 2);
+      }
+      number[numberLength++] = c;
+      position++;
+    }
+  }
+
+  private double parseNumber() throws IOException {
+    try {
+      return Double.parseDouble(new String(number, 0, numberLength));
+    } catch (NumberFormatException e) {
+      throw syntaxError("Malformed number " + new String(number, 0, numberLength));
+    }
+  }
+
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (nextChar() != literal.charAt(i)) {
+        throw syntaxError("Expected " + literal);
+      }
+    }
+  }
+
+  /**
+   * Reports running out of input as such, rather than as the character that was expected.
+   */
+  private IOException syntaxError(int c, String message) {
+    return syntaxError((c == -1) ? "Unexpected end of input" : message);
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException(message + " at character " + (consumed + position));
+  }
+}
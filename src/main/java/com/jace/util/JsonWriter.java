@@ -0,0 +1,256 @@
+package com.jace.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON one token at a time to a {@link Writer}, without building a tree. Numbers are
+ * formatted the same way {@link Json} formats them, so either can read what the other wrote.
+ * <br>
+ * Misuse, such as a value in an object without a name, throws an IllegalStateException.
+ */
+public class JsonWriter implements Closeable, Flushable {
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int DANGLING_NAME = 5;
+  private static final int NONEMPTY_OBJECT = 6;
+
+  private Writer out;
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int length = 0;
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  public JsonWriter(Writer out) {
+    this.out = out;
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    beforeValue();
+    write('[');
+    push(EMPTY_ARRAY);
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    int scope = scopes[depth - 1];
+    if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+      throw new IllegalStateException("There is no array to end.");
+    }
+
+    depth--;
+    write(']');
+    return this;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    beforeValue();
+    write('{');
+    push(EMPTY_OBJECT);
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    int scope = scopes[depth - 1];
+    if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+      throw new IllegalStateException("There is no object to end.");
+    }
+
+    depth--;
+    write('}');
+    return this;
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    int scope = scopes[depth - 1];
+    if (scope == NONEMPTY_OBJECT) {
+      write(',');
+    } else if (scope != EMPTY_OBJECT) {
+      throw new IllegalStateException("Names only belong in objects, before their values.");
+    }
+
+    writeString(name);
+    write(':');
+    scopes[depth - 1] = DANGLING_NAME;
+    return this;
+  }
+
+  public JsonWriter value(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("JSON cannot hold " + value);
+    }
+
+    beforeValue();
+    write(Double.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    beforeValue();
+    write(Long.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    beforeValue();
+    write(value ? "true" : "false");
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+
+    beforeValue();
+    writeString(value);
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    beforeValue();
+    write("null");
+    return this;
+  }
+
+  public JsonWriter value(double[] values) throws IOException {
+    return value(values, 0, values.length);
+  }
+
+  /**
+   * Writes part of an array as a list of numbers.
+   */
+  public JsonWriter value(double[] values, int offset, int count) throws IOException {
+    beginArray();
+    for (int i = offset; i < offset + count; i++) {
+      value(values[i]);
+    }
+    return endArray();
+  }
+
+  /**
+   * Writes a tree built with {@link Json}.
+   */
+  public JsonWriter value(Json json) throws IOException {
+    json.write(this);
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.write(buffer, 0, length);
+    length = 0;
+    out.flush();
+  }
+
+  /**
+   * Flushes and closes the underlying writer. The document must be complete.
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+    out.close();
+
+    if (depth != 1 || scopes[0] != NONEMPTY_DOCUMENT) {
+      throw new IllegalStateException("The JSON document is incomplete.");
+    }
+  }
+
+  private void beforeValue() throws IOException {
+    switch (scopes[depth - 1]) {
+      case EMPTY_DOCUMENT:
+        scopes[depth - 1] = NONEMPTY_DOCUMENT;
+        break;
+      case EMPTY_ARRAY:
+        scopes[depth - 1] = NONEMPTY_ARRAY;
+        break;
+      case NONEMPTY_ARRAY:
+        write(',');
+        break;
+      case DANGLING_NAME:
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+        break;
+      case NONEMPTY_DOCUMENT:
+        throw new IllegalStateException("A JSON document holds a single value.");
+      default:
+        throw new IllegalStateException("Values in an object need a name.");
+    }
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+  private void writeString(String value) throws IOException {
+    write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          write("\\\"");
+          break;
+        case '\\':
+          write("\\\\");
+          break;
+        case '\b':
+          write("\\b");
+          break;
+        case '\f':
+          write("\\f");
+          break;
+        case '\n':
+          write("\\n");
+          break;
+        case '\r':
+          write("\\r");
+          break;
+        case '\t':
+          write("\\t");
+          break;
+        default:
+          if (c < ' ') {
+            write(String.format("\\u%04x", (int) c));
+          } else {
+            write(c);
+          }
+      }
+    }
+    write('"');
+  }
+
+  private void write(char c) throws IOException {
+    if (length == buffer.length) {
+      out.write(buffer, 0, length);
+      length = 0;
+    }
+    buffer[length++] = c;
+  }
+
+  private void write(String text) throws IOException {
+    if (length + text.length() > buffer.length) {
+      out.write(buffer, 0, length);
+      length = 0;
+
+      if (text.length() > buffer.length) {
+        out.write(text);
+        return;
+      }
+    }
+
+    text.getChars(0, text.length(), buffer, length);
+    length += text.length();
+  }
+}
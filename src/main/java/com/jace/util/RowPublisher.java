@@ -0,0 +1,157 @@
+package com.jace.util;
+
+import com.jace.math.Vector;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a {@link RowReader} to a single subscriber. Rows are read only when the
+ * subscriber has asked for them, so a slow subscriber slows down reading instead of rows piling
+ * up in memory. The reader is closed when the stream ends or is cancelled.
+ */
+public class RowPublisher implements Flow.Publisher<Vector> {
+  private RowReader reader;
+  private Executor executor;
+  private boolean subscribed = false;
+
+  /**
+   * Reads rows on whichever thread requests them.
+   */
+  public RowPublisher(RowReader reader) {
+    this(reader, Runnable::run);
+  }
+
+  /**
+   * Reads rows and delivers them to the subscriber on the given executor.
+   */
+  public RowPublisher(RowReader reader, Executor executor) {
+    this.reader = reader;
+    this.executor = executor;
+  }
+
+  @Override
+  public synchronized void subscribe(Flow.Subscriber<? super Vector> subscriber) {
+    if (subscribed) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("A RowPublisher has only one subscriber."));
+      return;
+    }
+
+    subscribed = true;
+    subscriber.onSubscribe(new RowSubscription(subscriber));
+  }
+
+  private class RowSubscription implements Flow.Subscription {
+    private Flow.Subscriber<? super Vector> subscriber;
+    private AtomicLong demand = new AtomicLong();
+    private AtomicInteger pendingSignals = new AtomicInteger();
+
+    private volatile boolean cancelled = false;
+    private volatile Throwable requestError;
+    private boolean finished = false;
+
+    private RowSubscription(Flow.Subscriber<? super Vector> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        requestError = new IllegalArgumentException("Requests must be positive.");
+      } else {
+        demand.getAndAccumulate(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+      }
+
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      signal();
+    }
+
+    private void signal() {
+      if (pendingSignals.getAndIncrement() == 0) {
+        executor.execute(this::drain);
+      }
+    }
+
+    /**
+     * Runs on one thread at a time. Signals that arrive while it runs, including requests the
+     * subscriber makes from onNext, are picked up before it returns.
+     */
+    private void drain() {
+      int missed = 1;
+      do {
+        if (!finished) {
+          if (cancelled) {
+            finish(null, false);
+          } else if (requestError != null) {
+            finish(requestError, true);
+          } else {
+            emitRows();
+          }
+        }
+
+        missed = pendingSignals.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emitRows() {
+      while (!cancelled && demand.get() > 0) {
+        Vector row;
+        try {
+          row = reader.next();
+        } catch (IOException | RuntimeException e) {
+          finish(e, true);
+          return;
+        }
+
+        if (row == null) {
+          finish(null, true);
+          return;
+        }
+
+        if (demand.get() != Long.MAX_VALUE) {
+          demand.decrementAndGet();
+        }
+        subscriber.onNext(row);
+      }
+    }
+
+    private void finish(Throwable error, boolean notify) {
+      finished = true;
+
+      try {
+        reader.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+
+      if (!notify) {
+        return;
+      }
+
+      if (error != null) {
+        subscriber.onError(error);
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.jace.util;
+
+import com.jace.math.Vector;
+
+import java.io.IOException;
+
+/**
+ * Reads the rows of a data file one at a time, so a file of any size can be processed in constant
+ * memory. {@link RowPublisher} turns a reader into a stream that only reads as fast as its
+ * subscriber asks.
+ */
+public abstract class RowReader implements AutoCloseable {
+  private int firstColumn = 0;
+  private int columnCount = -1;
+
+  /**
+   * Returns only columns first to first + count - 1 of every row, such as the feature columns of a
+   * file that also holds labels.
+   */
+  public void setColumns(int firstColumn, int columnCount) {
+    if (firstColumn < 0 || columnCount < 1) {
+      throw new IllegalArgumentException("The column range must be non-empty.");
+    }
+
+    this.firstColumn = firstColumn;
+    this.columnCount = columnCount;
+  }
+
+  /**
+   * Returns the next row, or null at the end of the input.
+   */
+  public Vector next() throws IOException {
+    double[] row = readRow();
+    if (row == null) {
+      return null;
+    }
+
+    if (columnCount < 0) {
+      return new Vector(row);
+    }
+
+    if (firstColumn + columnCount > row.length) {
+      throw new IOException(String.format(
+          "A row has %d columns, but columns %d to %d were requested.",
+          row.length, firstColumn, firstColumn + columnCount - 1));
+    }
+
+    return new Vector(new Vector(row), firstColumn, columnCount);
+  }
+
+  /**
+   * Returns every value of the next row, or null at the end of the input.
+   */
+  protected abstract double[] readRow() throws IOException;
+
+  @Override
+  public abstract void close() throws IOException;
+}
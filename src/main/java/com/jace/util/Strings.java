@@ -4,6 +4,7 @@ import com.jace.math.Vector;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 import java.util.stream.DoubleStream;
 
 public class Strings {
@@ -37,4 +38,20 @@ public class Strings {
   public static String join(Vector vector, char joinChar) {
     return join(vector, "" + joinChar);
   }
+
+  /**
+   * Parses a line of numbers separated by the given character, such as one row of a CSV file.
+   *
+   * @throws NumberFormatException if any value is not a number
+   */
+  public static Vector parseVector(String line, char separator) {
+    String[] values = line.split(Pattern.quote("" + separator));
+    double[] doubles = new double[values.length];
+
+    for (int i = 0; i < values.length; i++) {
+      doubles[i] = Double.parseDouble(values[i].trim());
+    }
+
+    return new Vector(doubles);
+  }
 }
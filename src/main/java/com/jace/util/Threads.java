@@ -0,0 +1,59 @@
+package com.jace.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for work that spends most of its time blocked on I/O, such as serving a
+ * connection or reading a file.
+ * <br>
+ * On Java 21 or later each task gets its own virtual thread, so thousands of tasks can wait at
+ * once without thousands of OS threads. The lookup is reflective so the library still builds for
+ * Java 17, where each task gets a pooled platform thread instead. Java 19 and 20 have virtual
+ * threads only as a preview, which fails without --enable-preview, so they use the pool too.
+ */
+public final class Threads {
+  private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+  private Threads() {
+  }
+
+  private static Method findVirtualThreadExecutor() {
+    if (Runtime.version().feature() < 21) {
+      return null;
+    }
+
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  public static boolean hasVirtualThreads() {
+    return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+  }
+
+  /**
+   * Returns an executor that starts every task right away on its own thread, virtual when the JVM
+   * supports it. Compute-heavy work should be handed on to a bounded pool from these tasks.
+   */
+  public static ExecutorService newPerTaskExecutor(String name) {
+    if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        Console.w("Using platform threads, because virtual threads are unavailable: %s", e);
+      }
+    }
+
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
@@ -0,0 +1,180 @@
+import com.jace.math.Matrix;
+import com.jace.util.ArffParser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ArffParserTest extends BaseTest {
+
+  @Test
+  public void parsesValuesAndSkipsComments() throws IOException {
+    String arff = "% leading comment\n"
+        + "@RELATION mixed\n"
+        + "@attribute color {red,'dark blue',\"light green\"}\n"
+        + "@ATTRIBUTE x real\n"
+        + "@ATTRIBUTE y numeric\n"
+        + "@DATA\r\n"
+        + "red, 1.5, -2e3\r\n"
+        + "  % indented comment\n"
+        + "\n"
+        + "\"light green\",?,0.000125 \n"
+        + "red , .5,7,extra\n"
+        + "red,1E-400,-0";
+
+    Matrix matrix = Matrix.fromARFF(write(arff).getPath(), false);
+    assertEquals(3, matrix.cols());
+    assertEquals(4, matrix.rows());
+    assertEquals("mixed", matrix.getMetadata().getFileName());
+
+    assertEquals(0, matrix.get(0, 0), 0);
+    assertEquals(1.5, matrix.get(0, 1), 0);
+    assertEquals(-2000, matrix.get(0, 2), 0);
+
+    assertEquals(2, matrix.get(1, 0), 0);
+    assertEquals(Matrix.UNKNOWN_VALUE, matrix.get(1, 1), 0);
+    assertEquals(0.000125, matrix.get(1, 2), 0);
+
+    assertEquals(0.5, matrix.get(2, 1), 0);
+    assertEquals(7, matrix.get(2, 2), 0);
+
+    assertEquals(0, matrix.get(3, 1), 0);
+    assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(matrix.get(3, 2)));
+  }
+
+  @Test
+  public void numbersMatchParseDouble() throws IOException {
+    Random random = new Random(7);
+    String[] texts = new String[2000];
+    for (int i = 0; i < texts.length; i++) {
+      switch (i % 4) {
+        case 0:
+          texts[i] = Double.toString(random.nextDouble());
+          break;
+        case 1:
+          texts[i] = Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+          break;
+        case 2:
+          texts[i] = Integer.toString(random.nextInt(256));
+          break;
+        default:
+          texts[i] = String.format("%.6f", random.nextGaussian() * 1000);
+      }
+    }
+
+    StringBuilder arff = new StringBuilder("@RELATION numbers\n@ATTRIBUTE x real\n@DATA\n");
+    for (String text : texts) {
+      arff.append(text).append('\n');
+    }
+
+    try (ArffParser parser = new ArffParser(write(arff.toString()))) {
+      double[] row = new double[1];
+      for (String text : texts) {
+        assertTrue(parser.readRow(row));
+        assertEquals(text, Double.doubleToLongBits(Double.parseDouble(text)),
+            Double.doubleToLongBits(row[0]));
+      }
+      assertFalse(parser.readRow(row));
+    }
+  }
+
+  @Test
+  public void parallelChunksMatchSequentialRows() throws IOException {
+    Random random = new Random(3);
+    StringBuilder arff = new StringBuilder("@RELATION big\n@ATTRIBUTE c {x,y,z}\n");
+    for (int j = 0; j < 16; j++) {
+      arff.append("@ATTRIBUTE a").append(j).append(" real\n");
+    }
+    arff.append("@DATA\n");
+
+    // Enough rows for a data section of about 10 MB, so it is split into chunks
+    int rows = 0;
+    while (arff.length() < 10 << 20) {
+      if (rows % 1000 == 0) {
+        arff.append("% rows ").append(rows).append("\n\n");
+      }
+      arff.append((char) ('x' + random.nextInt(3)));
+      for (int j = 0; j < 16; j++) {
+        arff.append(',').append(random.nextInt(10) == 0 ? "?" : random.nextGaussian());
+      }
+      arff.append('\n');
+      rows++;
+    }
+    File file = write(arff.toString());
+
+    List<double[]> sequential;
+    try (ArffParser parser = new ArffParser(file)) {
+      parser.setParallel(false);
+      sequential = parser.readRows();
+    }
+
+    try (ArffParser parser = new ArffParser(file)) {
+      List<double[]> parallel = parser.readRows();
+      assertEquals(rows, parallel.size());
+      for (int i = 0; i < rows; i++) {
+        assertArrayEquals(sequential.get(i), parallel.get(i), 0);
+      }
+      assertFalse(parser.readRow(new double[17]));
+    }
+
+    // An error in a later chunk is reported with its row number in the whole file
+    arff.append("w");
+    for (int j = 0; j < 16; j++) {
+      arff.append(",0");
+    }
+    try (ArffParser parser = new ArffParser(write(arff.toString()))) {
+      parser.readRows();
+      fail("The unknown value was not reported.");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Row " + (rows + 1) + " "));
+    }
+  }
+
+  @Test
+  public void malformedRowsAreReported() throws IOException {
+    String header = "@RELATION bad\n@ATTRIBUTE c {a,b}\n@ATTRIBUTE x real\n@DATA\n";
+
+    assertFailure(header + "a,1\nc,2\n", "unknown value c");
+    assertFailure(header + "a,1\nb,1.2.3\n", "malformed value 1.2.3");
+    assertFailure(header + "a\n", "has 1 values");
+
+    try {
+      Matrix.fromARFF("does/not/exist.arff");
+      fail("A missing file was loaded.");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to open file"));
+    }
+  }
+
+  private void assertFailure(String arff, String message) throws IOException {
+    try (ArffParser parser = new ArffParser(write(arff))) {
+      double[] row = new double[2];
+      while (parser.readRow(row)) {
+        // Read until the bad row
+      }
+      fail("No error for: " + arff);
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+
+  private File write(String arff) throws IOException {
+    File file = Files.createTempFile("parser", ".arff").toFile();
+    file.deleteOnExit();
+    Files.write(file.toPath(), arff.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
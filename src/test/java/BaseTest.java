@@ -1,3 +1,10 @@
+import com.jace.Main;
+import com.jace.layer.ConvolutionLayer;
+import com.jace.layer.LeakyRectifierLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.MaxPooling2DLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.NeuralNetwork;
 import com.jace.math.Matrix;
 import com.jace.math.Vector;
 import org.junit.ComparisonFailure;
@@ -47,6 +54,66 @@ abstract class BaseTest {
     return matrix;
   }
 
+  /**
+   * Returns an initialized network of linear layers with a tanh layer between each pair, such as
+   * buildNetwork(3, 4, 2) for three inputs, four hidden units and two outputs. The weights are
+   * seeded, so every call with the same sizes returns the same network.
+   */
+  NeuralNetwork buildNetwork(int... sizes) {
+    Main.RANDOM.setSeed(0);
+
+    NeuralNetwork neuralNetwork = new NeuralNetwork();
+    for (int i = 1; i < sizes.length; i++) {
+      if (i > 1) {
+        neuralNetwork.addLayer(new TanhLayer(sizes[i - 1]));
+      }
+      neuralNetwork.addLayer(new LinearLayer(sizes[i - 1], sizes[i]));
+    }
+    neuralNetwork.initialize();
+    return neuralNetwork;
+  }
+
+  /**
+   * Returns an initialized network from 8x8 inputs to 10 outputs through a convolution, a leaky
+   * rectifier, max pooling, and a linear layer at index 3 with a tanh on top.
+   */
+  NeuralNetwork buildConvolutionNetwork() {
+    Main.RANDOM.setSeed(0);
+
+    NeuralNetwork neuralNetwork = new NeuralNetwork();
+    neuralNetwork.addLayer(
+        new ConvolutionLayer(new int[]{8, 8}, new int[]{3, 3, 2}, new int[]{8, 8, 2}));
+    neuralNetwork.addLayer(new LeakyRectifierLayer(128));
+    neuralNetwork.addLayer(new MaxPooling2DLayer(new int[]{8, 8, 2}));
+    neuralNetwork.addLayer(new LinearLayer(32, 10));
+    neuralNetwork.addLayer(new TanhLayer(10));
+    neuralNetwork.initialize();
+    return neuralNetwork;
+  }
+
+  /**
+   * Returns {features, labels} of a smooth regression problem. Feature 0 of row i is i / rows, so
+   * every row can be told apart by it, and feature j of it is sin(0.7 i + 1.3 j) otherwise. Label
+   * k is half the tanh of the difference of features k and k + 1.
+   */
+  Matrix[] buildData(int rows, int featureCount, int labelCount) {
+    Matrix features = new Matrix(rows, featureCount);
+    Matrix labels = new Matrix(rows, labelCount);
+    for (int i = 0; i < rows; i++) {
+      features.set(i, 0, i / (double) rows);
+      for (int j = 1; j < featureCount; j++) {
+        features.set(i, j, Math.sin(0.7 * i + 1.3 * j));
+      }
+
+      for (int k = 0; k < labelCount; k++) {
+        double difference =
+            features.get(i, k % featureCount) - features.get(i, (k + 1) % featureCount);
+        labels.set(i, k, 0.5 * Math.tanh(difference));
+      }
+    }
+    return new Matrix[]{features, labels};
+  }
+
   void addRandomNoiseToVector(Vector target, double standardDeviations) {
     for (int i = 0; i < target.size(); i++) {
       double value = target.get(i);
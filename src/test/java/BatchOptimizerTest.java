@@ -0,0 +1,114 @@
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.layer.ConnectedLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.optimizer.BatchObjective;
+import com.jace.optimizer.ConjugateGradient;
+import com.jace.optimizer.LBFGS;
+import com.jace.optimizer.LineSearchOptimizer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class BatchOptimizerTest extends BaseTest {
+
+  @Test
+  public void gradientMatchesFiniteDifferences() {
+    NeuralNetwork neuralNetwork = buildNetwork(6, 6, 2);
+    Matrix[] data = buildData(60, 6, 2);
+    BatchObjective objective = new BatchObjective(neuralNetwork, data[0], data[1], 3);
+
+    double[] parameters = objective.getParameters();
+    double[] gradient = new double[parameters.length];
+    objective.evaluate(gradient);
+
+    double[] scratch = new double[parameters.length];
+    for (int i = 0; i < parameters.length; i += 7) {
+      double original = parameters[i];
+      parameters[i] = original + 1e-6;
+      double above = objective.evaluate(scratch);
+      parameters[i] = original - 1e-6;
+      double below = objective.evaluate(scratch);
+      parameters[i] = original;
+
+      assertEquals(gradient[i], (above - below) / 2e-6, 1e-5);
+    }
+  }
+
+  @Test
+  public void regularizedGradientMatchesFiniteDifferences() {
+    NeuralNetwork neuralNetwork = buildNetwork(6, 6, 2);
+    LinearLayer first = (LinearLayer) neuralNetwork.getLayers().get(0);
+    first.setRegularizationType(ConnectedLayer.RegularizationType.L1);
+    first.setRegularizationAmount(0.01);
+    LinearLayer last = (LinearLayer) neuralNetwork.getLayers().get(2);
+    last.setRegularizationType(ConnectedLayer.RegularizationType.L2);
+    last.setRegularizationAmount(0.05);
+
+    Matrix[] data = buildData(60, 6, 2);
+    BatchObjective objective = new BatchObjective(neuralNetwork, data[0], data[1], 3);
+    BatchObjective unregularized =
+        new BatchObjective(buildNetwork(6, 6, 2), data[0], data[1], 3);
+
+    double[] parameters = objective.getParameters();
+    double[] gradient = new double[parameters.length];
+    double loss = objective.evaluate(gradient);
+    assertTrue(loss > unregularized.evaluate(new double[parameters.length]));
+
+    double[] scratch = new double[parameters.length];
+    for (int i = 0; i < parameters.length; i += 5) {
+      double original = parameters[i];
+      parameters[i] = original + 1e-6;
+      double above = objective.evaluate(scratch);
+      parameters[i] = original - 1e-6;
+      double below = objective.evaluate(scratch);
+      parameters[i] = original;
+
+      assertEquals(gradient[i], (above - below) / 2e-6, 1e-5);
+    }
+  }
+
+  @Test
+  public void parallelEvaluationMatchesSequential() {
+    NeuralNetwork neuralNetwork = buildNetwork(6, 6, 2);
+    Matrix[] data = buildData(60, 6, 2);
+
+    double[] sequential = new double[neuralNetwork.getParameters().length];
+    double[] parallel = new double[sequential.length];
+
+    double sequentialLoss =
+        new BatchObjective(neuralNetwork, data[0], data[1], 1).evaluate(sequential);
+    double parallelLoss =
+        new BatchObjective(neuralNetwork, data[0], data[1], 4).evaluate(parallel);
+
+    assertEquals(sequentialLoss, parallelLoss, 1e-9);
+    assertArrayEquals(sequential, parallel, 1e-9);
+  }
+
+  @Test
+  public void lbfgsAndConjugateGradientConverge() {
+    LineSearchOptimizer[] optimizers = {new LBFGS(), new ConjugateGradient()};
+    for (LineSearchOptimizer optimizer : optimizers) {
+      NeuralNetwork neuralNetwork = buildNetwork(6, 6, 2);
+      Matrix[] data = buildData(60, 6, 2);
+
+      LearnerEvaluator<NeuralNetwork> evaluator =
+          new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.BATCH);
+      evaluator.setBatchOptimizer(optimizer);
+      evaluator.setBatchIterations(60);
+
+      double initialError = evaluator.computeSumSquaredError(data[0], data[1]);
+      evaluator.train(data[0], data[1]);
+      double finalError = evaluator.computeSumSquaredError(data[0], data[1]);
+
+      String name = optimizer.getClass().getSimpleName();
+      assertTrue(name + " SSE " + finalError, finalError < initialError * 0.1);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import com.jace.serving.BatchScorer;
+import com.jace.serving.MicroBatcher;
+import com.jace.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class BatchScorerTest extends BaseTest {
+
+  @Test
+  public void writesOneOutputRowPerInputRow() throws Exception {
+    NeuralNetwork neuralNetwork = buildNetwork(4, 8, 3);
+    File inputDirectory = Files.createTempDirectory("scorer-in").toFile();
+    File outputDirectory = new File(Files.createTempDirectory("scorer-out").toFile(), "scores");
+
+    List<File> inputs = new ArrayList<>();
+    List<List<Vector>> rows = new ArrayList<>();
+    for (int f = 0; f < 3; f++) {
+      List<Vector> fileRows = new ArrayList<>();
+      List<String> lines = new ArrayList<>();
+      for (int r = 0; r < 10 + f; r++) {
+        Vector row = getRandomVector(4);
+        fileRows.add(row);
+        lines.add(Strings.join(row, ','));
+      }
+
+      File input = new File(inputDirectory, "part-" + f + ".csv");
+      Files.write(input.toPath(), lines);
+      inputs.add(input);
+      rows.add(fileRows);
+    }
+
+    try (MicroBatcher batcher = new MicroBatcher(neuralNetwork)) {
+      batcher.start();
+
+      BatchScorer scorer = new BatchScorer(batcher);
+      scorer.setChunkRows(4);
+      scorer.setChunksInFlight(2);
+      scorer.setFilesInFlight(2);
+      assertEquals(33, scorer.scoreFiles(inputs, outputDirectory));
+    }
+
+    for (int f = 0; f < inputs.size(); f++) {
+      List<String> lines =
+          Files.readAllLines(new File(outputDirectory, inputs.get(f).getName()).toPath());
+      assertEquals(rows.get(f).size(), lines.size());
+
+      for (int r = 0; r < lines.size(); r++) {
+        Vector expected = neuralNetwork.infer(rows.get(f).get(r));
+        assertVectorEquals(expected, Strings.parseVector(lines.get(r), ','), 1e-12);
+      }
+    }
+  }
+}
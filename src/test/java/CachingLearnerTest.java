@@ -0,0 +1,142 @@
+import com.jace.learner.CachingLearner;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class CachingLearnerTest extends BaseTest {
+
+  @Test
+  public void repeatedInputsHitTheCache() {
+    NeuralNetwork neuralNetwork = buildNetwork(3, 4, 2);
+    CachingLearner cache = new CachingLearner(neuralNetwork, 100);
+
+    Vector in = getRandomVector(3);
+    Vector first = cache.predict(in);
+    Vector second = cache.predict(in.copy());
+
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertVectorEquals(neuralNetwork.infer(in), second, 0);
+
+    // The caller owns the result, so changing it leaves the cache alone
+    first.set(0, 42);
+    assertVectorEquals(neuralNetwork.infer(in), cache.predict(in), 0);
+  }
+
+  @Test
+  public void cacheStaysWithinCapacity() {
+    CachingLearner cache = new CachingLearner(buildNetwork(3, 4, 2), 32);
+
+    for (int i = 0; i < 1000; i++) {
+      cache.predict(getRandomVector(3));
+    }
+
+    assertTrue("Cache holds " + cache.size(), cache.size() <= 32);
+    assertEquals(1000 - cache.size(), cache.getEvictions());
+  }
+
+  @Test
+  public void weightUpdatesClearTheCache() {
+    NeuralNetwork neuralNetwork = buildNetwork(3, 4, 2);
+    neuralNetwork.setLearningRate(0.1);
+    CachingLearner cache = new CachingLearner(neuralNetwork, 100);
+
+    Vector in = getRandomVector(3);
+    Vector before = cache.predict(in);
+
+    neuralNetwork.predict(in);
+    neuralNetwork.backPropagate(new Vector(new double[]{1, -1}));
+    neuralNetwork.updateGradient(in);
+    neuralNetwork.updateWeights();
+
+    Vector after = cache.predict(in);
+    assertEquals(2, cache.getMisses());
+    assertEquals(1, cache.getInvalidations());
+    assertVectorEquals(neuralNetwork.infer(in), after, 0);
+    assertTrue(Math.abs(before.get(0) - after.get(0)) > 0);
+  }
+
+  @Test
+  public void predictionsRacingAnUpdateAreNotKeptForTheNewVersion() throws InterruptedException {
+    CachingLearner cache = new CachingLearner(buildNetwork(3, 4, 2), 100);
+    Vector in = getRandomVector(3);
+    Vector other = getRandomVector(3);
+
+    // Another thread updates the model and predicts, between this thread's final version check
+    // and its store
+    AtomicLong version = new AtomicLong();
+    AtomicInteger reads = new AtomicInteger();
+    cache.setVersionSource(() -> {
+      if (reads.incrementAndGet() == 3) {
+        Thread updater = new Thread(() -> {
+          version.set(1);
+          cache.predict(other);
+        });
+        updater.start();
+        try {
+          updater.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 0;
+      }
+      return version.get();
+    });
+
+    cache.predict(in);
+    cache.predict(in);
+    assertEquals(0, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void threadsShareTheCache() throws InterruptedException {
+    NeuralNetwork neuralNetwork = buildNetwork(3, 4, 2);
+    CachingLearner cache = new CachingLearner(neuralNetwork, 1000);
+
+    List<Vector> inputs = new ArrayList<>();
+    List<Vector> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      inputs.add(getRandomVector(3));
+      expected.add(neuralNetwork.infer(inputs.get(i)).copy());
+    }
+
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          for (int repeat = 0; repeat < 20; repeat++) {
+            for (int i = 0; i < inputs.size(); i++) {
+              assertVectorEquals(expected.get(i), cache.predict(inputs.get(i)), 0);
+            }
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(failures.toString(), failures.isEmpty());
+    assertEquals(4 * 20 * 50, cache.getHits() + cache.getMisses());
+    assertTrue(cache.getHits() >= 4 * 19 * 50);
+  }
+}
@@ -0,0 +1,130 @@
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.layer.LinearLayer;
+import com.jace.learner.Checkpoint;
+import com.jace.learner.CheckpointWriter;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.optimizer.Adam;
+import com.jace.optimizer.PlateauSchedule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class CheckpointTest extends BaseTest {
+
+  private LearnerEvaluator<NeuralNetwork> buildEvaluator(NeuralNetwork neuralNetwork) {
+    neuralNetwork.setLearningRate(0.01);
+    neuralNetwork.setOptimizer(new Adam());
+
+    LearnerEvaluator<NeuralNetwork> evaluator =
+        new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.MINI_BATCH);
+    evaluator.setBatchSize(4);
+    evaluator.setLearningRateSchedule(new PlateauSchedule(0.5, 0));
+    evaluator.setRandom(new Random(11));
+    return evaluator;
+  }
+
+  @Test
+  public void resumedFitMatchesUninterruptedFit() throws IOException {
+    Matrix[] training = buildData(64, 3, 2);
+    Matrix[] validation = buildData(16, 3, 2);
+
+    NeuralNetwork uninterrupted = buildNetwork(3, 8, 2);
+    LearnerEvaluator<NeuralNetwork> evaluator = buildEvaluator(uninterrupted);
+    try (CheckpointWriter writer = new CheckpointWriter(newDirectory())) {
+      evaluator.setCheckpointWriter(writer, 3);
+      evaluator.fit(training[0], training[1], validation[0], validation[1], 5);
+    }
+
+    // Stop part way through the third epoch, wherever the last checkpoint happened to land
+    NeuralNetwork interrupted = buildNetwork(3, 8, 2);
+    evaluator = buildEvaluator(interrupted);
+    int[] batches = {0};
+    evaluator.setGradientSynchronizer((neuralNetwork) -> {
+      if (++batches[0] == 2 * 16 + 9) {
+        throw new IllegalStateException("Crash");
+      }
+    });
+
+    File directory = newDirectory();
+    try (CheckpointWriter writer = new CheckpointWriter(directory)) {
+      evaluator.setCheckpointWriter(writer, 3);
+      evaluator.fit(training[0], training[1], validation[0], validation[1], 5);
+      fail("Training should have crashed.");
+    } catch (IllegalStateException e) {
+      assertEquals("Crash", e.getMessage());
+    }
+
+    NeuralNetwork resumed = buildNetwork(3, 8, 2);
+    evaluator = buildEvaluator(resumed);
+    evaluator.setRandom(new Random(99));
+    try (CheckpointWriter writer = new CheckpointWriter(directory)) {
+      evaluator.setCheckpointWriter(writer, 3);
+      evaluator.resume(directory, training[0], training[1], validation[0], validation[1], 5);
+    }
+
+    assertArrayEquals(uninterrupted.getParameters(), resumed.getParameters(), 0);
+  }
+
+  @Test
+  public void unchangedLayersAreLeftOutOfDeltas() throws IOException {
+    NeuralNetwork neuralNetwork = new NeuralNetwork();
+    neuralNetwork.addLayer(new LinearLayer(200, 200));
+    neuralNetwork.addLayer(new LinearLayer(200, 2));
+    neuralNetwork.initialize();
+
+    File directory = newDirectory();
+    try (CheckpointWriter writer = new CheckpointWriter(directory)) {
+      writer.checkpoint((checkpoint) -> checkpoint.putNetwork(neuralNetwork));
+      writer.flush();
+
+      // Only the small last layer changes
+      neuralNetwork.getParameters()[neuralNetwork.getParameterCount() - 1] = 42;
+      writer.checkpoint((checkpoint) -> checkpoint.putNetwork(neuralNetwork));
+      writer.flush();
+
+      assertEquals(2, writer.getWritten());
+      assertEquals(1, writer.getDeltas());
+    }
+
+    File[] files = directory.listFiles();
+    assertEquals(2, files.length);
+
+    long fullSize = 0;
+    long deltaSize = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(".full")) {
+        fullSize = file.length();
+      } else {
+        deltaSize = file.length();
+      }
+    }
+    assertTrue(deltaSize * 20 < fullSize);
+
+    NeuralNetwork restored = new NeuralNetwork();
+    restored.addLayer(new LinearLayer(200, 200));
+    restored.addLayer(new LinearLayer(200, 2));
+    restored.initialize();
+
+    Checkpoint checkpoint = CheckpointWriter.readLatest(directory);
+    checkpoint.restoreNetwork(restored);
+    assertArrayEquals(neuralNetwork.getParameters(), restored.getParameters(), 0);
+  }
+
+  private File newDirectory() throws IOException {
+    File directory = Files.createTempDirectory("checkpoints").toFile();
+    directory.deleteOnExit();
+    return directory;
+  }
+}
@@ -0,0 +1,143 @@
+import com.jace.math.ColumnFile;
+import com.jace.math.Matrix;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ColumnFileTest extends BaseTest {
+  private static final String ARFF = "@RELATION weather\n"
+      + "@ATTRIBUTE outlook {sunny,rainy,\"partly cloudy\"}\n"
+      + "@ATTRIBUTE temperature real\n"
+      + "@DATA\n"
+      + "sunny, 30.5\n"
+      + "\"partly cloudy\", ?\n"
+      + "rainy, -4\n";
+
+  @Test
+  public void sidecarIsWrittenAndReused() throws IOException {
+    File source = newArff(ARFF);
+    File sidecar = ColumnFile.sidecarFor(source);
+    assertEquals(source.getName().replace(".arff", ".bin"), sidecar.getName());
+
+    Matrix parsed = Matrix.fromARFF(source.getPath());
+    assertTrue(sidecar.isFile());
+
+    Matrix cached = Matrix.fromARFF(source.getPath());
+    assertMatrixEquals(parsed, cached);
+    assertEquals("weather", cached.getMetadata().getFileName());
+    assertEquals(
+        parsed.getMetadata().getAttributeNames(), cached.getMetadata().getAttributeNames());
+    assertEquals("\"partly cloudy\"", cached.getMetadata().getAttributeForValueInColumn(2, 0));
+
+    // A sidecar that matches the source is read instead of the source
+    Matrix other = getRandomMatrix(5, 2);
+    ColumnFile.write(other, sidecar, source);
+    assertMatrixEquals(other, Matrix.fromARFF(source.getPath()));
+    assertMatrixEquals(parsed, Matrix.fromARFF(source.getPath(), false));
+
+    // Changing the source makes the sidecar stale
+    Files.write(source.toPath(), (ARFF + "sunny, 1\n").getBytes(StandardCharsets.UTF_8));
+    assertTrue(source.setLastModified(source.lastModified() - 10000));
+    Matrix reparsed = Matrix.fromARFF(source.getPath());
+    assertEquals(4, reparsed.rows());
+    assertTrue(ColumnFile.open(sidecar).isCurrentFor(source));
+  }
+
+  @Test
+  public void columnsStayMapped() throws IOException {
+    File source = newArff(ARFF);
+    ColumnFile columnFile = ColumnFile.forArff(source);
+
+    assertEquals(3, columnFile.rows());
+    assertEquals(2, columnFile.cols());
+    assertEquals(2, columnFile.get(1, 0), 0);
+    assertEquals(Matrix.UNKNOWN_VALUE, columnFile.get(1, 1), 0);
+
+    DoubleBuffer temperature = columnFile.getColumn(1);
+    assertTrue(temperature.isReadOnly());
+    double[] values = new double[3];
+    temperature.get(values);
+    assertArrayEquals(new double[]{30.5, Matrix.UNKNOWN_VALUE, -4}, values, 0);
+  }
+
+  @Test
+  public void unrelatedBinFilesAreLeftAlone() throws IOException {
+    File source = newArff(ARFF);
+    File sidecar = ColumnFile.sidecarFor(source);
+    Files.write(sidecar.toPath(), "not a column file".getBytes(StandardCharsets.UTF_8));
+
+    Matrix matrix = Matrix.fromARFF(source.getPath());
+    assertEquals(3, matrix.rows());
+    assertFalse(ColumnFile.isColumnFile(sidecar));
+    assertEquals("not a column file", new String(Files.readAllBytes(sidecar.toPath()),
+        StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void concurrentWritersEachUseTheirOwnTemporaryFile() throws Exception {
+    File source = newArff(ARFF);
+    File sidecar = ColumnFile.sidecarFor(source);
+    Matrix matrix = getRandomMatrix(20000, 4);
+
+    List<Thread> writers = new ArrayList<>();
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int t = 0; t < 4; t++) {
+      Thread writer = new Thread(() -> {
+        try {
+          ColumnFile.write(matrix, sidecar, source);
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      writer.start();
+      writers.add(writer);
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    assertEquals(Collections.emptyList(), errors);
+    ColumnFile columnFile = ColumnFile.open(sidecar);
+    assertEquals(matrix.rows(), columnFile.rows());
+    assertEquals(matrix.get(19999, 3), columnFile.get(19999, 3), 0);
+
+    // No temporary file is left behind
+    String[] names = source.getParentFile().list();
+    Arrays.sort(names);
+    assertArrayEquals(new String[]{source.getName(), sidecar.getName()}, names);
+  }
+
+  private void assertMatrixEquals(Matrix expected, Matrix actual) {
+    assertEquals(expected.rows(), actual.rows());
+    assertEquals(expected.cols(), actual.cols());
+    for (int i = 0; i < expected.rows(); i++) {
+      assertVectorEquals(expected.row(i), actual.row(i), 0);
+    }
+  }
+
+  private File newArff(String arff) throws IOException {
+    File directory = Files.createTempDirectory("columns").toFile();
+    directory.deleteOnExit();
+    File file = new File(directory, "weather.arff");
+    Files.write(file.toPath(), arff.getBytes(StandardCharsets.UTF_8));
+    file.deleteOnExit();
+    ColumnFile.sidecarFor(file).deleteOnExit();
+    return file;
+  }
+}
@@ -0,0 +1,138 @@
+import com.jace.data.Batch;
+import com.jace.data.MatrixDataset;
+import com.jace.data.StreamingDataset;
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.ColumnFile;
+import com.jace.math.Matrix;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class DatasetTest extends BaseTest {
+
+  private File save(Matrix matrix, String name, File directory) {
+    File file = new File(directory, name);
+    matrix.saveARFF(file.getPath());
+    file.deleteOnExit();
+    return file;
+  }
+
+  /**
+   * Reads one pass, checking that every row kept its label, and returns the row numbers in the
+   * order they were read.
+   */
+  private List<Integer> readPass(StreamingDataset dataset, Matrix[] data, int batchSize)
+      throws IOException {
+    List<Integer> order = new ArrayList<>();
+    Batch batch = new Batch(batchSize, 2, 1);
+    while (dataset.next(batch)) {
+      assertTrue(batch.size() > 0);
+      for (int i = 0; i < batch.size(); i++) {
+        int row = (int) Math.round(batch.features(i).get(0) * data[0].rows());
+        assertVectorEquals(data[0].row(row), batch.features(i), 1e-6);
+        assertVectorEquals(data[1].row(row), batch.labels(i), 1e-6);
+        order.add(row);
+      }
+    }
+    assertEquals(0, batch.size());
+    return order;
+  }
+
+  @Test
+  public void passesVisitEveryRowOnceInShuffledOrder() throws IOException {
+    File directory = Files.createTempDirectory("dataset").toFile();
+    directory.deleteOnExit();
+    Matrix[] data = buildData(103, 2, 1);
+    File features = save(data[0], "features.arff", directory);
+    File labels = save(data[1], "labels.arff", directory);
+
+    File columnFeatures = new File(directory, "features.columns");
+    columnFeatures.deleteOnExit();
+    ColumnFile.write(data[0], columnFeatures, features);
+
+    List<Integer> all = new ArrayList<>();
+    for (int i = 0; i < 103; i++) {
+      all.add(i);
+    }
+
+    // ARFF labels with column-file features, read in small chunks through a small window
+    try (StreamingDataset dataset = new StreamingDataset(columnFeatures, labels)) {
+      dataset.setWindowRows(16);
+      dataset.setChunkRows(5);
+      dataset.setRandom(new Random(2));
+
+      List<Integer> first = readPass(dataset, data, 10);
+      List<Integer> second = readPass(dataset, data, 10);
+      assertNotEquals(first, second);
+      assertNotEquals(all, first);
+
+      // No row moves further forward than the window allows
+      for (int i = 0; i < first.size(); i++) {
+        assertTrue(first.get(i) < i + 16);
+      }
+
+      Collections.sort(first);
+      Collections.sort(second);
+      assertEquals(all, first);
+      assertEquals(all, second);
+    }
+
+    // A window of one row keeps the file order
+    try (StreamingDataset dataset = new StreamingDataset(features, labels)) {
+      dataset.setWindowRows(1);
+      assertEquals(all, readPass(dataset, data, 7));
+    }
+  }
+
+  @Test
+  public void networkTrainsFromStreamedRows() throws IOException {
+    File directory = Files.createTempDirectory("dataset").toFile();
+    directory.deleteOnExit();
+    Matrix[] training = buildData(200, 2, 1);
+    Matrix[] validation = buildData(50, 2, 1);
+
+    NeuralNetwork neuralNetwork = buildNetwork(2, 6, 1);
+    neuralNetwork.setLearningRate(0.01);
+
+    LearnerEvaluator<NeuralNetwork> evaluator =
+        new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.MINI_BATCH);
+    evaluator.setBatchSize(8);
+    double before = evaluator.computeSumSquaredError(validation[0], validation[1]);
+
+    try (StreamingDataset dataset = new StreamingDataset(
+        save(training[0], "features.arff", directory),
+        save(training[1], "labels.arff", directory))) {
+      dataset.setWindowRows(32);
+      evaluator.fit(dataset, validation[0], validation[1], 20);
+    }
+
+    assertTrue(evaluator.computeSumSquaredError(validation[0], validation[1]) < before);
+
+    // Matrices in memory work through the same interface
+    MatrixDataset inMemory = new MatrixDataset(training[0], training[1]);
+    Batch batch = new Batch(64, 2, 1);
+    int rows = 0;
+    while (inMemory.next(batch)) {
+      rows += batch.size();
+    }
+    assertEquals(200, rows);
+    assertEquals(0, batch.size());
+
+    // The call after the end of a pass starts the next one
+    assertTrue(inMemory.next(batch));
+  }
+}
@@ -0,0 +1,167 @@
+import com.jace.distributed.Coordinator;
+import com.jace.distributed.DistributedJob;
+import com.jace.distributed.PeerList;
+import com.jace.distributed.RingAllReduce;
+import com.jace.distributed.TrainerWorker;
+import com.jace.distributed.WorkerFailureException;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class DistributedTrainingTest extends BaseTest {
+
+  public static class LinearJob implements DistributedJob {
+    @Override
+    public NeuralNetwork createNetwork() {
+      NeuralNetwork neuralNetwork = new NeuralNetwork();
+      neuralNetwork.setLearningRate(0.01);
+      neuralNetwork.addLayer(new LinearLayer(3, 4));
+      neuralNetwork.addLayer(new TanhLayer(4));
+      neuralNetwork.addLayer(new LinearLayer(4, 1));
+      return neuralNetwork;
+    }
+
+    @Override
+    public Matrix loadFeatures() {
+      Matrix features = new Matrix(40, 3);
+      for (int i = 0; i < features.rows(); i++) {
+        features.set(i, 0, i / 40.0);
+        features.set(i, 1, (i % 7) / 7.0);
+        features.set(i, 2, (i % 3) / 3.0);
+      }
+      return features;
+    }
+
+    @Override
+    public Matrix loadLabels() {
+      Matrix features = loadFeatures();
+      Matrix labels = new Matrix(40, 1);
+      for (int i = 0; i < labels.rows(); i++) {
+        labels.set(i, 0, 0.5 * features.get(i, 0) - 0.25 * features.get(i, 1) + 0.1);
+      }
+      return labels;
+    }
+  }
+
+  public static class CrashingJob extends LinearJob {
+    @Override
+    public Matrix loadFeatures() {
+      if (Integer.getInteger(TrainerWorker.RANK_PROPERTY) == 1) {
+        Runtime.getRuntime().halt(3);
+      }
+      return super.loadFeatures();
+    }
+  }
+
+  @Test
+  public void allReduceSumsAcrossRanks() throws Exception {
+    int worldSize = 3;
+    int length = 10;
+
+    PeerList peers = new PeerList();
+    for (int i = 0; i < worldSize; i++) {
+      try (ServerSocket socket = new ServerSocket(0)) {
+        peers.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+      }
+    }
+
+    double[][] values = new double[worldSize][length];
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+
+    for (int rank = 0; rank < worldSize; rank++) {
+      for (int i = 0; i < length; i++) {
+        values[rank][i] = rank * 100 + i;
+      }
+
+      final int currentRank = rank;
+      Thread thread = new Thread(() -> {
+        try (RingAllReduce ring = new RingAllReduce(peers, currentRank, 10000)) {
+          ring.connect();
+          ring.allReduce(values[currentRank]);
+        } catch (Throwable e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(failures.toString(), failures.isEmpty());
+
+    for (int rank = 0; rank < worldSize; rank++) {
+      for (int i = 0; i < length; i++) {
+        assertEquals(300 + 3 * i, values[rank][i], 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void workersEndWithIdenticalWeights() throws Exception {
+    File outputDirectory = Files.createTempDirectory("distributed").toFile();
+
+    Coordinator coordinator = new Coordinator(LinearJob.class, 2);
+    coordinator.setEpochs(3);
+    coordinator.setBatchSize(4);
+    coordinator.setTimeoutMillis(20000);
+    coordinator.setOutputDirectory(outputDirectory);
+    coordinator.run();
+
+    List<String> rank0 = Files.readAllLines(new File(outputDirectory, "rank-0.csv").toPath());
+    List<String> rank1 = Files.readAllLines(new File(outputDirectory, "rank-1.csv").toPath());
+
+    assertEquals(rank0, rank1);
+  }
+
+  @Test
+  public void shardsCoverEveryRow() {
+    Matrix matrix = new Matrix(11, 1);
+    for (int i = 0; i < matrix.rows(); i++) {
+      matrix.set(i, 0, i);
+    }
+
+    boolean[] covered = new boolean[matrix.rows()];
+    for (int rank = 0; rank < 4; rank++) {
+      Matrix shard = TrainerWorker.shard(matrix, rank, 4);
+      assertEquals(3, shard.rows());
+      for (int i = 0; i < shard.rows(); i++) {
+        covered[(int) shard.get(i, 0)] = true;
+      }
+    }
+
+    for (boolean rowCovered : covered) {
+      assertTrue(rowCovered);
+    }
+  }
+
+  @Test(expected = WorkerFailureException.class)
+  public void deadWorkerFailsTheRun() throws Exception {
+    File outputDirectory = Files.createTempDirectory("distributed").toFile();
+
+    Coordinator coordinator = new Coordinator(CrashingJob.class, 2);
+    coordinator.setTimeoutMillis(5000);
+    coordinator.setOutputDirectory(outputDirectory);
+    coordinator.run();
+  }
+}
@@ -0,0 +1,242 @@
+import com.jace.Main;
+import com.jace.layer.Assignment5ActivationLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.CheckpointWriter;
+import com.jace.learner.GenerativeNeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.optimizer.Optimizer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class GenerativeNeuralNetworkTest extends BaseTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 6;
+  private static final int IMAGES = 30;
+
+  /**
+   * Images of a soft dot that moves along a diagonal, so one latent dimension explains them.
+   */
+  private Matrix buildObservations() {
+    Matrix observations = new Matrix(IMAGES, WIDTH * HEIGHT * 3);
+    for (int i = 0; i < IMAGES; i++) {
+      double center = i / (double) IMAGES;
+      for (int q = 0; q < HEIGHT; q++) {
+        for (int p = 0; p < WIDTH; p++) {
+          double dx = p / (double) WIDTH - center;
+          double dy = q / (double) HEIGHT - center;
+          double value = 0.8 * Math.exp(-8 * (dx * dx + dy * dy));
+          for (int channel = 0; channel < 3; channel++) {
+            observations.set(i, 3 * (q * WIDTH + p) + channel, value);
+          }
+        }
+      }
+    }
+    return observations;
+  }
+
+  private GenerativeNeuralNetwork buildNetwork() {
+    Main.RANDOM.setSeed(7);
+
+    GenerativeNeuralNetwork network = new GenerativeNeuralNetwork(WIDTH, HEIGHT, 2, IMAGES);
+    network.setLearningRate(0.05);
+    network.addLayer(new LinearLayer(4, 12));
+    network.addLayer(new TanhLayer(12));
+    network.addLayer(new LinearLayer(12, 3));
+    network.addLayer(new TanhLayer(3));
+    network.initialize();
+    network.setEpochs(4);
+    network.setSamplesPerEpoch(60000);
+    return network;
+  }
+
+  private double reconstructionError(GenerativeNeuralNetwork network, Matrix observations) {
+    double error = 0;
+    Vector feature = new Vector(4);
+    for (int i = 0; i < observations.rows(); i++) {
+      feature.set(2, network.getEstimatedStates().row(i));
+      for (int q = 0; q < HEIGHT; q++) {
+        for (int p = 0; p < WIDTH; p++) {
+          feature.set(0, p / (double) WIDTH);
+          feature.set(1, q / (double) HEIGHT);
+          Vector color = network.predict(feature);
+          for (int channel = 0; channel < 3; channel++) {
+            double difference =
+                observations.get(i, 3 * (q * WIDTH + p) + channel) - color.get(channel);
+            error += difference * difference;
+          }
+        }
+      }
+    }
+    return error;
+  }
+
+  @Test
+  public void parallelTrainingReachesSequentialError() {
+    Matrix observations = buildObservations();
+
+    GenerativeNeuralNetwork sequential = buildNetwork();
+    sequential.trainUnsupervised(observations);
+    double sequentialError = reconstructionError(sequential, observations);
+
+    GenerativeNeuralNetwork parallel = buildNetwork();
+    parallel.setTrainingMode(GenerativeNeuralNetwork.TrainingMode.PARALLEL);
+    parallel.setThreads(4);
+    parallel.setBatchSize(8);
+    parallel.trainUnsupervised(observations);
+    double parallelError = reconstructionError(parallel, observations);
+
+    assertTrue("parallel SSE " + parallelError + " vs sequential SSE " + sequentialError,
+        parallelError < 1.5 * sequentialError);
+  }
+
+  @Test
+  public void pixelBlockTrainingReachesSequentialError() {
+    Matrix observations = buildObservations();
+
+    GenerativeNeuralNetwork sequential = buildNetwork();
+    sequential.trainUnsupervised(observations);
+    double sequentialError = reconstructionError(sequential, observations);
+
+    GenerativeNeuralNetwork blocks = buildNetwork();
+    blocks.setTrainingMode(GenerativeNeuralNetwork.TrainingMode.PIXEL_BLOCK);
+    blocks.setThreads(2);
+    blocks.setBatchSize(4);
+    blocks.trainUnsupervised(observations);
+    double blockError = reconstructionError(blocks, observations);
+
+    // A quarter as many state updates for the same number of pixels
+    assertTrue("block SSE " + blockError + " vs sequential SSE " + sequentialError,
+        blockError < 2 * sequentialError);
+  }
+
+  @Test
+  public void parallelWorkersStepTheNetworksOptimizer() {
+    Matrix observations = buildObservations();
+    AtomicInteger steps = new AtomicInteger();
+
+    for (GenerativeNeuralNetwork.TrainingMode mode : new GenerativeNeuralNetwork.TrainingMode[]{
+        GenerativeNeuralNetwork.TrainingMode.PARALLEL,
+        GenerativeNeuralNetwork.TrainingMode.PIXEL_BLOCK}) {
+      GenerativeNeuralNetwork network = buildNetwork();
+      network.setTrainingMode(mode);
+      network.setThreads(2);
+      network.setBatchSize(4);
+      network.setEpochs(1);
+      network.setSamplesPerEpoch(400);
+
+      steps.set(0);
+      network.setOptimizer(new Optimizer() {
+        @Override
+        public void step(double[] parameters, double[] gradients, double learningRate) {
+          steps.incrementAndGet();
+          for (int i = 0; i < parameters.length; i++) {
+            parameters[i] += learningRate * gradients[i];
+            gradients[i] = 0;
+          }
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public Optimizer copy() {
+          return this;
+        }
+      });
+
+      network.trainUnsupervised(observations);
+      assertEquals(mode.toString(), 400 / 4, steps.get());
+    }
+  }
+
+  @Test
+  public void resumedTrainingMatchesUninterruptedTraining() throws IOException {
+    Matrix observations = buildObservations();
+
+    GenerativeNeuralNetwork uninterrupted = buildNetwork();
+    uninterrupted.setSamplesPerEpoch(5000);
+    uninterrupted.setRandom(new Random(3));
+    uninterrupted.trainUnsupervised(observations);
+
+    File directory = Files.createTempDirectory("checkpoints").toFile();
+    directory.deleteOnExit();
+
+    GenerativeNeuralNetwork stopped = buildNetwork();
+    stopped.setSamplesPerEpoch(5000);
+    stopped.setRandom(new Random(3));
+    stopped.setEpochs(2);
+    try (CheckpointWriter writer = new CheckpointWriter(directory)) {
+      stopped.setCheckpointWriter(writer);
+      stopped.trainUnsupervised(observations);
+    }
+
+    GenerativeNeuralNetwork resumed = buildNetwork();
+    resumed.setSamplesPerEpoch(5000);
+    resumed.resumeUnsupervised(observations, directory);
+
+    assertArrayEquals(uninterrupted.getParameters(), resumed.getParameters(), 0);
+    assertVectorEquals(uninterrupted.getEstimatedStates().row(IMAGES - 1),
+        resumed.getEstimatedStates().row(IMAGES - 1), 0);
+  }
+
+  @Test
+  public void renderPixelsMatchesPredict() {
+    GenerativeNeuralNetwork network = buildNetwork();
+    network.setThreads(4);
+
+    Vector state = new Vector(new double[]{0.3, -0.7});
+    Matrix pixels = network.renderPixels(state);
+
+    Vector feature = new Vector(4);
+    feature.set(2, state);
+    for (int q = 0; q < HEIGHT; q++) {
+      for (int p = 0; p < WIDTH; p++) {
+        feature.set(0, p / (double) WIDTH);
+        feature.set(1, q / (double) HEIGHT);
+        assertVectorEquals(network.predict(feature), pixels.row(q * WIDTH + p), 1e-12);
+      }
+    }
+
+    assertEquals(WIDTH, network.renderImage(state).getWidth());
+  }
+
+  @Test
+  public void layersWithoutBatchesAreRejected() {
+    GenerativeNeuralNetwork network = new GenerativeNeuralNetwork(WIDTH, HEIGHT, 2, IMAGES);
+    network.addLayer(new LinearLayer(4, 101));
+    network.addLayer(new Assignment5ActivationLayer());
+    network.addLayer(new LinearLayer(101, 3));
+    network.initialize();
+    network.setTrainingMode(GenerativeNeuralNetwork.TrainingMode.PARALLEL);
+
+    try {
+      network.renderPixels(new Vector(2));
+      fail("Rendering went ahead without batch layers.");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("support batches"));
+    }
+
+    try {
+      network.trainUnsupervised(buildObservations());
+      fail("Training went ahead without batch layers.");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("support batches"));
+    }
+  }
+}
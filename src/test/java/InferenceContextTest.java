@@ -0,0 +1,72 @@
+import com.jace.learner.InferenceContext;
+import com.jace.learner.InferenceContextPool;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class InferenceContextTest extends BaseTest {
+
+  @Test
+  public void contextPredictionMatchesPredict() {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+    InferenceContext context = neuralNetwork.createInferenceContext();
+
+    for (int i = 0; i < 5; i++) {
+      Vector input = getRandomVector(64);
+      Vector expected = neuralNetwork.predict(input).copy();
+      Vector actual = neuralNetwork.predict(context, input);
+
+      assertVectorEquals(expected, actual, 1e-12);
+      assertSame(actual, neuralNetwork.predict(context, input));
+    }
+  }
+
+  @Test
+  public void contextHoldsTwoLargestActivations() {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+
+    assertEquals(2 * 128, neuralNetwork.createInferenceContext().getCapacity());
+  }
+
+  @Test
+  public void concurrentPredictionsShareOneNetwork() throws Exception {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+    InferenceContextPool pool = new InferenceContextPool(neuralNetwork);
+
+    List<Vector> inputs = new ArrayList<>();
+    List<Vector> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Vector input = getRandomVector(64);
+      inputs.add(input);
+      expected.add(neuralNetwork.predict(input).copy());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Vector>> futures = new ArrayList<>();
+      for (int repeat = 0; repeat < 5; repeat++) {
+        for (Vector input : inputs) {
+          futures.add(executor.submit(() -> pool.predict(input)));
+        }
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        assertVectorEquals(expected.get(i % inputs.size()), futures.get(i).get(), 1e-12);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
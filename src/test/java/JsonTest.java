@@ -0,0 +1,118 @@
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.util.Json;
+import com.jace.util.JsonReader;
+import com.jace.util.JsonWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class JsonTest extends BaseTest {
+
+  @Test
+  public void writerOutputMatchesTreeOutput() throws IOException {
+    StringWriter out = new StringWriter();
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject()
+        .name("name").value("a \"quoted\"\tname")
+        .name("count").value(3L)
+        .name("weights").value(new double[]{0.5, -1.25, 1e-7})
+        .name("empty").beginArray().endArray()
+        .name("valid").value(true)
+        .name("missing").nullValue()
+        .endObject();
+    writer.close();
+
+    Json json = Json.parse(out.toString());
+    assertEquals(out.toString(), json.toString());
+    assertEquals("a \"quoted\"\tname", json.getString("name"));
+    assertEquals(3, json.getLong("count"));
+    assertArrayEquals(new double[]{0.5, -1.25, 1e-7}, json.get("weights").toDoubleArray(), 0);
+  }
+
+  @Test
+  public void readerWalksTokens() throws IOException {
+    byte[] bytes = "{\"\u00e9\\u0041\": [1, 2.5, {\"skip\": [true, null]}], \"n\": -4}"
+        .getBytes(StandardCharsets.UTF_8);
+    JsonReader reader = new JsonReader(ByteBuffer.wrap(bytes));
+
+    reader.beginObject();
+    assertEquals("\u00e9A", reader.nextName());
+    reader.beginArray();
+    assertEquals(1, reader.nextLong());
+    assertEquals(2.5, reader.nextDouble(), 0);
+    assertEquals(JsonReader.Token.BEGIN_OBJECT, reader.peek());
+    reader.skipValue();
+    assertFalse(reader.hasNext());
+    reader.endArray();
+    assertEquals("n", reader.nextName());
+    assertEquals(-4, reader.nextLong());
+    reader.endObject();
+    assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+
+    try {
+      new JsonReader(new StringReader("[1, 2")).nextDoubleArray();
+      fail("A truncated list was read.");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("end of input"));
+    }
+  }
+
+  @Test
+  public void matricesStreamWithoutNodes() throws IOException {
+    Matrix matrix = getRandomMatrix(40, 300);
+
+    StringWriter out = new StringWriter();
+    JsonWriter writer = new JsonWriter(out);
+    matrix.write(writer);
+    writer.flush();
+
+    // The streamed text is what the tree would have written
+    assertEquals(matrix.marshal().toString(), out.toString());
+
+    Matrix read = new Matrix(new JsonReader(new StringReader(out.toString())));
+    assertEquals(40, read.rows());
+    for (int i = 0; i < read.rows(); i++) {
+      assertVectorEquals(matrix.row(i), read.row(i), 0);
+    }
+
+    // Lists of doubles parse into packed arrays, which Vector copies in one go
+    Vector vector = new Vector(Json.parse(out.toString()).get(7));
+    assertVectorEquals(matrix.row(7), vector, 0);
+  }
+
+  @Test
+  public void packedListsTakeAnyValue() throws IOException {
+    Json parsed = Json.parse("[1.5, 2.5]");
+    parsed.add(3.5);
+    parsed.add(4L);
+    parsed.add("five");
+    parsed.add(true);
+    parsed.add(Json.newObject());
+    assertEquals("[1.5,2.5,3.5,4,\"five\",true,{}]", parsed.toString());
+    assertEquals(7, parsed.size());
+    assertEquals(2.5, parsed.getDouble(1), 0);
+    assertEquals(4, parsed.getLong(3));
+
+    Json read = new JsonReader(new StringReader("[0.25]")).nextValue();
+    read.add(1L);
+    assertEquals("[0.25,1]", read.toString());
+
+    Json packed = Json.newDoubleArray(new double[]{1.5});
+    packed.add(Json.parse("[2]"));
+    assertEquals("[1.5,[2]]", packed.toString());
+  }
+}
@@ -0,0 +1,104 @@
+import com.jace.layer.ConnectedLayer;
+import com.jace.layer.ConvolutionLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.learner.ModelFile;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ModelFileTest extends BaseTest {
+
+  @Test
+  public void loadedModelPredictsTheSame() throws IOException {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+    neuralNetwork.setLearningRate(0.03);
+    neuralNetwork.setMomentum(0.9);
+    File file = File.createTempFile("model", ".bin");
+    file.deleteOnExit();
+
+    ModelFile.save(neuralNetwork, file);
+    NeuralNetwork loaded = ModelFile.load(file);
+
+    assertEquals(neuralNetwork.getLayers().size(), loaded.getLayers().size());
+    assertEquals(neuralNetwork.getParameterCount(), loaded.getParameterCount());
+    assertEquals(0.03, loaded.getLearningRate(), 0);
+    assertEquals(0.9, loaded.getMomentum(), 0);
+
+    for (int i = 0; i < 5; i++) {
+      Vector in = getRandomVector(64);
+      assertVectorEquals(neuralNetwork.infer(in), loaded.infer(in), 0);
+    }
+  }
+
+  @Test
+  public void regularizationIsKept() throws IOException {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+    LinearLayer outputLayer = (LinearLayer) neuralNetwork.getLayers().get(3);
+    outputLayer.setRegularizationType(ConnectedLayer.RegularizationType.L2);
+    outputLayer.setRegularizationAmount(0.01);
+
+    File file = File.createTempFile("model", ".bin");
+    file.deleteOnExit();
+    ModelFile.save(neuralNetwork, file);
+    NeuralNetwork loaded = ModelFile.load(file);
+
+    LinearLayer loadedLayer = (LinearLayer) loaded.getLayers().get(3);
+    assertEquals(ConnectedLayer.RegularizationType.L2, loadedLayer.getRegularizationType());
+    assertEquals(0.01, loadedLayer.getRegularizationAmount(), 0);
+
+    ConvolutionLayer convolution = (ConvolutionLayer) loaded.getLayers().get(0);
+    assertEquals(ConnectedLayer.RegularizationType.NONE, convolution.getRegularizationType());
+    assertEquals(0, convolution.getRegularizationAmount(), 0);
+  }
+
+  @Test
+  public void parametersAreAligned() throws IOException {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+    File file = File.createTempFile("model", ".bin");
+    file.deleteOnExit();
+    ModelFile.save(neuralNetwork, file);
+
+    ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath()))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(ModelFile.MAGIC, header.getInt());
+    assertEquals(ModelFile.FORMAT_VERSION, header.getInt());
+
+    long parameterOffset = header.getLong();
+    assertEquals(0, parameterOffset % 64);
+    assertEquals(parameterOffset + 8L * neuralNetwork.getParameterCount(), file.length());
+    assertEquals(neuralNetwork.getParameters()[0], header.getDouble((int) parameterOffset), 0);
+  }
+
+  @Test
+  public void otherVersionsAreRejected() throws IOException {
+    File file = File.createTempFile("model", ".bin");
+    file.deleteOnExit();
+    ModelFile.save(buildConvolutionNetwork(), file);
+
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.seek(4);
+      raw.write(new byte[]{3, 0, 0, 0});
+    }
+
+    try {
+      ModelFile.load(file);
+      fail("A file from another format version was loaded.");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("format version 3"));
+    }
+  }
+}
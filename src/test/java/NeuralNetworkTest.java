@@ -0,0 +1,114 @@
+import com.jace.layer.ConvolutionLayer;
+import com.jace.layer.Layer;
+import com.jace.layer.LeakyRectifierLayer;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.MaxPooling2DLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class NeuralNetworkTest extends BaseTest {
+
+  @Test
+  public void layersAreViewsIntoParameterBuffer() {
+    NeuralNetwork neuralNetwork = buildConvolutionNetwork();
+
+    double[] parameters = neuralNetwork.getParameters();
+    assertEquals(3 * 3 * 2 + 2 + 32 * 10 + 10, parameters.length);
+    assertEquals(parameters.length, neuralNetwork.getGradients().length);
+
+    // The linear layer's weights start after the convolution's
+    LinearLayer linearLayer = (LinearLayer) neuralNetwork.getLayers().get(3);
+    int offset = parameters.length - linearLayer.getParameterCount();
+
+    parameters[offset + 1] = 42;
+    assertEquals(42, linearLayer.getWeights().get(0, 1), 0);
+
+    linearLayer.getBias().set(1, -7);
+    assertEquals(-7, parameters[parameters.length - 9], 0);
+
+    linearLayer.setWeights(getSampleMatrix(10, 32));
+    assertEquals(37, parameters[offset + 37], 0);
+  }
+
+  @Test
+  public void updateWeightsMatchesPerLayerUpdate() {
+    NeuralNetwork flat = buildConvolutionNetwork();
+    flat.setLearningRate(0.1);
+    flat.setMomentum(0.9);
+
+    // An uninitialized network with the same weights takes the per-layer path
+    NeuralNetwork perLayer = new NeuralNetwork();
+    perLayer.addLayer(
+        new ConvolutionLayer(new int[]{8, 8}, new int[]{3, 3, 2}, new int[]{8, 8, 2}));
+    perLayer.addLayer(new LeakyRectifierLayer(128));
+    perLayer.addLayer(new MaxPooling2DLayer(new int[]{8, 8, 2}));
+    perLayer.addLayer(new LinearLayer(32, 10));
+    perLayer.addLayer(new TanhLayer(10));
+    perLayer.setLearningRate(0.1);
+    perLayer.setMomentum(0.9);
+    perLayer.getLayers().forEach(Layer::initialize);
+    copyWeights(flat, perLayer);
+
+    Vector in = getRandomVector(64);
+    Vector target = getRandomVector(10);
+
+    for (NeuralNetwork neuralNetwork : new NeuralNetwork[]{flat, perLayer}) {
+      for (int step = 0; step < 3; step++) {
+        neuralNetwork.predict(in);
+        neuralNetwork.backPropagate(target);
+        neuralNetwork.updateGradient(in);
+        neuralNetwork.updateWeights();
+      }
+    }
+
+    assertVectorEquals(perLayer.predict(in), flat.predict(in), 1e-12);
+  }
+
+  @Test
+  public void batchPassesMatchPerExamplePasses() {
+    NeuralNetwork batched = new NeuralNetwork();
+    batched.addLayer(new LinearLayer(4, 5));
+    batched.addLayer(new TanhLayer(5));
+    batched.addLayer(new LinearLayer(5, 3));
+    batched.addLayer(new LeakyRectifierLayer(3));
+    batched.initialize();
+
+    NeuralNetwork perExample = batched.replica();
+
+    Matrix inputs = getRandomMatrix(6, 4);
+    Matrix targets = getRandomMatrix(6, 3);
+
+    Matrix outputs = batched.predictBatch(inputs);
+    Matrix inputBlame = batched.backPropagateBatch(targets);
+    batched.updateGradientBatch(inputs);
+
+    LinearLayer firstLayer = (LinearLayer) perExample.getLayers().get(0);
+    for (int i = 0; i < inputs.rows(); i++) {
+      assertVectorEquals(perExample.predict(inputs.row(i)), outputs.row(i), 1e-12);
+      perExample.backPropagate(targets.row(i));
+      assertVectorEquals(firstLayer.backPropagate(), inputBlame.row(i), 1e-12);
+      perExample.updateGradient(inputs.row(i));
+    }
+
+    assertVectorEquals(
+        new Vector(perExample.getGradients()), new Vector(batched.getGradients()), 1e-12);
+  }
+
+  private void copyWeights(NeuralNetwork from, NeuralNetwork to) {
+    ConvolutionLayer convolution = (ConvolutionLayer) from.getLayers().get(0);
+    ((ConvolutionLayer) to.getLayers().get(0)).setWeights(convolution.getWeights());
+    ((ConvolutionLayer) to.getLayers().get(0)).setBias(convolution.getBias());
+
+    LinearLayer linear = (LinearLayer) from.getLayers().get(3);
+    ((LinearLayer) to.getLayers().get(3)).setWeights(linear.getWeights());
+    ((LinearLayer) to.getLayers().get(3)).setBias(linear.getBias());
+  }
+}
@@ -0,0 +1,143 @@
+import com.jace.Main;
+import com.jace.layer.LinearLayer;
+import com.jace.layer.TanhLayer;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import com.jace.optimizer.AdaGrad;
+import com.jace.optimizer.Adam;
+import com.jace.optimizer.AdamW;
+import com.jace.optimizer.ChunkedOptimizer;
+import com.jace.optimizer.Nesterov;
+import com.jace.optimizer.Optimizer;
+import com.jace.optimizer.RMSProp;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class OptimizerTest extends BaseTest {
+
+  /**
+   * Minimizes sum((p - target)^2) from zero and returns the final parameters.
+   */
+  private double[] minimizeQuadratic(Optimizer optimizer, double[] target, double learningRate) {
+    double[] parameters = new double[target.length];
+    double[] gradients = new double[target.length];
+
+    for (int step = 0; step < 2000; step++) {
+      for (int i = 0; i < target.length; i++) {
+        gradients[i] = 2 * (target[i] - parameters[i]);
+      }
+
+      optimizer.step(parameters, gradients, learningRate);
+    }
+
+    return parameters;
+  }
+
+  @Test
+  public void optimizersMinimizeQuadratic() {
+    double[] target = {1, -2, 0.5, 3};
+
+    Optimizer[] optimizers =
+        {new Adam(), new AdamW(0), new RMSProp(), new AdaGrad(), new Nesterov()};
+    double[] learningRates = {0.05, 0.05, 0.01, 0.5, 0.01};
+
+    for (int i = 0; i < optimizers.length; i++) {
+      double[] result = minimizeQuadratic(optimizers[i], target, learningRates[i]);
+      assertArrayEquals(optimizers[i].getClass().getSimpleName(), target, result, 0.05);
+    }
+  }
+
+  @Test
+  public void stepClearsGradient() {
+    double[] parameters = new double[3];
+    double[] gradients = {1, 2, 3};
+
+    new Adam().step(parameters, gradients, 0.1);
+
+    assertArrayEquals(new double[3], gradients, 0);
+  }
+
+  @Test
+  public void adamWDecaysAndStepsTogether() {
+    double[] parameters = {1, -2, 0.5};
+    double[] gradients = {0.3, -0.1, 0};
+
+    double[] expected = parameters.clone();
+    for (int i = 0; i < expected.length; i++) {
+      // The first Adam step moves each parameter by learningRate * g / (|g| + epsilon)
+      double step = 0.1 * gradients[i] / (Math.abs(gradients[i]) + 1e-8);
+      expected[i] = expected[i] * (1 - 0.1 * 0.5) + step;
+    }
+
+    new AdamW(0.5).step(parameters, gradients, 0.1);
+    assertArrayEquals(expected, parameters, 1e-12);
+  }
+
+  @Test
+  public void parallelMatchesSequential() {
+    double[] target = new double[1000];
+    for (int i = 0; i < target.length; i++) {
+      target[i] = Math.sin(i);
+    }
+
+    ChunkedOptimizer sequential = new Adam();
+    ChunkedOptimizer parallel = new Adam();
+    parallel.setParallel(true);
+    parallel.setChunkSize(64);
+
+    assertArrayEquals(
+        minimizeQuadratic(sequential, target, 0.01),
+        minimizeQuadratic(parallel, target, 0.01),
+        0);
+  }
+
+  @Test
+  public void networkTrainsWithAdam() {
+    Main.RANDOM.setSeed(1234);
+
+    NeuralNetwork neuralNetwork = new NeuralNetwork();
+    neuralNetwork.addLayer(new LinearLayer(2, 8));
+    neuralNetwork.addLayer(new TanhLayer(8));
+    neuralNetwork.addLayer(new LinearLayer(8, 1));
+    neuralNetwork.setLearningRate(0.01);
+    neuralNetwork.setOptimizer(new Adam());
+    neuralNetwork.initialize();
+
+    Vector[] inputs = new Vector[20];
+    Vector[] targets = new Vector[20];
+    for (int i = 0; i < inputs.length; i++) {
+      double x = i / 20.0;
+      inputs[i] = new Vector(new double[]{x, 1 - x});
+      targets[i] = new Vector(new double[]{0.5 * x - 0.2});
+    }
+
+    for (int epoch = 0; epoch < 200; epoch++) {
+      for (int i = 0; i < inputs.length; i++) {
+        neuralNetwork.predict(inputs[i]);
+        neuralNetwork.backPropagate(targets[i]);
+        neuralNetwork.updateGradient(inputs[i]);
+        neuralNetwork.updateWeights();
+      }
+    }
+
+    double finalError = sumSquaredError(neuralNetwork, inputs, targets);
+    assertTrue("SSE " + finalError, finalError < 0.01);
+    assertEquals(0, neuralNetwork.getGradients()[0], 0);
+  }
+
+  private double sumSquaredError(NeuralNetwork neuralNetwork, Vector[] inputs, Vector[] targets) {
+    double error = 0;
+    for (int i = 0; i < inputs.length; i++) {
+      double difference = targets[i].get(0) - neuralNetwork.predict(inputs[i]).get(0);
+      error += difference * difference;
+    }
+
+    return error;
+  }
+}
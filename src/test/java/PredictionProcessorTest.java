@@ -0,0 +1,148 @@
+import com.jace.learner.NeuralNetwork;
+import com.jace.learner.PredictionProcessor;
+import com.jace.math.Matrix;
+import com.jace.math.Vector;
+import com.jace.util.ArffReader;
+import com.jace.util.CsvReader;
+import com.jace.util.RowPublisher;
+import com.jace.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class PredictionProcessorTest extends BaseTest {
+
+  private static class CountingCsvReader extends CsvReader {
+    private int rowsRead = 0;
+
+    CountingCsvReader(String text) {
+      super(new StringReader(text));
+    }
+
+    @Override
+    protected double[] readRow() throws IOException {
+      double[] row = super.readRow();
+      if (row != null) {
+        rowsRead++;
+      }
+      return row;
+    }
+  }
+
+  /**
+   * Asks for one prediction at a time, as a slow sink would.
+   */
+  private static class OneAtATimeSubscriber implements Flow.Subscriber<Vector> {
+    private List<Vector> received = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private CountingCsvReader reader;
+    private int mostRowsAhead = 0;
+    private boolean completed = false;
+    private Throwable error;
+
+    OneAtATimeSubscriber(CountingCsvReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(Vector item) {
+      received.add(item);
+      mostRowsAhead = Math.max(mostRowsAhead, reader.rowsRead - received.size());
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  private String toCsv(List<Vector> rows) {
+    StringBuilder csv = new StringBuilder();
+    for (Vector row : rows) {
+      csv.append(Strings.join(row, ',')).append('\n');
+    }
+    return csv.toString();
+  }
+
+  @Test
+  public void slowSinkThrottlesReading() {
+    NeuralNetwork neuralNetwork = buildNetwork(3, 5, 2);
+
+    List<Vector> rows = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      rows.add(getRandomVector(3));
+    }
+
+    int batchSize = 8;
+    CountingCsvReader reader = new CountingCsvReader(toCsv(rows));
+    PredictionProcessor processor = new PredictionProcessor(neuralNetwork, batchSize);
+    OneAtATimeSubscriber sink = new OneAtATimeSubscriber(reader);
+
+    new RowPublisher(reader).subscribe(processor);
+    processor.subscribe(sink);
+
+    assertNull(sink.error);
+    assertTrue(sink.completed);
+    assertEquals(rows.size(), sink.received.size());
+    assertTrue("Read " + sink.mostRowsAhead + " rows ahead", sink.mostRowsAhead <= batchSize);
+
+    for (int i = 0; i < rows.size(); i++) {
+      assertVectorEquals(neuralNetwork.infer(rows.get(i)), sink.received.get(i), 1e-12);
+    }
+  }
+
+  @Test
+  public void arffReaderMatchesLoadArff() throws IOException {
+    String arff = "@RELATION weather\n"
+        + "@ATTRIBUTE outlook {sunny,rainy}\n"
+        + "@ATTRIBUTE temperature real\n"
+        + "@ATTRIBUTE humidity real\n"
+        + "@DATA\n"
+        + "% a comment\n"
+        + "sunny, 30.5, 0.2\n"
+        + "\n"
+        + "rainy, 12, ?\n";
+
+    File file = Files.createTempFile("weather", ".arff").toFile();
+    Files.write(file.toPath(), arff.getBytes());
+    Matrix expected = Matrix.fromARFF(file.getPath());
+
+    try (ArffReader reader = new ArffReader(file)) {
+      assertEquals(3, reader.getAttributeCount());
+      reader.setColumns(1, 2);
+
+      for (int i = 0; i < expected.rows(); i++) {
+        Vector row = reader.next();
+        assertEquals(expected.get(i, 1), row.get(0), 0);
+        assertEquals(expected.get(i, 2), row.get(1), 0);
+      }
+
+      assertNull(reader.next());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+import com.jace.learner.InferenceContextPool;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import com.jace.serving.MicroBatcher;
+import com.jace.serving.PredictionServer;
+import com.jace.serving.ServerMetrics;
+import com.jace.util.Json;
+import com.jace.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class PredictionServerTest extends BaseTest {
+
+  private PredictionServer startServer(NeuralNetwork neuralNetwork) throws IOException {
+    PredictionServer server =
+        new PredictionServer(neuralNetwork, new InetSocketAddress("127.0.0.1", 0));
+    server.getBatcher().setMaxBatchSize(16);
+    server.getBatcher().setMaxDelayMicros(5000);
+    server.getBatcher().setWorkerThreads(2);
+    server.start();
+    return server;
+  }
+
+  private String request(int port, String path, String body) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+
+    if (body != null) {
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    assertEquals(200, connection.getResponseCode());
+    try (InputStream in = connection.getInputStream()) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private Vector parseVector(String line) {
+    String[] values = line.trim().split(",");
+    double[] doubles = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      doubles[i] = Double.parseDouble(values[i]);
+    }
+    return new Vector(doubles);
+  }
+
+  @Test
+  public void concurrentClientsGetBatchedPredictions() throws Exception {
+    NeuralNetwork neuralNetwork = buildNetwork(4, 8, 3);
+    InferenceContextPool expected = new InferenceContextPool(neuralNetwork);
+    int clients = 16;
+    int requestsPerClient = 25;
+
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+    try (PredictionServer server = startServer(neuralNetwork)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        Thread thread = new Thread(() -> {
+          try {
+            for (int r = 0; r < requestsPerClient; r++) {
+              Vector input = getRandomVector(4);
+              String response = request(server.getPort(), "/predict", Strings.join(input, ','));
+
+              assertVectorEquals(expected.predict(input), parseVector(response), 1e-12);
+            }
+          } catch (Throwable e) {
+            failures.add(e);
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertTrue(failures.toString(), failures.isEmpty());
+
+      ServerMetrics metrics = server.getBatcher().getMetrics();
+      assertEquals(clients * requestsPerClient, metrics.getRequests());
+      assertTrue("Requests were never batched", metrics.getBatches() < metrics.getRequests());
+      assertTrue(metrics.getLargestBatch() <= 16);
+      assertTrue(metrics.getLatencyMillis(99) >= metrics.getLatencyMillis(50));
+
+      Json json = Json.parse(request(server.getPort(), "/metrics", null));
+      assertEquals(clients * requestsPerClient, json.getLong("requests"));
+    }
+  }
+
+  @Test
+  public void requestWithSeveralRowsIsAnsweredInOrder() throws Exception {
+    NeuralNetwork neuralNetwork = buildNetwork(4, 8, 3);
+
+    try (PredictionServer server = startServer(neuralNetwork)) {
+      Vector first = getRandomVector(4);
+      Vector second = getRandomVector(4);
+
+      String[] lines = request(server.getPort(), "/predict",
+          Strings.join(first, ',') + "\n" + Strings.join(second, ',') + "\n").split("\n");
+
+      assertEquals(2, lines.length);
+      assertVectorEquals(neuralNetwork.infer(first), parseVector(lines[0]), 1e-12);
+      assertVectorEquals(neuralNetwork.infer(second), parseVector(lines[1]), 1e-12);
+    }
+  }
+
+  @Test
+  public void closingCompletesEveryPrediction() throws Exception {
+    NeuralNetwork neuralNetwork = buildNetwork(4, 8, 3);
+    MicroBatcher batcher = new MicroBatcher(neuralNetwork);
+    batcher.setWorkerThreads(2);
+    batcher.start();
+
+    // Threads keep submitting while the batcher closes, so some submissions race the close
+    List<CompletableFuture<Vector>> results = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> clients = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread client = new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          results.add(batcher.submit(getRandomVector(4)));
+        }
+      });
+      client.start();
+      clients.add(client);
+    }
+
+    Thread.sleep(5);
+    batcher.close();
+    for (Thread client : clients) {
+      client.join();
+    }
+
+    synchronized (results) {
+      for (CompletableFuture<Vector> result : results) {
+        try {
+          result.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,152 @@
+import com.jace.data.Batch;
+import com.jace.data.Dataset;
+import com.jace.data.MatrixDataset;
+import com.jace.data.Prefetcher;
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class PrefetcherTest extends BaseTest {
+
+  @Test
+  public void batchesAreNormalizedAndOneHot() throws IOException {
+    Matrix[] data = buildData(50, 2, 1);
+    for (int i = 0; i < 50; i++) {
+      data[1].set(i, 0, i % 3);
+    }
+    MatrixDataset dataset = new MatrixDataset(data[0], data[1]);
+    dataset.setRandom(new Random(1));
+
+    try (Prefetcher prefetcher = new Prefetcher(dataset, 8, 3)) {
+      prefetcher.setNormalization(new double[]{0, 1}, new double[]{0.5, 0.25});
+      prefetcher.setOneHotLabels(3);
+      assertEquals(3, prefetcher.getLabelCount());
+
+      for (int pass = 0; pass < 2; pass++) {
+        boolean[] seen = new boolean[50];
+        Batch batch;
+        while ((batch = prefetcher.take()) != null) {
+          for (int i = 0; i < batch.size(); i++) {
+            int row = (int) Math.round(batch.features(i).get(0) / 0.5 * 50);
+            assertEquals((data[0].get(row, 1) - 1) * 0.25, batch.features(i).get(1), 1e-12);
+
+            double[] oneHot = new double[3];
+            oneHot[row % 3] = 1;
+            assertArrayEquals(oneHot, batch.labels(i).toDoubleArray(), 0);
+            seen[row] = true;
+          }
+          prefetcher.release(batch);
+        }
+
+        for (boolean rowSeen : seen) {
+          assertTrue(rowSeen);
+        }
+      }
+      assertEquals(14, prefetcher.getBatches());
+    }
+  }
+
+  @Test
+  public void slowSourcesShowUpAsStalls() throws IOException {
+    Matrix[] data = buildData(30, 2, 1);
+    Dataset slow = new MatrixDataset(data[0], data[1]) {
+      @Override
+      public boolean next(Batch batch) {
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.next(batch);
+      }
+    };
+
+    try (Prefetcher prefetcher = new Prefetcher(slow, 10, 2)) {
+      prefetcher.setSinglePass(true);
+      Batch batch = new Batch(10, 2, 1);
+      while (prefetcher.next(batch)) {
+        assertEquals(10, batch.size());
+      }
+
+      // The single pass is over for good
+      assertNull(prefetcher.take());
+      assertEquals(3, prefetcher.getBatches());
+      assertTrue(prefetcher.getStalls() >= 3);
+      assertTrue(prefetcher.getStallMillis() > 0);
+    }
+  }
+
+  @Test
+  public void loaderErrorsReachTheTrainer() throws IOException {
+    Matrix[] data = buildData(30, 2, 1);
+    Dataset failing = new MatrixDataset(data[0], data[1]) {
+      @Override
+      public boolean next(Batch batch) {
+        throw new IllegalStateException("Disk on fire");
+      }
+    };
+
+    try (Prefetcher prefetcher = new Prefetcher(failing, 10, 2)) {
+      prefetcher.take();
+      fail("The error was lost.");
+    } catch (IllegalStateException e) {
+      assertEquals("Disk on fire", e.getMessage());
+    }
+  }
+
+  @Test
+  public void prefetchedTrainingMatchesTheSameRowOrder() {
+    Matrix[] data = buildData(43, 2, 1);
+
+    NeuralNetwork prefetched = buildNetwork(2, 5, 1);
+    prefetched.setLearningRate(0.001);
+    LearnerEvaluator<NeuralNetwork> evaluator =
+        new LearnerEvaluator<>(prefetched, LearnerEvaluator.TrainingType.MINI_BATCH);
+    evaluator.setBatchSize(4);
+    evaluator.setPrefetchBatches(2);
+    evaluator.setRandom(new Random(5));
+    evaluator.train(data[0], data[1]);
+
+    // The same permutation, applied by hand, with the smaller last batch left out
+    int[] order = new int[43];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Random random = new Random(5);
+    for (int i = order.length; i >= 2; i--) {
+      int r = random.nextInt(i);
+      int swap = order[i - 1];
+      order[i - 1] = order[r];
+      order[r] = swap;
+    }
+
+    Matrix features = new Matrix(43, 2);
+    Matrix labels = new Matrix(43, 1);
+    for (int i = 0; i < order.length; i++) {
+      features.row(i).set(0, data[0].row(order[i]));
+      labels.row(i).set(0, data[1].row(order[i]));
+    }
+
+    NeuralNetwork direct = buildNetwork(2, 5, 1);
+    direct.setLearningRate(0.001);
+    evaluator = new LearnerEvaluator<>(direct, LearnerEvaluator.TrainingType.MINI_BATCH);
+    for (int batch = 0; batch < 43 / 4; batch++) {
+      evaluator.trainSingleMiniBatch(features, labels, 4, batch);
+    }
+
+    assertArrayEquals(direct.getParameters(), prefetched.getParameters(), 0);
+  }
+}
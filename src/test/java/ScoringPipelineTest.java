@@ -0,0 +1,50 @@
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Vector;
+import com.jace.serving.ScoringPipeline;
+import com.jace.util.CsvReader;
+import com.jace.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class ScoringPipelineTest extends BaseTest {
+
+  @Test
+  public void writesPredictionsInInputOrder() throws IOException {
+    NeuralNetwork neuralNetwork = buildNetwork(3, 5, 2);
+
+    List<Vector> rows = new ArrayList<>();
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      Vector row = getRandomVector(3);
+      rows.add(row);
+      csv.append(Strings.join(row, ',')).append('\n');
+    }
+
+    ScoringPipeline pipeline = new ScoringPipeline(neuralNetwork);
+    pipeline.setChunkRows(7);
+    pipeline.setComputeThreads(3);
+    pipeline.setQueueCapacity(2);
+
+    StringWriter output = new StringWriter();
+    try (CsvReader reader = new CsvReader(new StringReader(csv.toString()))) {
+      assertEquals(rows.size(), pipeline.score(reader, output));
+    }
+
+    String[] lines = output.toString().split("\n");
+    assertEquals(rows.size(), lines.length);
+    for (int i = 0; i < rows.size(); i++) {
+      assertVectorEquals(
+          neuralNetwork.infer(rows.get(i)), Strings.parseVector(lines[i], ','), 1e-12);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+import com.jace.data.Batch;
+import com.jace.data.ShardDataset;
+import com.jace.math.Matrix;
+import com.jace.math.Shard;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ShardTest extends BaseTest {
+
+  @Test
+  public void shardsRoundTripThroughTheMapping() throws IOException {
+    Matrix features = getRandomMatrix(300, 7);
+    Matrix labels = getRandomMatrix(300, 2);
+    features.getMetadata().setFileName("inputs");
+    File file = newFile();
+    Shard.write(features, labels, file);
+
+    assertTrue(Shard.isShard(file));
+    assertArrayEquals(new String[]{file.getName()}, file.getParentFile().list());
+
+    // Every open maps the same pages, as separate processes would
+    Shard first = Shard.open(file);
+    Shard second = Shard.open(file);
+    assertEquals(300, first.rows());
+    assertEquals(7, first.getFeatureCount());
+    assertEquals(2, first.getLabelCount());
+    assertEquals(features.get(123, 4), second.getFeature(123, 4), 0);
+    assertEquals(labels.get(299, 1), second.getLabel(299, 1), 0);
+
+    double[] row = new double[9];
+    first.getFeatures(42, row, 2);
+    assertArrayEquals(features.row(42).toDoubleArray(), Arrays.copyOfRange(row, 2, 9), 0);
+
+    Matrix copy = first.toFeatures();
+    assertMatrixEquals(features, copy);
+    assertMatrixEquals(labels, first.toLabels());
+    assertEquals("inputs", copy.getMetadata().getFileName());
+    assertEquals(
+        features.getMetadata().getAttributeNames(), copy.getMetadata().getAttributeNames());
+
+    // The data sections start on page boundaries
+    assertEquals(0, (Files.size(file.toPath()) - 300 * 2 * Double.BYTES) % 4096);
+  }
+
+  @Test
+  public void datasetReadsEachRowOncePerPass() throws IOException {
+    Matrix features = new Matrix(101, 2);
+    Matrix labels = new Matrix(101, 1);
+    for (int i = 0; i < 101; i++) {
+      features.set(i, 0, i);
+      features.set(i, 1, -i);
+      labels.set(i, 0, i * 0.5);
+    }
+    File file = newFile();
+    Shard.write(features, labels, file);
+
+    try (ShardDataset dataset = new ShardDataset(file)) {
+      dataset.setRandom(new Random(3));
+      Batch batch = new Batch(16, 2, 1);
+      for (int pass = 0; pass < 2; pass++) {
+        boolean[] seen = new boolean[101];
+        int rows = 0;
+        while (dataset.next(batch)) {
+          for (int i = 0; i < batch.size(); i++) {
+            int row = (int) batch.features(i).get(0);
+            assertEquals(-row, batch.features(i).get(1), 0);
+            assertEquals(row * 0.5, batch.labels(i).get(0), 0);
+            assertFalse(seen[row]);
+            seen[row] = true;
+            rows++;
+          }
+        }
+        assertEquals(101, rows);
+      }
+
+      // Three workers split the rows between them
+      int total = 0;
+      for (int part = 0; part < 3; part++) {
+        dataset.setPartition(part, 3);
+        int begin = total;
+        total += dataset.rows();
+        while (dataset.next(batch)) {
+          for (int i = 0; i < batch.size(); i++) {
+            int row = (int) batch.features(i).get(0);
+            assertTrue(row >= begin && row < total);
+          }
+        }
+      }
+      assertEquals(101, total);
+    }
+  }
+
+  @Test
+  public void otherFilesAreRejected() throws IOException {
+    File file = newFile();
+    Files.write(file.toPath(), new byte[100]);
+    assertFalse(Shard.isShard(file));
+
+    try {
+      Shard.open(file);
+      fail("A file of zeros was opened as a shard.");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("is not a shard."));
+    }
+  }
+
+  private void assertMatrixEquals(Matrix expected, Matrix actual) {
+    assertEquals(expected.rows(), actual.rows());
+    assertEquals(expected.cols(), actual.cols());
+    for (int i = 0; i < expected.rows(); i++) {
+      assertVectorEquals(expected.row(i), actual.row(i), 0);
+    }
+  }
+
+  private File newFile() throws IOException {
+    File directory = Files.createTempDirectory("shard").toFile();
+    directory.deleteOnExit();
+    File file = new File(directory, "data.shard");
+    file.deleteOnExit();
+    return file;
+  }
+}
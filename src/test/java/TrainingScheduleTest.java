@@ -0,0 +1,86 @@
+import com.jace.evaluator.LearnerEvaluator;
+import com.jace.evaluator.TrainingReport;
+import com.jace.learner.NeuralNetwork;
+import com.jace.math.Matrix;
+import com.jace.optimizer.CosineSchedule;
+import com.jace.optimizer.PlateauSchedule;
+import com.jace.optimizer.StepSchedule;
+import com.jace.optimizer.WarmupSchedule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class TrainingScheduleTest extends BaseTest {
+
+  @Test
+  public void schedules() {
+    StepSchedule step = new StepSchedule(2, 0.5);
+    assertEquals(1, step.learningRate(1, 1), 1e-12);
+    assertEquals(0.25, step.learningRate(4, 1), 1e-12);
+
+    CosineSchedule cosine = new CosineSchedule(10, 0.1);
+    assertEquals(1, cosine.learningRate(0, 1), 1e-12);
+    assertEquals(0.55, cosine.learningRate(5, 1), 1e-12);
+    assertEquals(0.1, cosine.learningRate(20, 1), 1e-12);
+
+    WarmupSchedule warmup = new WarmupSchedule(4, step);
+    assertEquals(0.25, warmup.learningRate(0, 1), 1e-12);
+    assertEquals(1, warmup.learningRate(3, 1), 1e-12);
+    assertEquals(0.5, warmup.learningRate(6, 1), 1e-12);
+
+    PlateauSchedule plateau = new PlateauSchedule(0.5, 1);
+    plateau.observe(1);
+    plateau.observe(2);
+    assertEquals(1, plateau.learningRate(2, 1), 1e-12);
+    plateau.observe(2);
+    assertEquals(0.5, plateau.learningRate(3, 1), 1e-12);
+  }
+
+  @Test
+  public void earlyStoppingRestoresBestWeights() {
+    // A huge learning rate makes training diverge, so the best epoch is an early one
+    NeuralNetwork neuralNetwork = buildNetwork(2, 6, 1);
+    neuralNetwork.setLearningRate(0.5);
+    Matrix[] training = buildData(40, 2, 1);
+    Matrix[] validation = buildData(20, 2, 1);
+
+    LearnerEvaluator<NeuralNetwork> evaluator =
+        new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.STOCHASTIC);
+    evaluator.setPatience(3);
+
+    TrainingReport report =
+        evaluator.fit(training[0], training[1], validation[0], validation[1], 500);
+
+    assertTrue(report.getEpochs() <= 500);
+    assertEquals(report.getBestError(),
+        evaluator.computeSumSquaredError(validation[0], validation[1]), 1e-9);
+    assertEquals(0.5, neuralNetwork.getLearningRate(), 0);
+
+    if (report.getStopReason() == TrainingReport.StopReason.EARLY_STOPPED) {
+      assertEquals(report.getBestEpoch() + 4, report.getEpochs());
+      assertTrue(report.getEstimatedMillisSaved() >= 0);
+    }
+  }
+
+  @Test
+  public void timeBudgetStopsTraining() {
+    NeuralNetwork neuralNetwork = buildNetwork(2, 6, 1);
+    neuralNetwork.setLearningRate(0.01);
+    Matrix[] training = buildData(40, 2, 1);
+
+    LearnerEvaluator<NeuralNetwork> evaluator =
+        new LearnerEvaluator<>(neuralNetwork, LearnerEvaluator.TrainingType.STOCHASTIC);
+    evaluator.setLearningRateSchedule(new StepSchedule(1, 0.99));
+    evaluator.setMaxTrainingMillis(1);
+
+    TrainingReport report = evaluator.fit(training[0], training[1], 1000000);
+
+    assertEquals(TrainingReport.StopReason.TIME_BUDGET, report.getStopReason());
+    assertTrue(report.getEpochs() < 1000000);
+    assertEquals(0.01, neuralNetwork.getLearningRate(), 0);
+  }
+}
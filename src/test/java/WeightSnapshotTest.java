@@ -0,0 +1,89 @@
+import com.jace.learner.InferenceContext;
+import com.jace.learner.NeuralNetwork;
+import com.jace.learner.WeightSnapshot;
+import com.jace.math.Vector;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class WeightSnapshotTest extends BaseTest {
+
+  @Test
+  public void releasedSnapshotsAreReused() {
+    NeuralNetwork neuralNetwork = buildNetwork(64, 4);
+
+    WeightSnapshot first = neuralNetwork.publishWeights();
+    WeightSnapshot second = neuralNetwork.publishWeights();
+    WeightSnapshot third = neuralNetwork.publishWeights();
+
+    // Nothing was reading the first snapshot once the second replaced it
+    assertSame(first, third);
+    assertSame(third, neuralNetwork.getPublishedWeights());
+    assertTrue(second != third);
+  }
+
+  @Test
+  public void publishedWeightsAreNeverTorn() throws InterruptedException {
+    NeuralNetwork neuralNetwork = buildNetwork(64, 4);
+    double[] parameters = neuralNetwork.getParameters();
+    Arrays.fill(parameters, 0);
+    neuralNetwork.publishWeights();
+
+    // Every weight and bias equals k, so each output is 65k unless a read mixes two snapshots
+    Vector in = new Vector(64);
+    in.fill(1);
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 3; t++) {
+      Thread reader = new Thread(() -> {
+        InferenceContext context = neuralNetwork.createInferenceContext();
+        double last = 0;
+
+        while (running.get()) {
+          Vector out = neuralNetwork.predictPublished(context, in);
+          double k = out.get(0) / 65;
+
+          for (int i = 0; i < out.size(); i++) {
+            if (out.get(i) != out.get(0) || k != Math.floor(k) || k < last) {
+              failures.add(out.toString());
+              return;
+            }
+          }
+          last = k;
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+
+    for (int k = 1; k <= 20000; k++) {
+      Arrays.fill(parameters, k);
+      neuralNetwork.parametersChanged();
+      neuralNetwork.publishWeights();
+    }
+
+    running.set(false);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertTrue(failures.toString(), failures.isEmpty());
+
+    Vector out = neuralNetwork.predictPublished(neuralNetwork.createInferenceContext(), in);
+    assertEquals(65 * 20000, out.get(0), 0);
+  }
+}